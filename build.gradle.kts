@@ -55,6 +55,7 @@ dependencies {
     implementation("org.apache.commons:commons-compress:1.20")
     implementation("commons-io:commons-io:2.7")
     implementation("org.lz4:lz4-java:1.7.1")
+    implementation("io.airlift:aircompressor:0.25")
     implementation("com.beust:jcommander:1.72")
     implementation("info.picocli:picocli:4.1.2")
     implementation("net.sf.trove4j:trove4j:3.0.3")
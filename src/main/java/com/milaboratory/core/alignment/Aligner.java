@@ -20,9 +20,53 @@ import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.Sequence;
 
 public final class Aligner {
+    /**
+     * Default value of {@link #getLinearMemoryThreshold()}
+     */
+    public static final long DEFAULT_LINEAR_MEMORY_THRESHOLD = Long.MAX_VALUE;
+    /**
+     * Number of dynamic programming matrix cells above which global alignment uses linear memory algorithm
+     */
+    private static volatile long linearMemoryThreshold = DEFAULT_LINEAR_MEMORY_THRESHOLD;
+
+    static {
+        String threshold = System.getProperty("linearMemoryAlignmentThreshold");
+        if (threshold != null)
+            setLinearMemoryThreshold(Long.parseLong(threshold));
+    }
+
     private Aligner() {
     }
 
+    /**
+     * Returns number of dynamic programming matrix cells ({@code (seq1.size() + 1) * (seq2.size() + 1)}) above which
+     * {@link #alignGlobalLinear(LinearGapAlignmentScoring, Sequence, Sequence)} and {@link
+     * #alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)} use {@link HirschbergAligner} instead of full
+     * matrix traceback. Linear memory algorithm is off by default ({@code Long.MAX_VALUE}), because if there are
+     * several optimal alignments it may return a different one. Can also be set using "linearMemoryAlignmentThreshold"
+     * system property.
+     */
+    public static long getLinearMemoryThreshold() {
+        return linearMemoryThreshold;
+    }
+
+    /**
+     * Sets number of dynamic programming matrix cells above which global alignment uses linear memory algorithm. The
+     * result has the same score, but if there are several optimal alignments, mutations may differ from the ones
+     * returned by full matrix traceback.
+     *
+     * @param threshold number of cells, {@code Long.MAX_VALUE} to turn linear memory algorithm off
+     */
+    public static void setLinearMemoryThreshold(long threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Negative threshold.");
+        linearMemoryThreshold = threshold;
+    }
+
+    static boolean useLinearMemory(Sequence<?> seq1, Sequence<?> seq2) {
+        return (seq1.size() + 1L) * (seq2.size() + 1L) > linearMemoryThreshold;
+    }
+
     public static <S extends Sequence<S>> int alignOnlySubstitutions0(S seq1, S seq2, int seq1From, int seq1Length,
                                                                       int seq2From, int seq2Length,
                                                                       AlignmentScoring<S> scoring,
@@ -111,6 +155,13 @@ public final class Aligner {
                 seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearMemory(seq1, seq2)) {
+            // scoring alphabet is checked above, so it is a scoring for sequences of type S
+            @SuppressWarnings("unchecked")
+            LinearGapAlignmentScoring<S> typedScoring = (LinearGapAlignmentScoring<S>) scoring;
+            return HirschbergAligner.alignGlobalLinear(typedScoring, seq1, seq2);
+        }
+
         int size1 = seq1.size() + 1,
                 size2 = seq2.size() + 1;
         int[] matrix = new int[size1 * (seq2.size() + 1)];
@@ -212,6 +263,9 @@ public final class Aligner {
         if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
             throw new IllegalArgumentException("Different alphabets.");
 
+        if (useLinearMemory(seq1, seq2))
+            return HirschbergAligner.alignGlobalAffine(scoring, seq1, seq2);
+
         int
                 length1 = seq1.size(),
                 length2 = seq2.size(),
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable buffers for banded alignment: dynamic programming matrices of {@link BandedAffineAligner} and {@link
+ * BandedLinearAligner} and mutations builder. Buffers grow to the size of the largest alignment performed, so after
+ * warm-up alignment procedures accepting workspace allocate nothing but the resulting objects.
+ *
+ * <p>Workspace is not thread-safe, each thread should use its own instance (see {@link #forCurrentThread()}).</p>
+ */
+public final class AlignmentWorkspace {
+    private static final ThreadLocal<AlignmentWorkspace> local = new ThreadLocal<AlignmentWorkspace>() {
+        @Override
+        protected AlignmentWorkspace initialValue() {
+            return new AlignmentWorkspace();
+        }
+    };
+
+    final BandedAffineAligner.MatrixCache affineCache = new BandedAffineAligner.MatrixCache();
+    final BandedMatrix linearMatrix = new BandedMatrix();
+    final CachedIntArray linearArray = new CachedIntArray();
+    /**
+     * Mutations builders by alphabet
+     */
+    final Map<Alphabet<?>, MutationsBuilder<?>> mutations = new HashMap<>();
+
+    /**
+     * Returns workspace associated with the current thread
+     */
+    public static AlignmentWorkspace forCurrentThread() {
+        return local.get();
+    }
+
+    public BandedAffineAligner.MatrixCache getAffineCache() {
+        return affineCache;
+    }
+
+    /**
+     * Returns empty mutations builder for the alphabet; use {@link MutationsBuilder#createAndClear()} to obtain the
+     * result, so the builder remains reusable
+     */
+    @SuppressWarnings("unchecked")
+    public <S extends Sequence<S>> MutationsBuilder<S> getMutationsBuilder(Alphabet<S> alphabet) {
+        // each builder is stored under its own alphabet
+        MutationsBuilder<S> builder = (MutationsBuilder<S>) mutations.get(alphabet);
+        if (builder == null)
+            mutations.put(alphabet, builder = new MutationsBuilder<>(alphabet));
+        return builder.clear();
+    }
+}
@@ -3,6 +3,7 @@ package com.milaboratory.core.alignment;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
 
 /**
  * @author Dmitry Bolotin
@@ -30,11 +31,11 @@ public class BandedAffineAligner {
      * @param mutations mutations array where all mutations will be kept
      * @param cache     matrix cache
      */
-    public static int align0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                             final NucleotideSequence seq1, final NucleotideSequence seq2,
-                             final int offset1, final int length1, final int offset2, final int length2,
-                             final int width, final MutationsBuilder<NucleotideSequence> mutations,
-                             final MatrixCache cache) {
+    public static <S extends Sequence<S>> int align0(final AffineGapAlignmentScoring<S> scoring,
+                                                     final S seq1, final S seq2,
+                                                     final int offset1, final int length1, final int offset2, final int length2,
+                                                     final int width, final MutationsBuilder<S> mutations,
+                                                     final MatrixCache cache) {
         if (length1 == 0 && length2 == 0)
             return 0;
 
@@ -52,11 +53,15 @@ public class BandedAffineAligner {
         int match, gap1, gap2, to;
         final int gapExtensionPenalty = scoring.getGapExtensionPenalty();
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + main.getRowFactor() - main.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + i) * alphabetSize;
             for (j = Math.max(0, i - main.getColumnDelta()); j < to; ++j) {
-                match = main.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
+                match = main.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + j)];
 
                 gap1 = Math.max(main.get(i + 1, j) + scoring.getGapOpenPenalty(), gapIn1.get(i + 1, j) + gapExtensionPenalty);
                 gap2 = Math.max(main.get(i, j + 1) + scoring.getGapOpenPenalty(), gapIn2.get(i, j + 1) + gapExtensionPenalty);
@@ -112,11 +117,30 @@ public class BandedAffineAligner {
         return main.get(length1, length2);
     }
 
-    public static BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                        final NucleotideSequence seq1, final NucleotideSequence seq2,
-                                                        final int offset1, int length1, final int offset2, int length2,
-                                                        final int width, final MutationsBuilder<NucleotideSequence> mutations,
-                                                        final MatrixCache cache) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, int length1, final int offset2, int length2,
+                                                                                final int width, final MutationsBuilder<S> mutations,
+                                                                                final MatrixCache cache) {
+        return semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, Integer.MAX_VALUE,
+                mutations, cache);
+    }
+
+    /**
+     * Semi-local alignment with X-drop termination: extension stops as soon as scores of all cells in a row of the
+     * banded matrix fall more than {@code xDrop} below the best score found so far. Band still bounds the matrix, but
+     * only the part of it around the best-scoring diagonals is computed, so the cost is proportional to the aligned
+     * region rather than to the whole window.
+     *
+     * @param xDrop maximal allowed drop of the score relative to the best one; {@link Integer#MAX_VALUE} turns
+     *              pruning off
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, int length1, final int offset2, int length2,
+                                                                                final int width, final int xDrop,
+                                                                                final MutationsBuilder<S> mutations,
+                                                                                final MatrixCache cache) {
         if (length1 == 0 || length2 == 0)
             return new BandedSemiLocalResult(offset1 - 1, offset2 - 1, 0);
 
@@ -135,33 +159,12 @@ public class BandedAffineAligner {
 
         int i, j;
 
-        int match, gap1, gap2, to;
+        int to;
 
-        int maxI = -1, maxJ = -1, maxScore = 0;
+        long max = fillSemiLocal(scoring, seq1, seq2, offset1, length1, offset2, length2, false, xDrop, cache);
+        int maxI = (int) (max >> 32), maxJ = (int) max, maxScore = main.get(maxI + 1, maxJ + 1);
         final int gapExtensionPenalty = scoring.getGapExtensionPenalty();
 
-        for (i = 0; i < length1; ++i) {
-            to = Math.min(i + main.getRowFactor() - main.getColumnDelta() + 1, length2);
-            for (j = Math.max(0, i - main.getColumnDelta()); j < to; ++j) {
-                match = main.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
-
-                gap1 = Math.max(main.get(i + 1, j) + scoring.getGapOpenPenalty(), gapIn1.get(i + 1, j) + gapExtensionPenalty);
-                gap2 = Math.max(main.get(i, j + 1) + scoring.getGapOpenPenalty(), gapIn2.get(i, j + 1) + gapExtensionPenalty);
-
-                gapIn1.set(i + 1, j + 1, gap1);
-                gapIn2.set(i + 1, j + 1, gap2);
-                int score = Math.max(match, Math.max(gap1, gap2));
-                main.set(i + 1, j + 1, score);
-
-                if (score > maxScore) {
-                    maxScore = score;
-                    maxI = i;
-                    maxJ = j;
-                }
-            }
-        }
-
         to = mutations.size();
         i = maxI;
         j = maxJ;
@@ -209,11 +212,28 @@ public class BandedAffineAligner {
         return new BandedSemiLocalResult(offset1 + maxI, offset2 + maxJ, maxScore);
     }
 
-    public static BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                       final NucleotideSequence seq1, final NucleotideSequence seq2,
-                                                       int offset1, int length1, int offset2, int length2,
-                                                       final int width, final MutationsBuilder<NucleotideSequence> mutations,
-                                                       final MatrixCache cache) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                               final S seq1, final S seq2,
+                                                                               int offset1, int length1, int offset2, int length2,
+                                                                               final int width, final MutationsBuilder<S> mutations,
+                                                                               final MatrixCache cache) {
+        return semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, Integer.MAX_VALUE,
+                mutations, cache);
+    }
+
+    /**
+     * Same as {@link #semiLocalRight0(AffineGapAlignmentScoring, Sequence, Sequence, int, int,
+     * int, int, int, int, MutationsBuilder, MatrixCache)}, but extends alignment to the left.
+     *
+     * @param xDrop maximal allowed drop of the score relative to the best one; {@link Integer#MAX_VALUE} turns
+     *              pruning off
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                               final S seq1, final S seq2,
+                                                                               int offset1, int length1, int offset2, int length2,
+                                                                               final int width, final int xDrop,
+                                                                               final MutationsBuilder<S> mutations,
+                                                                               final MatrixCache cache) {
         if (length1 == 0 || length2 == 0)
             return new BandedSemiLocalResult(offset1 + length1, offset2 + length2, 0);
 
@@ -238,33 +258,10 @@ public class BandedAffineAligner {
 
         int i, j;
 
-        int match, gap1, gap2, to;
-
-        int maxI = -1, maxJ = -1, maxScore = 0;
+        long max = fillSemiLocal(scoring, seq1, seq2, offset1, length1, offset2, length2, true, xDrop, cache);
+        int maxI = (int) (max >> 32), maxJ = (int) max, maxScore = main.get(maxI + 1, maxJ + 1);
         final int gapExtensionPenalty = scoring.getGapExtensionPenalty();
 
-        for (i = 0; i < length1; ++i) {
-            to = Math.min(i + main.getRowFactor() - main.getColumnDelta() + 1, length2);
-            for (j = Math.max(0, i - main.getColumnDelta()); j < to; ++j) {
-                match = main.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + length1 - 1 - i), seq2.codeAt(offset2 + length2 - 1 - j));
-
-                gap1 = Math.max(main.get(i + 1, j) + scoring.getGapOpenPenalty(), gapIn1.get(i + 1, j) + gapExtensionPenalty);
-                gap2 = Math.max(main.get(i, j + 1) + scoring.getGapOpenPenalty(), gapIn2.get(i, j + 1) + gapExtensionPenalty);
-
-                gapIn1.set(i + 1, j + 1, gap1);
-                gapIn2.set(i + 1, j + 1, gap2);
-                int score = Math.max(match, Math.max(gap1, gap2));
-                main.set(i + 1, j + 1, score);
-
-                if (score > maxScore) {
-                    maxScore = score;
-                    maxI = i;
-                    maxJ = j;
-                }
-            }
-        }
-
         i = maxI;
         j = maxJ;
         int pScore = main.get(i + 1, j + 1);
@@ -310,12 +307,97 @@ public class BandedAffineAligner {
         return new BandedSemiLocalResult(offset1 + length1 - 1 - maxI, offset2 + length2 - 1 - maxJ, maxScore);
     }
 
-    public static BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                         final NucleotideSequence seq1, final NucleotideSequence seq2,
-                                                         final int offset1, final int length1, final int addedNucleotides1,
-                                                         final int offset2, final int length2, final int addedNucleotides2,
-                                                         final int width, final MutationsBuilder<NucleotideSequence> mutations,
-                                                         final MatrixCache cache) {
+    /**
+     * Fills matrices for semi-local alignment applying X-drop rule: cells scoring more than {@code xDrop} below the
+     * best score are discarded, each next row is computed only for the columns reachable from the cells retained in
+     * the previous one, and filling stops when all cells of a row are discarded.
+     *
+     * @return position of the best scoring cell packed as {@code (maxI << 32) | maxJ}
+     */
+    private static <S extends Sequence<S>> long fillSemiLocal(final AffineGapAlignmentScoring<S> scoring,
+                                                              final S seq1, final S seq2,
+                                                              final int offset1, final int length1, final int offset2, final int length2,
+                                                              final boolean reversed, final int xDrop, final MatrixCache cache) {
+        final BandedMatrix main = cache.main;
+        final BandedMatrix gapIn1 = cache.gapIn1;
+        final BandedMatrix gapIn2 = cache.gapIn2;
+        final int gapOpenPenalty = scoring.getGapOpenPenalty();
+        final int gapExtensionPenalty = scoring.getGapExtensionPenalty();
+        final int columnDelta = main.getColumnDelta();
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+
+        int maxI = -1, maxJ = -1, maxScore = 0;
+
+        // columns (j + 1) retained in the previous row; first row is retained completely
+        int aliveFrom = 0, aliveTo = Math.min(main.getRowFactor() - columnDelta, length2);
+
+        int i, c, from, last, to, match, gap1, gap2, score, subsRow;
+        for (i = 0; i < length1; ++i) {
+            to = Math.min(i + main.getRowFactor() - columnDelta + 1, length2);
+            from = Math.max(aliveFrom, Math.max(1, i + 1 - columnDelta));
+            // cells to the right of this column have no retained cells above
+            last = Math.min(aliveTo + 1, to);
+            if (from > last)
+                break;
+
+            // left neighbour of the first computed cell may contain value left from previous use of the cache
+            if (from > 1 && from - 1 >= i + 1 - columnDelta) {
+                main.set(i + 1, from - 1, BandedMatrix.DEFAULT_VALUE);
+                gapIn1.set(i + 1, from - 1, BandedMatrix.DEFAULT_VALUE);
+                gapIn2.set(i + 1, from - 1, BandedMatrix.DEFAULT_VALUE);
+            }
+
+            subsRow = (reversed ? seq1.codeAt(offset1 + length1 - 1 - i) : seq1.codeAt(offset1 + i)) * alphabetSize;
+            aliveFrom = Integer.MAX_VALUE;
+            aliveTo = -1;
+            for (c = from; c <= to; ++c) {
+                if (c <= last) {
+                    match = main.get(i, c - 1) + subsMatrix[subsRow +
+                            (reversed ? seq2.codeAt(offset2 + length2 - c) : seq2.codeAt(offset2 + c - 1))];
+                    gap2 = Math.max(main.get(i, c) + gapOpenPenalty, gapIn2.get(i, c) + gapExtensionPenalty);
+                } else if (aliveTo == c - 1) {
+                    // only gap in the first sequence can be continued
+                    match = BandedMatrix.DEFAULT_VALUE;
+                    gap2 = BandedMatrix.DEFAULT_VALUE;
+                } else
+                    break;
+
+                gap1 = Math.max(main.get(i + 1, c - 1) + gapOpenPenalty, gapIn1.get(i + 1, c - 1) + gapExtensionPenalty);
+                score = Math.max(match, Math.max(gap1, gap2));
+
+                if (score < maxScore - xDrop) {
+                    main.set(i + 1, c, BandedMatrix.DEFAULT_VALUE);
+                    gapIn1.set(i + 1, c, BandedMatrix.DEFAULT_VALUE);
+                    gapIn2.set(i + 1, c, BandedMatrix.DEFAULT_VALUE);
+                    continue;
+                }
+
+                gapIn1.set(i + 1, c, gap1);
+                gapIn2.set(i + 1, c, gap2);
+                main.set(i + 1, c, score);
+
+                if (score > maxScore) {
+                    maxScore = score;
+                    maxI = i;
+                    maxJ = c - 1;
+                }
+
+                if (aliveFrom == Integer.MAX_VALUE)
+                    aliveFrom = c;
+                aliveTo = c;
+            }
+        }
+
+        return ((long) maxI << 32) | (maxJ & 0xFFFFFFFFL);
+    }
+
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                 final S seq1, final S seq2,
+                                                                                 final int offset1, final int length1, final int addedNucleotides1,
+                                                                                 final int offset2, final int length2, final int addedNucleotides2,
+                                                                                 final int width, final MutationsBuilder<S> mutations,
+                                                                                 final MatrixCache cache) {
         int size1 = length1 + 1,
                 size2 = length2 + 1;
 
@@ -330,11 +412,15 @@ public class BandedAffineAligner {
         int match, gap1, gap2, to;
         int gapExtensionPenalty = scoring.getGapExtensionPenalty();
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + main.getRowFactor() - main.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + i) * alphabetSize;
             for (j = Math.max(0, i - main.getColumnDelta()); j < to; ++j) {
-                match = main.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
+                match = main.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + j)];
 
                 gap1 = Math.max(main.get(i + 1, j) + scoring.getGapOpenPenalty(), gapIn1.get(i + 1, j) + gapExtensionPenalty);
                 gap2 = Math.max(main.get(i, j + 1) + scoring.getGapOpenPenalty(), gapIn2.get(i, j + 1) + gapExtensionPenalty);
@@ -411,12 +497,12 @@ public class BandedAffineAligner {
         return new BandedSemiLocalResult(offset1 + maxI, offset2 + maxJ, maxScore);
     }
 
-    public static BandedSemiLocalResult semiGlobalLeft0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                        final NucleotideSequence seq1, final NucleotideSequence seq2,
-                                                        final int offset1, final int length1, final int addedNucleotides1,
-                                                        final int offset2, final int length2, final int addedNucleotides2,
-                                                        final int width, final MutationsBuilder<NucleotideSequence> mutations,
-                                                        final MatrixCache cache) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, final int length1, final int addedNucleotides1,
+                                                                                final int offset2, final int length2, final int addedNucleotides2,
+                                                                                final int width, final MutationsBuilder<S> mutations,
+                                                                                final MatrixCache cache) {
         int size1 = length1 + 1,
                 size2 = length2 + 1;
 
@@ -431,11 +517,15 @@ public class BandedAffineAligner {
         int match, gap1, gap2, to;
         int gapExtensionPenalty = scoring.getGapExtensionPenalty();
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + main.getRowFactor() - main.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + length1 - 1 - i) * alphabetSize;
             for (j = Math.max(0, i - main.getColumnDelta()); j < to; ++j) {
-                match = main.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + length1 - 1 - i), seq2.codeAt(offset2 + length2 - 1 - j));
+                match = main.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + length2 - 1 - j)];
 
                 gap1 = Math.max(main.get(i + 1, j) + scoring.getGapOpenPenalty(), gapIn1.get(i + 1, j) + gapExtensionPenalty);
                 gap2 = Math.max(main.get(i, j + 1) + scoring.getGapOpenPenalty(), gapIn2.get(i, j + 1) + gapExtensionPenalty);
@@ -510,12 +600,12 @@ public class BandedAffineAligner {
         return new BandedSemiLocalResult(offset1 + length1 - 1 - maxI, offset2 + length2 - 1 - maxJ, maxScore);
     }
 
-    public static Alignment<NucleotideSequence> align(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                      final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> align(final AffineGapAlignmentScoring<S> scoring,
+                                                      final S seq1, final S seq2,
                                                       final int offset1, final int length1,
                                                       final int offset2, final int length2,
                                                       final int width) {
-        MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
         int score = align0(scoring, seq1, seq2,
                 offset1, length1,
                 offset2, length2,
@@ -525,17 +615,17 @@ public class BandedAffineAligner {
                 new Range(offset2, offset2 + length2), score);
     }
 
-    public static Alignment<NucleotideSequence> align(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                      final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> align(final AffineGapAlignmentScoring<S> scoring,
+                                                      final S seq1, final S seq2,
                                                       final int width) {
         return align(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width);
     }
 
-    public static Alignment<NucleotideSequence> semiLocalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                               final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiLocalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                               final S seq1, final S seq2,
                                                                final int offset1, final int length1, final int offset2, final int length2,
                                                                final int width) {
-        MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
         BandedSemiLocalResult res = semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
                 mutations, new MatrixCache());
         return new Alignment<>(seq1, mutations.createAndDestroy(),
@@ -543,17 +633,17 @@ public class BandedAffineAligner {
                 new Range(offset2, res.sequence2Stop + 1), res.score);
     }
 
-    public static Alignment<NucleotideSequence> semiLocalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                               final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiLocalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                               final S seq1, final S seq2,
                                                                final int width) {
         return semiLocalRight(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width);
     }
 
-    public static Alignment<NucleotideSequence> semiLocalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                              final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiLocalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                              final S seq1, final S seq2,
                                                               final int offset1, final int length1, final int offset2, final int length2,
                                                               final int width) {
-        MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
         BandedSemiLocalResult res = semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
                 mutations, new MatrixCache());
         return new Alignment<>(seq1, mutations.createAndDestroy(),
@@ -561,18 +651,18 @@ public class BandedAffineAligner {
                 new Range(res.sequence2Stop, offset2 + length2), res.score);
     }
 
-    public static Alignment<NucleotideSequence> semiLocalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                              final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiLocalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                              final S seq1, final S seq2,
                                                               final int width) {
         return semiLocalLeft(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width);
     }
 
-    public static Alignment<NucleotideSequence> semiGlobalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                                final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiGlobalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                                final S seq1, final S seq2,
                                                                 final int offset1, final int length1, final int addedNucleotides1,
                                                                 final int offset2, final int length2, final int addedNucleotides2,
                                                                 final int width) {
-        MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
         BandedSemiLocalResult res = semiGlobalRight0(scoring, seq1, seq2,
                 offset1, length1, addedNucleotides1,
                 offset2, length2, addedNucleotides2,
@@ -582,12 +672,12 @@ public class BandedAffineAligner {
                 new Range(offset2, res.sequence2Stop + 1), res.score);
     }
 
-    public static Alignment<NucleotideSequence> semiGlobalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
-                                                               final NucleotideSequence seq1, final NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> semiGlobalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                               final S seq1, final S seq2,
                                                                final int offset1, final int length1, final int addedNucleotides1,
                                                                final int offset2, final int length2, final int addedNucleotides2,
                                                                final int width) {
-        MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
         BandedSemiLocalResult res = semiGlobalLeft0(scoring, seq1, seq2,
                 offset1, length1, addedNucleotides1,
                 offset2, length2, addedNucleotides2,
@@ -597,21 +687,112 @@ public class BandedAffineAligner {
                 new Range(res.sequence2Stop, offset2 + length2), res.score);
     }
 
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> int align0(final AffineGapAlignmentScoring<S> scoring,
+                                                     final S seq1, final S seq2,
+                                                     final int offset1, final int length1, final int offset2, final int length2,
+                                                     final int width, final MutationsBuilder<S> mutations,
+                                                     final AlignmentWorkspace workspace) {
+        return align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, int length1, final int offset2, int length2,
+                                                                                final int width, final MutationsBuilder<S> mutations,
+                                                                                final AlignmentWorkspace workspace) {
+        return semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                               final S seq1, final S seq2,
+                                                                               int offset1, int length1, int offset2, int length2,
+                                                                               final int width, final MutationsBuilder<S> mutations,
+                                                                               final AlignmentWorkspace workspace) {
+        return semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, int length1, final int offset2, int length2,
+                                                                                final int width, final int xDrop,
+                                                                                final MutationsBuilder<S> mutations,
+                                                                                final AlignmentWorkspace workspace) {
+        return semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, xDrop, mutations,
+                workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                               final S seq1, final S seq2,
+                                                                               int offset1, int length1, int offset2, int length2,
+                                                                               final int width, final int xDrop,
+                                                                               final MutationsBuilder<S> mutations,
+                                                                               final AlignmentWorkspace workspace) {
+        return semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, xDrop, mutations,
+                workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                 final S seq1, final S seq2,
+                                                                                 final int offset1, final int length1, final int addedNucleotides1,
+                                                                                 final int offset2, final int length2, final int addedNucleotides2,
+                                                                                 final int width, final MutationsBuilder<S> mutations,
+                                                                                 final AlignmentWorkspace workspace) {
+        return semiGlobalRight0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                offset2, length2, addedNucleotides2, width, mutations, workspace.affineCache);
+    }
+
+    /**
+     * Same as the method accepting {@link MatrixCache}, but uses matrices from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                                final S seq1, final S seq2,
+                                                                                final int offset1, final int length1, final int addedNucleotides1,
+                                                                                final int offset2, final int length2, final int addedNucleotides2,
+                                                                                final int width, final MutationsBuilder<S> mutations,
+                                                                                final AlignmentWorkspace workspace) {
+        return semiGlobalLeft0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                offset2, length2, addedNucleotides2, width, mutations, workspace.affineCache);
+    }
+
     public static final class MatrixCache {
         private final CachedIntArray mainCache, gapIn1Cache, gapIn2Cache;
-        private BandedMatrix main, gapIn1, gapIn2;
+        private final BandedMatrix main, gapIn1, gapIn2;
 
         public MatrixCache() {
             this.mainCache = new CachedIntArray();
             this.gapIn1Cache = new CachedIntArray();
             this.gapIn2Cache = new CachedIntArray();
+            this.main = new BandedMatrix();
+            this.gapIn1 = new BandedMatrix();
+            this.gapIn2 = new BandedMatrix();
         }
 
-        private void prepareMatrices(int size1, int size2, int width,
-                                     AffineGapAlignmentScoring<NucleotideSequence> scoring) {
-            BandedMatrix main = this.main = new BandedMatrix(mainCache, size1, size2, width);
-            BandedMatrix gapIn1 = this.gapIn1 = new BandedMatrix(gapIn1Cache, size1, size2, width);
-            BandedMatrix gapIn2 = this.gapIn2 = new BandedMatrix(gapIn2Cache, size1, size2, width);
+        private <S extends Sequence<S>> void prepareMatrices(int size1, int size2, int width,
+                                                             AffineGapAlignmentScoring<S> scoring) {
+            main.reset(mainCache, size1, size2, width);
+            gapIn1.reset(gapIn1Cache, size1, size2, width);
+            gapIn2.reset(gapIn2Cache, size1, size2, width);
 
             for (int i = main.getRowFactor() - main.getColumnDelta(); i > 0; --i) {
                 int v = scoring.getGapOpenPenalty() + scoring.getGapExtensionPenalty() * (i - 1);
@@ -632,4 +813,234 @@ public class BandedAffineAligner {
             gapIn2.set(0, 0, BandedMatrix.DEFAULT_VALUE);
         }
     }
+
+    /*
+     * Overloads with original NucleotideSequence signatures, kept for binary compatibility
+     */
+
+    public static int align0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                             final NucleotideSequence seq1, final NucleotideSequence seq2, final int offset1,
+                             final int length1, final int offset2, final int length2, final int width,
+                             final MutationsBuilder<NucleotideSequence> mutations, final MatrixCache cache) {
+        return Generic.align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations, cache);
+    }
+
+    public static BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                        final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                        final int offset1, int length1, final int offset2,
+                                                        int length2, final int width,
+                                                        final MutationsBuilder<NucleotideSequence> mutations,
+                                                        final MatrixCache cache) {
+        return Generic.semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                cache);
+    }
+
+    public static BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                       final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                       int offset1, int length1, int offset2, int length2,
+                                                       final int width,
+                                                       final MutationsBuilder<NucleotideSequence> mutations,
+                                                       final MatrixCache cache) {
+        return Generic.semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                cache);
+    }
+
+    public static BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                         final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                         final int offset1, final int length1,
+                                                         final int addedNucleotides1, final int offset2,
+                                                         final int length2, final int addedNucleotides2,
+                                                         final int width,
+                                                         final MutationsBuilder<NucleotideSequence> mutations,
+                                                         final MatrixCache cache) {
+        return Generic.semiGlobalRight0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width, mutations, cache);
+    }
+
+    public static BandedSemiLocalResult semiGlobalLeft0(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                        final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                        final int offset1, final int length1,
+                                                        final int addedNucleotides1, final int offset2,
+                                                        final int length2, final int addedNucleotides2,
+                                                        final int width,
+                                                        final MutationsBuilder<NucleotideSequence> mutations,
+                                                        final MatrixCache cache) {
+        return Generic.semiGlobalLeft0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width, mutations, cache);
+    }
+
+    public static Alignment<NucleotideSequence> align(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                      final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                      final int offset1, final int length1, final int offset2,
+                                                      final int length2, final int width) {
+        return Generic.align(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+    }
+
+    public static Alignment<NucleotideSequence> align(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                      final NucleotideSequence seq1, final NucleotideSequence seq2,
+                                                      final int width) {
+        return Generic.align(scoring, seq1, seq2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiLocalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                               final NucleotideSequence seq1,
+                                                               final NucleotideSequence seq2, final int offset1,
+                                                               final int length1, final int offset2,
+                                                               final int length2, final int width) {
+        return Generic.semiLocalRight(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiLocalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                               final NucleotideSequence seq1,
+                                                               final NucleotideSequence seq2, final int width) {
+        return Generic.semiLocalRight(scoring, seq1, seq2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiLocalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                              final NucleotideSequence seq1,
+                                                              final NucleotideSequence seq2, final int offset1,
+                                                              final int length1, final int offset2, final int length2,
+                                                              final int width) {
+        return Generic.semiLocalLeft(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiLocalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                              final NucleotideSequence seq1,
+                                                              final NucleotideSequence seq2, final int width) {
+        return Generic.semiLocalLeft(scoring, seq1, seq2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiGlobalRight(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                final NucleotideSequence seq1,
+                                                                final NucleotideSequence seq2, final int offset1,
+                                                                final int length1, final int addedNucleotides1,
+                                                                final int offset2, final int length2,
+                                                                final int addedNucleotides2, final int width) {
+        return Generic.semiGlobalRight(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width);
+    }
+
+    public static Alignment<NucleotideSequence> semiGlobalLeft(final AffineGapAlignmentScoring<NucleotideSequence> scoring,
+                                                               final NucleotideSequence seq1,
+                                                               final NucleotideSequence seq2, final int offset1,
+                                                               final int length1, final int addedNucleotides1,
+                                                               final int offset2, final int length2,
+                                                               final int addedNucleotides2, final int width) {
+        return Generic.semiGlobalLeft(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width);
+    }
+
+    /**
+     * Calls with {@link NucleotideSequence} arguments resolve to the overloads above, so they delegate to generic
+     * methods through this class (arguments of type variable type resolve to generic methods only)
+     */
+    private static final class Generic {
+        static <S extends Sequence<S>> int align0(final AffineGapAlignmentScoring<S> scoring, final S seq1,
+                                                  final S seq2, final int offset1, final int length1,
+                                                  final int offset2, final int length2, final int width,
+                                                  final MutationsBuilder<S> mutations, final MatrixCache cache) {
+            return BandedAffineAligner.align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, cache);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult semiLocalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                             final S seq1, final S seq2,
+                                                                             final int offset1, int length1,
+                                                                             final int offset2, int length2,
+                                                                             final int width,
+                                                                             final MutationsBuilder<S> mutations,
+                                                                             final MatrixCache cache) {
+            return BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, cache);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult semiLocalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                            final S seq1, final S seq2, int offset1,
+                                                                            int length1, int offset2, int length2,
+                                                                            final int width,
+                                                                            final MutationsBuilder<S> mutations,
+                                                                            final MatrixCache cache) {
+            return BandedAffineAligner.semiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, cache);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalRight0(final AffineGapAlignmentScoring<S> scoring,
+                                                                              final S seq1, final S seq2,
+                                                                              final int offset1, final int length1,
+                                                                              final int addedNucleotides1,
+                                                                              final int offset2, final int length2,
+                                                                              final int addedNucleotides2,
+                                                                              final int width,
+                                                                              final MutationsBuilder<S> mutations,
+                                                                              final MatrixCache cache) {
+            return BandedAffineAligner.semiGlobalRight0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width, mutations, cache);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult semiGlobalLeft0(final AffineGapAlignmentScoring<S> scoring,
+                                                                             final S seq1, final S seq2,
+                                                                             final int offset1, final int length1,
+                                                                             final int addedNucleotides1,
+                                                                             final int offset2, final int length2,
+                                                                             final int addedNucleotides2,
+                                                                             final int width,
+                                                                             final MutationsBuilder<S> mutations,
+                                                                             final MatrixCache cache) {
+            return BandedAffineAligner.semiGlobalLeft0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width, mutations, cache);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> align(final AffineGapAlignmentScoring<S> scoring, final S seq1,
+                                                          final S seq2, final int offset1, final int length1,
+                                                          final int offset2, final int length2, final int width) {
+            return BandedAffineAligner.align(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> align(final AffineGapAlignmentScoring<S> scoring, final S seq1,
+                                                          final S seq2, final int width) {
+            return BandedAffineAligner.align(scoring, seq1, seq2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiLocalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                                   final S seq1, final S seq2, final int offset1,
+                                                                   final int length1, final int offset2,
+                                                                   final int length2, final int width) {
+            return BandedAffineAligner.semiLocalRight(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiLocalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                                   final S seq1, final S seq2, final int width) {
+            return BandedAffineAligner.semiLocalRight(scoring, seq1, seq2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiLocalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                                  final S seq1, final S seq2, final int offset1,
+                                                                  final int length1, final int offset2,
+                                                                  final int length2, final int width) {
+            return BandedAffineAligner.semiLocalLeft(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiLocalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                                  final S seq1, final S seq2, final int width) {
+            return BandedAffineAligner.semiLocalLeft(scoring, seq1, seq2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiGlobalRight(final AffineGapAlignmentScoring<S> scoring,
+                                                                    final S seq1, final S seq2, final int offset1,
+                                                                    final int length1, final int addedNucleotides1,
+                                                                    final int offset2, final int length2,
+                                                                    final int addedNucleotides2, final int width) {
+            return BandedAffineAligner.semiGlobalRight(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> semiGlobalLeft(final AffineGapAlignmentScoring<S> scoring,
+                                                                   final S seq1, final S seq2, final int offset1,
+                                                                   final int length1, final int addedNucleotides1,
+                                                                   final int offset2, final int length2,
+                                                                   final int addedNucleotides2, final int width) {
+            return BandedAffineAligner.semiGlobalLeft(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width);
+        }
+    }
 }
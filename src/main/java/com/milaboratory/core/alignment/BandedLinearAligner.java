@@ -18,6 +18,7 @@ package com.milaboratory.core.alignment;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
 
 public final class BandedLinearAligner {
     private BandedLinearAligner() {
@@ -41,16 +42,33 @@ public final class BandedLinearAligner {
      * @param cachedArray cached (created once) array to be used in {@link BandedMatrix}, which is compact alignment
      *                    scoring matrix
      */
-    public static float align0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
-                               int offset1, int length1, int offset2, int length2,
-                               int width, MutationsBuilder<NucleotideSequence> mutations, CachedIntArray cachedArray) {
+    public static <S extends Sequence<S>> float align0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                       int offset1, int length1, int offset2, int length2,
+                                                       int width, MutationsBuilder<S> mutations, CachedIntArray cachedArray) {
+        return align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                new BandedMatrix(), cachedArray);
+    }
+
+    /**
+     * Same as the method accepting {@link CachedIntArray}, but reuses matrix from the workspace
+     */
+    public static <S extends Sequence<S>> float align0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                       int offset1, int length1, int offset2, int length2,
+                                                       int width, MutationsBuilder<S> mutations, AlignmentWorkspace workspace) {
+        return align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations,
+                workspace.linearMatrix, workspace.linearArray);
+    }
+
+    private static <S extends Sequence<S>> float align0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                        int offset1, int length1, int offset2, int length2,
+                                                        int width, MutationsBuilder<S> mutations, BandedMatrix matrix, CachedIntArray cachedArray) {
         if(offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
             throw new IllegalArgumentException();
 
         int size1 = length1 + 1,
                 size2 = length2 + 1;
 
-        BandedMatrix matrix = new BandedMatrix(cachedArray, size1, size2, width);
+        matrix.reset(cachedArray, size1, size2, width);
 
         int i, j;
 
@@ -64,11 +82,15 @@ public final class BandedLinearAligner {
 
         int match, delete, insert, to;
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + matrix.getRowFactor() - matrix.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + i) * alphabetSize;
             for (j = Math.max(0, i - matrix.getColumnDelta()); j < to; ++j) {
-                match = matrix.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
+                match = matrix.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + j)];
                 delete = matrix.get(i, j + 1) + scoring.getGapPenalty();
                 insert = matrix.get(i + 1, j) + scoring.getGapPenalty();
                 matrix.set(i + 1, j + 1, Math.max(match, Math.max(delete, insert)));
@@ -126,16 +148,33 @@ public final class BandedLinearAligner {
      * @param cachedArray       cached (created once) array to be used in {@link BandedMatrix}, which is compact
      *                          alignment scoring matrix
      */
-    public static BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
-                                                         int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
-                                                         int width, MutationsBuilder<NucleotideSequence> mutations, CachedIntArray cachedArray) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                 int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                 int width, MutationsBuilder<S> mutations, CachedIntArray cachedArray) {
+        return alignRightAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2, width, mutations,
+                new BandedMatrix(), cachedArray);
+    }
+
+    /**
+     * Same as the method accepting {@link CachedIntArray}, but reuses matrix from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                 int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                 int width, MutationsBuilder<S> mutations, AlignmentWorkspace workspace) {
+        return alignRightAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2, width, mutations,
+                workspace.linearMatrix, workspace.linearArray);
+    }
+
+    private static <S extends Sequence<S>> BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                  int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                  int width, MutationsBuilder<S> mutations, BandedMatrix matrix, CachedIntArray cachedArray) {
         if(offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
             throw new IllegalArgumentException();
 
         int size1 = length1 + 1,
                 size2 = length2 + 1;
 
-        BandedMatrix matrix = new BandedMatrix(cachedArray, size1, size2, width);
+        matrix.reset(cachedArray, size1, size2, width);
 
         int i, j;
 
@@ -149,11 +188,15 @@ public final class BandedLinearAligner {
 
         int match, delete, insert, to;
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + matrix.getRowFactor() - matrix.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + i) * alphabetSize;
             for (j = Math.max(0, i - matrix.getColumnDelta()); j < to; ++j) {
-                match = matrix.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
+                match = matrix.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + j)];
                 delete = matrix.get(i, j + 1) + scoring.getGapPenalty();
                 insert = matrix.get(i + 1, j) + scoring.getGapPenalty();
                 matrix.set(i + 1, j + 1, Math.max(match, Math.max(delete, insert)));
@@ -239,16 +282,33 @@ public final class BandedLinearAligner {
      * @param cachedArray       cached (created once) array to be used in {@link BandedMatrix}, which is compact
      *                          alignment scoring matrix
      */
-    public static BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
-                                                        int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
-                                                        int width, MutationsBuilder<NucleotideSequence> mutations, CachedIntArray cachedArray) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                int width, MutationsBuilder<S> mutations, CachedIntArray cachedArray) {
+        return alignLeftAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2, width, mutations,
+                new BandedMatrix(), cachedArray);
+    }
+
+    /**
+     * Same as the method accepting {@link CachedIntArray}, but reuses matrix from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                int width, MutationsBuilder<S> mutations, AlignmentWorkspace workspace) {
+        return alignLeftAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2, width, mutations,
+                workspace.linearMatrix, workspace.linearArray);
+    }
+
+    private static <S extends Sequence<S>> BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                 int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
+                                                                                 int width, MutationsBuilder<S> mutations, BandedMatrix matrix, CachedIntArray cachedArray) {
         if(offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
             throw new IllegalArgumentException();
 
         int size1 = length1 + 1,
                 size2 = length2 + 1;
 
-        BandedMatrix matrix = new BandedMatrix(cachedArray, size1, size2, width);
+        matrix.reset(cachedArray, size1, size2, width);
 
         int i, j;
 
@@ -262,12 +322,15 @@ public final class BandedLinearAligner {
 
         int match, delete, insert, to;
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + matrix.getRowFactor() - matrix.getColumnDelta() + 1, length2);
+            subsRow = seq1.codeAt(offset1 + length1 - 1 - i) * alphabetSize;
             for (j = Math.max(0, i - matrix.getColumnDelta()); j < to; ++j) {
-                match = matrix.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + length1 - 1 - i),
-                                seq2.codeAt(offset2 + length2 - 1 - j));
+                match = matrix.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + length2 - 1 - j)];
                 delete = matrix.get(i, j + 1) + scoring.getGapPenalty();
                 insert = matrix.get(i + 1, j) + scoring.getGapPenalty();
                 matrix.set(i + 1, j + 1, Math.max(match, Math.max(delete, insert)));
@@ -347,10 +410,29 @@ public final class BandedLinearAligner {
      *                    scoring matrix
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
-                                                            int offset1, int length1, int offset2, int length2,
-                                                            int width, int stopPenalty, MutationsBuilder<NucleotideSequence> mutations,
-                                                            CachedIntArray cachedArray) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                    int offset1, int length1, int offset2, int length2,
+                                                                                    int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                    CachedIntArray cachedArray) {
+        return alignSemiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty, mutations,
+                new BandedMatrix(), cachedArray);
+    }
+
+    /**
+     * Same as the method accepting {@link CachedIntArray}, but reuses matrix from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                    int offset1, int length1, int offset2, int length2,
+                                                                                    int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                    AlignmentWorkspace workspace) {
+        return alignSemiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty, mutations,
+                workspace.linearMatrix, workspace.linearArray);
+    }
+
+    private static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                     int offset1, int length1, int offset2, int length2,
+                                                                                     int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                     BandedMatrix matrix, CachedIntArray cachedArray) {
         if(offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
             throw new IllegalArgumentException();
 
@@ -359,7 +441,7 @@ public final class BandedLinearAligner {
 
         int matchReward = scoring.getScore((byte) 0, (byte) 0);
 
-        BandedMatrix matrix = new BandedMatrix(cachedArray, size1, size2, width);
+        matrix.reset(cachedArray, size1, size2, width);
 
         int i, j;
 
@@ -376,12 +458,16 @@ public final class BandedLinearAligner {
         int iStop = 0, jStop = 0;
         int rowMax;
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + matrix.getRowFactor() - matrix.getColumnDelta() + 1, size2 - 1);
             rowMax = Integer.MIN_VALUE;
+            subsRow = seq1.codeAt(offset1 + i) * alphabetSize;
             for (j = Math.max(0, i - matrix.getColumnDelta()); j < to; ++j) {
-                match = matrix.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + i), seq2.codeAt(offset2 + j));
+                match = matrix.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + j)];
                 delete = matrix.get(i, j + 1) + scoring.getGapPenalty();
                 insert = matrix.get(i + 1, j) + scoring.getGapPenalty();
                 matrix.set(i + 1, j + 1, match = Math.max(match, Math.max(delete, insert)));
@@ -450,10 +536,29 @@ public final class BandedLinearAligner {
      *                    scoring matrix
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
-                                                             int offset1, int length1, int offset2, int length2,
-                                                             int width, int stopPenalty, MutationsBuilder<NucleotideSequence> mutations,
-                                                             CachedIntArray cachedArray) {
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                     int offset1, int length1, int offset2, int length2,
+                                                                                     int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                     CachedIntArray cachedArray) {
+        return alignSemiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty, mutations,
+                new BandedMatrix(), cachedArray);
+    }
+
+    /**
+     * Same as the method accepting {@link CachedIntArray}, but reuses matrix from the workspace
+     */
+    public static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                     int offset1, int length1, int offset2, int length2,
+                                                                                     int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                     AlignmentWorkspace workspace) {
+        return alignSemiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, stopPenalty, mutations,
+                workspace.linearMatrix, workspace.linearArray);
+    }
+
+    private static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                                                      int offset1, int length1, int offset2, int length2,
+                                                                                      int width, int stopPenalty, MutationsBuilder<S> mutations,
+                                                                                      BandedMatrix matrix, CachedIntArray cachedArray) {
         if(offset1 < 0 || length1 < 0 || offset2 < 0 || length2 < 0)
             throw new IllegalArgumentException();
 
@@ -462,7 +567,7 @@ public final class BandedLinearAligner {
 
         int matchReward = scoring.getScore((byte) 0, (byte) 0);
 
-        BandedMatrix matrix = new BandedMatrix(cachedArray, size1, size2, width);
+        matrix.reset(cachedArray, size1, size2, width);
 
         int i, j;
 
@@ -479,13 +584,16 @@ public final class BandedLinearAligner {
         int iStop = 0, jStop = 0;
         int rowMax;
 
+        final int[] subsMatrix = scoring.subsMatrixActual;
+        final int alphabetSize = scoring.getAlphabet().size();
+        int subsRow;
+
         for (i = 0; i < length1; ++i) {
             to = Math.min(i + matrix.getRowFactor() - matrix.getColumnDelta() + 1, length2);
             rowMax = Integer.MIN_VALUE;
+            subsRow = seq1.codeAt(offset1 + length1 - 1 - i) * alphabetSize;
             for (j = Math.max(0, i - matrix.getColumnDelta()); j < to; ++j) {
-                match = matrix.get(i, j) +
-                        scoring.getScore(seq1.codeAt(offset1 + length1 - 1 - i),
-                                seq2.codeAt(offset2 + length2 - 1 - j));
+                match = matrix.get(i, j) + subsMatrix[subsRow + seq2.codeAt(offset2 + length2 - 1 - j)];
                 delete = matrix.get(i, j + 1) + scoring.getGapPenalty();
                 insert = matrix.get(i + 1, j) + scoring.getGapPenalty();
                 matrix.set(i + 1, j + 1, match = Math.max(match, Math.max(delete, insert)));
@@ -541,7 +649,7 @@ public final class BandedLinearAligner {
      * @param seq2    second sequence
      * @param width   width of banded alignment matrix. In other terms max allowed number of indels
      */
-    public static Alignment<NucleotideSequence> align(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> align(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                       int width) {
         return align(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width);
     }
@@ -561,10 +669,10 @@ public final class BandedLinearAligner {
      * @param length2 length of second sequence's part to be aligned
      * @param width   width of banded alignment matrix. In other terms max allowed number of indels
      */
-    public static Alignment<NucleotideSequence> align(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> align(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                       int offset1, int length1, int offset2, int length2, int width) {
         try {
-            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
             float score = align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
                     mutations, AlignmentCache.get());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
@@ -593,11 +701,11 @@ public final class BandedLinearAligner {
      * @param addedNucleotides2 number of artificially added letters to the second sequence
      * @param width             width of banded alignment matrix. In other terms max allowed number of indels
      */
-    public static Alignment<NucleotideSequence> alignLeftAdded(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignLeftAdded(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                                int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
                                                                int width) {
         try {
-            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
             BandedSemiLocalResult result = alignLeftAdded0(scoring, seq1, seq2,
                     offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2,
                     width, mutations, AlignmentCache.get());
@@ -626,11 +734,11 @@ public final class BandedLinearAligner {
      * @param addedNucleotides2 number of artificially added letters to the second sequence
      * @param width             width of banded alignment matrix. In other terms max allowed number of indels
      */
-    public static Alignment<NucleotideSequence> alignRightAdded(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignRightAdded(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                                 int offset1, int length1, int addedNucleotides1, int offset2, int length2, int addedNucleotides2,
                                                                 int width) {
         try {
-            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
             BandedSemiLocalResult result = alignRightAdded0(scoring, seq1, seq2,
                     offset1, length1, addedNucleotides1, offset2, length2, addedNucleotides2,
                     width, mutations, AlignmentCache.get());
@@ -662,14 +770,14 @@ public final class BandedLinearAligner {
      * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static Alignment<NucleotideSequence> alignSemiLocalLeft(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignSemiLocalLeft(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                                    int offset1, int length1, int offset2, int length2,
                                                                    int width, int stopPenalty) {
         try {
             int minLength = Math.min(length1, length2) + width + 1;
             length1 = Math.min(length1, minLength);
             length2 = Math.min(length2, minLength);
-            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
             BandedSemiLocalResult result = alignSemiLocalLeft0(scoring, seq1, seq2,
                     offset1, length1, offset2, length2, width, stopPenalty, mutations, AlignmentCache.get());
             return new Alignment<>(seq1, mutations.createAndDestroy(),
@@ -696,8 +804,8 @@ public final class BandedLinearAligner {
      * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static Alignment<NucleotideSequence> alignSemiLocalLeft(LinearGapAlignmentScoring scoring,
-                                                                   NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignSemiLocalLeft(LinearGapAlignmentScoring<S> scoring,
+                                                                   S seq1, S seq2,
                                                                    int width, int stopPenalty) {
         return alignSemiLocalLeft(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width, stopPenalty);
     }
@@ -719,7 +827,7 @@ public final class BandedLinearAligner {
      * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static Alignment<NucleotideSequence> alignSemiLocalRight(LinearGapAlignmentScoring scoring, NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignSemiLocalRight(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
                                                                     int offset1, int length1, int offset2, int length2,
                                                                     int width, int stopPenalty) {
         try {
@@ -730,7 +838,7 @@ public final class BandedLinearAligner {
             offset2 = offset2 + length2 - l2;
             length1 = l1;
             length2 = l2;
-            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
             BandedSemiLocalResult result = alignSemiLocalRight0(scoring, seq1, seq2,
                     offset1, length1, offset2, length2, width,
                     stopPenalty, mutations, AlignmentCache.get());
@@ -755,9 +863,223 @@ public final class BandedLinearAligner {
      * @param stopPenalty alignment score value in banded alignment matrix at which alignment terminates
      * @return object which contains positions at which alignment terminated and array of mutations
      */
-    public static Alignment<NucleotideSequence> alignSemiLocalRight(LinearGapAlignmentScoring scoring,
-                                                                    NucleotideSequence seq1, NucleotideSequence seq2,
+    public static <S extends Sequence<S>> Alignment<S> alignSemiLocalRight(LinearGapAlignmentScoring<S> scoring,
+                                                                    S seq1, S seq2,
                                                                     int width, int stopPenalty) {
         return alignSemiLocalRight(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width, stopPenalty);
     }
+
+    /*
+     * Overloads with original NucleotideSequence signatures, kept for binary compatibility
+     */
+
+    public static float align0(LinearGapAlignmentScoring<NucleotideSequence> scoring, NucleotideSequence seq1,
+                               NucleotideSequence seq2, int offset1, int length1, int offset2, int length2, int width,
+                               MutationsBuilder<NucleotideSequence> mutations, CachedIntArray cachedArray) {
+        return Generic.align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width, mutations, cachedArray);
+    }
+
+    public static BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                         NucleotideSequence seq1, NucleotideSequence seq2,
+                                                         int offset1, int length1, int addedNucleotides1, int offset2,
+                                                         int length2, int addedNucleotides2, int width,
+                                                         MutationsBuilder<NucleotideSequence> mutations,
+                                                         CachedIntArray cachedArray) {
+        return Generic.alignRightAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width, mutations, cachedArray);
+    }
+
+    public static BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                        NucleotideSequence seq1, NucleotideSequence seq2, int offset1,
+                                                        int length1, int addedNucleotides1, int offset2, int length2,
+                                                        int addedNucleotides2, int width,
+                                                        MutationsBuilder<NucleotideSequence> mutations,
+                                                        CachedIntArray cachedArray) {
+        return Generic.alignLeftAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width, mutations, cachedArray);
+    }
+
+    public static BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                            NucleotideSequence seq1, NucleotideSequence seq2,
+                                                            int offset1, int length1, int offset2, int length2,
+                                                            int width, int stopPenalty,
+                                                            MutationsBuilder<NucleotideSequence> mutations,
+                                                            CachedIntArray cachedArray) {
+        return Generic.alignSemiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                stopPenalty, mutations, cachedArray);
+    }
+
+    public static BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                             NucleotideSequence seq1, NucleotideSequence seq2,
+                                                             int offset1, int length1, int offset2, int length2,
+                                                             int width, int stopPenalty,
+                                                             MutationsBuilder<NucleotideSequence> mutations,
+                                                             CachedIntArray cachedArray) {
+        return Generic.alignSemiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                stopPenalty, mutations, cachedArray);
+    }
+
+    public static Alignment<NucleotideSequence> align(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                      NucleotideSequence seq1, NucleotideSequence seq2, int width) {
+        return Generic.align(scoring, seq1, seq2, width);
+    }
+
+    public static Alignment<NucleotideSequence> align(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                      NucleotideSequence seq1, NucleotideSequence seq2, int offset1,
+                                                      int length1, int offset2, int length2, int width) {
+        return Generic.align(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+    }
+
+    public static Alignment<NucleotideSequence> alignLeftAdded(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                               NucleotideSequence seq1, NucleotideSequence seq2,
+                                                               int offset1, int length1, int addedNucleotides1,
+                                                               int offset2, int length2, int addedNucleotides2,
+                                                               int width) {
+        return Generic.alignLeftAdded(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width);
+    }
+
+    public static Alignment<NucleotideSequence> alignRightAdded(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                int offset1, int length1, int addedNucleotides1,
+                                                                int offset2, int length2, int addedNucleotides2,
+                                                                int width) {
+        return Generic.alignRightAdded(scoring, seq1, seq2, offset1, length1, addedNucleotides1, offset2, length2,
+                addedNucleotides2, width);
+    }
+
+    public static Alignment<NucleotideSequence> alignSemiLocalLeft(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                   NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                   int offset1, int length1, int offset2, int length2,
+                                                                   int width, int stopPenalty) {
+        return Generic.alignSemiLocalLeft(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                stopPenalty);
+    }
+
+    public static Alignment<NucleotideSequence> alignSemiLocalLeft(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                   NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                   int width, int stopPenalty) {
+        return Generic.alignSemiLocalLeft(scoring, seq1, seq2, width, stopPenalty);
+    }
+
+    public static Alignment<NucleotideSequence> alignSemiLocalRight(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                    NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                    int offset1, int length1, int offset2,
+                                                                    int length2, int width, int stopPenalty) {
+        return Generic.alignSemiLocalRight(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                stopPenalty);
+    }
+
+    public static Alignment<NucleotideSequence> alignSemiLocalRight(LinearGapAlignmentScoring<NucleotideSequence> scoring,
+                                                                    NucleotideSequence seq1, NucleotideSequence seq2,
+                                                                    int width, int stopPenalty) {
+        return Generic.alignSemiLocalRight(scoring, seq1, seq2, width, stopPenalty);
+    }
+
+    /**
+     * Calls with {@link NucleotideSequence} arguments resolve to the overloads above, so they delegate to generic
+     * methods through this class (arguments of type variable type resolve to generic methods only)
+     */
+    private static final class Generic {
+        static <S extends Sequence<S>> float align0(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2, int offset1,
+                                                    int length1, int offset2, int length2, int width,
+                                                    MutationsBuilder<S> mutations, CachedIntArray cachedArray) {
+            return BandedLinearAligner.align0(scoring, seq1, seq2, offset1, length1, offset2, length2, width,
+                    mutations, cachedArray);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult alignRightAdded0(LinearGapAlignmentScoring<S> scoring,
+                                                                              S seq1, S seq2, int offset1,
+                                                                              int length1, int addedNucleotides1,
+                                                                              int offset2, int length2,
+                                                                              int addedNucleotides2, int width,
+                                                                              MutationsBuilder<S> mutations,
+                                                                              CachedIntArray cachedArray) {
+            return BandedLinearAligner.alignRightAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width, mutations, cachedArray);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult alignLeftAdded0(LinearGapAlignmentScoring<S> scoring,
+                                                                             S seq1, S seq2, int offset1, int length1,
+                                                                             int addedNucleotides1, int offset2,
+                                                                             int length2, int addedNucleotides2,
+                                                                             int width, MutationsBuilder<S> mutations,
+                                                                             CachedIntArray cachedArray) {
+            return BandedLinearAligner.alignLeftAdded0(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width, mutations, cachedArray);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalLeft0(LinearGapAlignmentScoring<S> scoring,
+                                                                                 S seq1, S seq2, int offset1,
+                                                                                 int length1, int offset2,
+                                                                                 int length2, int width,
+                                                                                 int stopPenalty,
+                                                                                 MutationsBuilder<S> mutations,
+                                                                                 CachedIntArray cachedArray) {
+            return BandedLinearAligner.alignSemiLocalLeft0(scoring, seq1, seq2, offset1, length1, offset2, length2,
+                    width, stopPenalty, mutations, cachedArray);
+        }
+
+        static <S extends Sequence<S>> BandedSemiLocalResult alignSemiLocalRight0(LinearGapAlignmentScoring<S> scoring,
+                                                                                  S seq1, S seq2, int offset1,
+                                                                                  int length1, int offset2,
+                                                                                  int length2, int width,
+                                                                                  int stopPenalty,
+                                                                                  MutationsBuilder<S> mutations,
+                                                                                  CachedIntArray cachedArray) {
+            return BandedLinearAligner.alignSemiLocalRight0(scoring, seq1, seq2, offset1, length1, offset2, length2,
+                    width, stopPenalty, mutations, cachedArray);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> align(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                          int width) {
+            return BandedLinearAligner.align(scoring, seq1, seq2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> align(LinearGapAlignmentScoring<S> scoring, S seq1, S seq2,
+                                                          int offset1, int length1, int offset2, int length2,
+                                                          int width) {
+            return BandedLinearAligner.align(scoring, seq1, seq2, offset1, length1, offset2, length2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignLeftAdded(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                   S seq2, int offset1, int length1,
+                                                                   int addedNucleotides1, int offset2, int length2,
+                                                                   int addedNucleotides2, int width) {
+            return BandedLinearAligner.alignLeftAdded(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignRightAdded(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                    S seq2, int offset1, int length1,
+                                                                    int addedNucleotides1, int offset2, int length2,
+                                                                    int addedNucleotides2, int width) {
+            return BandedLinearAligner.alignRightAdded(scoring, seq1, seq2, offset1, length1, addedNucleotides1,
+                    offset2, length2, addedNucleotides2, width);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignSemiLocalLeft(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                       S seq2, int offset1, int length1, int offset2,
+                                                                       int length2, int width, int stopPenalty) {
+            return BandedLinearAligner.alignSemiLocalLeft(scoring, seq1, seq2, offset1, length1, offset2, length2,
+                    width, stopPenalty);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignSemiLocalLeft(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                       S seq2, int width, int stopPenalty) {
+            return BandedLinearAligner.alignSemiLocalLeft(scoring, seq1, seq2, width, stopPenalty);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignSemiLocalRight(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                        S seq2, int offset1, int length1, int offset2,
+                                                                        int length2, int width, int stopPenalty) {
+            return BandedLinearAligner.alignSemiLocalRight(scoring, seq1, seq2, offset1, length1, offset2, length2,
+                    width, stopPenalty);
+        }
+
+        static <S extends Sequence<S>> Alignment<S> alignSemiLocalRight(LinearGapAlignmentScoring<S> scoring, S seq1,
+                                                                        S seq2, int width, int stopPenalty) {
+            return BandedLinearAligner.alignSemiLocalRight(scoring, seq1, seq2, width, stopPenalty);
+        }
+    }
 }
@@ -30,17 +30,31 @@ public final class BandedMatrix implements java.io.Serializable {
     /**
      * Main alignment matrix
      */
-    private final int[] matrix;
+    private int[] matrix;
     /**
      * Row length
      */
-    private final int rowFactor;
+    private int rowFactor;
     /**
      * Negative offset value of first row
      */
-    private final int columnDelta;
+    private int columnDelta;
 
     public BandedMatrix(CachedIntArray cachedArray, int size1, int size2, int width) {
+        reset(cachedArray, size1, size2, width);
+    }
+
+    /**
+     * Creates empty matrix, {@link #reset(CachedIntArray, int, int, int)} must be called before use
+     */
+    BandedMatrix() {
+    }
+
+    /**
+     * Reinitializes this matrix for new dimensions, reusing the array from {@code cachedArray}. Matrix values are not
+     * cleared.
+     */
+    public void reset(CachedIntArray cachedArray, int size1, int size2, int width) {
         if (width >= size1)
             width = size1 - 1;
         if (width >= size2)
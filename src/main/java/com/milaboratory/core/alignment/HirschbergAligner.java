@@ -0,0 +1,393 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Sequence;
+
+/**
+ * Global alignment in linear memory using divide-and-conquer algorithm of Hirschberg, generalized to affine gaps by
+ * Myers and Miller (1988).
+ *
+ * Alignment problem is split at the middle row of the first sequence: forward pass over the upper half and backward
+ * pass over the lower half give scores of the best paths crossing the middle row at each column (either at a cell or
+ * inside a deletion spanning the row), then both halves are aligned recursively. Memory consumption is O(n + m), time
+ * is approximately twice of the full dynamic programming.
+ *
+ * Results have the same score as {@link Aligner#alignGlobalLinear(LinearGapAlignmentScoring, Sequence, Sequence)} and
+ * {@link Aligner#alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}, but if there are several optimal
+ * alignments, the one returned may differ from the one returned by full matrix traceback. So these methods use this
+ * algorithm only if {@link Aligner#setLinearMemoryThreshold(long)} is set explicitly.
+ */
+public final class HirschbergAligner {
+    /**
+     * "Minus infinity", small enough to never win, large enough to never overflow after adding penalties
+     */
+    static final int NEG = Integer.MIN_VALUE / 4;
+
+    private HirschbergAligner() {
+    }
+
+    /**
+     * Performs global alignment in linear memory
+     *
+     * @param scoring scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return alignment
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobal(AlignmentScoring<S> scoring, S seq1, S seq2) {
+        if (scoring instanceof AffineGapAlignmentScoring)
+            return alignGlobalAffine((AffineGapAlignmentScoring<S>) scoring, seq1, seq2);
+        if (scoring instanceof LinearGapAlignmentScoring)
+            return alignGlobalLinear((LinearGapAlignmentScoring<S>) scoring, seq1, seq2);
+        throw new RuntimeException("Unknown scoring type.");
+    }
+
+    /**
+     * Performs global alignment in linear memory using linear scoring system (penalty exists only for gap)
+     *
+     * @param scoring linear scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return alignment
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobalLinear(LinearGapAlignmentScoring<S> scoring,
+                                                                         S seq1, S seq2) {
+        return align(scoring, 0, scoring.getGapPenalty(), seq1, seq2);
+    }
+
+    /**
+     * Performs global alignment in linear memory using affine gap scoring system (different penalties exist for gap
+     * opening and gap extension)
+     *
+     * @param scoring affine gap scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return alignment
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                         S seq1, S seq2) {
+        int gapOpen = scoring.getGapOpenPenalty() - scoring.getGapExtensionPenalty(),
+                gapExtension = scoring.getGapExtensionPenalty();
+        if (gapOpen <= 0)
+            return align(scoring, gapOpen, gapExtension, seq1, seq2);
+
+        // Opening a new gap scores better than extending the current one, so (as in full matrix dynamic programming)
+        // each gapped letter inside the matrix scores as a separate gap, and only the gap along the first row or
+        // column scores as a single gap
+        checkAlphabets(scoring, seq1, seq2);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
+        int score = new Aligner0<>(scoring, 0, gapOpen + gapExtension, seq1, seq2, mutations)
+                .alignWithLeadingGap(gapOpen, gapExtension);
+        return new Alignment<>(seq1, mutations.createAndDestroy(),
+                new Range(0, seq1.size()), new Range(0, seq2.size()), score);
+    }
+
+    private static <S extends Sequence<S>> Alignment<S> align(AbstractAlignmentScoring<S> scoring,
+                                                              int gapOpen, int gapExtension,
+                                                              S seq1, S seq2) {
+        checkAlphabets(scoring, seq1, seq2);
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(seq1.getAlphabet());
+        int score = new Aligner0<>(scoring, gapOpen, gapExtension, seq1, seq2, mutations)
+                .align(0, seq1.size(), 0, seq2.size(), gapOpen, gapOpen);
+        return new Alignment<>(seq1, mutations.createAndDestroy(),
+                new Range(0, seq1.size()), new Range(0, seq2.size()), score);
+    }
+
+    private static <S extends Sequence<S>> void checkAlphabets(AbstractAlignmentScoring<S> scoring, S seq1, S seq2) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+    }
+
+    /**
+     * Holds the state of a single alignment procedure. Gap of length {@code k} scores {@code gapOpen + k *
+     * gapExtension}.
+     */
+    private static final class Aligner0<S extends Sequence<S>> {
+        final byte[] codes1, codes2;
+        final int[] subsMatrix;
+        final int alphabetSize;
+        final int gapOpen, gapExtension;
+        final MutationsBuilder<S> mutations;
+        /**
+         * Forward and backward score rows: best scores of paths ending at a cell and of paths ending with deletion
+         */
+        final int[] forwardH, forwardD, backwardH, backwardD;
+
+        Aligner0(AbstractAlignmentScoring<S> scoring, int gapOpen, int gapExtension,
+                 S seq1, S seq2, MutationsBuilder<S> mutations) {
+            this.codes1 = codes(seq1);
+            this.codes2 = codes(seq2);
+            this.subsMatrix = scoring.subsMatrixActual;
+            this.alphabetSize = scoring.getAlphabet().size();
+            this.gapOpen = gapOpen;
+            this.gapExtension = gapExtension;
+            this.mutations = mutations;
+            int size = codes2.length + 1;
+            this.forwardH = new int[size];
+            this.forwardD = new int[size];
+            this.backwardH = new int[size];
+            this.backwardD = new int[size];
+        }
+
+        /**
+         * Aligns codes1[from1, to1) with codes2[from2, to2), appending mutations to the builder.
+         *
+         * @param openBegin gap open score for deletion starting at the beginning of the region (0 if the deletion
+         *                  continues the gap started before the region, {@link #gapOpen} otherwise)
+         * @param openEnd   same for deletion at the end of the region
+         * @return score of the alignment
+         */
+        int align(int from1, int to1, int from2, int to2, int openBegin, int openEnd) {
+            int length1 = to1 - from1, length2 = to2 - from2;
+            if (length2 == 0) {
+                if (length1 == 0)
+                    return 0;
+                delete(from1, to1);
+                return Math.max(openBegin, openEnd) + length1 * gapExtension;
+            }
+            if (length1 == 0) {
+                insert(from1, from2, to2);
+                return gapOpen + length2 * gapExtension;
+            }
+            if (length1 == 1)
+                return alignSingle(from1, from2, to2, openBegin, openEnd);
+
+            int middle = from1 + length1 / 2;
+            scoreRows(from1, 1, middle - from1, from2, 1, length2, openBegin, forwardH, forwardD);
+            scoreRows(to1 - 1, -1, to1 - middle, to2 - 1, -1, length2, openEnd, backwardH, backwardD);
+
+            int bestScore = NEG, bestJ = 0, score;
+            boolean bestInDeletion = false;
+            for (int j = 0; j <= length2; ++j) {
+                if ((score = forwardH[j] + backwardH[length2 - j]) > bestScore) {
+                    bestScore = score;
+                    bestJ = j;
+                    bestInDeletion = false;
+                }
+                // deletion spanning the middle row, gap opened twice
+                if ((score = forwardD[j] + backwardD[length2 - j] - gapOpen) > bestScore) {
+                    bestScore = score;
+                    bestJ = j;
+                    bestInDeletion = true;
+                }
+            }
+
+            if (bestInDeletion) {
+                align(from1, middle - 1, from2, from2 + bestJ, openBegin, 0);
+                delete(middle - 1, middle + 1);
+                align(middle + 1, to1, from2 + bestJ, to2, 0, openEnd);
+            } else {
+                align(from1, middle, from2, from2 + bestJ, openBegin, gapOpen);
+                align(middle, to1, from2 + bestJ, to2, gapOpen, openEnd);
+            }
+            return bestScore;
+        }
+
+        /**
+         * Aligns whole sequences with linear gap scoring ({@link #gapOpen} must be zero) inside the matrix, while the
+         * leading gap (along the first row or the first column) of length {@code k} scores {@code leadingOpen + k *
+         * leadingExtension}.
+         *
+         * <p>Best scores of paths from cells of the second row and the second column to the end of the matrix are
+         * calculated in a single backward pass, then the best leading gap and the first step after it are selected,
+         * and the rest of the matrix is aligned by {@link #align(int, int, int, int, int, int)}.</p>
+         *
+         * @return score of the alignment
+         */
+        int alignWithLeadingGap(int leadingOpen, int leadingExtension) {
+            assert gapOpen == 0;
+            int length1 = codes1.length, length2 = codes2.length;
+            if (length2 == 0) {
+                if (length1 == 0)
+                    return 0;
+                delete(0, length1);
+                return leadingOpen + length1 * leadingExtension;
+            }
+            if (length1 == 0) {
+                insert(0, 0, length2);
+                return leadingOpen + length2 * leadingExtension;
+            }
+
+            // row[j] = best score from cell (i, j) to the end, column[i] = the same for cell (i, 1)
+            int[] row = new int[length2 + 1], column = new int[length1 + 1];
+            for (int j = 1; j <= length2; ++j)
+                row[j] = (length2 - j) * gapExtension;
+            column[length1] = row[1];
+            int i, j, diagonal, next;
+            for (i = length1 - 1; i >= 1; --i) {
+                int rowOffset = codes1[i] * alphabetSize;
+                diagonal = row[length2];
+                row[length2] += gapExtension;
+                for (j = length2 - 1; j >= 1; --j) {
+                    next = Math.max(diagonal + subsMatrix[rowOffset + codes2[j]],
+                            Math.max(row[j], row[j + 1]) + gapExtension);
+                    diagonal = row[j];
+                    row[j] = next;
+                }
+                column[i] = row[1];
+            }
+
+            // Selecting the leading gap and the first step after it
+            final int DIAGONAL = 0, INSERTION = 1, DELETION = 2;
+            int bestScore = score(0, 0) + column[1], bestLeading1 = 0, bestLeading2 = 0, bestStep = DIAGONAL,
+                    score, leading;
+            for (i = 1; i <= length1; ++i) {
+                leading = leadingOpen + i * leadingExtension;
+                if ((score = leading + gapExtension + column[i]) > bestScore) {
+                    bestScore = score;
+                    bestLeading1 = i;
+                    bestStep = INSERTION;
+                }
+                if (i < length1 && (score = leading + score(i, 0) + column[i + 1]) > bestScore) {
+                    bestScore = score;
+                    bestLeading1 = i;
+                    bestStep = DIAGONAL;
+                }
+            }
+            for (j = 1; j <= length2; ++j) {
+                leading = leadingOpen + j * leadingExtension;
+                if ((score = leading + gapExtension + row[j]) > bestScore) {
+                    bestScore = score;
+                    bestLeading1 = 0;
+                    bestLeading2 = j;
+                    bestStep = DELETION;
+                }
+                if (j < length2 && (score = leading + score(0, j) + row[j + 1]) > bestScore) {
+                    bestScore = score;
+                    bestLeading1 = 0;
+                    bestLeading2 = j;
+                    bestStep = DIAGONAL;
+                }
+            }
+
+            delete(0, bestLeading1);
+            insert(0, 0, bestLeading2);
+            switch (bestStep) {
+                case DIAGONAL:
+                    substitute(bestLeading1, bestLeading2);
+                    align(bestLeading1 + 1, length1, bestLeading2 + 1, length2, 0, 0);
+                    break;
+                case INSERTION:
+                    insert(bestLeading1, 0, 1);
+                    align(bestLeading1, length1, 1, length2, 0, 0);
+                    break;
+                default:
+                    delete(0, 1);
+                    align(1, length1, bestLeading2, length2, 0, 0);
+            }
+            return bestScore;
+        }
+
+        int score(int position1, int position2) {
+            return subsMatrix[codes1[position1] * alphabetSize + codes2[position2]];
+        }
+
+        void substitute(int position1, int position2) {
+            if (codes1[position1] != codes2[position2])
+                mutations.appendSubstitution(position1, codes1[position1], codes2[position2]);
+        }
+
+        /**
+         * Score-only pass over {@code rows} rows of the region, starting from the corner (offset1, offset2) and going
+         * in the specified directions.
+         */
+        void scoreRows(int offset1, int step1, int rows, int offset2, int step2, int columns, int openBegin,
+                       int[] h, int[] d) {
+            h[0] = 0;
+            d[0] = openBegin;
+            for (int j = 1; j <= columns; ++j) {
+                h[j] = gapOpen + j * gapExtension;
+                d[j] = NEG;
+            }
+
+            int i, j, diagonal, insertion, score, rowOffset;
+            for (i = 0; i < rows; ++i) {
+                rowOffset = codes1[offset1 + step1 * i] * alphabetSize;
+                diagonal = h[0];
+                h[0] = d[0] = Math.max(d[0], h[0] + gapOpen) + gapExtension;
+                insertion = NEG;
+                for (j = 1; j <= columns; ++j) {
+                    insertion = Math.max(insertion, h[j - 1] + gapOpen) + gapExtension;
+                    d[j] = Math.max(d[j], h[j] + gapOpen) + gapExtension;
+                    score = Math.max(diagonal + subsMatrix[rowOffset + codes2[offset2 + step2 * (j - 1)]],
+                            Math.max(d[j], insertion));
+                    diagonal = h[j];
+                    h[j] = score;
+                }
+            }
+        }
+
+        /**
+         * Aligns single letter codes1[from1] with codes2[from2, to2)
+         */
+        int alignSingle(int from1, int from2, int to2, int openBegin, int openEnd) {
+            int length2 = to2 - from2;
+            byte code1 = codes1[from1];
+
+            // letter deleted, deletion joins the gap at the beginning or at the end of the region
+            int bestScore = Math.max(openBegin, openEnd) + gapExtension + gapOpen + length2 * gapExtension,
+                    bestJ = -1, score;
+            for (int j = 0; j < length2; ++j) {
+                score = subsMatrix[code1 * alphabetSize + codes2[from2 + j]];
+                if (j > 0)
+                    score += gapOpen + j * gapExtension;
+                if (j < length2 - 1)
+                    score += gapOpen + (length2 - j - 1) * gapExtension;
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestJ = j;
+                }
+            }
+
+            if (bestJ == -1) {
+                if (openBegin >= openEnd) {
+                    delete(from1, from1 + 1);
+                    insert(from1 + 1, from2, to2);
+                } else {
+                    insert(from1, from2, to2);
+                    delete(from1, from1 + 1);
+                }
+            } else {
+                insert(from1, from2, from2 + bestJ);
+                byte code2 = codes2[from2 + bestJ];
+                if (code1 != code2)
+                    mutations.appendSubstitution(from1, code1, code2);
+                insert(from1 + 1, from2 + bestJ + 1, to2);
+            }
+            return bestScore;
+        }
+
+        void delete(int from1, int to1) {
+            for (int i = from1; i < to1; ++i)
+                mutations.appendDeletion(i, codes1[i]);
+        }
+
+        void insert(int position1, int from2, int to2) {
+            for (int j = from2; j < to2; ++j)
+                mutations.appendInsertion(position1, codes2[j]);
+        }
+
+        static byte[] codes(Sequence<?> seq) {
+            byte[] codes = new byte[seq.size()];
+            for (int i = 0; i < codes.length; ++i)
+                codes[i] = seq.codeAt(i);
+            return codes;
+        }
+    }
+}
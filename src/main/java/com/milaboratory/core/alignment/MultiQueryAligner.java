@@ -0,0 +1,250 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.Sequence;
+
+import java.util.List;
+
+/**
+ * Score-only affine gap alignment of many queries against a set of references with lanes packed across sequences.
+ *
+ * Queries are processed in groups of {@link #LANES}: dynamic programming matrices of all queries of a group against
+ * the same reference are filled simultaneously, cell {@code j} of each lane stored side by side. This way the inner
+ * loop works on fixed-width groups of independent cells (simple loop over contiguous int arrays that JIT compiler is
+ * able to vectorize), and substitution scores of each query letter against each alphabet letter are looked up once
+ * per group instead of once per cell.
+ *
+ * Resulting {@link Scores} hold scores for all (query, reference) pairs, full {@link Alignment}s are built only for
+ * pairs selected by the caller. In alignments, reference is the first sequence and query is the second one, scores
+ * are the same as returned by {@link Aligner#alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)} and
+ * {@link Aligner#alignLocalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}.
+ */
+public final class MultiQueryAligner {
+    /**
+     * Number of queries processed simultaneously
+     */
+    public static final int LANES = 8;
+    /**
+     * "Minus infinity", small enough to never win, large enough to never overflow after adding penalties
+     */
+    static final int NEG = Integer.MIN_VALUE / 4;
+
+    private MultiQueryAligner() {
+    }
+
+    /**
+     * Calculates scores of global alignments of all queries against all references
+     *
+     * @param scoring    scoring
+     * @param queries    queries
+     * @param references references
+     * @return scores
+     */
+    public static <S extends Sequence<S>> Scores<S> scoreGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                      List<S> queries, List<S> references) {
+        return score(scoring, queries, references, false);
+    }
+
+    /**
+     * Calculates scores of the best local alignments of all queries against all references (0 for pairs without
+     * local alignment with positive score)
+     *
+     * @param scoring    scoring
+     * @param queries    queries
+     * @param references references
+     * @return scores
+     */
+    public static <S extends Sequence<S>> Scores<S> scoreLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                     List<S> queries, List<S> references) {
+        return score(scoring, queries, references, true);
+    }
+
+    private static <S extends Sequence<S>> Scores<S> score(AffineGapAlignmentScoring<S> scoring,
+                                                          List<S> queries, List<S> references, boolean local) {
+        for (S query : queries)
+            if (query.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+        for (S reference : references)
+            if (reference.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+
+        int[] scores = new int[queries.size() * references.size()];
+        for (int from = 0; from < queries.size(); from += LANES) {
+            Group<S> group = new Group<>(scoring, queries, from, Math.min(from + LANES, queries.size()));
+            for (int r = 0; r < references.size(); ++r)
+                group.align(references.get(r), local, scores, references.size(), r);
+        }
+        return new Scores<>(scoring, queries, references, local, scores);
+    }
+
+    /**
+     * Up to {@link #LANES} queries with precomputed profile and dynamic programming buffers
+     */
+    private static final class Group<S extends Sequence<S>> {
+        final int from, count, maxLength;
+        final int gapOpen, gapExtension;
+        final int[] lengths = new int[LANES];
+        /**
+         * letter code -> substitution scores of the letter against query letters, {@code [j * LANES + lane]}, padding
+         * cells (beyond the query end) hold {@link #NEG}
+         */
+        final int[][] profile;
+        /**
+         * current row of the main matrix and of the matrix of gaps in queries, {@code [j * LANES + lane]}
+         */
+        final int[] h, e;
+        /**
+         * per-lane values carried along the row
+         */
+        final int[] diagonal = new int[LANES], left = new int[LANES], f = new int[LANES], max = new int[LANES];
+
+        Group(AffineGapAlignmentScoring<S> scoring, List<S> queries, int from, int to) {
+            this.from = from;
+            this.count = to - from;
+            this.gapOpen = scoring.getGapOpenPenalty();
+            this.gapExtension = scoring.getGapExtensionPenalty();
+            int maxLength = 0;
+            for (int l = 0; l < count; ++l) {
+                lengths[l] = queries.get(from + l).size();
+                maxLength = Math.max(maxLength, lengths[l]);
+            }
+            this.maxLength = maxLength;
+
+            int alphabetSize = scoring.getAlphabet().size();
+            int[] subsMatrix = scoring.subsMatrixActual;
+            this.profile = new int[alphabetSize][];
+            for (int c = 0; c < alphabetSize; ++c) {
+                int[] scores = new int[(maxLength + 1) * LANES];
+                for (int l = 0; l < LANES; ++l) {
+                    scores[l] = NEG;
+                    S query = l < count ? queries.get(from + l) : null;
+                    for (int j = 1; j <= maxLength; ++j)
+                        scores[j * LANES + l] = query != null && j <= lengths[l]
+                                ? subsMatrix[c * alphabetSize + query.codeAt(j - 1)]
+                                : NEG;
+                }
+                profile[c] = scores;
+            }
+
+            this.h = new int[(maxLength + 1) * LANES];
+            this.e = new int[(maxLength + 1) * LANES];
+        }
+
+        void align(S reference, boolean local, int[] scores, int stride, int column) {
+            final int[] h = this.h, e = this.e,
+                    diagonal = this.diagonal, left = this.left, f = this.f, max = this.max;
+            final int gapOpen = this.gapOpen, gapExtension = this.gapExtension, maxLength = this.maxLength;
+
+            // first row
+            for (int l = 0; l < LANES; ++l) {
+                h[l] = 0;
+                e[l] = NEG;
+                max[l] = 0;
+            }
+            for (int j = 1; j <= maxLength; ++j)
+                for (int l = 0; l < LANES; ++l) {
+                    h[j * LANES + l] = local ? 0 : gapOpen + (j - 1) * gapExtension;
+                    e[j * LANES + l] = NEG;
+                }
+
+            int size = reference.size();
+            for (int i = 1; i <= size; ++i) {
+                final int[] scoresRow = profile[reference.codeAt(i - 1)];
+                final int boundary = local ? 0 : gapOpen + (i - 1) * gapExtension;
+                for (int l = 0; l < LANES; ++l) {
+                    diagonal[l] = h[l];
+                    h[l] = boundary;
+                    left[l] = boundary;
+                    f[l] = NEG;
+                }
+
+                for (int j = 1; j <= maxLength; ++j) {
+                    final int base = j * LANES;
+                    for (int l = 0; l < LANES; ++l) {
+                        int idx = base + l;
+                        int up = h[idx];
+                        int vertical = Math.max(up + gapOpen, e[idx] + gapExtension);
+                        int horizontal = Math.max(left[l] + gapOpen, f[l] + gapExtension);
+                        int score = Math.max(diagonal[l] + scoresRow[idx], Math.max(vertical, horizontal));
+                        if (local) {
+                            score = Math.max(score, 0);
+                            max[l] = Math.max(max[l], score);
+                        }
+                        diagonal[l] = up;
+                        h[idx] = score;
+                        e[idx] = vertical;
+                        f[l] = horizontal;
+                        left[l] = score;
+                    }
+                }
+            }
+
+            for (int l = 0; l < count; ++l)
+                scores[(from + l) * stride + column] = local ? max[l] : h[lengths[l] * LANES + l];
+        }
+    }
+
+    /**
+     * Scores of all (query, reference) pairs
+     */
+    public static final class Scores<S extends Sequence<S>> {
+        final AffineGapAlignmentScoring<S> scoring;
+        final List<S> queries, references;
+        final boolean local;
+        /**
+         * {@code [query * references.size() + reference]}
+         */
+        final int[] scores;
+
+        Scores(AffineGapAlignmentScoring<S> scoring, List<S> queries, List<S> references, boolean local,
+               int[] scores) {
+            this.scoring = scoring;
+            this.queries = queries;
+            this.references = references;
+            this.local = local;
+            this.scores = scores;
+        }
+
+        public int getScore(int query, int reference) {
+            return scores[query * references.size() + reference];
+        }
+
+        /**
+         * Returns index of the reference with the maximal score for the query or -1 if there are no references
+         */
+        public int getBestReference(int query) {
+            int best = -1;
+            for (int r = 0; r < references.size(); ++r)
+                if (best == -1 || getScore(query, r) > getScore(query, best))
+                    best = r;
+            return best;
+        }
+
+        /**
+         * Builds full alignment of the reference (first sequence) with the query (second sequence)
+         *
+         * @return alignment, for local alignments null if there is no local alignment with positive score
+         */
+        public Alignment<S> align(int query, int reference) {
+            if (local)
+                return getScore(query, reference) <= 0
+                        ? null
+                        : Aligner.alignLocalAffine(scoring, references.get(reference), queries.get(query));
+            return Aligner.alignGlobalAffine(scoring, references.get(reference), queries.get(query));
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+
+/**
+ * Score-only affine gap alignment using striped query profile (Farrar, 2007).
+ *
+ * Query ({@code seq1}) is split into {@link #LANES} interleaved stripes, and a profile holding substitution scores of
+ * each query position against each alphabet letter is precomputed in striped order. This way the inner loop of the
+ * dynamic programming works on fixed-width groups of independent cells without virtual calls (simple loops over
+ * contiguous int arrays that JIT compiler is able to vectorize), vertical gaps are propagated between stripes by a
+ * lazy "F-loop". For very short queries, or scoring with gap open penalty smaller than gap extension penalty, scalar
+ * implementation with the same interface is used.
+ *
+ * Methods return the same scores as {@link Aligner#alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}
+ * and {@link Aligner#alignLocalAffine(AffineGapAlignmentScoring, Sequence, Sequence)} without building full dynamic
+ * programming matrices, so they are suitable for ranking of candidates. Local alignment method of this class uses
+ * score-only passes to find the boundaries of the best local alignment and builds traceback only for the aligned
+ * region.
+ */
+public final class StripedAligner {
+    /**
+     * Number of stripes (lanes)
+     */
+    public static final int LANES = 8;
+    /**
+     * Queries shorter than this are processed by scalar implementation
+     */
+    static final int MIN_STRIPED_LENGTH = 2 * LANES;
+    /**
+     * "Minus infinity", small enough to never win, large enough to never overflow after adding penalties
+     */
+    static final int NEG = Integer.MIN_VALUE / 4;
+
+    static final int MODE_GLOBAL = 0, MODE_LOCAL = 1, MODE_ANCHORED = 2;
+
+    private StripedAligner() {
+    }
+
+    /**
+     * Creates reusable striped profile for the query sequence
+     *
+     * @param scoring scoring
+     * @param seq1    query sequence
+     * @return profile
+     */
+    public static <S extends Sequence<S>> Profile<S> createProfile(AffineGapAlignmentScoring<S> scoring, S seq1) {
+        return new Profile<>(scoring, seq1);
+    }
+
+    /**
+     * Returns score of global alignment, same as {@code Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore()}
+     */
+    public static <S extends Sequence<S>> int scoreGlobalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                S seq1, S seq2) {
+        return createProfile(scoring, seq1).scoreGlobal(seq2);
+    }
+
+    /**
+     * Returns score of local alignment, same as score of {@code Aligner.alignLocalAffine(scoring, seq1, seq2)}, or 0
+     * if there is no local alignment with positive score
+     */
+    public static <S extends Sequence<S>> int scoreLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                               S seq1, S seq2) {
+        return createProfile(scoring, seq1).scoreLocal(seq2);
+    }
+
+    /**
+     * Performs local alignment using affine gap scoring system. Score-only passes are used to find positions of the
+     * best local alignment, and traceback matrices are built only for the aligned region.
+     *
+     * @param scoring affine gap scoring system
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return alignment with the same score as returned by {@link Aligner#alignLocalAffine(AffineGapAlignmentScoring,
+     * Sequence, Sequence)} or null if there is no local alignment with positive score
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignLocalAffine(AffineGapAlignmentScoring<S> scoring,
+                                                                        S seq1, S seq2) {
+        return createProfile(scoring, seq1).alignLocal(seq2);
+    }
+
+    /**
+     * Striped query profile and score-only alignment kernels. Immutable and thread-safe.
+     */
+    public static final class Profile<S extends Sequence<S>> {
+        final AffineGapAlignmentScoring<S> scoring;
+        final S seq1;
+        final int length, segLength;
+        final int gapOpen, gapExtension;
+        final boolean striped;
+        /**
+         * letter code -> scores of all query positions against the letter, in striped order for striped profiles
+         */
+        final int[][] profile;
+
+        Profile(AffineGapAlignmentScoring<S> scoring, S seq1) {
+            if (seq1.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+            this.scoring = scoring;
+            this.seq1 = seq1;
+            this.length = seq1.size();
+            this.gapOpen = scoring.getGapOpenPenalty();
+            this.gapExtension = scoring.getGapExtensionPenalty();
+            this.striped = length >= MIN_STRIPED_LENGTH && gapExtension >= gapOpen;
+            this.segLength = striped ? (length + LANES - 1) / LANES : length;
+
+            int alphabetSize = scoring.getAlphabet().size();
+            int[] subsMatrix = scoring.subsMatrixActual;
+            this.profile = new int[alphabetSize][];
+            for (int c = 0; c < alphabetSize; c++) {
+                int[] scores = new int[striped ? segLength * LANES : length];
+                if (striped) {
+                    for (int s = 0; s < segLength; s++)
+                        for (int l = 0; l < LANES; l++) {
+                            int i = l * segLength + s;
+                            scores[s * LANES + l] = i < length
+                                    ? subsMatrix[seq1.codeAt(i) * alphabetSize + c]
+                                    : NEG;
+                        }
+                } else
+                    for (int i = 0; i < length; i++)
+                        scores[i] = subsMatrix[seq1.codeAt(i) * alphabetSize + c];
+                profile[c] = scores;
+            }
+        }
+
+        public S getQuery() {
+            return seq1;
+        }
+
+        /**
+         * Returns score of global alignment of the query with {@code seq2}
+         */
+        public int scoreGlobal(S seq2) {
+            return align(seq2, seq2.size(), MODE_GLOBAL)[0];
+        }
+
+        /**
+         * Returns score of the best local alignment of the query with {@code seq2} or 0 if there is no local
+         * alignment with positive score
+         */
+        public int scoreLocal(S seq2) {
+            return align(seq2, seq2.size(), MODE_LOCAL)[0];
+        }
+
+        /**
+         * Performs local alignment of the query with {@code seq2}, traceback is performed only for the aligned region
+         *
+         * @return alignment or null if there is no local alignment with positive score
+         */
+        public Alignment<S> alignLocal(S seq2) {
+            if (seq2.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+
+            int[] forward = align(seq2, seq2.size(), MODE_LOCAL);
+            if (forward[0] <= 0)
+                return null;
+            int score = forward[0], end1 = forward[1], end2 = forward[2];
+
+            // Searching for the beginning of the alignment ending at (end1, end2)
+            S seq1r = reverse(seq1, end1),
+                    seq2r = reverse(seq2, end2);
+            int[] backward = new Profile<>(scoring, seq1r).align(seq2r, seq2r.size(), MODE_ANCHORED);
+            assert backward[0] == score;
+            int begin1 = end1 - backward[1], begin2 = end2 - backward[2];
+
+            // Traceback only in the aligned region
+            Alignment<S> region = Aligner.alignGlobalAffine(scoring,
+                    seq1.getRange(begin1, end1), seq2.getRange(begin2, end2));
+            assert region.getScore() == score;
+            return new Alignment<>(seq1, region.getAbsoluteMutations().move(begin1),
+                    new Range(begin1, end1), new Range(begin2, end2), score);
+        }
+
+        private static <S extends Sequence<S>> S reverse(S seq, int length) {
+            SequenceBuilder<S> builder = seq.getAlphabet().createBuilder().ensureCapacity(length);
+            for (int i = length - 1; i >= 0; --i)
+                builder.append(seq.codeAt(i));
+            return builder.createAndDestroy();
+        }
+
+        /**
+         * @param seq2    subject sequence
+         * @param length2 number of letters of subject to process
+         * @param mode    one of {@link #MODE_GLOBAL}, {@link #MODE_LOCAL} or {@link #MODE_ANCHORED} (global alignment
+         *                start and free end)
+         * @return {score, end1, end2}; for global mode only score is set
+         */
+        int[] align(S seq2, int length2, int mode) {
+            if (seq2.getAlphabet() != scoring.getAlphabet())
+                throw new IllegalArgumentException("Different alphabets.");
+            if (length == 0 || length2 == 0)
+                return mode == MODE_GLOBAL
+                        ? new int[]{length + length2 == 0 ? 0 : gapOpen + (length + length2 - 1) * gapExtension, 0, 0}
+                        : new int[]{0, 0, 0};
+            return striped
+                    ? alignStriped(seq2, length2, mode)
+                    : alignScalar(seq2, length2, mode);
+        }
+
+        private int boundary(int i) {
+            return i == 0 ? 0 : gapOpen + (i - 1) * gapExtension;
+        }
+
+        private int[] alignStriped(S seq2, int length2, int mode) {
+            final boolean local = mode == MODE_LOCAL;
+            final int segLength = this.segLength, size = segLength * LANES;
+            final int gapOpen = this.gapOpen, gapExtension = this.gapExtension;
+
+            int[] hPrevious = new int[size], hCurrent = new int[size], e = new int[size];
+            int[] vH = new int[LANES], vF = new int[LANES];
+
+            // Column 0
+            for (int s = 0; s < segLength; s++)
+                for (int l = 0; l < LANES; l++) {
+                    int p = s * LANES + l, h = local ? 0 : boundary(l * segLength + s + 1);
+                    hPrevious[p] = h;
+                    e[p] = h + gapOpen;
+                }
+
+            int best = local ? 0 : NEG, bestI = 0, bestJ = 0;
+            for (int j = 1; j <= length2; j++) {
+                int[] prof = profile[seq2.codeAt(j - 1)];
+
+                // Diagonal values for the first segment, shifted by one lane
+                vH[0] = local ? 0 : boundary(j - 1);
+                System.arraycopy(hPrevious, (segLength - 1) * LANES, vH, 1, LANES - 1);
+                vF[0] = (local ? 0 : boundary(j)) + gapOpen;
+                for (int l = 1; l < LANES; l++)
+                    vF[l] = NEG;
+
+                for (int s = 0, p = 0; s < segLength; s++)
+                    for (int l = 0; l < LANES; l++, p++) {
+                        int h = vH[l] + prof[p], ev = e[p], f = vF[l];
+                        h = Math.max(h, Math.max(ev, f));
+                        if (local)
+                            h = Math.max(h, 0);
+                        hCurrent[p] = h;
+                        h += gapOpen;
+                        e[p] = Math.max(ev + gapExtension, h);
+                        vF[l] = Math.max(f + gapExtension, h);
+                        vH[l] = hPrevious[p];
+                    }
+
+                // Lazy F-loop, propagating vertical gaps across stripes
+                lazyF:
+                for (int k = 0; k < LANES; k++) {
+                    System.arraycopy(vF, 0, vF, 1, LANES - 1);
+                    vF[0] = NEG;
+                    for (int s = 0, p = 0; s < segLength; s++) {
+                        boolean changed = false;
+                        for (int l = 0; l < LANES; l++, p++) {
+                            int h = hCurrent[p], f = vF[l];
+                            if (f > h) {
+                                hCurrent[p] = f;
+                                e[p] = Math.max(e[p], f + gapOpen);
+                            }
+                            f += gapExtension;
+                            changed |= f > h + gapOpen;
+                            vF[l] = f;
+                        }
+                        if (!changed)
+                            break lazyF;
+                    }
+                }
+
+                if (mode != MODE_GLOBAL) {
+                    int max = NEG;
+                    for (int p = 0; p < size; p++)
+                        max = Math.max(max, hCurrent[p]);
+                    if (max > best) {
+                        best = max;
+                        bestJ = j;
+                        for (int i = 0; i < length; i++)
+                            if (hCurrent[(i % segLength) * LANES + i / segLength] == max) {
+                                bestI = i + 1;
+                                break;
+                            }
+                    }
+                }
+
+                int[] tmp = hPrevious;
+                hPrevious = hCurrent;
+                hCurrent = tmp;
+            }
+
+            if (mode == MODE_GLOBAL)
+                return new int[]{hPrevious[((length - 1) % segLength) * LANES + (length - 1) / segLength], 0, 0};
+            return new int[]{best, bestI, bestJ};
+        }
+
+        private int[] alignScalar(S seq2, int length2, int mode) {
+            final boolean local = mode == MODE_LOCAL;
+            final int gapOpen = this.gapOpen, gapExtension = this.gapExtension;
+
+            // h[i] - score of cell (i, j - 1) / (i, j); e[i] - horizontal gap score
+            int[] h = new int[length + 1], e = new int[length + 1];
+            for (int i = 0; i <= length; i++) {
+                h[i] = local ? 0 : boundary(i);
+                e[i] = h[i] + gapOpen;
+            }
+
+            int best = local ? 0 : NEG, bestI = 0, bestJ = 0;
+            for (int j = 1; j <= length2; j++) {
+                int[] prof = profile[seq2.codeAt(j - 1)];
+                int diagonal = h[0];
+                h[0] = local ? 0 : boundary(j);
+                int f = NEG;
+                for (int i = 1; i <= length; i++) {
+                    f = Math.max(f + gapExtension, h[i - 1] + gapOpen);
+                    int v = Math.max(diagonal + prof[i - 1], Math.max(e[i], f));
+                    if (local)
+                        v = Math.max(v, 0);
+                    diagonal = h[i];
+                    h[i] = v;
+                    e[i] = Math.max(e[i] + gapExtension, v + gapOpen);
+                    if (mode != MODE_GLOBAL && v > best) {
+                        best = v;
+                        bestI = i;
+                        bestJ = j;
+                    }
+                }
+            }
+
+            if (mode == MODE_GLOBAL)
+                return new int[]{h[length], 0, 0};
+            return new int[]{best, bestI, bestJ};
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Global alignment with affine gaps using the wavefront algorithm (WFA, Marco-Sola et al. 2021).
+ *
+ * <p>Scores of {@link AffineGapAlignmentScoring} are converted to equivalent penalties (match costs 0): doubled score
+ * of any global alignment equals {@code match * (length1 + length2) - penalty}, where mismatch costs {@code 2 *
+ * (match - mismatch)}, each gapped letter costs {@code match - 2 * gapExtension} and each gap costs additional {@code
+ * 2 * (gapExtension - gapOpen)}. Wavefronts of furthest reaching points are then computed for increasing penalty, so
+ * time and memory are proportional to {@code n * s} and {@code s^2} respectively, where {@code s} is the penalty of
+ * the optimal alignment. This makes the algorithm much faster than dynamic programming for similar sequences, and
+ * slower for divergent ones.</p>
+ *
+ * <p>Scoring must have the same match score for all basic letters and the same mismatch score for all pairs of
+ * different basic letters. Pairs of sequences containing wildcards are aligned with {@link
+ * Aligner#alignGlobalAffine(AffineGapAlignmentScoring, Sequence, Sequence)}.</p>
+ *
+ * <p>Adaptive pruning (WFA-Adapt) drops diagonals lagging too far behind the best one, making the algorithm faster on
+ * long sequences at the cost of possibly sub-optimal results.</p>
+ */
+public final class WavefrontAligner {
+    /**
+     * Marks absent furthest reaching point
+     */
+    private static final int NONE = Integer.MIN_VALUE / 2;
+    /**
+     * Traceback states
+     */
+    private static final byte M = 0, INSERTION = 1, DELETION = 2;
+
+    private WavefrontAligner() {
+    }
+
+    /**
+     * Returns optimal global alignment of two sequences.
+     *
+     * @param scoring scoring with uniform match and mismatch scores
+     * @param seq1    first sequence
+     * @param seq2    second sequence
+     * @return global alignment
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobal(AffineGapAlignmentScoring<S> scoring,
+                                                                   S seq1, S seq2) {
+        return alignGlobal(scoring, seq1, seq2, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Returns global alignment of two sequences, using adaptive pruning of wavefronts.
+     *
+     * @param scoring              scoring with uniform match and mismatch scores
+     * @param seq1                 first sequence
+     * @param seq2                 second sequence
+     * @param minWavefrontLength   pruning is applied only to wavefronts with at least this number of diagonals;
+     *                             {@link Integer#MAX_VALUE} turns pruning off
+     * @param maxDistanceThreshold diagonals with remaining distance to the end exceeding the minimal one by more than
+     *                             this value are dropped
+     * @return global alignment (optimal if pruning is turned off)
+     */
+    public static <S extends Sequence<S>> Alignment<S> alignGlobal(AffineGapAlignmentScoring<S> scoring,
+                                                                   S seq1, S seq2,
+                                                                   int minWavefrontLength, int maxDistanceThreshold) {
+        if (seq1.getAlphabet() != seq2.getAlphabet() || seq1.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Different alphabets.");
+
+        int basicSize = scoring.getAlphabet().basicSize();
+        int match = scoring.getScore((byte) 0, (byte) 0), mismatch = scoring.getScore((byte) 0, (byte) 1);
+        for (byte i = 0; i < basicSize; ++i)
+            for (byte j = 0; j < basicSize; ++j)
+                if (scoring.getScore(i, j) != (i == j ? match : mismatch))
+                    throw new IllegalArgumentException("Scoring with uniform match and mismatch scores expected.");
+        if (scoring.getGapOpenPenalty() > scoring.getGapExtensionPenalty() || mismatch >= match)
+            throw new IllegalArgumentException("Unsupported scoring.");
+
+        if (containsWildcards(seq1) || containsWildcards(seq2))
+            return Aligner.alignGlobalAffine(scoring, seq1, seq2);
+
+        Penalties penalties = new Penalties(2 * (match - mismatch),
+                2 * (scoring.getGapExtensionPenalty() - scoring.getGapOpenPenalty()),
+                match - 2 * scoring.getGapExtensionPenalty());
+
+        Wavefronts<S> wavefronts = new Wavefronts<>(seq1, seq2, penalties, minWavefrontLength, maxDistanceThreshold);
+        int penalty = wavefronts.compute();
+
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(scoring.getAlphabet());
+        wavefronts.traceback(penalty, mutations);
+        mutations.reverseRange(0, mutations.size());
+
+        int score = (match * (seq1.size() + seq2.size()) - penalty) / 2;
+        return new Alignment<>(seq1, mutations.createAndDestroy(),
+                new Range(0, seq1.size()), new Range(0, seq2.size()), score);
+    }
+
+    private static boolean containsWildcards(Sequence<?> seq) {
+        int basicSize = seq.getAlphabet().basicSize();
+        for (int i = 0; i < seq.size(); ++i)
+            if (seq.codeAt(i) >= basicSize)
+                return true;
+        return false;
+    }
+
+    private static final class Penalties {
+        final int mismatch, gapOpen, gapExtension;
+
+        Penalties(int mismatch, int gapOpen, int gapExtension) {
+            this.mismatch = mismatch;
+            this.gapOpen = gapOpen;
+            this.gapExtension = gapExtension;
+        }
+    }
+
+    /**
+     * Furthest reaching points for a single penalty value: offsets (positions in the first sequence) indexed by
+     * diagonal {@code k = i - j}, for alignments ending with match/mismatch ({@code m}), insertion ({@code ins}) and
+     * deletion ({@code del})
+     */
+    private static final class Wavefront {
+        /**
+         * Diagonal corresponding to the first element of arrays
+         */
+        final int base;
+        /**
+         * Range of active diagonals (narrowed by pruning)
+         */
+        int lo, hi;
+        final int[] m, ins, del;
+
+        Wavefront(int lo, int hi) {
+            this.base = lo;
+            this.lo = lo;
+            this.hi = hi;
+            this.m = new int[hi - lo + 1];
+            this.ins = new int[hi - lo + 1];
+            this.del = new int[hi - lo + 1];
+        }
+
+        int m(int k) {
+            return k < lo || k > hi ? NONE : m[k - base];
+        }
+
+        int ins(int k) {
+            return k < lo || k > hi ? NONE : ins[k - base];
+        }
+
+        int del(int k) {
+            return k < lo || k > hi ? NONE : del[k - base];
+        }
+    }
+
+    private static final class Wavefronts<S extends Sequence<S>> {
+        final S seq1, seq2;
+        final int size1, size2;
+        final Penalties penalties;
+        final int minWavefrontLength, maxDistanceThreshold;
+        final List<Wavefront> wavefronts = new ArrayList<>();
+
+        Wavefronts(S seq1, S seq2, Penalties penalties, int minWavefrontLength, int maxDistanceThreshold) {
+            this.seq1 = seq1;
+            this.seq2 = seq2;
+            this.size1 = seq1.size();
+            this.size2 = seq2.size();
+            this.penalties = penalties;
+            this.minWavefrontLength = minWavefrontLength;
+            this.maxDistanceThreshold = maxDistanceThreshold;
+        }
+
+        Wavefront get(int penalty) {
+            return penalty < 0 || penalty >= wavefronts.size() ? null : wavefronts.get(penalty);
+        }
+
+        /**
+         * Computes wavefronts until the end of both sequences is reached and returns penalty of the alignment
+         */
+        int compute() {
+            final int endDiagonal = size1 - size2;
+
+            Wavefront first = new Wavefront(0, 0);
+            first.m[0] = extend(0, 0);
+            first.ins[0] = first.del[0] = NONE;
+            wavefronts.add(first);
+
+            for (int penalty = 0; ; ) {
+                Wavefront current = wavefronts.get(penalty);
+                if (current != null && current.m(endDiagonal) >= size1)
+                    return penalty;
+                wavefronts.add(next(++penalty));
+            }
+        }
+
+        Wavefront next(int penalty) {
+            Wavefront mismatch = get(penalty - penalties.mismatch),
+                    open = get(penalty - penalties.gapOpen - penalties.gapExtension),
+                    extension = get(penalty - penalties.gapExtension);
+            if (mismatch == null && open == null && extension == null)
+                return null;
+
+            int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+            for (Wavefront source : new Wavefront[]{mismatch, open, extension})
+                if (source != null) {
+                    lo = Math.min(lo, source.lo - 1);
+                    hi = Math.max(hi, source.hi + 1);
+                }
+            lo = Math.max(lo, -size2);
+            hi = Math.min(hi, size1);
+
+            Wavefront wavefront = new Wavefront(lo, hi);
+            boolean any = false;
+            for (int k = lo; k <= hi; ++k) {
+                int ins = NONE, del = NONE, m = NONE;
+                if (open != null || extension != null) {
+                    // gap in the first sequence: j + 1, diagonal k + 1 -> k
+                    ins = Math.max(open == null ? NONE : open.m(k + 1),
+                            extension == null ? NONE : extension.ins(k + 1));
+                    if (ins < 0 || ins - k > size2)
+                        ins = NONE;
+                    // gap in the second sequence: i + 1, diagonal k - 1 -> k
+                    del = Math.max(open == null ? NONE : open.m(k - 1),
+                            extension == null ? NONE : extension.del(k - 1)) + 1;
+                    if (del > size1 || del - k < 0)
+                        del = NONE;
+                }
+                if (mismatch != null) {
+                    m = mismatch.m(k) + 1;
+                    if (m > size1 || m - k > size2)
+                        m = NONE;
+                }
+                m = Math.max(m, Math.max(ins, del));
+                if (m >= 0 && m - k >= 0) {
+                    m = extend(k, m);
+                    any = true;
+                } else
+                    m = NONE;
+                wavefront.m[k - lo] = m;
+                wavefront.ins[k - lo] = ins;
+                wavefront.del[k - lo] = del;
+            }
+            if (!any)
+                return null;
+            prune(wavefront);
+            return wavefront;
+        }
+
+        /**
+         * Extends exact matches along the diagonal
+         */
+        int extend(int k, int offset) {
+            int i = offset, j = offset - k;
+            while (i < size1 && j < size2 && seq1.codeAt(i) == seq2.codeAt(j)) {
+                ++i;
+                ++j;
+            }
+            return i;
+        }
+
+        /**
+         * Adaptive pruning: drops diagonals at the edges of the wavefront that lag behind the best one
+         */
+        void prune(Wavefront wavefront) {
+            if (wavefront.hi - wavefront.lo + 1 < minWavefrontLength)
+                return;
+            int minDistance = Integer.MAX_VALUE;
+            for (int k = wavefront.lo; k <= wavefront.hi; ++k)
+                minDistance = Math.min(minDistance, distance(wavefront, k));
+            while (wavefront.lo < wavefront.hi
+                    && distance(wavefront, wavefront.lo) - minDistance > maxDistanceThreshold)
+                ++wavefront.lo;
+            while (wavefront.hi > wavefront.lo
+                    && distance(wavefront, wavefront.hi) - minDistance > maxDistanceThreshold)
+                --wavefront.hi;
+        }
+
+        int distance(Wavefront wavefront, int k) {
+            int offset = wavefront.m(k);
+            if (offset == NONE)
+                return Integer.MAX_VALUE;
+            return Math.max(size1 - offset, size2 - (offset - k));
+        }
+
+        /**
+         * Appends mutations of the alignment with the specified penalty to the builder in reverse order
+         */
+        void traceback(int penalty, MutationsBuilder<S> mutations) {
+            int k = size1 - size2, offset = size1;
+            byte state = M;
+            while (true) {
+                Wavefront wavefront = wavefronts.get(penalty);
+                if (state == M) {
+                    if (penalty == 0) {
+                        assert k == 0;
+                        return;
+                    }
+                    Wavefront mismatch = get(penalty - penalties.mismatch);
+                    int fromMismatch = mismatch == null ? NONE : mismatch.m(k) + 1;
+                    if (fromMismatch > size1 || fromMismatch - k > size2)
+                        fromMismatch = NONE;
+                    int ins = wavefront.ins(k), del = wavefront.del(k);
+                    // letters between the source and the offset are matches
+                    if (fromMismatch >= ins && fromMismatch >= del) {
+                        assert fromMismatch >= 0;
+                        offset = fromMismatch - 1;
+                        mutations.appendSubstitution(offset, seq1.codeAt(offset), seq2.codeAt(offset - k));
+                        penalty -= penalties.mismatch;
+                    } else if (ins >= del) {
+                        offset = ins;
+                        state = INSERTION;
+                    } else {
+                        offset = del;
+                        state = DELETION;
+                    }
+                } else if (state == INSERTION) {
+                    mutations.appendInsertion(offset, seq2.codeAt(offset - k - 1));
+                    Wavefront extension = get(penalty - penalties.gapExtension);
+                    ++k;
+                    if (extension != null && extension.ins(k) == offset)
+                        penalty -= penalties.gapExtension;
+                    else {
+                        penalty -= penalties.gapOpen + penalties.gapExtension;
+                        assert get(penalty).m(k) == offset;
+                        state = M;
+                    }
+                } else {
+                    mutations.appendDeletion(offset - 1, seq1.codeAt(offset - 1));
+                    Wavefront extension = get(penalty - penalties.gapExtension);
+                    --k;
+                    --offset;
+                    if (extension != null && extension.del(k) == offset)
+                        penalty -= penalties.gapExtension;
+                    else {
+                        penalty -= penalties.gapOpen + penalties.gapExtension;
+                        assert get(penalty).m(k) == offset;
+                        state = M;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -15,29 +15,59 @@
  */
 package com.milaboratory.core.alignment.batch;
 
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
 import com.milaboratory.core.alignment.Aligner;
 import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentScoring;
+import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
 import com.milaboratory.core.sequence.Sequence;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Simplest implementation of {@link BatchAligner}, which aligns target sequence with all subjects using classical (low
  * performance) alignment algorithms.
  *
+ * <p>If {@link ForkJoinPool} is specified, references are aligned in parallel, references whose score upper bound
+ * (estimated from sequence lengths and scoring) can not reach the result are skipped without alignment, and only top
+ * {@code maxHits} hits are kept. Results are the same as in sequential mode.</p>
+ *
  * @param <S> type of sequence
  * @param <P> type of record payload, used to store additional information along with sequence to simplify it's
  *            subsequent identification in result (e.g. {@link Integer} to just index sequences.
  */
 public class SimpleBatchAligner<S extends Sequence<S>, P> extends AbstractBatchAligner<S, AlignmentHit<S, P>>
         implements BatchAlignerWithBase<S, P, AlignmentHit<S, P>> {
+    /**
+     * Number of references aligned sequentially by a single parallel task
+     */
+    private static final int TASK_SIZE = 16;
     final SimpleBatchAlignerParameters<S> parameters;
     final List<Record<S, P>> references = new ArrayList<>();
+    /**
+     * Pool for parallel mode, null for sequential mode
+     */
+    final ForkJoinPool pool;
 
     public SimpleBatchAligner(SimpleBatchAlignerParameters<S> parameters) {
+        this(parameters, null);
+    }
+
+    /**
+     * Creates aligner working in parallel mode
+     *
+     * @param parameters parameters
+     * @param pool       pool to run alignments in, null for sequential mode
+     */
+    public SimpleBatchAligner(SimpleBatchAlignerParameters<S> parameters, ForkJoinPool pool) {
         this.parameters = parameters;
+        this.pool = pool;
     }
 
     @Override
@@ -55,6 +85,9 @@ public class SimpleBatchAligner<S extends Sequence<S>, P> extends AbstractBatchA
         if (references.isEmpty())
             return new AlignmentResultImpl<>();
 
+        if (pool != null)
+            return alignParallel(sequence);
+
         // Building all alignments
         ArrayList<AlignmentHit<S, P>> alignments = new ArrayList<>(references.size());
         for (Record<S, P> record : references)
@@ -75,6 +108,167 @@ public class SimpleBatchAligner<S extends Sequence<S>, P> extends AbstractBatchA
         return new AlignmentResultImpl<>(alignments);
     }
 
+    private AlignmentResult<AlignmentHit<S, P>> alignParallel(final S sequence) {
+        if (parameters.getMaxHits() <= 0)
+            return new AlignmentResultImpl<>();
+
+        TopHits<S, P> top = new TopHits<>(parameters);
+        pool.invoke(new AlignTask<>(this, sequence, 0, references.size(), top));
+        List<AlignmentHit<S, P>> alignments = top.getSorted();
+        if (alignments.isEmpty())
+            return new AlignmentResultImpl<>();
+
+        float topScore = alignments.get(0).getAlignment().getScore();
+        float scoreThreshold = Math.max(topScore * parameters.getRelativeMinScore(), parameters.getAbsoluteMinScore());
+
+        for (int i = 0; i < alignments.size(); i++)
+            if (alignments.get(i).getAlignment().getScore() < scoreThreshold)
+                return new AlignmentResultImpl<>(new ArrayList<>(alignments.subList(0, i)));
+
+        return new AlignmentResultImpl<>(alignments);
+    }
+
+    /**
+     * Returns upper bound for the score of alignment of sequences with given lengths: all letters of the shorter
+     * sequence are matched with the best possible substitution score, and the length difference is covered by gaps
+     * with the least possible penalty per letter.
+     *
+     * @return upper bound or {@link Float#POSITIVE_INFINITY} if it can't be estimated for the scoring
+     */
+    static float scoreUpperBound(AlignmentScoring<?> scoring, int length1, int length2, boolean global) {
+        int bestSubstitution = Math.max(0, Math.max(scoring.getMaximalMatchScore(), scoring.getMaximalMismatchScore()));
+        float bound = (float) Math.min(length1, length2) * bestSubstitution;
+        if (!global)
+            return bound;
+
+        int gapLetter;
+        if (scoring instanceof LinearGapAlignmentScoring)
+            gapLetter = ((LinearGapAlignmentScoring<?>) scoring).getGapPenalty();
+        else if (scoring instanceof AffineGapAlignmentScoring)
+            gapLetter = Math.max(((AffineGapAlignmentScoring<?>) scoring).getGapOpenPenalty(),
+                    ((AffineGapAlignmentScoring<?>) scoring).getGapExtensionPenalty());
+        else
+            return Float.POSITIVE_INFINITY;
+        if (gapLetter > 0)
+            return Float.POSITIVE_INFINITY;
+
+        return bound + (float) Math.abs(length1 - length2) * gapLetter;
+    }
+
+    private static final class AlignTask<S extends Sequence<S>, P> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final SimpleBatchAligner<S, P> aligner;
+        final S query;
+        final int from, to;
+        final TopHits<S, P> top;
+
+        AlignTask(SimpleBatchAligner<S, P> aligner, S query, int from, int to, TopHits<S, P> top) {
+            this.aligner = aligner;
+            this.query = query;
+            this.from = from;
+            this.to = to;
+            this.top = top;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new AlignTask<>(aligner, query, from, middle, top),
+                        new AlignTask<>(aligner, query, middle, to, top));
+                return;
+            }
+
+            for (int i = from; i < to; ++i) {
+                Record<S, P> record = aligner.references.get(i);
+                if (top.canSkip(scoreUpperBound(aligner.parameters.getScoring(),
+                        record.sequence.size(), query.size(), aligner.parameters.isGlobal())))
+                    continue;
+                AlignmentHit<S, P> hit = aligner.alignSingle(record, query);
+                if (hit.getAlignment() != null)
+                    top.add(hit, i);
+            }
+        }
+    }
+
+    /**
+     * Bounded heap of the best hits shared by parallel tasks. Hits with equal scores are ordered by reference index,
+     * as in sequential mode.
+     */
+    private static final class TopHits<S extends Sequence<S>, P> {
+        final int maxHits;
+        final float relativeMinScore, absoluteMinScore;
+        /**
+         * Head is the worst hit
+         */
+        final PriorityQueue<IndexedHit<S, P>> heap;
+        /**
+         * Score of the best hit and of the worst hit in full heap, used to skip references without locking
+         */
+        volatile float best = Float.NEGATIVE_INFINITY, worst = Float.NEGATIVE_INFINITY;
+
+        TopHits(SimpleBatchAlignerParameters<S> parameters) {
+            this.maxHits = parameters.getMaxHits();
+            this.relativeMinScore = parameters.getRelativeMinScore();
+            this.absoluteMinScore = parameters.getAbsoluteMinScore();
+            this.heap = new PriorityQueue<>(maxHits + 1, Collections.reverseOrder(IndexedHit.<S, P>comparator()));
+        }
+
+        /**
+         * Returns true if alignment with the score not greater than {@code upperBound} will not get into the result
+         */
+        boolean canSkip(float upperBound) {
+            if (upperBound < absoluteMinScore || upperBound < worst)
+                return true;
+            // top score can only grow, so does relative threshold
+            float best = this.best;
+            return relativeMinScore >= 0 && best != Float.NEGATIVE_INFINITY && upperBound < best * relativeMinScore;
+        }
+
+        synchronized void add(AlignmentHit<S, P> hit, int index) {
+            heap.add(new IndexedHit<>(hit, index));
+            if (heap.size() > maxHits)
+                heap.poll();
+            float score = hit.getAlignment().getScore();
+            if (score > best)
+                best = score;
+            if (heap.size() == maxHits)
+                worst = heap.peek().hit.getAlignment().getScore();
+        }
+
+        synchronized List<AlignmentHit<S, P>> getSorted() {
+            List<IndexedHit<S, P>> hits = new ArrayList<>(heap);
+            Collections.sort(hits, IndexedHit.<S, P>comparator());
+            List<AlignmentHit<S, P>> result = new ArrayList<>(hits.size());
+            for (IndexedHit<S, P> hit : hits)
+                result.add(hit.hit);
+            return result;
+        }
+    }
+
+    private static final class IndexedHit<S extends Sequence<S>, P> {
+        final AlignmentHit<S, P> hit;
+        final int index;
+
+        IndexedHit(AlignmentHit<S, P> hit, int index) {
+            this.hit = hit;
+            this.index = index;
+        }
+
+        /**
+         * Best first: by score descending, then by reference index
+         */
+        static <S extends Sequence<S>, P> Comparator<IndexedHit<S, P>> comparator() {
+            return new Comparator<IndexedHit<S, P>>() {
+                @Override
+                public int compare(IndexedHit<S, P> o1, IndexedHit<S, P> o2) {
+                    int c = Float.compare(o2.hit.getAlignment().getScore(), o1.hit.getAlignment().getScore());
+                    return c != 0 ? c : Integer.compare(o1.index, o2.index);
+                }
+            };
+        }
+    }
+
     AlignmentHit<S, P> alignSingle(Record<S, P> record, S query) {
         Alignment<S> alignment = parameters.isGlobal() ?
                 Aligner.alignGlobal(parameters.getScoring(), record.sequence, query) :
@@ -0,0 +1,552 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentWorkspace;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.alignment.BandedAffineAligner;
+import com.milaboratory.core.alignment.BandedSemiLocalResult;
+import com.milaboratory.core.alignment.batch.AbstractBatchAligner;
+import com.milaboratory.core.alignment.batch.AlignmentResult;
+import com.milaboratory.core.alignment.batch.AlignmentResultImpl;
+import com.milaboratory.core.alignment.batch.PipedBatchAlignerWithBase;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.Sequence;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.lang.Integer.MIN_VALUE;
+
+/**
+ * BLAST-like local aligner working inside JVM, drop-in replacement for {@link BlastAligner} that doesn't require NCBI
+ * BLAST binaries.
+ *
+ * <p>Search follows the classic BLAST scheme: words of the query (for amino acid sequences, together with all words
+ * scoring at least {@link #NEIGHBORHOOD_THRESHOLD} against them) are looked up in the index of reference words; word
+ * hits are extended without gaps (after a single hit for nucleotides and after two non-overlapping hits on the same
+ * diagonal for amino acids); high scoring ungapped segments are extended with gaps in both directions using X-drop
+ * banded alignment ({@link BandedAffineAligner}); significance of resulting alignments is estimated with
+ * {@link KarlinAltschulStatistics}.</p>
+ *
+ * <p>Following parameters from {@link BlastAlignerParameters} are used: word size, e-value, number of alignments,
+ * number of threads, and (if scoring is not specified explicitly) matrix, gap open/extend costs, reward and
+ * penalty.</p>
+ *
+ * @param <S> type of sequences
+ * @param <P> type of record payload
+ */
+public class InProcessBlastAligner<S extends Sequence<S>, P> extends AbstractBatchAligner<S, BlastHit<S, P>>
+        implements PipedBatchAlignerWithBase<S, P, BlastHit<S, P>> {
+    public static final int DEFAULT_NUCLEOTIDE_WORD_SIZE = 11;
+    public static final int DEFAULT_AMINO_ACID_WORD_SIZE = 3;
+    public static final double DEFAULT_E_VALUE = 10.0;
+    public static final int DEFAULT_NUM_ALIGNMENTS = 250;
+    /**
+     * Minimal score of a word to be included into the neighborhood of a query word (amino acids only)
+     */
+    public static final int NEIGHBORHOOD_THRESHOLD = 11;
+    /**
+     * Maximal distance between two hits on the same diagonal to trigger ungapped extension (amino acids only)
+     */
+    public static final int TWO_HIT_WINDOW = 40;
+    /**
+     * Maximal number of gaps in one direction of gapped extension
+     */
+    public static final int BAND_WIDTH = 32;
+
+    // X-drop values and thresholds in bits (amino acids / nucleotides), as in NCBI BLAST
+    private static final double AA_UNGAPPED_X_DROP = 7, NT_UNGAPPED_X_DROP = 20;
+    private static final double AA_GAP_TRIGGER = 22, NT_GAP_TRIGGER = 27;
+    private static final double AA_GAPPED_X_DROP = 25, NT_GAPPED_X_DROP = 30;
+
+    /**
+     * Size of the window used to select starting point of gapped extension inside ungapped segment
+     */
+    private static final int CENTER_WINDOW = 11;
+
+    private final AffineGapAlignmentScoring<S> scoring;
+    private final KarlinAltschulStatistics gappedStatistics;
+    private final boolean aminoAcid;
+    private final int wordSize, numAlignments;
+    private final double eValue;
+    // Raw scores
+    private final int ungappedXDrop, gapTrigger, gappedXDrop;
+
+    private final List<S> sequences = new ArrayList<>();
+    private final List<P> payloads = new ArrayList<>();
+
+    // Not initialized -> null
+    private volatile Index index = null;
+
+    /**
+     * Creates aligner with default BLAST scoring for the alphabet and default parameters
+     *
+     * @param alphabet alphabet of sequences
+     */
+    public InProcessBlastAligner(Alphabet<S> alphabet) {
+        this(alphabet, null);
+    }
+
+    /**
+     * Creates aligner with scoring and search parameters taken from BLAST parameters
+     *
+     * @param alphabet   alphabet of sequences
+     * @param parameters BLAST parameters, null for defaults
+     */
+    public InProcessBlastAligner(Alphabet<S> alphabet, BlastAlignerParameters parameters) {
+        this(createScoring(alphabet, parameters), parameters);
+    }
+
+    /**
+     * Creates aligner with the specified scoring
+     *
+     * @param scoring    scoring
+     * @param parameters BLAST parameters (scoring related parameters are ignored), null for defaults
+     * @throws IllegalArgumentException if gapped Karlin-Altschul parameters are not known for the scoring
+     * @see KarlinAltschulStatistics#forScoring(AffineGapAlignmentScoring)
+     */
+    public InProcessBlastAligner(AffineGapAlignmentScoring<S> scoring, BlastAlignerParameters parameters) {
+        this(scoring, KarlinAltschulStatistics.forScoring(scoring), parameters);
+    }
+
+    /**
+     * Creates aligner with the specified scoring and statistics of gapped alignments with this scoring
+     *
+     * @param scoring          scoring
+     * @param gappedStatistics Karlin-Altschul parameters of gapped alignments
+     * @param parameters       BLAST parameters (scoring related parameters are ignored), null for defaults
+     */
+    public InProcessBlastAligner(AffineGapAlignmentScoring<S> scoring, KarlinAltschulStatistics gappedStatistics,
+                                 BlastAlignerParameters parameters) {
+        if (parameters != null)
+            parameters.chechAlphabet(scoring.getAlphabet());
+        this.scoring = scoring;
+        this.aminoAcid = scoring.getAlphabet() == AminoAcidSequence.ALPHABET;
+        this.gappedStatistics = gappedStatistics;
+        KarlinAltschulStatistics ungappedStatistics = KarlinAltschulStatistics.ungapped(scoring);
+
+        int wordSize = parameters == null ? MIN_VALUE : parameters.getWordSize();
+        this.wordSize = wordSize != MIN_VALUE
+                ? wordSize
+                : aminoAcid ? DEFAULT_AMINO_ACID_WORD_SIZE : DEFAULT_NUCLEOTIDE_WORD_SIZE;
+        if (this.wordSize <= 0 || this.wordSize * Math.log(scoring.getAlphabet().basicSize()) >= 62 * Math.log(2))
+            throw new IllegalArgumentException("Unsupported word size: " + this.wordSize);
+
+        double eValue = parameters == null ? Double.NaN : parameters.getEValue();
+        this.eValue = Double.isNaN(eValue) ? DEFAULT_E_VALUE : eValue;
+        int numAlignments = parameters == null ? MIN_VALUE : parameters.getNumAlignments();
+        this.numAlignments = numAlignments == MIN_VALUE ? DEFAULT_NUM_ALIGNMENTS : numAlignments;
+        int numThreads = parameters == null ? MIN_VALUE : parameters.getNumThreads();
+        this.threads = numThreads == MIN_VALUE ? 1 : numThreads;
+
+        this.ungappedXDrop = ungappedStatistics.rawScoreDifference(aminoAcid ? AA_UNGAPPED_X_DROP : NT_UNGAPPED_X_DROP);
+        this.gapTrigger = ungappedStatistics.rawScoreDifference(aminoAcid ? AA_GAP_TRIGGER : NT_GAP_TRIGGER);
+        this.gappedXDrop = gappedStatistics.rawScoreDifference(aminoAcid ? AA_GAPPED_X_DROP : NT_GAPPED_X_DROP);
+    }
+
+    /**
+     * Creates scoring from BLAST parameters, using blastn / blastp defaults for parameters that are not set
+     *
+     * @param alphabet   alphabet
+     * @param parameters BLAST parameters, null for defaults
+     * @return scoring
+     */
+    @SuppressWarnings("unchecked")
+    public static <S extends Sequence<S>> AffineGapAlignmentScoring<S> createScoring(Alphabet<S> alphabet,
+                                                                                     BlastAlignerParameters parameters) {
+        int gapOpen = parameters == null ? MIN_VALUE : parameters.getGapOpen(),
+                gapExtend = parameters == null ? MIN_VALUE : parameters.getGapExtend();
+        if (alphabet == AminoAcidSequence.ALPHABET) {
+            String matrixName = parameters == null ? null : parameters.getMatrix();
+            BLASTMatrix matrix = matrixName == null
+                    ? BLASTMatrix.BLOSUM62
+                    : BLASTMatrix.valueOf(matrixName.toUpperCase());
+            // Defaults of blastp for the matrix
+            if (gapOpen == MIN_VALUE)
+                gapOpen = matrix == BLASTMatrix.BLOSUM45 ? 15 : matrix == BLASTMatrix.BLOSUM50 ? 13
+                        : matrix == BLASTMatrix.PAM250 ? 14 : matrix == BLASTMatrix.PAM30 ? 9
+                        : matrix == BLASTMatrix.BLOSUM62 ? 11 : 10;
+            if (gapExtend == MIN_VALUE)
+                gapExtend = matrix == BLASTMatrix.BLOSUM45 || matrix == BLASTMatrix.BLOSUM50
+                        || matrix == BLASTMatrix.PAM250 ? 2 : 1;
+            return (AffineGapAlignmentScoring<S>) AffineGapAlignmentScoring.getAminoAcidBLASTScoring(
+                    matrix, -gapOpen - gapExtend, -gapExtend);
+        }
+        int reward = parameters == null ? MIN_VALUE : parameters.getReward(),
+                penalty = parameters == null ? MIN_VALUE : parameters.getPenalty();
+        if (gapOpen == MIN_VALUE)
+            gapOpen = 5;
+        if (gapExtend == MIN_VALUE)
+            gapExtend = 2;
+        return new AffineGapAlignmentScoring<>(alphabet,
+                reward == MIN_VALUE ? 2 : reward, penalty == MIN_VALUE ? -3 : penalty,
+                -gapOpen - gapExtend, -gapExtend);
+    }
+
+    public AffineGapAlignmentScoring<S> getScoring() {
+        return scoring;
+    }
+
+    /**
+     * Sets number of threads used in piped processing (0 - number of available processors)
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    @Override
+    public synchronized void addReference(S sequence, P payload) {
+        if (index != null)
+            throw new IllegalStateException("Aligner is already in use, can't add sequence to database.");
+        if (sequence.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Wrong alphabet.");
+        sequences.add(sequence);
+        payloads.add(payload);
+    }
+
+    private Index ensureInit() {
+        Index index = this.index;
+        if (index == null)
+            synchronized (this) {
+                index = this.index;
+                if (index == null)
+                    this.index = index = new Index(sequences, wordSize);
+            }
+        return index;
+    }
+
+    @Override
+    public AlignmentResult<BlastHit<S, P>> align(S sequence) {
+        return align(sequence, 0, sequence.size());
+    }
+
+    @Override
+    public AlignmentResult<BlastHit<S, P>> align(S query, int from, int to) {
+        if (query.getAlphabet() != scoring.getAlphabet())
+            throw new IllegalArgumentException("Wrong alphabet.");
+        Index index = ensureInit();
+
+        // Seeding and ungapped extension
+        List<Segment> segments = new ArrayList<>();
+        TLongIntHashMap lastHit = new TLongIntHashMap(), extendedTo = new TLongIntHashMap();
+        int basicSize = scoring.getAlphabet().basicSize();
+        long high = 1;
+        for (int i = 1; i < wordSize; ++i)
+            high *= basicSize;
+        long word = 0;
+        int valid = 0;
+        for (int j = from; j < to; ++j) {
+            byte code = query.codeAt(j);
+            if (code >= basicSize) {
+                valid = 0;
+                word = 0;
+                continue;
+            }
+            word = (word % high) * basicSize + code;
+            if (++valid < wordSize)
+                continue;
+
+            int start2 = j - wordSize + 1;
+            if (aminoAcid) {
+                for (long neighbor : neighborhood(query, start2, word))
+                    processWordHit(index, neighbor, query, start2, from, to, lastHit, extendedTo, segments);
+            } else
+                processWordHit(index, word, query, start2, from, to, lastHit, extendedTo, segments);
+        }
+
+        // Gapped extension, starting from the best ungapped segments
+        Collections.sort(segments);
+        List<Alignment<S>> alignments = new ArrayList<>();
+        List<Integer> alignmentReferences = new ArrayList<>();
+        BandedAffineAligner.MatrixCache cache = AlignmentWorkspace.forCurrentThread().getAffineCache();
+        MutationsBuilder<S> mutations = new MutationsBuilder<>(scoring.getAlphabet());
+        out:
+        for (Segment segment : segments) {
+            S reference = sequences.get(segment.reference);
+            int center = segment.center(scoring, reference, query),
+                    center1 = segment.start1 + center, center2 = segment.start2 + center;
+            for (int i = 0; i < alignments.size(); ++i)
+                if (alignmentReferences.get(i) == segment.reference
+                        && alignments.get(i).getSequence1Range().contains(center1)
+                        && alignments.get(i).getSequence2Range().contains(center2))
+                    continue out;
+
+            BandedSemiLocalResult left = BandedAffineAligner.semiLocalLeft0(scoring, reference, query,
+                    0, center1, from, center2 - from, BAND_WIDTH, gappedXDrop, mutations, cache);
+            BandedSemiLocalResult right = BandedAffineAligner.semiLocalRight0(scoring, reference, query,
+                    center1, reference.size() - center1, center2, to - center2, BAND_WIDTH, gappedXDrop,
+                    mutations, cache);
+            int score = left.score + right.score;
+            if (score <= 0) {
+                mutations.clear();
+                continue;
+            }
+            alignments.add(new Alignment<>(reference, mutations.createAndClear(),
+                    new Range(left.sequence1Stop, right.sequence1Stop + 1),
+                    new Range(left.sequence2Stop, right.sequence2Stop + 1),
+                    score));
+            alignmentReferences.add(segment.reference);
+        }
+
+        // Statistics
+        List<BlastHit<S, P>> hits = new ArrayList<>();
+        for (int i = 0; i < alignments.size(); ++i) {
+            Alignment<S> alignment = alignments.get(i);
+            double score = alignment.getScore(),
+                    e = gappedStatistics.eValue(score, to - from, index.totalLength);
+            if (e > eValue)
+                continue;
+            int reference = alignmentReferences.get(i);
+            String id = BlastDBBuilder.getIdKey(reference);
+            hits.add(new BlastHit<>(alignment, payloads.get(reference), score, gappedStatistics.bitScore(score), e,
+                    alignment.getSequence1Range(), id, id));
+        }
+        Collections.sort(hits, HIT_COMPARATOR);
+        if (hits.size() > numAlignments)
+            hits.subList(numAlignments, hits.size()).clear();
+        return new AlignmentResultImpl<>(hits);
+    }
+
+    private void processWordHit(Index index, long word, S query, int start2, int from, int to,
+                                TLongIntHashMap lastHit, TLongIntHashMap extendedTo, List<Segment> segments) {
+        int slot = index.slot(word);
+        if (slot < 0)
+            return;
+        for (int k = index.offsets[slot]; k < index.offsets[slot + 1]; ++k) {
+            int reference = index.references[k], start1 = index.positions[k];
+            long diagonal = ((long) reference << 32) | ((start1 - start2) & 0xFFFFFFFFL);
+
+            // Already covered by ungapped extension
+            if (extendedTo.containsKey(diagonal) && start2 < extendedTo.get(diagonal))
+                continue;
+
+            if (aminoAcid) {
+                // Two-hit method
+                if (!lastHit.containsKey(diagonal)) {
+                    lastHit.put(diagonal, start2);
+                    continue;
+                }
+                int distance = start2 - lastHit.get(diagonal);
+                if (distance < wordSize)
+                    continue;
+                if (distance >= TWO_HIT_WINDOW) {
+                    lastHit.put(diagonal, start2);
+                    continue;
+                }
+            }
+
+            Segment segment = extendUngapped(reference, sequences.get(reference), start1, query, start2, from, to);
+            extendedTo.put(diagonal, segment.start2 + segment.length);
+            if (segment.score >= gapTrigger)
+                segments.add(segment);
+        }
+    }
+
+    /**
+     * X-drop ungapped extension of a word hit in both directions
+     */
+    private Segment extendUngapped(int referenceId, S reference, int start1, S query, int start2, int from, int to) {
+        int score = 0;
+        for (int i = 0; i < wordSize; ++i)
+            score += scoring.getScore(reference.codeAt(start1 + i), query.codeAt(start2 + i));
+
+        int best = score, right = wordSize;
+        for (int i = wordSize, current = score; start1 + i < reference.size() && start2 + i < to; ++i) {
+            current += scoring.getScore(reference.codeAt(start1 + i), query.codeAt(start2 + i));
+            if (current > best) {
+                best = current;
+                right = i + 1;
+            } else if (best - current > ungappedXDrop)
+                break;
+        }
+
+        int left = 0;
+        for (int i = 1, current = best; start1 - i >= 0 && start2 - i >= from; ++i) {
+            current += scoring.getScore(reference.codeAt(start1 - i), query.codeAt(start2 - i));
+            if (current > best) {
+                best = current;
+                left = i;
+            } else if (best - current > ungappedXDrop)
+                break;
+        }
+
+        return new Segment(referenceId, start1 - left, start2 - left, left + right, best);
+    }
+
+    /**
+     * Returns words scoring at least {@link #NEIGHBORHOOD_THRESHOLD} against the query word (and the query word
+     * itself)
+     */
+    private List<Long> neighborhood(S query, int start2, long word) {
+        int basicSize = scoring.getAlphabet().basicSize();
+        // maximal score that can be gained at positions i..wordSize-1
+        int[] maxSuffix = new int[wordSize + 1];
+        for (int i = wordSize - 1; i >= 0; --i) {
+            int max = MIN_VALUE;
+            for (byte c = 0; c < basicSize; ++c)
+                max = Math.max(max, scoring.getScore(query.codeAt(start2 + i), c));
+            maxSuffix[i] = maxSuffix[i + 1] + max;
+        }
+        List<Long> result = new ArrayList<>();
+        result.add(word);
+        collectNeighbors(query, start2, 0, 0, 0L, maxSuffix, basicSize, word, result);
+        return result;
+    }
+
+    private void collectNeighbors(S query, int start2, int position, int score, long prefix, int[] maxSuffix,
+                                  int basicSize, long word, List<Long> result) {
+        if (position == wordSize) {
+            if (prefix != word)
+                result.add(prefix);
+            return;
+        }
+        for (byte c = 0; c < basicSize; ++c) {
+            int s = score + scoring.getScore(query.codeAt(start2 + position), c);
+            if (s + maxSuffix[position + 1] >= NEIGHBORHOOD_THRESHOLD)
+                collectNeighbors(query, start2, position + 1, s, prefix * basicSize + c, maxSuffix, basicSize,
+                        word, result);
+        }
+    }
+
+    private static final Comparator<BlastHit<?, ?>> HIT_COMPARATOR = new Comparator<BlastHit<?, ?>>() {
+        @Override
+        public int compare(BlastHit<?, ?> o1, BlastHit<?, ?> o2) {
+            int c = Double.compare(o1.getEValue(), o2.getEValue());
+            return c != 0 ? c : Double.compare(o2.getScore(), o1.getScore());
+        }
+    };
+
+    /**
+     * High scoring segment pair found by ungapped extension
+     */
+    private static final class Segment implements Comparable<Segment> {
+        final int reference, start1, start2, length, score;
+
+        Segment(int reference, int start1, int start2, int length, int score) {
+            this.reference = reference;
+            this.start1 = start1;
+            this.start2 = start2;
+            this.length = length;
+            this.score = score;
+        }
+
+        /**
+         * Returns offset of the center of the best scoring window inside the segment
+         */
+        <S extends Sequence<S>> int center(AffineGapAlignmentScoring<S> scoring, S reference, S query) {
+            int window = Math.min(CENTER_WINDOW, length), current = 0;
+            for (int i = 0; i < window; ++i)
+                current += scoring.getScore(reference.codeAt(start1 + i), query.codeAt(start2 + i));
+            int best = current, bestStart = 0;
+            for (int i = window; i < length; ++i) {
+                current += scoring.getScore(reference.codeAt(start1 + i), query.codeAt(start2 + i))
+                        - scoring.getScore(reference.codeAt(start1 + i - window), query.codeAt(start2 + i - window));
+                if (current > best) {
+                    best = current;
+                    bestStart = i - window + 1;
+                }
+            }
+            return bestStart + window / 2;
+        }
+
+        @Override
+        public int compareTo(Segment o) {
+            return Integer.compare(o.score, score);
+        }
+    }
+
+    /**
+     * Index of reference words: word -> list of (reference, position) pairs stored in compressed sparse row layout
+     */
+    private static final class Index {
+        final TLongIntHashMap slots = new TLongIntHashMap();
+        final int[] offsets, references, positions;
+        final long totalLength;
+
+        <S extends Sequence<S>> Index(List<S> sequences, int wordSize) {
+            int basicSize = sequences.isEmpty() ? 1 : sequences.get(0).getAlphabet().basicSize();
+            long high = 1;
+            for (int i = 1; i < wordSize; ++i)
+                high *= basicSize;
+
+            long totalLength = 0;
+            TLongIntHashMap counts = new TLongIntHashMap();
+            int total = 0;
+            for (S sequence : sequences) {
+                totalLength += sequence.size();
+                long word = 0;
+                for (int i = 0, valid = 0; i < sequence.size(); ++i) {
+                    byte code = sequence.codeAt(i);
+                    if (code >= basicSize) {
+                        valid = 0;
+                        word = 0;
+                        continue;
+                    }
+                    word = (word % high) * basicSize + code;
+                    if (++valid >= wordSize) {
+                        counts.adjustOrPutValue(word, 1, 1);
+                        ++total;
+                    }
+                }
+            }
+            this.totalLength = totalLength;
+
+            this.offsets = new int[counts.size() + 1];
+            int slot = 0;
+            for (long word : counts.keys()) {
+                slots.put(word, slot);
+                offsets[slot + 1] = offsets[slot] + counts.get(word);
+                ++slot;
+            }
+
+            this.references = new int[total];
+            this.positions = new int[total];
+            int[] cursors = new int[counts.size()];
+            System.arraycopy(offsets, 0, cursors, 0, cursors.length);
+            for (int r = 0; r < sequences.size(); ++r) {
+                S sequence = sequences.get(r);
+                long word = 0;
+                for (int i = 0, valid = 0; i < sequence.size(); ++i) {
+                    byte code = sequence.codeAt(i);
+                    if (code >= basicSize) {
+                        valid = 0;
+                        word = 0;
+                        continue;
+                    }
+                    word = (word % high) * basicSize + code;
+                    if (++valid >= wordSize) {
+                        int k = cursors[slots.get(word)]++;
+                        references[k] = r;
+                        positions[k] = i - wordSize + 1;
+                    }
+                }
+            }
+        }
+
+        int slot(long word) {
+            return slots.containsKey(word) ? slots.get(word) : -1;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.AlignmentScoring;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Karlin–Altschul statistics of local alignment scores: {@code E = K m n exp(-lambda S)}.
+ *
+ * <p>Parameters of ungapped alignment are calculated from the substitution matrix and background letter frequencies.
+ * For gapped alignment there is no analytical solution, so parameters estimated by NCBI for standard scoring systems
+ * (BLAST substitution matrices and blastn reward / penalty pairs with supported gap costs) are used. Gapped statistics
+ * for other scoring systems must be specified explicitly.</p>
+ */
+public final class KarlinAltschulStatistics implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Robinson & Robinson (1991) amino acid frequencies, in the order of {@link #AMINO_ACIDS}
+     */
+    private static final String AMINO_ACIDS = "ARNDCQEGHILKMFPSTWYV";
+    private static final double[] AMINO_ACID_FREQUENCIES = {
+            0.07805, 0.05129, 0.04487, 0.05364, 0.01925, 0.04264, 0.06295, 0.07377, 0.02199, 0.05142,
+            0.09019, 0.05744, 0.02243, 0.03856, 0.05203, 0.07120, 0.05841, 0.01330, 0.03216, 0.06441};
+
+    /*
+     * Gapped parameters estimated by NCBI (blast_stat.c). Each row is: gap existence, gap extension (in NCBI
+     * convention, gap of length k costs existence + k * extension), lambda, K, H.
+     */
+
+    private static final Map<BLASTMatrix, double[][]> AMINO_ACID_GAPPED = new EnumMap<>(BLASTMatrix.class);
+
+    static {
+        AMINO_ACID_GAPPED.put(BLASTMatrix.BLOSUM45, new double[][]{
+                {13, 3, 0.207, 0.049, 0.14}, {12, 3, 0.199, 0.039, 0.11}, {11, 3, 0.190, 0.031, 0.095},
+                {10, 3, 0.179, 0.023, 0.075}, {16, 2, 0.210, 0.051, 0.14}, {15, 2, 0.203, 0.041, 0.12},
+                {14, 2, 0.195, 0.032, 0.10}, {13, 2, 0.185, 0.024, 0.084}, {12, 2, 0.171, 0.016, 0.061},
+                {19, 1, 0.205, 0.040, 0.11}, {18, 1, 0.198, 0.032, 0.10}, {17, 1, 0.189, 0.024, 0.079},
+                {16, 1, 0.176, 0.016, 0.063}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.BLOSUM50, new double[][]{
+                {13, 3, 0.212, 0.063, 0.19}, {12, 3, 0.206, 0.055, 0.17}, {11, 3, 0.197, 0.042, 0.14},
+                {10, 3, 0.186, 0.031, 0.11}, {9, 3, 0.172, 0.022, 0.082}, {16, 2, 0.215, 0.066, 0.20},
+                {15, 2, 0.210, 0.058, 0.17}, {14, 2, 0.202, 0.045, 0.14}, {13, 2, 0.193, 0.035, 0.12},
+                {12, 2, 0.181, 0.025, 0.095}, {19, 1, 0.212, 0.057, 0.18}, {18, 1, 0.207, 0.050, 0.15},
+                {17, 1, 0.198, 0.037, 0.12}, {16, 1, 0.186, 0.025, 0.10}, {15, 1, 0.171, 0.015, 0.063}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.BLOSUM62, new double[][]{
+                {11, 2, 0.297, 0.082, 0.27}, {10, 2, 0.291, 0.075, 0.23}, {9, 2, 0.279, 0.058, 0.19},
+                {8, 2, 0.264, 0.045, 0.15}, {7, 2, 0.239, 0.027, 0.10}, {6, 2, 0.201, 0.012, 0.061},
+                {13, 1, 0.292, 0.071, 0.23}, {12, 1, 0.283, 0.059, 0.19}, {11, 1, 0.267, 0.041, 0.14},
+                {10, 1, 0.243, 0.024, 0.10}, {9, 1, 0.206, 0.010, 0.052}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.BLOSUM80, new double[][]{
+                {25, 2, 0.342, 0.17, 0.66}, {13, 2, 0.336, 0.15, 0.57}, {9, 2, 0.319, 0.11, 0.42},
+                {8, 2, 0.308, 0.090, 0.35}, {7, 2, 0.293, 0.070, 0.27}, {6, 2, 0.268, 0.045, 0.19},
+                {11, 1, 0.314, 0.095, 0.35}, {10, 1, 0.299, 0.071, 0.27}, {9, 1, 0.279, 0.048, 0.20}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.BLOSUM90, new double[][]{
+                {9, 2, 0.310, 0.12, 0.46}, {8, 2, 0.300, 0.099, 0.39}, {7, 2, 0.283, 0.072, 0.30},
+                {6, 2, 0.259, 0.048, 0.22}, {11, 1, 0.302, 0.093, 0.39}, {10, 1, 0.290, 0.075, 0.28},
+                {9, 1, 0.265, 0.044, 0.20}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.PAM30, new double[][]{
+                {7, 2, 0.305, 0.15, 0.87}, {6, 2, 0.287, 0.11, 0.68}, {5, 2, 0.264, 0.079, 0.45},
+                {10, 1, 0.309, 0.15, 0.88}, {9, 1, 0.294, 0.11, 0.61}, {8, 1, 0.270, 0.072, 0.40}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.PAM70, new double[][]{
+                {8, 2, 0.301, 0.12, 0.54}, {7, 2, 0.286, 0.093, 0.43}, {6, 2, 0.264, 0.064, 0.29},
+                {11, 1, 0.305, 0.12, 0.52}, {10, 1, 0.291, 0.091, 0.41}, {9, 1, 0.270, 0.060, 0.28}});
+        AMINO_ACID_GAPPED.put(BLASTMatrix.PAM250, new double[][]{
+                {15, 3, 0.205, 0.049, 0.13}, {14, 3, 0.200, 0.043, 0.12}, {13, 3, 0.194, 0.036, 0.10},
+                {12, 3, 0.186, 0.029, 0.085}, {11, 3, 0.174, 0.020, 0.070}, {17, 2, 0.204, 0.047, 0.12},
+                {16, 2, 0.198, 0.038, 0.11}, {15, 2, 0.191, 0.031, 0.087}, {14, 2, 0.182, 0.024, 0.073},
+                {13, 2, 0.171, 0.017, 0.059}, {21, 1, 0.205, 0.045, 0.11}, {20, 1, 0.199, 0.038, 0.10},
+                {19, 1, 0.192, 0.031, 0.088}, {18, 1, 0.183, 0.024, 0.072}, {17, 1, 0.171, 0.017, 0.058}});
+    }
+
+    /**
+     * Reward / penalty pairs, in the order of {@link #NUCLEOTIDE_GAPPED}
+     */
+    private static final int[][] NUCLEOTIDE_SCORES = {{1, -2}, {1, -3}, {1, -4}, {2, -3}};
+    /**
+     * For nucleotides gap costs not less than those in the first row give (almost) ungapped parameters
+     */
+    private static final double[][][] NUCLEOTIDE_GAPPED = {
+            {{2, 2, 1.33, 0.62, 1.1}, {1, 2, 1.30, 0.52, 0.93}, {0, 2, 1.19, 0.34, 0.66}, {3, 1, 1.32, 0.57, 1.0},
+                    {2, 1, 1.29, 0.49, 0.92}, {1, 1, 1.14, 0.26, 0.52}},
+            {{2, 2, 1.37, 0.70, 1.2}, {1, 2, 1.35, 0.64, 1.1}, {0, 2, 1.25, 0.42, 0.83}, {2, 1, 1.34, 0.60, 1.1},
+                    {1, 1, 1.21, 0.34, 0.71}},
+            {{1, 2, 1.36, 0.67, 1.2}, {0, 2, 1.26, 0.43, 0.90}, {2, 1, 1.35, 0.61, 1.1}, {1, 1, 1.22, 0.35, 0.72}},
+            {{4, 4, 0.63, 0.42, 0.84}, {2, 4, 0.615, 0.37, 0.72}, {0, 4, 0.55, 0.21, 0.46}, {3, 3, 0.615, 0.37, 0.68},
+                    {6, 2, 0.63, 0.42, 0.84}, {5, 2, 0.625, 0.41, 0.78}, {4, 2, 0.61, 0.35, 0.68},
+                    {2, 2, 0.515, 0.14, 0.33}}};
+
+    /**
+     * Maximal number of terms of the series used to calculate K
+     */
+    private static final int MAX_ITERATIONS = 200;
+
+    private final double lambda, k, h;
+
+    public KarlinAltschulStatistics(double lambda, double k, double h) {
+        this.lambda = lambda;
+        this.k = k;
+        this.h = h;
+    }
+
+    public double getLambda() {
+        return lambda;
+    }
+
+    public double getK() {
+        return k;
+    }
+
+    /**
+     * Relative entropy (nats per aligned pair), {@link Double#NaN} if unknown
+     */
+    public double getH() {
+        return h;
+    }
+
+    /**
+     * Normalized score in bits
+     */
+    public double bitScore(double score) {
+        return (lambda * score - Math.log(k)) / Math.log(2);
+    }
+
+    /**
+     * Expected number of alignments with the same or higher score found by chance in search space {@code m * n}
+     *
+     * @param score raw score
+     * @param m     query length
+     * @param n     total length of database
+     */
+    public double eValue(double score, double m, double n) {
+        return k * m * n * Math.exp(-lambda * score);
+    }
+
+    /**
+     * Converts score difference in bits to raw score difference
+     */
+    public int rawScoreDifference(double bits) {
+        return (int) Math.ceil(bits * Math.log(2) / lambda);
+    }
+
+    /**
+     * Returns parameters for gapped alignment with the scoring, estimated by NCBI for BLAST substitution matrices and
+     * blastn reward / penalty pairs (1/-2, 1/-3, 1/-4, 2/-3 and their multiples)
+     *
+     * @param scoring scoring
+     * @return gapped parameters
+     * @throws IllegalArgumentException if gapped parameters are not known for the scoring
+     */
+    public static KarlinAltschulStatistics forScoring(AffineGapAlignmentScoring<?> scoring) {
+        // NCBI convention
+        int existence = scoring.getGapExtensionPenalty() - scoring.getGapOpenPenalty(),
+                extension = -scoring.getGapExtensionPenalty();
+
+        if (scoring.getAlphabet() == AminoAcidSequence.ALPHABET) {
+            for (Map.Entry<BLASTMatrix, double[][]> entry : AMINO_ACID_GAPPED.entrySet())
+                if (scoring.equals(AffineGapAlignmentScoring.getAminoAcidBLASTScoring(entry.getKey(),
+                        scoring.getGapOpenPenalty(), scoring.getGapExtensionPenalty()))) {
+                    KarlinAltschulStatistics statistics = find(entry.getValue(), existence, extension, 1);
+                    if (statistics == null)
+                        throw new IllegalArgumentException("Gap existence and extension values " + existence +
+                                " and " + extension + " are not supported for " + entry.getKey() + ".");
+                    return statistics;
+                }
+            throw new IllegalArgumentException("Gapped parameters are not known for the substitution matrix.");
+        }
+
+        int size = scoring.getAlphabet().basicSize();
+        int reward = scoring.getScore((byte) 0, (byte) 0), penalty = scoring.getScore((byte) 0, (byte) 1);
+        for (byte i = 0; i < size; ++i)
+            for (byte j = 0; j < size; ++j)
+                if (scoring.getScore(i, j) != (i == j ? reward : penalty))
+                    throw new IllegalArgumentException("Gapped parameters are known only for uniform " +
+                            "reward / penalty scoring.");
+
+        int divisor = reward > 0 && penalty < 0 ? gcd(reward, -penalty) : 1;
+        for (int i = 0; i < NUCLEOTIDE_SCORES.length; ++i) {
+            if (NUCLEOTIDE_SCORES[i][0] * divisor != reward || NUCLEOTIDE_SCORES[i][1] * divisor != penalty
+                    || existence % divisor != 0 || extension % divisor != 0)
+                continue;
+            double[][] table = NUCLEOTIDE_GAPPED[i];
+            KarlinAltschulStatistics statistics = find(table, existence / divisor, extension / divisor, divisor);
+            if (statistics != null)
+                return statistics;
+            if (existence / divisor >= table[0][0] && extension / divisor >= table[0][1])
+                return ungapped(scoring);
+        }
+        throw new IllegalArgumentException("Gap existence and extension values " + existence + " and " + extension +
+                " are not supported for substitution scores " + reward + " and " + penalty + ".");
+    }
+
+    private static KarlinAltschulStatistics find(double[][] table, int existence, int extension, int divisor) {
+        for (double[] row : table)
+            if (row[0] == existence && row[1] == extension)
+                return new KarlinAltschulStatistics(row[2] / divisor, row[3], row[4]);
+        return null;
+    }
+
+    /**
+     * Calculates parameters for ungapped alignment with default background frequencies for the alphabet
+     */
+    public static KarlinAltschulStatistics ungapped(AlignmentScoring<?> scoring) {
+        return ungapped(scoring, backgroundFrequencies(scoring.getAlphabet()));
+    }
+
+    /**
+     * Calculates parameters for ungapped alignment
+     *
+     * @param scoring     scoring
+     * @param frequencies background frequencies of basic letters of the alphabet
+     */
+    public static KarlinAltschulStatistics ungapped(AlignmentScoring<?> scoring, double[] frequencies) {
+        int size = scoring.getAlphabet().basicSize();
+        if (frequencies.length != size)
+            throw new IllegalArgumentException("Frequencies are expected for each of " + size + " basic letters.");
+
+        // Distribution of the score of a random pair of letters
+        int low = 0, high = 0;
+        for (byte i = 0; i < size; ++i)
+            for (byte j = 0; j < size; ++j)
+                if (frequencies[i] > 0 && frequencies[j] > 0) {
+                    low = Math.min(low, scoring.getScore(i, j));
+                    high = Math.max(high, scoring.getScore(i, j));
+                }
+        double[] probabilities = new double[high - low + 1];
+        for (byte i = 0; i < size; ++i)
+            for (byte j = 0; j < size; ++j)
+                if (frequencies[i] > 0 && frequencies[j] > 0)
+                    probabilities[scoring.getScore(i, j) - low] += frequencies[i] * frequencies[j];
+
+        double expected = 0;
+        for (int s = low; s <= high; ++s)
+            expected += s * probabilities[s - low];
+        if (low >= 0 || high <= 0 || expected >= 0)
+            throw new IllegalArgumentException("Expected score must be negative and positive scores must be possible.");
+
+        // Scores on the lattice with step delta
+        int delta = 0;
+        for (int s = low; s <= high; ++s)
+            if (probabilities[s - low] > 0)
+                delta = gcd(delta, Math.abs(s));
+
+        double lambda = solveLambda(probabilities, low);
+
+        double h = 0;
+        for (int s = low; s <= high; ++s)
+            h += s * probabilities[s - low] * Math.exp(lambda * s);
+        h *= lambda;
+
+        // sigma = sum_k 1/k * (E[exp(lambda S_k); S_k < 0] + P(S_k >= 0)), S_k - sum of k pair scores
+        double sigma = 0;
+        double[] distribution = {1.0};
+        int distributionLow = 0;
+        for (int iteration = 1; iteration <= MAX_ITERATIONS; ++iteration) {
+            double[] next = new double[distribution.length + high - low];
+            for (int a = 0; a < distribution.length; ++a)
+                if (distribution[a] != 0)
+                    for (int b = 0; b < probabilities.length; ++b)
+                        next[a + b] += distribution[a] * probabilities[b];
+            distribution = next;
+            distributionLow += low;
+
+            double term = 0;
+            for (int a = 0; a < distribution.length; ++a) {
+                int s = distributionLow + a;
+                term += s < 0 ? distribution[a] * Math.exp(lambda * s) : distribution[a];
+            }
+            sigma += term / iteration;
+            if (term / iteration < 1e-10 * sigma)
+                break;
+        }
+
+        double k = delta * lambda * Math.exp(-2 * sigma) / (h * (1 - Math.exp(-delta * lambda)));
+        return new KarlinAltschulStatistics(lambda, k, h);
+    }
+
+    /**
+     * Returns background frequencies of basic letters for the alphabet: Robinson & Robinson frequencies for amino
+     * acids and uniform frequencies for other alphabets
+     */
+    public static double[] backgroundFrequencies(Alphabet<?> alphabet) {
+        double[] frequencies = new double[alphabet.basicSize()];
+        if (alphabet == AminoAcidSequence.ALPHABET) {
+            for (int i = 0; i < AMINO_ACIDS.length(); ++i)
+                frequencies[alphabet.symbolToCode(AMINO_ACIDS.charAt(i))] = AMINO_ACID_FREQUENCIES[i];
+            // normalization (published values are rounded)
+            double sum = 0;
+            for (double f : frequencies)
+                sum += f;
+            for (int i = 0; i < frequencies.length; ++i)
+                frequencies[i] /= sum;
+        } else
+            Arrays.fill(frequencies, 1.0 / frequencies.length);
+        return frequencies;
+    }
+
+    /**
+     * Finds positive root of {@code sum p_s exp(lambda s) = 1}
+     */
+    private static double solveLambda(double[] probabilities, int low) {
+        double upper = 0.5;
+        while (moment(probabilities, low, upper) < 1)
+            upper *= 2;
+        double lower = 0;
+        for (int i = 0; i < 100; ++i) {
+            double middle = (lower + upper) / 2;
+            if (moment(probabilities, low, middle) < 1)
+                lower = middle;
+            else
+                upper = middle;
+        }
+        return (lower + upper) / 2;
+    }
+
+    private static double moment(double[] probabilities, int low, double lambda) {
+        double sum = 0;
+        for (int i = 0; i < probabilities.length; ++i)
+            sum += probabilities[i] * Math.exp(lambda * (low + i));
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    @Override
+    public String toString() {
+        return "lambda = " + lambda + ", K = " + k + ", H = " + h;
+    }
+}
@@ -4,6 +4,7 @@ import cc.redberry.primitives.Filter;
 import com.milaboratory.core.Range;
 import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
 import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentWorkspace;
 import com.milaboratory.core.alignment.BandedAffineAligner;
 import com.milaboratory.core.alignment.BandedSemiLocalResult;
 import com.milaboratory.core.alignment.batch.BatchAlignerWithBaseWithFilter;
@@ -11,11 +12,18 @@ import com.milaboratory.core.alignment.kaligner2.KMapper2.ArrList;
 import com.milaboratory.core.mutations.Mutations;
 import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.BitArray;
+import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.IntArrayList;
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -133,6 +141,75 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         payloads.put(addReference(sequence), payload);
     }
 
+    /**
+     * Saves this aligner (parameters, reference sequences, payloads and kMer index) to a file, that can be loaded
+     * with {@link #load(File, Class)}.
+     *
+     * @param file         output file
+     * @param payloadClass class of payloads, must be serializable with {@link PrimitivO}
+     */
+    public void save(File file, Class<? super P> payloadClass) throws IOException {
+        ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        PrimitivO output = new PrimitivO(metadata);
+        output.writeByte(KMapper2.CONTENT_ALIGNER);
+        mapper.writeMetadata(output);
+        output.writeObject(GlobalObjectMappers.ONE_LINE.writeValueAsString(parameters), String.class);
+        output.writeInt(sequences.size());
+        for (NucleotideSequence sequence : sequences)
+            output.writeObject(sequence, NucleotideSequence.class);
+        output.writeInt(payloads.size());
+        TIntObjectIterator<P> it = payloads.iterator();
+        while (it.hasNext()) {
+            it.advance();
+            output.writeInt(it.key());
+            output.writeObject(it.value(), payloadClass);
+        }
+        mapper.save(file, metadata.toByteArray());
+    }
+
+    /**
+     * Loads aligner saved with {@link #save(File, Class)}. The kMer index is mapped into memory read-only (see {@link
+     * KMapper2#load(File)}), reference sequences and payloads are loaded into heap.
+     *
+     * @param file         index file
+     * @param payloadClass class of payloads
+     * @return aligner
+     */
+    public static <P> KAligner2<P> load(File file, Class<P> payloadClass) throws IOException {
+        return load(file, payloadClass, null);
+    }
+
+    /**
+     * Loads aligner saved with {@link #save(File, Class)}. The kMer index is mapped into memory read-only (see {@link
+     * KMapper2#load(File)}), reference sequences and payloads are loaded into heap.
+     *
+     * @param file         index file
+     * @param payloadClass class of payloads
+     * @param stat         stat
+     * @return aligner
+     */
+    public static <P> KAligner2<P> load(File file, Class<P> payloadClass, KAligner2Statistics stat)
+            throws IOException {
+        KMapper2Index.MappedIndex mapped = KMapper2Index.map(file);
+        PrimitivI input = new PrimitivI(new ByteArrayInputStream(mapped.metadata));
+        if (input.readByte() != KMapper2.CONTENT_ALIGNER)
+            throw new IOException("File contains KMapper2 index without aligner data: " + file);
+        KMapper2 mapper = KMapper2.readMetadata(input, mapped.index, stat);
+        KAlignerParameters2 parameters = GlobalObjectMappers.ONE_LINE.readValue(
+                input.readObject(String.class), KAlignerParameters2.class);
+        int count = input.readInt();
+        List<NucleotideSequence> sequences = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i)
+            sequences.add(input.readObject(NucleotideSequence.class));
+        count = input.readInt();
+        TIntObjectHashMap<P> payloads = new TIntObjectHashMap<>(Math.max(count, 10));
+        for (int i = 0; i < count; ++i) {
+            int id = input.readInt();
+            payloads.put(id, input.readObject(payloadClass));
+        }
+        return new KAligner2<>(mapper, parameters, sequences, payloads, stat);
+    }
+
     @Override
     public KAlignmentResult2<P> align(NucleotideSequence sequence) {
         return align(sequence, 0, sequence.size());
@@ -145,10 +222,25 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
 
     @Override
     public KAlignmentResult2<P> align(final NucleotideSequence query, final int from, final int to, BitArray filter) {
+        return align(query, from, to, filter, AlignmentWorkspace.forCurrentThread());
+    }
+
+    /**
+     * Aligns query using matrices and buffers from the specified workspace
+     *
+     * @param query     query sequence
+     * @param from      start of the query region
+     * @param to        end of the query region
+     * @param filter    filter of reference sequences, null to align against all references
+     * @param workspace workspace, must not be used concurrently by other threads
+     * @return alignment result
+     */
+    public KAlignmentResult2<P> align(final NucleotideSequence query, final int from, final int to, BitArray filter,
+                                      final AlignmentWorkspace workspace) {
         if (stat != null)
             stat.nextQuery();
 
-        final BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        final BandedAffineAligner.MatrixCache cache = workspace.getAffineCache();
 
         final AffineGapAlignmentScoring<NucleotideSequence> scoring = parameters.getScoring();
 
@@ -159,6 +251,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         ArrList<KAlignmentHit2<P>> hits = new ArrList<>();
 
         final int maxIndels = parameters.getMapperMaxClusterIndels();
+        final int xDrop = parameters.getAlignmentXDrop() > 0 ? parameters.getAlignmentXDrop() : Integer.MAX_VALUE;
         final int nValue = mapper.getNValue();
         final boolean kIsZero = (mapper.getKValue() == 0);
 
@@ -181,8 +274,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
         for (int hitIndex = 0; hitIndex < mapping.getHits().size(); hitIndex++) {
             final KMappingHit2 mappingHit = mapping.getHits().get(hitIndex);
             final NucleotideSequence target = sequences.get(mappingHit.id);
-            final MutationsBuilder<NucleotideSequence> mutations =
-                    new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            final MutationsBuilder<NucleotideSequence> mutations = workspace.getMutationsBuilder(NucleotideSequence.ALPHABET);
 
             //Left edge alignment
             int seedPosition2 = seeds.get(mappingHit.indexById(0)) + leftBoundaryOffset;
@@ -214,7 +306,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
                 br = BandedAffineAligner.semiLocalLeft0(parameters.getScoring(), target, query,
                         offset1, length1,
                         offset2, length2,
-                        maxIndels, mutations, cache);
+                        maxIndels, xDrop, mutations, cache);
             } else {
                 br = BandedAffineAligner.semiGlobalLeft0(parameters.getScoring(), target, query,
                         offset1, length1, added1,
@@ -288,7 +380,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
                 br = BandedAffineAligner.semiLocalRight0(parameters.getScoring(), target, query,
                         offset1, length1,
                         offset2, length2,
-                        maxIndels, mutations, cache);
+                        maxIndels, xDrop, mutations, cache);
             } else {
                 br = BandedAffineAligner.semiGlobalRight0(parameters.getScoring(), target, query,
                         offset1, length1, added1,
@@ -299,7 +391,7 @@ public class KAligner2<P> implements BatchAlignerWithBaseWithFilter<NucleotideSe
             seq1To = br.sequence1Stop + 1;
             seq2To = br.sequence2Stop + 1;
 
-            Mutations<NucleotideSequence> muts = mutations.createAndDestroy();
+            Mutations<NucleotideSequence> muts = mutations.createAndClear();
             hits.add(new KAlignmentHit2<>(kAlignmentResult, mappingHit.id,
                     new Alignment<>(target, muts,
                             new Range(seq1From, seq1To),
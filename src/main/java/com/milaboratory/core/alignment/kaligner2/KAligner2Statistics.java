@@ -23,6 +23,8 @@ import com.milaboratory.util.AtomicHistogram;
 import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.IntArrayList;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.milaboratory.core.alignment.kaligner2.OffsetPacksAccumulator.DROPPED_CLUSTER;
@@ -70,34 +72,53 @@ public final class KAligner2Statistics {
         inputQueries.incrementAndGet();
     }
 
+    /**
+     * Same as {@link #afterCandidatesDone(IntArrayList, List, int)} for dense candidates representation: element
+     * {@code i} of the array is the candidate list for reference {@code i}, null if reference was not hit
+     *
+     * @param candidates candidate lists for all references
+     */
     public void afterCandidatesArrayDone(IntArrayList[] candidates) {
+        IntArrayList ids = new IntArrayList();
+        List<IntArrayList> lists = new ArrayList<>();
+        for (int i = 0; i < candidates.length; i++)
+            if (candidates[i] != null) {
+                ids.add(i);
+                lists.add(candidates[i]);
+            }
+        afterCandidatesDone(ids, lists, candidates.length);
+    }
+
+    /**
+     * Collects statistics of initial candidates of the query; only references hit by the query are listed
+     *
+     * @param ids             ids of references with non-empty candidate lists, in ascending order
+     * @param candidates      candidate lists for the ids
+     * @param sequencesInBase total number of references
+     */
+    public void afterCandidatesDone(IntArrayList ids, List<IntArrayList> candidates, int sequencesInBase) {
         State state = currentState.get();
 
         state.previousStep = System.nanoTime();
         seedExtractionTime.add((state.previousStep - state.start) / 1000.0);
 
         // Collecting statistics and calculating top candidate index
-        int top = -1;
-        for (int i = 0; i < candidates.length; i++) {
-            IntArrayList candidate = candidates[i];
-            if (candidate == null) {
-                allInitialRecordsCount.add(0);
-                continue;
-            } else
-                allInitialRecordsCount.add(candidate.size());
-
-            if (top == -1 || (candidates[top].size() < candidate.size()))
-                top = i;
+        allInitialRecordsCount.add(0, sequencesInBase - ids.size());
+        int top = -1, topSize = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            int size = candidates.get(i).size();
+            allInitialRecordsCount.add(size);
+            if (top == -1 || topSize < size) {
+                top = ids.get(i);
+                topSize = size;
+            }
         }
 
         // Saving top in stat
         state.topByRecordsCount = top;
 
         // Collecting information on number of records in top record
-        if (top == -1)
-            topInitialRecordsCount.add(0);
-        else
-            topInitialRecordsCount.add(candidates[top].size());
+        topInitialRecordsCount.add(topSize);
     }
 
     public void initialClusters(int id, IntArrayList results) {
@@ -98,6 +98,16 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
      * Minimal and maximal distance between kMer seed positions in target sequence
      */
     private int mapperMinSeedsDistance, mapperMaxSeedsDistance;
+    /**
+     * If positive, (w, n)-minimizers with w = mapperMinimizerWindow are used as seeds in both reference and target
+     * sequences instead of randomly sampled seed positions; zero means random seeds
+     */
+    private int mapperMinimizerWindow;
+    /**
+     * Number of threads used to build index of {@link KMapper2}; zero or one means the index is built sequentially
+     * in the thread that triggers the build
+     */
+    private int mapperBuildParallelism;
 
     /* MAPPER PARAMETERS END */
 
@@ -107,6 +117,11 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
      * Penalty score to stop alignment extension.
      */
     private int alignmentStopPenalty;
+    /**
+     * X-drop value for extension of alignment with floating bounds: extension stops when score drops by more than
+     * this value below the best score; zero or negative value means no X-drop pruning
+     */
+    private int alignmentXDrop;
     /**
      * Minimal allowed score value to consider hit as reliable candidate
      */
@@ -358,6 +373,54 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         return this;
     }
 
+    /**
+     * Returns window size (number of consecutive kMers) for minimizer seeding in {@link KMapper2}, zero means
+     * randomly chosen seeds
+     *
+     * @return minimizer window size
+     */
+    public int getMapperMinimizerWindow() {
+        return mapperMinimizerWindow;
+    }
+
+    /**
+     * Sets window size (number of consecutive kMers) for minimizer seeding in {@link KMapper2}: only (w, n)-minimizers
+     * of reference sequences are indexed and only minimizers of target sequence are used as seeds. Zero means all
+     * reference positions are indexed and seeds are chosen randomly (see {@link #setMapperMinSeedsDistance(int)}).
+     *
+     * @param mapperMinimizerWindow minimizer window size
+     * @return parameters object
+     */
+    public KAlignerParameters2 setMapperMinimizerWindow(int mapperMinimizerWindow) {
+        if (mapperMinimizerWindow < 0)
+            throw new IllegalArgumentException("Negative minimizer window: " + mapperMinimizerWindow);
+        this.mapperMinimizerWindow = mapperMinimizerWindow;
+        return this;
+    }
+
+    /**
+     * Returns number of threads used to build index of {@link KMapper2}
+     *
+     * @return number of threads used to build index
+     */
+    public int getMapperBuildParallelism() {
+        return mapperBuildParallelism;
+    }
+
+    /**
+     * Sets number of threads used to build index of {@link KMapper2}. Zero or one means the index is built
+     * sequentially in the thread that triggers the build (first alignment or save).
+     *
+     * @param mapperBuildParallelism number of threads used to build index
+     * @return parameters object
+     */
+    public KAlignerParameters2 setMapperBuildParallelism(int mapperBuildParallelism) {
+        if (mapperBuildParallelism < 0)
+            throw new IllegalArgumentException("Negative parallelism: " + mapperBuildParallelism);
+        this.mapperBuildParallelism = mapperBuildParallelism;
+        return this;
+    }
+
     /**
      * Number of simultaneously constructed clusters in one-pass initial cluster detection algorithm
      */
@@ -481,6 +544,28 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         return this;
     }
 
+    /**
+     * Returns X-drop value used for extension of alignment with floating bounds (zero or negative value means no
+     * X-drop pruning)
+     *
+     * @return X-drop value
+     */
+    public int getAlignmentXDrop() {
+        return alignmentXDrop;
+    }
+
+    /**
+     * Sets X-drop value used for extension of alignment with floating bounds (zero or negative value means no X-drop
+     * pruning)
+     *
+     * @param alignmentXDrop X-drop value
+     * @return parameters object
+     */
+    public KAlignerParameters2 setAlignmentXDrop(int alignmentXDrop) {
+        this.alignmentXDrop = alignmentXDrop;
+        return this;
+    }
+
     /**
      * Returns scoring system used for building alignments
      *
@@ -659,7 +744,10 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         if (Float.compare(that.mapperRelativeMinScore, mapperRelativeMinScore) != 0) return false;
         if (mapperMinSeedsDistance != that.mapperMinSeedsDistance) return false;
         if (mapperMaxSeedsDistance != that.mapperMaxSeedsDistance) return false;
+        if (mapperMinimizerWindow != that.mapperMinimizerWindow) return false;
+        if (mapperBuildParallelism != that.mapperBuildParallelism) return false;
         if (alignmentStopPenalty != that.alignmentStopPenalty) return false;
+        if (alignmentXDrop != that.alignmentXDrop) return false;
         if (absoluteMinScore != that.absoluteMinScore) return false;
         if (Float.compare(that.relativeMinScore, relativeMinScore) != 0) return false;
         if (maxHits != that.maxHits) return false;
@@ -683,7 +771,10 @@ public final class KAlignerParameters2 implements AbstractKAlignerParameters, Cl
         result = 31 * result + (mapperRelativeMinScore != +0.0f ? Float.floatToIntBits(mapperRelativeMinScore) : 0);
         result = 31 * result + mapperMinSeedsDistance;
         result = 31 * result + mapperMaxSeedsDistance;
+        result = 31 * result + mapperMinimizerWindow;
+        result = 31 * result + mapperBuildParallelism;
         result = 31 * result + alignmentStopPenalty;
+        result = 31 * result + alignmentXDrop;
         result = 31 * result + absoluteMinScore;
         result = 31 * result + (relativeMinScore != +0.0f ? Float.floatToIntBits(relativeMinScore) : 0);
         result = 31 * result + maxHits;
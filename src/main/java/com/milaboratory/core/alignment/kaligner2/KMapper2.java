@@ -15,25 +15,31 @@
  */
 package com.milaboratory.core.alignment.kaligner2;
 
-import cc.redberry.pipe.CUtils;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivO;
 import com.milaboratory.util.BitArray;
 import com.milaboratory.util.IntArrayList;
-import com.milaboratory.util.IntCombinations;
 import com.milaboratory.util.RandomUtil;
+import gnu.trove.list.array.TLongArrayList;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.milaboratory.core.alignment.kaligner2.KAligner2Statistics.ClusterTrimmingType.*;
 import static com.milaboratory.core.alignment.kaligner2.OffsetPacksAccumulator.*;
 import static java.lang.Integer.bitCount;
 import static java.lang.Math.*;
-import static java.util.Arrays.copyOf;
 
 /**
  * KMapper - class to perform fast alignment based only on matches between kMers of target and one of reference
@@ -52,12 +58,13 @@ public final class KMapper2 implements java.io.Serializable {
     /*
                                    MSB                         LSB
                                    < --------- 32 bits --------- >
-        Base record format:   int  |.... ID ....|.... OFFSET ....|
-                                                 < bitsForOffset >
+        Candidate record format: int  |.... OFFSET ....|.... INDEX ....|
+                                                        < bitsForIndex >
+        (INDEX - index of seed in query, OFFSET - offset between positions in reference and in query)
      */
 
     /**
-     * Number of bits in base record for offset value
+     * Number of bits in candidate record for seed index
      */
     private static final int bitsForIndex = 13;
     /**
@@ -84,15 +91,13 @@ public final class KMapper2 implements java.io.Serializable {
      */
     private final int kMersPerPosition;
     /**
-     * Base of records for individual kMers
+     * Index of kMers, null until built
      */
-    //base[combinationMask][kMer][seeds]
-    private final int[][][] base;
+    private KMapper2Index base;
     /**
-     * Number of records for each individual kMer (used only for building of base)
+     * Sequences added to this mapper, used to build the index and released after that
      */
-    //length[combinationMask][kMer]
-    private final int[][] lengths;
+    private ArrayList<NucleotideSequence> references = new ArrayList<>();
     /**
      * Minimal absolute score value
      */
@@ -136,6 +141,15 @@ public final class KMapper2 implements java.io.Serializable {
      * Minimal and maximal distance between kMer seed positions in target sequence
      */
     private final int minDistance, maxDistance;
+    /**
+     * If positive, seeds are (w, n)-minimizers of reference and target sequences with w = minimizerWindow, otherwise
+     * all reference positions are indexed and seeds are sampled randomly using minDistance and maxDistance
+     */
+    private final int minimizerWindow;
+    /**
+     * Number of threads used to build index, zero or one means the index is built in the calling thread
+     */
+    private final int buildParallelism;
 
     /*                  Utility fields                   */
     private volatile boolean built = false;
@@ -209,33 +223,54 @@ public final class KMapper2 implements java.io.Serializable {
                     int slotCount, int maxClusters, int maxClusterIndels, int kMersPerPosition,
                     boolean floatingLeftBound, boolean floatingRightBound,
                     KAligner2Statistics stat) {
+        this(nValue, kValue, minDistance, maxDistance, 0, absoluteMinClusterScore, extraClusterScore,
+                absoluteMinScore, relativeMinScore, matchScore, mismatchScore, offsetShiftScore, slotCount,
+                maxClusters, maxClusterIndels, kMersPerPosition, floatingLeftBound, floatingRightBound, 0, stat);
+    }
+
+    /**
+     * Creates new KMer mapper.
+     *
+     * @param nValue                  nucleotides in kMer (value of k)
+     * @param minDistance             minimal distance between kMer seed positions in target sequence
+     * @param maxDistance             maximal distance between kMer seed positions in target sequence
+     * @param minimizerWindow         if positive, (w, n)-minimizers with w = minimizerWindow are used as seeds
+     *                                instead of randomly sampled positions (minDistance and maxDistance are ignored)
+     * @param absoluteMinClusterScore minimal score
+     * @param relativeMinScore        maximal ratio between best hit score and other hits scores in returned result
+     * @param matchScore              reward for match (must be > 0)
+     * @param mismatchScore           penalty for mismatch (must be < 0)
+     * @param floatingLeftBound       true if left bound of alignment could be floating
+     * @param floatingRightBound      true if right bound of alignment could be floating
+     * @param buildParallelism        number of threads used to build index, zero or one means the index is built
+     *                                in the thread that triggers the build
+     * @param stat                    stat
+     */
+    public KMapper2(int nValue, int kValue,
+                    int minDistance, int maxDistance, int minimizerWindow,
+                    int absoluteMinClusterScore, int extraClusterScore,
+                    int absoluteMinScore, float relativeMinScore,
+                    int matchScore, int mismatchScore, int offsetShiftScore,
+                    int slotCount, int maxClusters, int maxClusterIndels, int kMersPerPosition,
+                    boolean floatingLeftBound, boolean floatingRightBound, int buildParallelism,
+                    KAligner2Statistics stat) {
         if (nValue - kValue <= 2)
             throw new IllegalArgumentException("Wrong combination of K and N values. K = " + kValue + " N = " + nValue + ".");
 
         this.nValue = nValue;
         this.kValue = kValue;
 
-        // TODO lazy
-        int maxHolesMask = kValue == 0 ? 1 : (((0xFFFFFFFF >>> (32 - kValue)) << (nValue - kValue)) + 1);
-        base = new int[maxHolesMask][][];
-        lengths = new int[maxHolesMask][];
-
         if ((kValue == 0 && kMersPerPosition != 1)
                 || (kValue != 0 && kMersPerPosition > nValue / kValue))
             throw new IllegalArgumentException("Wrong combination of nValue, kValue and kMersPerPosition.");
 
         this.kMersPerPosition = kMersPerPosition;
 
-        IntCombinations combinations = new IntCombinations(nValue, kValue);
-        for (int[] combination : CUtils.it(combinations)) {
-            int holesMask = getCombinationMask(combination);
-            base[holesMask] = new int[1 << ((nValue - kValue) * 2)][];
-            lengths[holesMask] = new int[1 << ((nValue - kValue) * 2)];
-        }
-
         //Parameters
         this.minDistance = minDistance;
         this.maxDistance = maxDistance;
+        this.minimizerWindow = minimizerWindow;
+        this.buildParallelism = buildParallelism;
         this.absoluteMinClusterScore = absoluteMinClusterScore;
         this.extraClusterScore = extraClusterScore;
         this.absoluteMinScore = absoluteMinScore;
@@ -252,13 +287,13 @@ public final class KMapper2 implements java.io.Serializable {
     }
 
     private KMapper2(int nValue, int kValue, int kMersPerPosition,
-                     int[][][] base, int[][] lengths,
+                     KMapper2Index base,
                      int absoluteMinClusterScore, int extraClusterScore,
                      int matchScore, int mismatchScore, int offsetShiftScore,
                      int slotCount, int maxClusterIndels,
                      int maxClusters, int absoluteMinScore, float relativeMinScore,
                      boolean floatingLeftBound, boolean floatingRightBound,
-                     int minDistance, int maxDistance,
+                     int minDistance, int maxDistance, int minimizerWindow,
                      boolean built, int maxReferenceLength,
                      int minReferenceLength, int sequencesInBase,
                      BitArray allFilter, KAligner2Statistics stat) {
@@ -266,7 +301,7 @@ public final class KMapper2 implements java.io.Serializable {
         this.kValue = kValue;
         this.kMersPerPosition = kMersPerPosition;
         this.base = base;
-        this.lengths = lengths;
+        this.references = null;
         this.absoluteMinClusterScore = absoluteMinClusterScore;
         this.extraClusterScore = extraClusterScore;
         this.matchScore = matchScore;
@@ -281,6 +316,8 @@ public final class KMapper2 implements java.io.Serializable {
         this.floatingRightBound = floatingRightBound;
         this.minDistance = minDistance;
         this.maxDistance = maxDistance;
+        this.minimizerWindow = minimizerWindow;
+        this.buildParallelism = 0;
         this.built = built;
         this.maxReferenceLength = maxReferenceLength;
         this.minReferenceLength = minReferenceLength;
@@ -302,19 +339,19 @@ public final class KMapper2 implements java.io.Serializable {
 
     KMapper2 setFloatingLeftBound(boolean floatingLeftBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        return new KMapper2(nValue, kValue, kMersPerPosition, base, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
-                floatingLeftBound, floatingRightBound, minDistance, maxDistance,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, minimizerWindow,
                 built, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
     }
 
     KMapper2 setFloatingRightBound(boolean floatingRightBound) {
         ensureBuilt();
-        return new KMapper2(nValue, kValue, kMersPerPosition, base, lengths, absoluteMinClusterScore,
+        return new KMapper2(nValue, kValue, kMersPerPosition, base, absoluteMinClusterScore,
                 extraClusterScore, matchScore, mismatchScore,
                 offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
-                floatingLeftBound, floatingRightBound, minDistance, maxDistance,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, minimizerWindow,
                 built, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
     }
 
@@ -328,7 +365,8 @@ public final class KMapper2 implements java.io.Serializable {
      */
     public static KMapper2 createFromParameters(KAlignerParameters2 parameters, KAligner2Statistics stat) {
         return new KMapper2(parameters.getMapperNValue(), parameters.getMapperKValue(), parameters.getMapperMinSeedsDistance(),
-                parameters.getMapperMaxSeedsDistance(), parameters.getMapperAbsoluteMinClusterScore(),
+                parameters.getMapperMaxSeedsDistance(), parameters.getMapperMinimizerWindow(),
+                parameters.getMapperAbsoluteMinClusterScore(),
                 parameters.getMapperExtraClusterScore(),
                 parameters.getMapperAbsoluteMinScore(),
                 parameters.getMapperRelativeMinScore(),
@@ -336,28 +374,10 @@ public final class KMapper2 implements java.io.Serializable {
                 parameters.getMapperOffsetShiftScore(), parameters.getMapperSlotCount(),
                 parameters.getMapperMaxClusters(),
                 parameters.getMapperMaxClusterIndels(), parameters.getMapperKMersPerPosition(),
-                parameters.isFloatingLeftBound(), parameters.isFloatingRightBound(), stat);
+                parameters.isFloatingLeftBound(), parameters.isFloatingRightBound(),
+                parameters.getMapperBuildParallelism(), stat);
     }
 
-    /**
-     * Encodes and adds individual kMer to the base.
-     */
-    private void addKmer(int holesMask, int kmer, int id, int offset) {
-        if (base[holesMask][kmer] == null)
-            base[holesMask][kmer] = new int[10];
-        else if (base[holesMask][kmer].length == lengths[holesMask][kmer])
-            base[holesMask][kmer] = copyOf(base[holesMask][kmer], base[holesMask][kmer].length * 3 / 2 + 1);
-
-        if ((offset & offsetMask) != offset)
-            throw new IllegalArgumentException("Record is too long.");
-
-        assert lengths[holesMask][kmer] == 0 || index(base[holesMask][kmer][lengths[holesMask][kmer] - 1]) != id
-                || offset(base[holesMask][kmer][lengths[holesMask][kmer] - 1]) < offset;
-
-        base[holesMask][kmer][lengths[holesMask][kmer]++] = record(offset, id);
-    }
-
-
     /**
      * Adds new reference sequence to the base of this mapper and returns index assigned to it.
      *
@@ -369,11 +389,8 @@ public final class KMapper2 implements java.io.Serializable {
             throw new IllegalStateException("Already in use.");
 
         // Checking parameters
-        if (sequencesInBase >= (1 << bitsForIndex))
-            throw new IllegalArgumentException("Maximum number of records reached.");
-
-        //Resetting built flag
-        built = false;
+        if ((sequence.size() & offsetMask) != sequence.size())
+            throw new IllegalArgumentException("Record is too long.");
 
         int id = sequencesInBase++;
 
@@ -381,58 +398,57 @@ public final class KMapper2 implements java.io.Serializable {
         maxReferenceLength = max(maxReferenceLength, sequence.size());
         minReferenceLength = Math.min(minReferenceLength, sequence.size());
 
-        int kmer;
-        int tMask = 0xFFFFFFFF >>> (34 - nValue * 2);
-
-        int to = sequence.size() - nValue;
-        IntCombinations combinations = new IntCombinations(nValue, kValue);
-        for (int[] combination : CUtils.it(combinations)) {
-            int holesMask = getCombinationMask(combination);
-
-            kmer = 0;
-            for (int j = 0; j < nValue; ++j)
-                if (((holesMask >> j) & 1) == 0)
-                    kmer = (kmer << 2 | sequence.codeAt(j));
-            addKmer(holesMask, kmer, id, 0);
+        // kMers are indexed on build
+        references.add(sequence);
 
-            for (int i = 1; i <= to; ++i) {
-                //Next kMer
-                kmer = 0;
-                for (int j = 0; j < nValue; ++j)
-                    if (((holesMask >> j) & 1) == 0)
-                        kmer = (kmer << 2 | sequence.codeAt(i + j));
+        return id;
+    }
 
-                //Detecting homopolymeric kMers and dropping them
-                //TODO:::!!!!
-//                if (((kmer ^ (kmer >>> 2)) & tMask) == 0 && ((kmer ^ (kmer << 2)) & (tMask << 2)) == 0)
-//                    continue;
+    /**
+     * Adds new reference sequences to the base of this mapper. Sequences are assigned consecutive indices in the
+     * order of iteration over the collection.
+     *
+     * @param sequences sequences
+     * @return index assigned to the first sequence
+     */
+    public int addReferences(Collection<NucleotideSequence> sequences) {
+        if (built)
+            throw new IllegalStateException("Already in use.");
 
-                addKmer(holesMask, kmer, id, i);
-            }
+        int maxLength = maxReferenceLength, minLength = minReferenceLength;
+        for (NucleotideSequence sequence : sequences) {
+            if ((sequence.size() & offsetMask) != sequence.size())
+                throw new IllegalArgumentException("Record is too long.");
+            maxLength = max(maxLength, sequence.size());
+            minLength = Math.min(minLength, sequence.size());
         }
 
+        int id = sequencesInBase;
+        references.addAll(sequences);
+        sequencesInBase += sequences.size();
+        maxReferenceLength = maxLength;
+        minReferenceLength = minLength;
         return id;
     }
 
     /**
      * Builds additional data fields used by this mapper. Invoked automatically if this mapper is not yet built by
-     * {@link #align(NucleotideSequence, int, int)} method.
+     * {@link #align(NucleotideSequence, int, int)} method. If build parallelism is greater than one, index is built
+     * in a dedicated {@link ForkJoinPool} with this number of threads, otherwise in the calling thread.
      */
     void ensureBuilt() {
         if (!built)
             synchronized (this) {
                 if (!built) {
-                    int[] zero = new int[0];
-                    IntCombinations combinations = new IntCombinations(nValue, kValue);
-                    for (int[] combination : CUtils.it(combinations)) {
-                        int holeMask = getCombinationMask(combination);
-                        for (int kMer = 0; kMer < base[holeMask].length; ++kMer)
-                            if (base[holeMask][kMer] != null) {
-                                base[holeMask][kMer] = copyOf(base[holeMask][kMer], lengths[holeMask][kMer]);
-                                Arrays.sort(base[holeMask][kMer]);
-                            } else
-                                base[holeMask][kMer] = zero;
+                    ForkJoinPool pool = buildParallelism > 1 ? new ForkJoinPool(buildParallelism) : null;
+                    try {
+                        base = KMapper2Index.build(nValue, kValue, references, maxReferenceLength, minimizerWindow,
+                                pool);
+                    } finally {
+                        if (pool != null)
+                            pool.shutdown();
                     }
+                    references = null;
 
                     allFilter = new BitArray(sequencesInBase);
                     allFilter.setAll();
@@ -442,6 +458,107 @@ public final class KMapper2 implements java.io.Serializable {
             }
     }
 
+    /**
+     * Type of content of index file: mapper only or mapper with aligner data (see {@link KAligner2#save(File, Class)})
+     */
+    static final byte CONTENT_MAPPER = 0, CONTENT_ALIGNER = 1;
+
+    /**
+     * Saves this mapper (parameters and kMer index) to a file, that can be loaded with {@link #load(File)}. Builds
+     * the index if it is not yet built.
+     *
+     * @param file output file
+     */
+    public void save(File file) throws IOException {
+        ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+        PrimitivO output = new PrimitivO(metadata);
+        output.writeByte(CONTENT_MAPPER);
+        writeMetadata(output);
+        save(file, metadata.toByteArray());
+    }
+
+    void save(File file, byte[] metadata) throws IOException {
+        ensureBuilt();
+        KMapper2Index.save(file, metadata, base);
+    }
+
+    /**
+     * Loads mapper saved with {@link #save(File)} (or {@link KAligner2#save(File, Class)}). The kMer index is mapped
+     * into memory read-only, so it is not loaded into heap and is shared between processes using the same file.
+     *
+     * @param file index file
+     * @return mapper
+     */
+    public static KMapper2 load(File file) throws IOException {
+        return load(file, null);
+    }
+
+    /**
+     * Loads mapper saved with {@link #save(File)} (or {@link KAligner2#save(File, Class)}). The kMer index is mapped
+     * into memory read-only, so it is not loaded into heap and is shared between processes using the same file.
+     *
+     * @param file index file
+     * @param stat stat
+     * @return mapper
+     */
+    public static KMapper2 load(File file, KAligner2Statistics stat) throws IOException {
+        KMapper2Index.MappedIndex mapped = KMapper2Index.map(file);
+        PrimitivI input = new PrimitivI(new ByteArrayInputStream(mapped.metadata));
+        input.readByte();
+        return readMetadata(input, mapped.index, stat);
+    }
+
+    /**
+     * Writes parameters of this mapper (everything except the kMer index)
+     */
+    void writeMetadata(PrimitivO output) {
+        ensureBuilt();
+        output.writeInt(nValue);
+        output.writeInt(kValue);
+        output.writeInt(kMersPerPosition);
+        output.writeInt(absoluteMinClusterScore);
+        output.writeInt(extraClusterScore);
+        output.writeInt(matchScore);
+        output.writeInt(mismatchScore);
+        output.writeInt(offsetShiftScore);
+        output.writeInt(slotCount);
+        output.writeInt(maxClusterIndels);
+        output.writeInt(maxClusters);
+        output.writeInt(absoluteMinScore);
+        output.writeFloat(relativeMinScore);
+        output.writeBoolean(floatingLeftBound);
+        output.writeBoolean(floatingRightBound);
+        output.writeInt(minDistance);
+        output.writeInt(maxDistance);
+        output.writeInt(minimizerWindow);
+        output.writeInt(maxReferenceLength);
+        output.writeInt(minReferenceLength);
+        output.writeInt(sequencesInBase);
+    }
+
+    /**
+     * Reads parameters written by {@link #writeMetadata(PrimitivO)} and creates built mapper with the index
+     */
+    static KMapper2 readMetadata(PrimitivI input, KMapper2Index base, KAligner2Statistics stat) {
+        int nValue = input.readInt(), kValue = input.readInt(), kMersPerPosition = input.readInt(),
+                absoluteMinClusterScore = input.readInt(), extraClusterScore = input.readInt(),
+                matchScore = input.readInt(), mismatchScore = input.readInt(), offsetShiftScore = input.readInt(),
+                slotCount = input.readInt(), maxClusterIndels = input.readInt(), maxClusters = input.readInt(),
+                absoluteMinScore = input.readInt();
+        float relativeMinScore = input.readFloat();
+        boolean floatingLeftBound = input.readBoolean(), floatingRightBound = input.readBoolean();
+        int minDistance = input.readInt(), maxDistance = input.readInt(), minimizerWindow = input.readInt(),
+                maxReferenceLength = input.readInt(), minReferenceLength = input.readInt(),
+                sequencesInBase = input.readInt();
+        BitArray allFilter = new BitArray(sequencesInBase);
+        allFilter.setAll();
+        return new KMapper2(nValue, kValue, kMersPerPosition, base, absoluteMinClusterScore,
+                extraClusterScore, matchScore, mismatchScore,
+                offsetShiftScore, slotCount, maxClusterIndels, maxClusters, absoluteMinScore, relativeMinScore,
+                floatingLeftBound, floatingRightBound, minDistance, maxDistance, minimizerWindow,
+                true, maxReferenceLength, minReferenceLength, sequencesInBase, allFilter, stat);
+    }
+
     /**
      * Performs an alignment.
      *
@@ -506,33 +623,49 @@ public final class KMapper2 implements java.io.Serializable {
 
         // Positions of first nucleotides of seed k-mers in query sequence
         final IntArrayList seedPositions = cache.seedPositions;
-        int seedPosition = from;
+        RandomGenerator random = RandomUtil.getThreadLocalRandom();
 
-        // Adding firs possible position
-        seedPositions.add(seedPosition);
+        if (minimizerWindow > 0)
+            // Only minimizers are indexed in the reference sequences
+            Minimizers.select(sequence, from, to, nValue, minimizerWindow, seedPositions, cache.minimizersBuffer);
+        else {
+            int seedPosition = from;
 
-        // Generating random positions of seeds
-        RandomGenerator random = RandomUtil.getThreadLocalRandom();
-        while ((seedPosition += random.nextInt(maxDistance + 1 - minDistance) + minDistance) < to - nValue)
+            // Adding firs possible position
             seedPositions.add(seedPosition);
 
-        // Adding last possible position to the lis of seed positions
-        seedPositions.add(to - nValue);
+            // Generating random positions of seeds
+            while ((seedPosition += random.nextInt(maxDistance + 1 - minDistance) + minDistance) < to - nValue)
+                seedPositions.add(seedPosition);
+
+            // Adding last possible position to the lis of seed positions
+            seedPositions.add(to - nValue);
+        }
+
+        // Seed index must fit into bitsForIndex bits of the record, so for very long sequences (or small
+        // minimizer windows) only evenly spaced subset of seeds is used
+        if (seedPositions.size() > indexMask + 1) {
+            int size = seedPositions.size();
+            for (int i = 1; i <= indexMask; ++i)
+                seedPositions.set(i, seedPositions.get((int) ((long) i * (size - 1) / indexMask)));
+            while (seedPositions.size() > indexMask + 1)
+                seedPositions.pop();
+        }
 
         int kmer;
-        final IntArrayList[] candidates = cache.candidates;
+        IntArrayList candidate;
 
         // Building list of records for all target sequences
         // By querying db for each seed kmer from query sequence
         int id, positionInTarget;
-        IntArrayList allRecords = cache.cachedIntArray1;
+        TLongArrayList allRecords = cache.records;
 
         final int allPositionsMask = 0xFFFFFFFF >>> (32 - nValue);
         final int nValue2 = nValue / 2;
         int holesMask;
 
         for (int i = 0; i < seedPositions.size(); ++i) {
-            allRecords.clear();
+            allRecords.resetQuick();
 
             int notForbidden = allPositionsMask;
 
@@ -556,60 +689,61 @@ public final class KMapper2 implements java.io.Serializable {
                     if (((holesMask >> j) & 1) == 0)
                         kmer = kmer << 2 | sequence.codeAt(seedPositions.get(i) + j);
 
-                allRecords.addAll(base[holesMask][kmer]);
+                base.collect(holesMask, kmer, allRecords);
             }
 
             // Adding each records for it's corresponding candidate
 
             allRecords.sort();
             for (int i1 = 0; i1 < allRecords.size(); i1++) {
-                int record = allRecords.get(i1);
-                if (i1 > 0 && record == allRecords.get(i1 - 1))
+                long record = allRecords.getQuick(i1);
+                if (i1 > 0 && record == allRecords.getQuick(i1 - 1))
                     continue;
 
                 // Id of target sequence, where the kMer was found
-                id = index(record);
+                id = KMapper2Index.id(record);
 
                 // Apply filter
                 if (!filter.get(id))
                     continue;
 
                 // Position of the kMer in target sequence
-                positionInTarget = offset(record);
+                positionInTarget = KMapper2Index.position(record);
 
-                // Lazy initialization of candidate lists
-                //if (candidates[id] == null)
-                //    candidates[id] = new IntArrayList();
+                // Candidate list is allocated on the first hit of the target in this query
+                candidate = cache.candidates(id);
 
                 // Records for the same target in DB are sorted in descending order by positions
-                assert candidates[id].isEmpty() || index(candidates[id].last()) != i
-                        || offset(candidates[id].last()) < positionInTarget - seedPositions.get(i);
+                assert candidate.isEmpty() || index(candidate.last()) != i
+                        || offset(candidate.last()) < positionInTarget - seedPositions.get(i);
 
                 // Adding restructured record to candidate list
-                candidates[id].add(record(positionInTarget - seedPositions.get(i), i));
+                candidate.add(record(positionInTarget - seedPositions.get(i), i));
             }
         }
 
+        // Targets are processed in the order of ids
+        cache.sortCandidates();
+        final IntArrayList candidateIds = cache.candidateIds;
+
         // If stat object is set write statistics
         if (stat != null)
-            stat.afterCandidatesArrayDone(candidates);
+            stat.afterCandidatesDone(candidateIds, cache.candidates, sequencesInBase);
 
         // Minimal number of records that can possible give scoring above threshold
         final int possibleMinKmers = (int) Math.ceil(absoluteMinClusterScore / matchScore);
 
         // Calculating hits for each candidate
         // Truncation & Untangling of clusters happens here
-        for (int i = 0; i < candidates.length; i++) {
-            // No records
-            if (candidates[i] == null)
-                continue;
+        for (int i = 0; i < candidateIds.size(); i++) {
+            candidate = cache.candidates.get(i);
 
             // Early termination of calculations for this candidate
-            if (candidates[i].size() - 1 < possibleMinKmers)
+            if (candidate.size() - 1 < possibleMinKmers)
                 continue;
 
             // Performing main algorithms on records extracted from DB
-            KMappingHit2 e = calculateHit(i, candidates[i], seedPositions);
+            KMappingHit2 e = calculateHit(candidateIds.get(i), candidate, seedPositions);
 
             // Adding result to hits list if it was successful
             if (e != null)
@@ -1205,7 +1339,7 @@ public final class KMapper2 implements java.io.Serializable {
         return -maxAllowedDelta <= diff && diff <= maxAllowedDelta;
     }
 
-    private static int getCombinationMask(final int[] combination) {
+    static int getCombinationMask(final int[] combination) {
         int c = 0;
         for (int a : combination)
             c |= (1 << a);
@@ -1216,10 +1350,11 @@ public final class KMapper2 implements java.io.Serializable {
      * Method used internally.
      */
     public SummaryStatistics getRecordSizeSummaryStatistics() {
+        ensureBuilt();
         SummaryStatistics ss = new SummaryStatistics();
-        for (int[] length : lengths)
-            for (int len : length)
-                ss.addValue(len);
+        for (int holesMask = 0; holesMask < base.masks(); ++holesMask)
+            for (int kmer = 0; kmer < base.kmers(holesMask); ++kmer)
+                ss.addValue(base.count(holesMask, kmer));
         return ss;
     }
 
@@ -1242,7 +1377,20 @@ public final class KMapper2 implements java.io.Serializable {
     private static final class ThreadLocalCache {
         final IntArrayList seedPositions;
         final IntArrayList cachedIntArray1, cachedIntArray2, cachedIntArray3;
-        final IntArrayList[] candidates;
+        final TLongArrayList records;
+        final Minimizers.Buffer minimizersBuffer;
+        /**
+         * Ids of targets hit by the current query, candidates.get(i) is the list of records for candidateIds.get(i);
+         * lists after candidateIds.size() are allocated for previous queries and reused
+         */
+        final IntArrayList candidateIds;
+        final ArrayList<IntArrayList> candidates, sortedCandidates;
+        /**
+         * For each target: index of its candidate list, valid only if stamp of the target equals current generation,
+         * so the tables are not cleared between queries
+         */
+        final int[] candidateIndices, stamps;
+        int generation = 1;
         final OffsetPacksAccumulator offsetPacksAccumulator;
 
         public ThreadLocalCache(int sequencesInBase, int slotCount, int maxClusterIndels, int matchScore,
@@ -1251,11 +1399,14 @@ public final class KMapper2 implements java.io.Serializable {
             this.cachedIntArray1 = new IntArrayList();
             this.cachedIntArray2 = new IntArrayList();
             this.cachedIntArray3 = new IntArrayList();
+            this.records = new TLongArrayList();
+            this.minimizersBuffer = new Minimizers.Buffer();
 
-            this.candidates = new IntArrayList[sequencesInBase];
-
-            for (int i = 0; i < sequencesInBase; i++)
-                this.candidates[i] = new IntArrayList();
+            this.candidateIds = new IntArrayList();
+            this.candidates = new ArrayList<>();
+            this.sortedCandidates = new ArrayList<>();
+            this.candidateIndices = new int[sequencesInBase];
+            this.stamps = new int[sequencesInBase];
 
             this.offsetPacksAccumulator = new OffsetPacksAccumulator(
                     slotCount, maxClusterIndels, matchScore,
@@ -1267,8 +1418,43 @@ public final class KMapper2 implements java.io.Serializable {
             cachedIntArray1.clear();
             cachedIntArray2.clear();
             cachedIntArray3.clear();
-            for (IntArrayList candidate : candidates)
-                candidate.clear();
+            records.resetQuick();
+            candidateIds.clear();
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * Returns candidate list of the target for the current query, creating empty one on first access
+         */
+        IntArrayList candidates(int id) {
+            if (stamps[id] != generation) {
+                stamps[id] = generation;
+                int index = candidateIds.size();
+                candidateIndices[id] = index;
+                candidateIds.add(id);
+                if (index == candidates.size())
+                    candidates.add(new IntArrayList());
+                else
+                    candidates.get(index).clear();
+            }
+            return candidates.get(candidateIndices[id]);
+        }
+
+        /**
+         * Sorts candidate lists by target id
+         */
+        void sortCandidates() {
+            candidateIds.sort();
+            for (int i = 0; i < candidateIds.size(); ++i)
+                sortedCandidates.add(candidates.get(candidateIndices[candidateIds.get(i)]));
+            for (int i = 0; i < candidateIds.size(); ++i) {
+                candidates.set(i, sortedCandidates.get(i));
+                candidateIndices[candidateIds.get(i)] = i;
+            }
+            sortedCandidates.clear();
         }
     }
 
@@ -0,0 +1,629 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligner2;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.BitArray;
+import com.milaboratory.util.IntArrayList;
+import com.milaboratory.util.IntCombinations;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static java.lang.Integer.bitCount;
+
+/**
+ * Immutable kMer index of {@link KMapper2}: for each holes mask, positions of all (gapped) kMers of reference
+ * sequences stored in compressed sparse row layout.
+ *
+ * <p>Postings of kMer {@code kmer} occupy {@code postings[holesMask][offsets[holesMask][kmer] ..
+ * offsets[holesMask][kmer + 1]]} and are sorted by reference id and then by position. If reference id and position
+ * fit into 31 bits, postings are packed into {@code int}s ({@code id << offsetBits | position}), otherwise 64-bit
+ * postings are used ({@code id << 32 | position}).</p>
+ *
+ * <p>Index built in memory stores arrays on heap ({@link ArrayIndex}), index loaded from a file (see {@link
+ * #save(File, byte[], KMapper2Index)} and {@link #map(File)}) reads them from mapped buffers ({@link BufferIndex}).
+ * Mapped files are opened read-only, so their pages are shared by all processes using the same file.</p>
+ */
+abstract class KMapper2Index {
+    /**
+     * Index file signature ("KMI2") and format version
+     */
+    static final int MAGIC = 0x4B4D4932, VERSION = 2;
+    /**
+     * Byte order of index arrays in files
+     */
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Number of bits for position in 32-bit postings
+     */
+    final int offsetBits;
+
+    KMapper2Index(int offsetBits) {
+        this.offsetBits = offsetBits;
+    }
+
+    /**
+     * Number of holes masks (including unused ones)
+     */
+    abstract int masks();
+
+    /**
+     * Returns true if 64-bit postings are used
+     */
+    abstract boolean is64();
+
+    /**
+     * Number of records for the kMer
+     */
+    abstract int count(int holesMask, int kmer);
+
+    /**
+     * Number of kMers for the holes mask, or -1 if the mask is not used
+     */
+    abstract int kmers(int holesMask);
+
+    /**
+     * Appends records of the kMer to the list in {@code id << 32 | position} format
+     */
+    abstract void collect(int holesMask, int kmer, TLongArrayList target);
+
+    /**
+     * Offsets of the holes mask as a buffer, null for unused holes masks
+     */
+    abstract IntBuffer offsets(int holesMask);
+
+    /**
+     * 32-bit postings of the holes mask as a buffer
+     */
+    abstract IntBuffer postings32(int holesMask);
+
+    /**
+     * 64-bit postings of the holes mask as a buffer
+     */
+    abstract LongBuffer postings64(int holesMask);
+
+    static int id(long record) {
+        return (int) (record >>> 32);
+    }
+
+    static int position(long record) {
+        return (int) record;
+    }
+
+    /**
+     * Index built in memory
+     */
+    static final class ArrayIndex extends KMapper2Index {
+        /**
+         * offsets[holesMask][kmer], null for unused holes masks
+         */
+        final int[][] offsets;
+        /**
+         * postings[holesMask][record] if 32-bit postings are used, null otherwise
+         */
+        final int[][] postings32;
+        /**
+         * postings[holesMask][record] if 64-bit postings are used, null otherwise
+         */
+        final long[][] postings64;
+
+        ArrayIndex(int[][] offsets, int[][] postings32, long[][] postings64, int offsetBits) {
+            super(offsetBits);
+            this.offsets = offsets;
+            this.postings32 = postings32;
+            this.postings64 = postings64;
+        }
+
+        @Override
+        int masks() {
+            return offsets.length;
+        }
+
+        @Override
+        boolean is64() {
+            return postings64 != null;
+        }
+
+        @Override
+        int count(int holesMask, int kmer) {
+            return offsets[holesMask][kmer + 1] - offsets[holesMask][kmer];
+        }
+
+        @Override
+        int kmers(int holesMask) {
+            return offsets[holesMask] == null ? -1 : offsets[holesMask].length - 1;
+        }
+
+        @Override
+        void collect(int holesMask, int kmer, TLongArrayList target) {
+            int[] offsets = this.offsets[holesMask];
+            int from = offsets[kmer], to = offsets[kmer + 1];
+            if (postings64 != null)
+                target.add(postings64[holesMask], from, to - from);
+            else {
+                int[] postings = postings32[holesMask];
+                int offsetMask = 0xFFFFFFFF >>> (32 - offsetBits);
+                for (int i = from; i < to; ++i) {
+                    int posting = postings[i];
+                    target.add(((long) (posting >>> offsetBits) << 32) | (posting & offsetMask));
+                }
+            }
+        }
+
+        @Override
+        IntBuffer offsets(int holesMask) {
+            return offsets[holesMask] == null ? null : IntBuffer.wrap(offsets[holesMask]);
+        }
+
+        @Override
+        IntBuffer postings32(int holesMask) {
+            return IntBuffer.wrap(postings32[holesMask]);
+        }
+
+        @Override
+        LongBuffer postings64(int holesMask) {
+            return LongBuffer.wrap(postings64[holesMask]);
+        }
+    }
+
+    /**
+     * Index mapped from a file
+     */
+    static final class BufferIndex extends KMapper2Index {
+        /**
+         * offsets[holesMask].get(kmer), null for unused holes masks
+         */
+        final IntBuffer[] offsets;
+        /**
+         * postings[holesMask].get(record) if 32-bit postings are used, null otherwise
+         */
+        final IntBuffer[] postings32;
+        /**
+         * postings[holesMask].get(record) if 64-bit postings are used, null otherwise
+         */
+        final LongBuffer[] postings64;
+
+        BufferIndex(IntBuffer[] offsets, IntBuffer[] postings32, LongBuffer[] postings64, int offsetBits) {
+            super(offsetBits);
+            this.offsets = offsets;
+            this.postings32 = postings32;
+            this.postings64 = postings64;
+        }
+
+        @Override
+        int masks() {
+            return offsets.length;
+        }
+
+        @Override
+        boolean is64() {
+            return postings64 != null;
+        }
+
+        @Override
+        int count(int holesMask, int kmer) {
+            return offsets[holesMask].get(kmer + 1) - offsets[holesMask].get(kmer);
+        }
+
+        @Override
+        int kmers(int holesMask) {
+            return offsets[holesMask] == null ? -1 : offsets[holesMask].limit() - 1;
+        }
+
+        @Override
+        void collect(int holesMask, int kmer, TLongArrayList target) {
+            IntBuffer offsets = this.offsets[holesMask];
+            int from = offsets.get(kmer), to = offsets.get(kmer + 1);
+            if (postings64 != null) {
+                LongBuffer postings = postings64[holesMask];
+                for (int i = from; i < to; ++i)
+                    target.add(postings.get(i));
+            } else {
+                IntBuffer postings = postings32[holesMask];
+                int offsetMask = 0xFFFFFFFF >>> (32 - offsetBits);
+                for (int i = from; i < to; ++i) {
+                    int posting = postings.get(i);
+                    target.add(((long) (posting >>> offsetBits) << 32) | (posting & offsetMask));
+                }
+            }
+        }
+
+        @Override
+        IntBuffer offsets(int holesMask) {
+            return offsets[holesMask] == null ? null : offsets[holesMask].duplicate();
+        }
+
+        @Override
+        IntBuffer postings32(int holesMask) {
+            return postings32[holesMask].duplicate();
+        }
+
+        @Override
+        LongBuffer postings64(int holesMask) {
+            return postings64[holesMask].duplicate();
+        }
+    }
+
+    /**
+     * Builds index for the sequences: counts records of each kMer in the first pass and fills flat arrays of
+     * postings in the second one.
+     *
+     * @param nValue             nucleotides in kMer (value of n)
+     * @param kValue             number of holes in kMer (value of k)
+     * @param sequences          reference sequences, index of a sequence in the list is its id
+     * @param maxReferenceLength maximal length of reference sequence
+     */
+    static KMapper2Index build(int nValue, int kValue, List<NucleotideSequence> sequences, int maxReferenceLength) {
+        return build(nValue, kValue, sequences, maxReferenceLength, 0, null);
+    }
+
+    /**
+     * Builds index for the sequences: counts records of each kMer in the first pass and fills flat arrays of
+     * postings in the second one. Indexes for different holes masks are built in parallel if pool is specified.
+     *
+     * @param nValue             nucleotides in kMer (value of n)
+     * @param kValue             number of holes in kMer (value of k)
+     * @param sequences          reference sequences, index of a sequence in the list is its id
+     * @param maxReferenceLength maximal length of reference sequence
+     * @param minimizerWindow    if positive, only positions of (w, n)-minimizers with w = minimizerWindow are indexed
+     *                           (see {@link Minimizers}), otherwise all positions are indexed
+     * @param pool               pool to build index in, null to build in the calling thread
+     */
+    static KMapper2Index build(final int nValue, int kValue, final List<NucleotideSequence> sequences,
+                               int maxReferenceLength, int minimizerWindow, ForkJoinPool pool) {
+        int maxHolesMask = kValue == 0 ? 1 : (((0xFFFFFFFF >>> (32 - kValue)) << (nValue - kValue)) + 1);
+        final int kmers = 1 << ((nValue - kValue) * 2);
+
+        final int offsetBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxReferenceLength)),
+                idBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(sequences.size()));
+        final boolean use64 = offsetBits + idBits > 31;
+
+        final int[][] offsets = new int[maxHolesMask][];
+        final int[][] postings32 = use64 ? null : new int[maxHolesMask][];
+        final long[][] postings64 = use64 ? new long[maxHolesMask][] : null;
+
+        // Positions to index, the same for all holes masks
+        final BitArray[] selected = minimizerWindow > 0 ? new BitArray[sequences.size()] : null;
+        if (selected != null) {
+            IntArrayList positions = new IntArrayList();
+            Minimizers.Buffer buffer = new Minimizers.Buffer();
+            for (int id = 0; id < sequences.size(); ++id) {
+                NucleotideSequence sequence = sequences.get(id);
+                selected[id] = new BitArray(sequence.size());
+                positions.clear();
+                Minimizers.select(sequence, 0, sequence.size(), nValue, minimizerWindow, positions, buffer);
+                for (int i = 0; i < positions.size(); ++i)
+                    selected[id].set(positions.get(i));
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int[] combination : CUtils.it(new IntCombinations(nValue, kValue))) {
+            final int holesMask = KMapper2.getCombinationMask(combination);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    SpacedSeed seed = new SpacedSeed(nValue, holesMask);
+
+                    // Counting
+                    int[] off = new int[kmers + 1];
+                    for (int id = 0; id < sequences.size(); ++id) {
+                        NucleotideSequence sequence = sequences.get(id);
+                        long window = 0;
+                        for (int i = 0; i < sequence.size(); ++i) {
+                            window = seed.roll(window, sequence.codeAt(i));
+                            if (i >= nValue - 1 && (selected == null || selected[id].get(i - nValue + 1)))
+                                ++off[seed.kmer(window) + 1];
+                        }
+                    }
+
+                    long total = 0;
+                    for (int i = 1; i <= kmers; ++i) {
+                        total += off[i];
+                        if (total > Integer.MAX_VALUE - 8)
+                            throw new IllegalArgumentException("Too many kMers in the base.");
+                        off[i] = (int) total;
+                    }
+
+                    // Filling
+                    int[] cursors = new int[kmers];
+                    System.arraycopy(off, 0, cursors, 0, kmers);
+                    int[] p32 = use64 ? null : new int[(int) total];
+                    long[] p64 = use64 ? new long[(int) total] : null;
+                    for (int id = 0; id < sequences.size(); ++id) {
+                        NucleotideSequence sequence = sequences.get(id);
+                        long window = 0;
+                        for (int i = 0; i < sequence.size(); ++i) {
+                            window = seed.roll(window, sequence.codeAt(i));
+                            int position = i - nValue + 1;
+                            if (position < 0 || (selected != null && !selected[id].get(position)))
+                                continue;
+                            int p = cursors[seed.kmer(window)]++;
+                            if (use64)
+                                p64[p] = ((long) id << 32) | position;
+                            else
+                                p32[p] = (id << offsetBits) | position;
+                        }
+                    }
+
+                    // Each task writes its own holes mask
+                    offsets[holesMask] = off;
+                    if (use64)
+                        postings64[holesMask] = p64;
+                    else
+                        postings32[holesMask] = p32;
+                    return null;
+                }
+            });
+        }
+
+        if (pool == null || tasks.size() == 1)
+            for (Callable<Void> task : tasks)
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+                }
+        else
+            for (Future<Void> future : pool.invokeAll(tasks))
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+
+        return new ArrayIndex(offsets, postings32, postings64, offsetBits);
+    }
+
+    /**
+     * Rolling calculation of gapped kMers: 2-bit codes of the last {@code nValue} nucleotides are kept in a window,
+     * and kMer is assembled from at most {@code k + 1} contiguous runs of non-hole positions (instead of iterating
+     * over all positions of kMer).
+     */
+    static final class SpacedSeed {
+        final long windowMask;
+        /**
+         * For each run of non-hole positions: shift of the run in window, mask of its bits and shift in kMer
+         */
+        final int[] windowShifts, kmerShifts;
+        final long[] runMasks;
+
+        SpacedSeed(int nValue, int holesMask) {
+            this.windowMask = nValue == 32 ? -1L : (1L << (2 * nValue)) - 1;
+            int runs = 0;
+            for (int j = 0; j < nValue; ++j)
+                if (((holesMask >> j) & 1) == 0 && (j == 0 || ((holesMask >> (j - 1)) & 1) != 0))
+                    ++runs;
+            this.windowShifts = new int[runs];
+            this.kmerShifts = new int[runs];
+            this.runMasks = new long[runs];
+            int run = 0, after = nValue - bitCount(holesMask & (0xFFFFFFFF >>> (32 - nValue)));
+            for (int j = 0; j < nValue; ) {
+                if (((holesMask >> j) & 1) != 0) {
+                    ++j;
+                    continue;
+                }
+                int from = j;
+                while (j < nValue && ((holesMask >> j) & 1) == 0)
+                    ++j;
+                after -= j - from;
+                windowShifts[run] = 2 * (nValue - j);
+                kmerShifts[run] = 2 * after;
+                runMasks[run] = (1L << (2 * (j - from))) - 1;
+                ++run;
+            }
+        }
+
+        /**
+         * Shifts nucleotide into the window
+         */
+        long roll(long window, byte code) {
+            return ((window << 2) | code) & windowMask;
+        }
+
+        /**
+         * Returns kMer for the window
+         */
+        int kmer(long window) {
+            int kmer = 0;
+            for (int run = 0; run < runMasks.length; ++run)
+                kmer |= (int) ((window >>> windowShifts[run]) & runMasks[run]) << kmerShifts[run];
+            return kmer;
+        }
+    }
+
+    /*
+        Index file format:
+
+        int      MAGIC, VERSION
+        int      length of metadata block, followed by metadata (format defined by caller)
+        int      number of holes masks, offsetBits, 1 if 64-bit postings are used (0 otherwise)
+        int[]    for each holes mask: number of offsets (0 for unused masks) and number of postings
+        ...      padding to 8 bytes, then for each used holes mask: offsets array and postings array (each padded to
+                 8 bytes), little-endian
+
+        Header fields are big-endian (DataOutput format).
+     */
+
+    /**
+     * Writes index with metadata to a file
+     *
+     * @param file     output file
+     * @param metadata arbitrary metadata stored in the header of the file
+     * @param index    index
+     */
+    static void save(File file, byte[] metadata, KMapper2Index index) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(metadata.length);
+            header.write(metadata);
+            header.writeInt(index.masks());
+            header.writeInt(index.offsetBits);
+            header.writeInt(index.is64() ? 1 : 0);
+            for (int holesMask = 0; holesMask < index.masks(); ++holesMask) {
+                header.writeInt(index.kmers(holesMask) + 1);
+                header.writeInt(index.kmers(holesMask) < 0 ? 0 : index.postings(holesMask));
+            }
+            header.close();
+            writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+
+            for (int holesMask = 0; holesMask < index.masks(); ++holesMask) {
+                if (index.kmers(holesMask) < 0)
+                    continue;
+                pad(channel);
+                writeInts(channel, index.offsets(holesMask));
+                pad(channel);
+                if (index.is64())
+                    writeLongs(channel, index.postings64(holesMask));
+                else
+                    writeInts(channel, index.postings32(holesMask));
+            }
+        }
+    }
+
+    /**
+     * Maps index file into memory (read-only)
+     *
+     * @param file index file
+     * @return metadata and index
+     */
+    static MappedIndex map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (header.readInt() != MAGIC)
+                throw new IOException("Not a KMapper2 index file: " + file);
+            int version = header.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported index file version: " + version + " (expected " + VERSION + ").");
+            byte[] metadata = new byte[header.readInt()];
+            header.readFully(metadata);
+            int masks = header.readInt(), offsetBits = header.readInt();
+            boolean use64 = header.readInt() != 0;
+            int[] offsetsLengths = new int[masks], postingsLengths = new int[masks];
+            for (int holesMask = 0; holesMask < masks; ++holesMask) {
+                offsetsLengths[holesMask] = header.readInt();
+                postingsLengths[holesMask] = header.readInt();
+            }
+
+            long position = 4L * (6 + 2 * masks) + metadata.length;
+            IntBuffer[] offsets = new IntBuffer[masks];
+            IntBuffer[] postings32 = use64 ? null : new IntBuffer[masks];
+            LongBuffer[] postings64 = use64 ? new LongBuffer[masks] : null;
+            for (int holesMask = 0; holesMask < masks; ++holesMask) {
+                if (offsetsLengths[holesMask] == 0)
+                    continue;
+                position = align(position);
+                offsets[holesMask] = map(channel, position, 4L * offsetsLengths[holesMask]).asIntBuffer();
+                position = align(position + 4L * offsetsLengths[holesMask]);
+                long size = (use64 ? 8L : 4L) * postingsLengths[holesMask];
+                ByteBuffer postings = map(channel, position, size);
+                if (use64)
+                    postings64[holesMask] = postings.asLongBuffer();
+                else
+                    postings32[holesMask] = postings.asIntBuffer();
+                position += size;
+            }
+            if (position > channel.size())
+                throw new IOException("Truncated index file: " + file);
+            return new MappedIndex(metadata, new BufferIndex(offsets, postings32, postings64, offsetBits));
+        }
+    }
+
+    static final class MappedIndex {
+        final byte[] metadata;
+        final KMapper2Index index;
+
+        MappedIndex(byte[] metadata, KMapper2Index index) {
+            this.metadata = metadata;
+            this.index = index;
+        }
+    }
+
+    private int postings(int holesMask) {
+        return is64() ? postings64(holesMask).limit() : postings32(holesMask).limit();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Index block is too large to be mapped: " + size + " bytes.");
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ORDER);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(FileChannel channel) throws IOException {
+        long position = channel.position();
+        if (align(position) != position)
+            writeFully(channel, ByteBuffer.allocate((int) (align(position) - position)));
+    }
+
+    private static final int CHUNK = 1 << 20;
+
+    private static void writeInts(FileChannel channel, IntBuffer data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK).order(ORDER);
+        for (int from = 0; from < data.limit(); from += CHUNK / 4) {
+            int to = Math.min(data.limit(), from + CHUNK / 4);
+            buffer.clear();
+            for (int i = from; i < to; ++i)
+                buffer.putInt(data.get(i));
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeLongs(FileChannel channel, LongBuffer data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK).order(ORDER);
+        for (int from = 0; from < data.limit(); from += CHUNK / 8) {
+            int to = Math.min(data.limit(), from + CHUNK / 8);
+            buffer.clear();
+            for (int i = from; i < to; ++i)
+                buffer.putLong(data.get(i));
+            buffer.flip();
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
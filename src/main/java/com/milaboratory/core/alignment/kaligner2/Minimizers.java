@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligner2;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.util.HashFunctions;
+import com.milaboratory.util.IntArrayList;
+
+/**
+ * Selection of (w, n)-minimizers: from each window of {@code w} consecutive n-mers the one with minimal hash is
+ * selected (leftmost one in case of tie). Selection depends only on the content of the window, so a window shared by
+ * a query and a reference gives the same minimizer in both of them.
+ */
+final class Minimizers {
+    private Minimizers() {
+    }
+
+    /**
+     * Adds positions of (w, n)-minimizers of the sequence range to the list, in ascending order. If the range contains
+     * less than {@code w} n-mers, the single minimizer of the whole range is added.
+     *
+     * @param sequence sequence
+     * @param from     start of the range (inclusive)
+     * @param to       end of the range (exclusive)
+     * @param nValue   n-mer length
+     * @param window   number of consecutive n-mers in a window (value of w)
+     * @param target   list to add positions of n-mers to
+     */
+    static void select(NucleotideSequence sequence, int from, int to, int nValue, int window, IntArrayList target) {
+        select(sequence, from, to, nValue, window, target, new Buffer());
+    }
+
+    /**
+     * Adds positions of (w, n)-minimizers of the sequence range to the list, in ascending order. If the range contains
+     * less than {@code w} n-mers, the single minimizer of the whole range is added.
+     *
+     * @param sequence sequence
+     * @param from     start of the range (inclusive)
+     * @param to       end of the range (exclusive)
+     * @param nValue   n-mer length
+     * @param window   number of consecutive n-mers in a window (value of w)
+     * @param target   list to add positions of n-mers to
+     * @param buffer   reusable buffer for intermediate data
+     */
+    static void select(NucleotideSequence sequence, int from, int to, int nValue, int window, IntArrayList target,
+                       Buffer buffer) {
+        int count = to - from - nValue + 1;
+        if (count <= 0)
+            return;
+
+        long windowMask = nValue == 32 ? -1L : (1L << (2 * nValue)) - 1, kmer = 0;
+        buffer.ensureCapacity(count);
+        long[] hashes = buffer.hashes;
+        // Monotonic queue of n-mer indices with increasing hashes, its head is the minimizer of current window
+        int[] queue = buffer.queue;
+        int head = 0, tail = 0, last = -1;
+        for (int i = 0; i < to - from; ++i) {
+            kmer = ((kmer << 2) | sequence.codeAt(from + i)) & windowMask;
+            int index = i - nValue + 1;
+            if (index < 0)
+                continue;
+
+            long hash = hashes[index] = HashFunctions.JenkinWang64shift(kmer);
+            while (tail > head && hashes[queue[tail - 1]] > hash)
+                --tail;
+            queue[tail++] = index;
+            if (queue[head] <= index - window)
+                ++head;
+
+            if (index >= Math.min(window, count) - 1 && queue[head] != last) {
+                last = queue[head];
+                target.add(from + last);
+            }
+        }
+    }
+
+    /**
+     * Arrays for n-mer hashes and queue of n-mer indices, reused between invocations of {@link
+     * #select(NucleotideSequence, int, int, int, int, IntArrayList, Buffer)} (not thread-safe)
+     */
+    static final class Buffer {
+        long[] hashes = new long[0];
+        int[] queue = new int[0];
+
+        void ensureCapacity(int count) {
+            if (hashes.length >= count)
+                return;
+            int capacity = Math.max(count, hashes.length * 2);
+            hashes = new long[capacity];
+            queue = new int[capacity];
+        }
+    }
+}
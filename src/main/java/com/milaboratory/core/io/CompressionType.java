@@ -19,11 +19,13 @@ import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 
 import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public enum CompressionType {
-    None, GZIP, BZIP2;
+    None, GZIP, BZIP2, ZSTD, LZ4;
 
     public static CompressionType detectCompressionType(File file) {
         return detectCompressionType(file.getName());
@@ -36,6 +38,10 @@ public enum CompressionType {
             return GZIP;
         else if (fileName.endsWith(".bz2"))
             return BZIP2;
+        else if (fileName.endsWith(".zst") || fileName.endsWith(".zstd"))
+            return ZSTD;
+        else if (fileName.endsWith(".lz4"))
+            return LZ4;
         return None;
     }
 
@@ -47,6 +53,29 @@ public enum CompressionType {
         return createInputStream(this, is, buffer);
     }
 
+    /**
+     * Creates decompressing stream. For {@link #GZIP} and positive {@code concurrency}, decompression is performed
+     * outside the calling thread, BGZF blocks are inflated concurrently in the provided executor (see {@link
+     * ParallelGZIPInputStream}). Same for {@link #ZSTD} and {@link #LZ4}, where independent frames are decompressed
+     * concurrently (see {@link ParallelFrameInputStream}). For other compression types last two arguments are
+     * ignored.
+     *
+     * @param is          compressed stream
+     * @param buffer      buffer size
+     * @param executor    executor to inflate blocks in
+     * @param concurrency maximal number of blocks to be decompressed concurrently, 0 to decompress in the calling
+     *                    thread
+     */
+    public InputStream createInputStream(InputStream is, int buffer,
+                                         ExecutorService executor, int concurrency) throws IOException {
+        if (this == GZIP && concurrency > 0)
+            return new ParallelGZIPInputStream(is, executor, concurrency,
+                    Math.max(buffer, ParallelGZIPInputStream.DEFAULT_CHUNK_SIZE));
+        if ((this == ZSTD || this == LZ4) && concurrency > 0)
+            return new ParallelFrameInputStream(is, this, executor, concurrency);
+        return createInputStream(this, is, buffer);
+    }
+
     public OutputStream createOutputStream(OutputStream os) throws IOException {
         return createOutputStream(this, os, 2048);
     }
@@ -55,6 +84,28 @@ public enum CompressionType {
         return createOutputStream(this, os, buffer);
     }
 
+    /**
+     * Creates compressing stream. For {@link #GZIP} and positive {@code concurrency}, data is compressed in BGZF
+     * blocks deflated concurrently in the provided executor (see {@link ParallelGZIPOutputStream}). For {@link #ZSTD}
+     * and {@link #LZ4} data is compressed into independent frames concurrently (see {@link
+     * ParallelFrameOutputStream}). For other compression types last two arguments are ignored.
+     *
+     * @param os          target stream
+     * @param buffer      buffer size
+     * @param executor    executor to deflate blocks in
+     * @param concurrency maximal number of blocks to be compressed concurrently, 0 to compress in the calling thread
+     */
+    public OutputStream createOutputStream(OutputStream os, int buffer,
+                                           ExecutorService executor, int concurrency) throws IOException {
+        if (this == GZIP && concurrency > 0)
+            return new ParallelGZIPOutputStream(os, executor, concurrency, Deflater.DEFAULT_COMPRESSION,
+                    ParallelGZIPOutputStream.MAX_BLOCK_SIZE);
+        if ((this == ZSTD || this == LZ4) && concurrency > 0)
+            return new ParallelFrameOutputStream(os, this, executor, concurrency,
+                    ParallelFrameOutputStream.DEFAULT_BLOCK_SIZE);
+        return createOutputStream(this, os, buffer);
+    }
+
     private static InputStream createInputStream(CompressionType ct, InputStream is, int buffer) throws IOException {
         switch (ct) {
             case None:
@@ -68,6 +119,9 @@ public enum CompressionType {
                 } catch (CompressorException e) {
                     throw new IOException(e);
                 }
+            case ZSTD:
+            case LZ4:
+                return FrameCodec.forType(ct).createInputStream(new BufferedInputStream(is, buffer));
         }
         throw new NullPointerException();
     }
@@ -85,6 +139,9 @@ public enum CompressionType {
                 } catch (CompressorException e) {
                     throw new IOException(e);
                 }
+            case ZSTD:
+            case LZ4:
+                return FrameCodec.forType(ct).createOutputStream(os);
         }
         throw new NullPointerException();
     }
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Codec for compression formats consisting of independent concatenable frames (Zstandard and LZ4 frame format).
+ *
+ * Frame boundaries can be found by walking frame and block headers without decompression, so frames can be split
+ * from the stream in one thread and decompressed concurrently.
+ */
+abstract class FrameCodec {
+    static final FrameCodec ZSTD = new Zstd();
+    static final FrameCodec LZ4 = new LZ4();
+
+    /**
+     * Skippable frames have the same layout in both formats: 4 byte magic number, 4 byte length and user data
+     */
+    static final int SKIPPABLE_MAGIC_MASK = 0xFFFFFFF0;
+    static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    /**
+     * Maximal size of frame header in both formats, including magic number
+     */
+    static final int MAX_HEADER_SIZE = 19;
+    static final long UNKNOWN_CONTENT_SIZE = -1;
+    static final long END_OF_STREAM = -2;
+
+    static FrameCodec forType(CompressionType type) {
+        switch (type) {
+            case ZSTD:
+                return ZSTD;
+            case LZ4:
+                return LZ4;
+        }
+        throw new IllegalArgumentException("Not a frame-based compression type: " + type);
+    }
+
+    abstract InputStream createInputStream(InputStream is) throws IOException;
+
+    abstract OutputStream createOutputStream(OutputStream os) throws IOException;
+
+    /**
+     * Returns content size of the next frame stored in its header without changing the stream position (zero for
+     * skippable frames)
+     *
+     * @param in stream supporting mark / reset
+     * @return content size, {@link #UNKNOWN_CONTENT_SIZE} if it is absent in the header or {@link #END_OF_STREAM}
+     */
+    final long peekContentSize(InputStream in) throws IOException {
+        in.mark(MAX_HEADER_SIZE);
+        try {
+            byte[] header = new byte[MAX_HEADER_SIZE];
+            int read = OrderedBlockInputStream.readFully(in, header, 0, MAX_HEADER_SIZE);
+            if (read == 0)
+                return END_OF_STREAM;
+            if (read < 5)
+                throw new EOFException("Premature end of compressed stream.");
+            int magic = intAt(header, 0);
+            if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC)
+                return 0;
+            long size = contentSize(header, magic);
+            return size < 0 ? UNKNOWN_CONTENT_SIZE : size;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Parses content size from the frame header
+     *
+     * @param header first {@link #MAX_HEADER_SIZE} bytes of the frame
+     * @return content size, or negative value if it is absent
+     */
+    abstract long contentSize(byte[] header, int magic) throws IOException;
+
+    /**
+     * Reads raw bytes of the next frame from the stream
+     *
+     * @return frame bytes or null if end of stream is reached
+     */
+    final byte[] readFrame(InputStream in) throws IOException {
+        FrameBuilder frame = new FrameBuilder(in);
+        if (!frame.tryCopy(4))
+            return null;
+        int magic = frame.intAt(0);
+        if ((magic & SKIPPABLE_MAGIC_MASK) == SKIPPABLE_MAGIC) {
+            frame.copy(4);
+            frame.copy(frame.intAt(4));
+        } else
+            readFrameBody(frame, magic);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Copies frame header and blocks (everything after magic number) to the builder
+     */
+    abstract void readFrameBody(FrameBuilder frame, int magic) throws IOException;
+
+    /**
+     * Decompresses a single frame
+     *
+     * @param frame       raw bytes of the frame
+     * @param contentSize content size from the frame header
+     */
+    final byte[] decompress(byte[] frame, int contentSize) throws IOException {
+        byte[] result = new byte[contentSize];
+        try (InputStream is = createInputStream(new ByteArrayInputStream(frame))) {
+            if (IOUtils.read(is, result) != contentSize || is.read() != -1)
+                throw new IOException("Malformed frame: content size mismatch.");
+        }
+        return result;
+    }
+
+    /**
+     * Compresses data into a single frame with content size stored in the frame header
+     */
+    abstract byte[] compress(byte[] data, int offset, int length) throws IOException;
+
+    private static final class Zstd extends FrameCodec {
+        static final int MAGIC = 0xFD2FB528;
+
+        @Override
+        InputStream createInputStream(InputStream is) {
+            return new ZstdInputStream(is);
+        }
+
+        @Override
+        OutputStream createOutputStream(OutputStream os) throws IOException {
+            return new ZstdOutputStream(os);
+        }
+
+        @Override
+        byte[] compress(byte[] data, int offset, int length) {
+            ZstdCompressor compressor = new ZstdCompressor();
+            byte[] result = new byte[compressor.maxCompressedLength(length)];
+            int size = compressor.compress(data, offset, length, result, 0, result.length);
+            return Arrays.copyOf(result, size);
+        }
+
+        @Override
+        long contentSize(byte[] header, int magic) throws IOException {
+            if (magic != MAGIC)
+                throw new IOException("Not in Zstandard format.");
+            int descriptor = header[4] & 0xFF;
+            int fcsFlag = descriptor >>> 6;
+            boolean singleSegment = (descriptor & 0x20) != 0;
+            int dictIdFlag = descriptor & 0x03;
+            int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+            if (fcsSize == 0)
+                return -1;
+            int position = 5 + (singleSegment ? 0 : 1) + (dictIdFlag == 3 ? 4 : dictIdFlag);
+            long size = 0;
+            for (int i = fcsSize - 1; i >= 0; --i)
+                size = size << 8 | (header[position + i] & 0xFF);
+            // two byte field stores size with offset of 256
+            return fcsSize == 2 ? size + 256 : size;
+        }
+
+        @Override
+        void readFrameBody(FrameBuilder frame, int magic) throws IOException {
+            if (magic != MAGIC)
+                throw new IOException("Not in Zstandard format.");
+            int descriptor = frame.copyByte();
+            int fcsFlag = descriptor >>> 6;
+            boolean singleSegment = (descriptor & 0x20) != 0;
+            boolean checksum = (descriptor & 0x04) != 0;
+            int dictIdFlag = descriptor & 0x03;
+            // window descriptor, dictionary id, frame content size
+            frame.copy((singleSegment ? 0 : 1)
+                    + (dictIdFlag == 3 ? 4 : dictIdFlag)
+                    + (fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag));
+            while (true) {
+                int position = frame.size();
+                frame.copy(3);
+                int header = frame.byteAt(position) | frame.byteAt(position + 1) << 8 | frame.byteAt(position + 2) << 16;
+                int type = (header >>> 1) & 0x03;
+                if (type == 3)
+                    throw new IOException("Malformed Zstandard frame: reserved block type.");
+                // RLE block contains a single byte
+                frame.copy(type == 1 ? 1 : header >>> 3);
+                if ((header & 1) != 0)
+                    break;
+            }
+            if (checksum)
+                frame.copy(4);
+        }
+    }
+
+    private static final class LZ4 extends FrameCodec {
+        static final int MAGIC = 0x184D2204;
+
+        @Override
+        InputStream createInputStream(InputStream is) throws IOException {
+            return new LZ4FrameInputStream(is);
+        }
+
+        @Override
+        OutputStream createOutputStream(OutputStream os) throws IOException {
+            return new LZ4FrameOutputStream(os);
+        }
+
+        @Override
+        byte[] compress(byte[] data, int offset, int length) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+            try (OutputStream os = new LZ4FrameOutputStream(bos, LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB, length,
+                    LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE, LZ4FrameOutputStream.FLG.Bits.CONTENT_SIZE)) {
+                os.write(data, offset, length);
+            }
+            return bos.toByteArray();
+        }
+
+        @Override
+        long contentSize(byte[] header, int magic) throws IOException {
+            if (magic != MAGIC)
+                throw new IOException("Not in LZ4 frame format.");
+            if ((header[4] & 0x08) == 0)
+                return -1;
+            // FLG, BD, 8 byte content size
+            return (intAt(header, 6) & 0xFFFFFFFFL) | (long) intAt(header, 10) << 32;
+        }
+
+        @Override
+        void readFrameBody(FrameBuilder frame, int magic) throws IOException {
+            if (magic != MAGIC)
+                throw new IOException("Not in LZ4 frame format.");
+            int flg = frame.copyByte();
+            boolean blockChecksum = (flg & 0x10) != 0;
+            boolean contentSize = (flg & 0x08) != 0;
+            boolean contentChecksum = (flg & 0x04) != 0;
+            boolean dictId = (flg & 0x01) != 0;
+            // BD, content size, dictionary id, header checksum
+            frame.copy(1 + (contentSize ? 8 : 0) + (dictId ? 4 : 0) + 1);
+            while (true) {
+                int position = frame.size();
+                frame.copy(4);
+                int blockSize = frame.intAt(position) & 0x7FFFFFFF;
+                if (blockSize == 0) // end mark
+                    break;
+                frame.copy(blockSize + (blockChecksum ? 4 : 0));
+            }
+            if (contentChecksum)
+                frame.copy(4);
+        }
+    }
+
+    static int intAt(byte[] data, int position) {
+        return (data[position] & 0xFF) | (data[position + 1] & 0xFF) << 8
+                | (data[position + 2] & 0xFF) << 16 | (data[position + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Accumulates bytes of a single frame copied from the input stream
+     */
+    static final class FrameBuilder {
+        final InputStream in;
+        byte[] buffer = new byte[1 << 16];
+        int size;
+
+        FrameBuilder(InputStream in) {
+            this.in = in;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int byteAt(int position) {
+            return buffer[position] & 0xFF;
+        }
+
+        int intAt(int position) {
+            return byteAt(position) | byteAt(position + 1) << 8 | byteAt(position + 2) << 16 | byteAt(position + 3) << 24;
+        }
+
+        int copyByte() throws IOException {
+            copy(1);
+            return byteAt(size - 1);
+        }
+
+        void copy(int length) throws IOException {
+            if (length < 0)
+                throw new IOException("Malformed frame: negative length.");
+            if (!tryCopy(length))
+                throw new EOFException("Premature end of compressed stream.");
+        }
+
+        /**
+         * @return false if end of stream was reached before the first byte was read, exception is thrown if stream ends
+         * in the middle of the requested range
+         */
+        boolean tryCopy(int length) throws IOException {
+            if (buffer.length - size < length)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+            int initialSize = size;
+            while (length > 0) {
+                int read = in.read(buffer, size, length);
+                if (read == -1) {
+                    if (size == initialSize)
+                        return false;
+                    throw new EOFException("Premature end of compressed stream.");
+                }
+                size += read;
+                length -= read;
+            }
+            return true;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+/**
+ * Base class for input streams decoding independent blocks of compressed data outside the consumer thread.
+ *
+ * Blocks are split from the underlying stream by a read-ahead thread ({@link #readBlocks()}) and either decoded
+ * concurrently in the provided executor ({@link #submit(Callable)}), or decoded by the read-ahead thread itself for
+ * formats without known block boundaries ({@link #putDecoded(InputStream, int)}). Decoded blocks are returned in the
+ * original order. Number of blocks in flight is limited by the read-ahead queue size. Executor is not owned by the
+ * stream and is not shut down on close.
+ */
+abstract class OrderedBlockInputStream extends InputStream {
+    private static final byte[] EOF = new byte[0];
+
+    /**
+     * Underlying stream, accessed only by the read-ahead thread (after construction)
+     */
+    final InputStream in;
+    final ExecutorService executor;
+    /**
+     * Blocks being decoded, bounded queue, so it also limits number of blocks in flight
+     */
+    final BlockingQueue<Future<byte[]>> blocks;
+    private Thread readAheadThread;
+    volatile boolean closed = false;
+
+    // Consumer state
+    byte[] current;
+    int currentPointer;
+    boolean eof = false;
+
+    /**
+     * @param in          underlying stream
+     * @param executor    executor to decode blocks in
+     * @param concurrency maximal number of blocks being decoded simultaneously (read ahead size)
+     */
+    OrderedBlockInputStream(InputStream in, ExecutorService executor, int concurrency) {
+        if (concurrency <= 0)
+            throw new IllegalArgumentException("concurrency must be a positive integer");
+        this.in = in;
+        this.executor = executor;
+        this.blocks = new ArrayBlockingQueue<>(concurrency);
+    }
+
+    /**
+     * Starts read-ahead thread, must be invoked at the end of the subclass constructor
+     */
+    final void start(String threadName) {
+        readAheadThread = new Thread(this::readAll, threadName);
+        readAheadThread.setDaemon(true);
+        readAheadThread.start();
+    }
+
+    /**
+     * Reads blocks from {@link #in} till the end of stream, executed in the read-ahead thread
+     */
+    abstract void readBlocks() throws Exception;
+
+    /**
+     * Submits decoding of a single block to the executor
+     */
+    final void submit(Callable<byte[]> decoder) throws InterruptedException {
+        put(executor.submit(decoder));
+    }
+
+    /**
+     * Reads stream decoded in the read-ahead thread till the end and puts its content in chunks
+     */
+    final void putDecoded(InputStream decoded, int chunkSize) throws IOException, InterruptedException {
+        while (true) {
+            byte[] chunk = new byte[chunkSize];
+            int read = readFully(decoded, chunk, 0, chunkSize);
+            if (read == 0)
+                return;
+            if (read < chunkSize)
+                chunk = Arrays.copyOf(chunk, read);
+            put(CompletableFuture.completedFuture(chunk));
+        }
+    }
+
+    private void readAll() {
+        try {
+            readBlocks();
+            put(CompletableFuture.completedFuture(EOF));
+        } catch (InterruptedException | InterruptedIOException e) {
+            // closed
+        } catch (Throwable e) {
+            if (closed)
+                return;
+            CompletableFuture<byte[]> error = new CompletableFuture<>();
+            error.completeExceptionally(e);
+            try {
+                put(error);
+            } catch (InterruptedException ie) {
+                // closed
+            }
+        }
+    }
+
+    private void put(Future<byte[]> block) throws InterruptedException {
+        if (closed)
+            throw new InterruptedException();
+        blocks.put(block);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock())
+            return -1;
+        return current[currentPointer++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!ensureBlock())
+            return -1;
+        int n = Math.min(len, current.length - currentPointer);
+        System.arraycopy(current, currentPointer, b, off, n);
+        currentPointer += n;
+        return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.length - currentPointer;
+    }
+
+    private boolean ensureBlock() throws IOException {
+        while (current == null || currentPointer == current.length) {
+            if (eof)
+                return false;
+            if (closed)
+                throw new IOException("Stream closed.");
+            byte[] block;
+            try {
+                block = blocks.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+            if (block == EOF) {
+                eof = true;
+                current = null;
+                return false;
+            }
+            current = block;
+            currentPointer = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        readAheadThread.interrupt();
+        Future<byte[]> f;
+        while ((f = blocks.poll()) != null)
+            f.cancel(false);
+        in.close();
+    }
+
+    static int readFully(InputStream in, byte[] buffer, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int read = in.read(buffer, off + total, len - total);
+            if (read == -1)
+                break;
+            total += read;
+        }
+        return total;
+    }
+}
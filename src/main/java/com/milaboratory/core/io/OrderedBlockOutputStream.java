@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Base class for output streams encoding data blocks concurrently.
+ *
+ * Data is split into blocks of fixed size, each block is encoded in the provided executor ({@link #encode(byte[],
+ * int)}), and encoded blocks are written to the underlying stream in the original order. Number of blocks in flight
+ * is limited, writer waits for the oldest block before submitting a new one. Executor is not owned by the stream and
+ * is not shut down on close.
+ */
+abstract class OrderedBlockOutputStream extends OutputStream {
+    /**
+     * Underlying stream
+     */
+    final OutputStream out;
+    final ExecutorService executor;
+    /**
+     * Maximal number of blocks being encoded simultaneously
+     */
+    final int concurrency;
+    /**
+     * Blocks being encoded, in the order of submission
+     */
+    final ArrayDeque<Future<byte[]>> blocks = new ArrayDeque<>();
+    byte[] block;
+    int blockPointer;
+    boolean blockSubmitted = false;
+    boolean closed = false;
+
+    /**
+     * @param out         underlying stream
+     * @param executor    executor to encode blocks in
+     * @param concurrency maximal number of blocks being encoded simultaneously
+     * @param blockSize   size of uncompressed data in a single block
+     */
+    OrderedBlockOutputStream(OutputStream out, ExecutorService executor, int concurrency, int blockSize) {
+        if (concurrency <= 0)
+            throw new IllegalArgumentException("concurrency must be a positive integer");
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("blockSize must be a positive integer");
+        this.out = out;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Encodes a single block, executed in the executor
+     */
+    abstract byte[] encode(byte[] data, int length) throws Exception;
+
+    /**
+     * Writes end of stream marker (if any) after all blocks, invoked once on close
+     */
+    abstract void writeTrailer() throws IOException;
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockPointer++] = (byte) b;
+        if (blockPointer == block.length)
+            submitBlock();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockPointer);
+            System.arraycopy(b, off, block, blockPointer, n);
+            blockPointer += n;
+            off += n;
+            len -= n;
+            if (blockPointer == block.length)
+                submitBlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed.");
+    }
+
+    private void submitBlock() throws IOException {
+        if (blockPointer == 0)
+            return;
+        // back-pressure: waiting for the oldest block before submitting a new one
+        while (blocks.size() >= concurrency)
+            writeBlock(blocks.poll());
+        final byte[] data = block;
+        final int length = blockPointer;
+        blocks.offer(executor.submit(() -> encode(data, length)));
+        blockSubmitted = true;
+        block = new byte[data.length];
+        blockPointer = 0;
+    }
+
+    private void writeBlock(Future<byte[]> block) throws IOException {
+        try {
+            out.write(block.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeAll() throws IOException {
+        submitBlock();
+        while (!blocks.isEmpty())
+            writeBlock(blocks.poll());
+    }
+
+    /**
+     * Finishes current block, waits for all pending blocks to be written and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeAll();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            writeAll();
+            writeTrailer();
+        } finally {
+            closed = true;
+            Future<byte[]> f;
+            while ((f = blocks.poll()) != null)
+                f.cancel(false);
+            out.close();
+        }
+    }
+}
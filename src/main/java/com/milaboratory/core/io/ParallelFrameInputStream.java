@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decompressing input stream for frame-based formats ({@link CompressionType#ZSTD} and {@link CompressionType#LZ4}).
+ *
+ * Frames are split from the underlying stream by a read-ahead thread (by walking frame and block headers) and
+ * decompressed concurrently in the provided executor. Decompressed frames are returned in the original order. Only
+ * frames with content size stored in the frame header and not exceeding the limit are decompressed this way (streams
+ * written by {@link ParallelFrameOutputStream} consist of such moderately sized frames). Starting from the first frame
+ * of unknown or too large size, the rest of the stream is decompressed by a streaming decoder in the read-ahead thread,
+ * so that frames are never held in memory as a whole.
+ */
+public final class ParallelFrameInputStream extends OrderedBlockInputStream {
+    /**
+     * Default maximal content size of a frame decompressed as a whole
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 1 << 26;
+    /**
+     * Size of decompressed chunks produced by streaming decoder
+     */
+    static final int STREAMING_CHUNK_SIZE = 1 << 16;
+
+    final FrameCodec codec;
+    /**
+     * Maximal content size of a frame decompressed as a whole
+     */
+    final int maxFrameSize;
+
+    /**
+     * Creates stream using common fork-join pool to decompress frames.
+     *
+     * @param in          compressed stream
+     * @param type        compression type, {@link CompressionType#ZSTD} or {@link CompressionType#LZ4}
+     * @param concurrency maximal number of frames being decompressed simultaneously
+     */
+    public ParallelFrameInputStream(InputStream in, CompressionType type, int concurrency) {
+        this(in, type, ForkJoinPool.commonPool(), concurrency);
+    }
+
+    /**
+     * @param in          compressed stream
+     * @param type        compression type, {@link CompressionType#ZSTD} or {@link CompressionType#LZ4}
+     * @param executor    executor to decompress frames in
+     * @param concurrency maximal number of frames being decompressed simultaneously (read ahead size)
+     */
+    public ParallelFrameInputStream(InputStream in, CompressionType type, ExecutorService executor, int concurrency) {
+        this(in, type, executor, concurrency, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param in           compressed stream
+     * @param type         compression type, {@link CompressionType#ZSTD} or {@link CompressionType#LZ4}
+     * @param executor     executor to decompress frames in
+     * @param concurrency  maximal number of frames being decompressed simultaneously (read ahead size)
+     * @param maxFrameSize maximal content size of a frame decompressed as a whole, stream is decompressed sequentially
+     *                     starting from the first larger frame
+     */
+    public ParallelFrameInputStream(InputStream in, CompressionType type, ExecutorService executor, int concurrency,
+                                    int maxFrameSize) {
+        super(in instanceof BufferedInputStream ? in : new BufferedInputStream(in, 1 << 16), executor, concurrency);
+        if (maxFrameSize < 0)
+            throw new IllegalArgumentException("maxFrameSize must be a non-negative integer");
+        this.codec = FrameCodec.forType(type);
+        this.maxFrameSize = maxFrameSize;
+        start("ParallelFrame-read-ahead");
+    }
+
+    @Override
+    void readBlocks() throws Exception {
+        long contentSize;
+        while ((contentSize = codec.peekContentSize(in)) != FrameCodec.END_OF_STREAM) {
+            if (contentSize == FrameCodec.UNKNOWN_CONTENT_SIZE || contentSize > maxFrameSize) {
+                putDecoded(codec.createInputStream(in), STREAMING_CHUNK_SIZE);
+                return;
+            }
+            final byte[] frame = codec.readFrame(in);
+            if (contentSize == 0)
+                // skippable or empty frame, no data
+                continue;
+            final int size = (int) contentSize;
+            submit(() -> codec.decompress(frame, size));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compressing output stream for frame-based formats ({@link CompressionType#ZSTD} and {@link CompressionType#LZ4}).
+ *
+ * Data is split into blocks, each block is compressed in the provided executor as an independent frame, and frames
+ * are written to the underlying stream in the original order. Concatenated frames form a valid stream readable by any
+ * implementation of the format, and can be decompressed in parallel by {@link ParallelFrameInputStream} (each frame
+ * stores its content size).
+ */
+public final class ParallelFrameOutputStream extends OrderedBlockOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    final FrameCodec codec;
+
+    /**
+     * Creates stream using common fork-join pool to compress frames.
+     *
+     * @param out         underlying stream
+     * @param type        compression type, {@link CompressionType#ZSTD} or {@link CompressionType#LZ4}
+     * @param concurrency maximal number of frames being compressed simultaneously
+     */
+    public ParallelFrameOutputStream(OutputStream out, CompressionType type, int concurrency) {
+        this(out, type, ForkJoinPool.commonPool(), concurrency, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out         underlying stream
+     * @param type        compression type, {@link CompressionType#ZSTD} or {@link CompressionType#LZ4}
+     * @param executor    executor to compress frames in
+     * @param concurrency maximal number of frames being compressed simultaneously
+     * @param blockSize   size of uncompressed data in a single frame
+     */
+    public ParallelFrameOutputStream(OutputStream out, CompressionType type, ExecutorService executor,
+                                     int concurrency, int blockSize) {
+        super(out, executor, concurrency, blockSize);
+        this.codec = FrameCodec.forType(type);
+    }
+
+    @Override
+    byte[] encode(byte[] data, int length) throws IOException {
+        return codec.compress(data, 0, length);
+    }
+
+    @Override
+    void writeTrailer() throws IOException {
+        if (!blockSubmitted)
+            // some decoders don't accept empty streams, so writing a frame without data
+            out.write(codec.compress(block, 0, 0));
+    }
+}
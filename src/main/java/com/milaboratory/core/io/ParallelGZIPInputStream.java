@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Gzip decompressing input stream that performs decompression outside the consumer thread.
+ *
+ * If the stream is in BGZF format (blocked gzip, each member stores its compressed size in the "BC" extra subfield),
+ * members are read from the underlying stream by a read-ahead thread and inflated concurrently in the provided
+ * executor. Decompressed members are returned in the original order.
+ *
+ * Ordinary single- or multi-member gzip streams carry no information about member boundaries, so such streams are
+ * decompressed sequentially, but in a separate read-ahead thread, so that inflation overlaps with the consumer.
+ */
+public final class ParallelGZIPInputStream extends OrderedBlockInputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    static final int GZIP_HEADER_SIZE = 12;
+    static final int MAX_EXTRA_LENGTH = 0xFFFF;
+    static final int FEXTRA = 4;
+
+    /**
+     * Size of decompressed chunks for non-BGZF streams
+     */
+    final int chunkSize;
+    /**
+     * True if input stream is in BGZF format
+     */
+    final boolean bgzf;
+
+    /**
+     * Creates parallel gzip stream using common fork-join pool to inflate BGZF blocks.
+     *
+     * @param in          compressed stream
+     * @param concurrency maximal number of blocks being decompressed simultaneously
+     */
+    public ParallelGZIPInputStream(InputStream in, int concurrency) throws IOException {
+        this(in, ForkJoinPool.commonPool(), concurrency, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param in          compressed stream
+     * @param executor    executor to inflate BGZF blocks in
+     * @param concurrency maximal number of blocks being decompressed simultaneously (read ahead size)
+     * @param chunkSize   size of chunks produced by read-ahead thread for ordinary (non-BGZF) gzip streams
+     */
+    public ParallelGZIPInputStream(InputStream in, ExecutorService executor, int concurrency, int chunkSize)
+            throws IOException {
+        super(in.markSupported() ? in : new BufferedInputStream(in, DEFAULT_CHUNK_SIZE), executor, concurrency);
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be a positive integer");
+        this.chunkSize = chunkSize;
+        this.bgzf = isBGZF(this.in);
+        start("ParallelGZIP-read-ahead");
+    }
+
+    /**
+     * Returns true if the stream was detected to be in BGZF format, so members are inflated concurrently
+     */
+    public boolean isBGZF() {
+        return bgzf;
+    }
+
+    @Override
+    void readBlocks() throws Exception {
+        if (!bgzf) {
+            putDecoded(new GZIPInputStream(in, Math.min(chunkSize, DEFAULT_CHUNK_SIZE)), chunkSize);
+            return;
+        }
+
+        final byte[] header = new byte[GZIP_HEADER_SIZE];
+        while (true) {
+            int read = readFully(in, header, 0, GZIP_HEADER_SIZE);
+            if (read == 0)
+                return;
+            if (read != GZIP_HEADER_SIZE)
+                throw new EOFException("Premature end of BGZF stream.");
+            checkHeader(header);
+
+            int xLen = readUShort(header, 10);
+            byte[] extra = new byte[xLen];
+            if (readFully(in, extra, 0, xLen) != xLen)
+                throw new EOFException("Premature end of BGZF stream.");
+            int bSize = findBlockSize(extra);
+            if (bSize < 0)
+                throw new IOException("Not a BGZF block: no BC extra subfield.");
+
+            // compressed data + CRC32 + ISIZE
+            int remaining = bSize + 1 - GZIP_HEADER_SIZE - xLen;
+            if (remaining < 8)
+                throw new IOException("Malformed BGZF block.");
+            byte[] block = new byte[remaining];
+            if (readFully(in, block, 0, remaining) != remaining)
+                throw new EOFException("Premature end of BGZF stream.");
+
+            submit(() -> inflateMember(block));
+        }
+    }
+
+    /**
+     * Inflates raw deflate data of a single gzip member, checks CRC32 and size from the trailer.
+     *
+     * @param block compressed data followed by eight byte gzip trailer
+     */
+    static byte[] inflateMember(byte[] block) throws IOException {
+        int dataLength = block.length - 8;
+        int crc = readInt(block, dataLength);
+        int iSize = readInt(block, dataLength + 4);
+        if (iSize < 0)
+            throw new IOException("Too large gzip member.");
+        byte[] result = new byte[iSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, 0, dataLength);
+            int n = 0;
+            while (!inflater.finished()) {
+                int r = inflater.inflate(result, n, iSize - n);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary() || n == iSize))
+                    break;
+                n += r;
+            }
+            if (n != iSize || !inflater.finished())
+                throw new IOException("Malformed gzip member: size mismatch.");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(result, 0, iSize);
+        if ((int) crc32.getValue() != crc)
+            throw new IOException("Malformed gzip member: CRC32 mismatch.");
+        return result;
+    }
+
+    /**
+     * Checks whether the stream starts with BGZF block header, stream position is not changed
+     *
+     * @param in stream supporting mark / reset
+     */
+    static boolean isBGZF(InputStream in) throws IOException {
+        in.mark(GZIP_HEADER_SIZE + MAX_EXTRA_LENGTH);
+        try {
+            byte[] header = new byte[GZIP_HEADER_SIZE];
+            if (readFully(in, header, 0, GZIP_HEADER_SIZE) != GZIP_HEADER_SIZE)
+                return false;
+            if (!isGZIPHeader(header) || (header[3] & FEXTRA) == 0)
+                return false;
+            int xLen = readUShort(header, 10);
+            byte[] extra = new byte[xLen];
+            if (readFully(in, extra, 0, xLen) != xLen)
+                return false;
+            return findBlockSize(extra) >= 0;
+        } finally {
+            in.reset();
+        }
+    }
+
+    static void checkHeader(byte[] header) throws IOException {
+        if (!isGZIPHeader(header))
+            throw new IOException("Not in GZIP format.");
+        if ((header[3] & FEXTRA) == 0)
+            throw new IOException("Not a BGZF block: no extra field.");
+    }
+
+    static boolean isGZIPHeader(byte[] header) {
+        return (header[0] & 0xFF) == 0x1f && (header[1] & 0xFF) == 0x8b && header[2] == 8;
+    }
+
+    /**
+     * Returns BSIZE value (total block size minus 1) from BGZF extra field, or -1 if "BC" subfield is absent
+     */
+    static int findBlockSize(byte[] extra) {
+        int pointer = 0;
+        while (pointer + 4 <= extra.length) {
+            int sLen = readUShort(extra, pointer + 2);
+            if (extra[pointer] == 'B' && extra[pointer + 1] == 'C' && sLen == 2 && pointer + 6 <= extra.length)
+                return readUShort(extra, pointer + 4);
+            pointer += 4 + sLen;
+        }
+        return -1;
+    }
+
+    static int readUShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return readUShort(data, offset) | (readUShort(data, offset + 2) << 16);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compressing output stream that deflates data blocks concurrently.
+ *
+ * Data is split into blocks, each block is compressed in the provided executor as an independent gzip member with the
+ * BGZF "BC" extra subfield, and members are written to the underlying stream in the original order. Output is a valid
+ * multi-member gzip stream readable by any gzip implementation, and a valid BGZF stream, so it can be decompressed
+ * in parallel by {@link ParallelGZIPInputStream}.
+ */
+public final class ParallelGZIPOutputStream extends OrderedBlockOutputStream {
+    /**
+     * Maximal size of uncompressed data in a single block, so that compressed block always fits BGZF size limit
+     */
+    public static final int MAX_BLOCK_SIZE = 0xFF00;
+    static final int BLOCK_HEADER_SIZE = 18;
+    static final int BLOCK_TRAILER_SIZE = 8;
+    static final int MAX_COMPRESSED_BLOCK_SIZE = 1 << 16;
+    /**
+     * Empty BGZF block marking the end of file
+     */
+    static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 0x42, 0x43, 2, 0, 0x1b, 0, 3, 0,
+            0, 0, 0, 0, 0, 0, 0, 0};
+
+    final int level;
+
+    /**
+     * Creates parallel gzip stream using common fork-join pool to deflate blocks.
+     *
+     * @param out         underlying stream
+     * @param concurrency maximal number of blocks being compressed simultaneously
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int concurrency) {
+        this(out, ForkJoinPool.commonPool(), concurrency, Deflater.DEFAULT_COMPRESSION, MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out         underlying stream
+     * @param executor    executor to deflate blocks in
+     * @param concurrency maximal number of blocks being compressed simultaneously
+     * @param level       compression level (see {@link Deflater})
+     * @param blockSize   size of uncompressed data in a single block, must not exceed {@link #MAX_BLOCK_SIZE}
+     */
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor, int concurrency,
+                                    int level, int blockSize) {
+        super(out, executor, concurrency, checkBlockSize(blockSize));
+        this.level = level;
+    }
+
+    private static int checkBlockSize(int blockSize) {
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("blockSize must be in [1, " + MAX_BLOCK_SIZE + "]");
+        return blockSize;
+    }
+
+    @Override
+    byte[] encode(byte[] data, int length) {
+        return deflateBlock(data, length, level);
+    }
+
+    @Override
+    void writeTrailer() throws IOException {
+        out.write(EOF_BLOCK);
+    }
+
+    /**
+     * Compresses data into a single BGZF block (gzip member with "BC" extra subfield)
+     */
+    static byte[] deflateBlock(byte[] data, int length, int level) {
+        byte[] result = deflateBlock0(data, length, level);
+        if (result == null)
+            // incompressible data, stored blocks are guaranteed to fit BGZF size limit
+            result = deflateBlock0(data, length, Deflater.NO_COMPRESSION);
+        return result;
+    }
+
+    private static byte[] deflateBlock0(byte[] data, int length, int level) {
+        byte[] result = new byte[MAX_COMPRESSED_BLOCK_SIZE];
+        int capacity = MAX_COMPRESSED_BLOCK_SIZE - BLOCK_HEADER_SIZE - BLOCK_TRAILER_SIZE;
+        int compressed = 0;
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (compressed == capacity)
+                    return null;
+                compressed += deflater.deflate(result, BLOCK_HEADER_SIZE + compressed, capacity - compressed);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        int blockSize = BLOCK_HEADER_SIZE + compressed + BLOCK_TRAILER_SIZE;
+        // gzip header with FEXTRA flag, OS = unknown
+        result[0] = 0x1f;
+        result[1] = (byte) 0x8b;
+        result[2] = 8;
+        result[3] = 4;
+        result[9] = (byte) 0xff;
+        // XLEN = 6, "BC" subfield of length 2 holding total block size minus 1
+        writeShort(result, 10, 6);
+        result[12] = 'B';
+        result[13] = 'C';
+        writeShort(result, 14, 2);
+        writeShort(result, 16, blockSize - 1);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, length);
+        writeInt(result, BLOCK_HEADER_SIZE + compressed, (int) crc32.getValue());
+        writeInt(result, BLOCK_HEADER_SIZE + compressed + 4, length);
+        return Arrays.copyOf(result, blockSize);
+    }
+
+    static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        writeShort(buffer, offset, value);
+        writeShort(buffer, offset + 2, value >>> 16);
+    }
+}
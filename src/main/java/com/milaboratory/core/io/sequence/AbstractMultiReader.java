@@ -15,6 +15,10 @@
  */
 package com.milaboratory.core.io.sequence;
 
+import cc.redberry.pipe.CUtils;
+import cc.redberry.pipe.OutputPort;
+import cc.redberry.pipe.blocks.Merger;
+import cc.redberry.pipe.util.Chunk;
 import com.milaboratory.util.CanReportProgress;
 
 /**
@@ -23,15 +27,62 @@ import com.milaboratory.util.CanReportProgress;
 public abstract class AbstractMultiReader<R extends SequenceRead>
         extends AbstractSequenceReader<R> implements CanReportProgress,
         SequenceReader<R>, SequenceReaderCloseable<R> {
+    /**
+     * Default number of reads transferred between decoding thread and consumer at once (in concurrent mode)
+     */
+    public static final int DEFAULT_CONCURRENT_CHUNK_SIZE = 256;
     private final SingleReader[] readers;
     private final CanReportProgress[] progressReporters;
+    /**
+     * Sources of reads, either readers themselves, or buffered ports filled by separate threads (in concurrent mode)
+     */
+    private final OutputPort<SingleRead>[] sources;
+    /**
+     * Background buffers, null if reads are taken in the calling thread
+     */
+    private final Merger<Chunk<SingleRead>>[] buffers;
 
     public AbstractMultiReader(SingleReader... readers) {
+        this(0, 0, readers);
+    }
+
+    /**
+     * Creates reader decoding each of the single readers in its own thread. Reads are transferred to the consumer
+     * thread in chunks through bounded buffers, so decoding threads are blocked if the consumer falls behind.
+     *
+     * @param chunkSize      number of reads transferred between threads at once
+     * @param bufferedChunks maximal number of chunks buffered for each of the single readers, 0 to take reads from all
+     *                       single readers in the calling thread
+     * @param readers        single readers
+     */
+    @SuppressWarnings("unchecked")
+    public AbstractMultiReader(int chunkSize, int bufferedChunks, SingleReader... readers) {
         for (SingleReader reader : readers)
             if (reader == null)
                 throw new NullPointerException();
 
         this.readers = readers;
+        this.sources = new OutputPort[readers.length];
+        if (bufferedChunks > 0) {
+            if (chunkSize <= 0)
+                throw new IllegalArgumentException("chunkSize must be a positive integer");
+            this.buffers = new Merger[readers.length];
+            for (int i = 0; i < readers.length; i++) {
+                // Merger closes its input port on close, hiding it, so single readers are closed only after the
+                // decoding threads are finished (see close())
+                final OutputPort<Chunk<SingleRead>> chunked = CUtils.chunked(readers[i], chunkSize);
+                buffers[i] = CUtils.buffered(new OutputPort<Chunk<SingleRead>>() {
+                    @Override
+                    public Chunk<SingleRead> take() {
+                        return chunked.take();
+                    }
+                }, bufferedChunks);
+                sources[i] = CUtils.unchunked(buffers[i]);
+            }
+        } else {
+            this.buffers = null;
+            System.arraycopy(readers, 0, sources, 0, readers.length);
+        }
         boolean crp = true;
         for (SingleReader reader : readers)
             crp &= reader instanceof CanReportProgress;
@@ -49,7 +100,7 @@ public abstract class AbstractMultiReader<R extends SequenceRead>
 
         boolean hasNulls = false, allNulls = true;
         for (int i = 0; i < reads.length; i++) {
-            reads[i] = readers[i].take();
+            reads[i] = sources[i].take();
             hasNulls |= (reads[i] == null);
             allNulls &= (reads[i] == null);
         }
@@ -70,6 +121,32 @@ public abstract class AbstractMultiReader<R extends SequenceRead>
     public void close() {
         RuntimeException exception = null;
 
+        if (buffers != null) {
+            for (Merger<Chunk<SingleRead>> buffer : buffers)
+                try {
+                    buffer.close();
+                } catch (RuntimeException e) {
+                    exception = e;
+                }
+
+            // Decoding threads may be still inside take() of the single readers, so readers can be closed only after
+            // all threads are finished
+            boolean interrupted = false;
+            for (Merger<Chunk<SingleRead>> buffer : buffers)
+                while (true)
+                    try {
+                        buffer.join();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (RuntimeException e) {
+                        exception = e;
+                        break;
+                    }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
         for (SingleReader reader : readers)
             if (reader != null)
                 try {
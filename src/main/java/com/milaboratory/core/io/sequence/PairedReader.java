@@ -23,6 +23,14 @@ public class PairedReader extends AbstractMultiReader<PairedRead> {
         super(readers);
     }
 
+    /**
+     * Creates reader decoding each of the mates in its own thread (see {@link AbstractMultiReader#AbstractMultiReader(int,
+     * int, SingleReader...)})
+     */
+    public PairedReader(int chunkSize, int bufferedChunks, SingleReader... readers) {
+        super(chunkSize, bufferedChunks, readers);
+    }
+
     @Override
     public PairedRead take() {
         SingleRead[] singleReads = takeReads();
@@ -18,34 +18,45 @@ package com.milaboratory.core.io.sequence;
 import com.milaboratory.core.io.sequence.fastq.QualityFormat;
 import com.milaboratory.core.sequence.NSequenceWithQuality;
 import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.util.BufferPool;
 import com.milaboratory.util.SingleIterator;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Iterator;
 
 /**
+ * Single read parsed lazily from raw FASTQ record data. Data is read from a byte buffer (wrapping byte array or
+ * memory-mapped region) only with absolute get operations, so it can be shared between reads and threads.
+ *
  * @author Dmitry Bolotin
  * @author Stanislav Poslavsky
  */
 public final class SingleReadLazy implements SingleRead {
     final long id;
-    final byte[] buffer;
+    ByteBuffer buffer;
     final int descriptionFrom;
     final short sequenceOffset, qualityOffset, dataLength, descriptionLength;
     final boolean replaceWildcards;
     final byte phredQualityOffset;
     NSequenceWithQuality sequenceWithQuality;
     String description;
+    /**
+     * Not null if buffer was borrowed from a pool, released as soon as sequence and quality are parsed (description of
+     * such reads is copied eagerly)
+     */
+    BufferPool.Buffer pooledBuffer;
 
     private SingleReadLazy(long id,
-                           byte[] buffer,
+                           ByteBuffer buffer,
                            int descriptionFrom,
                            short sequenceOffset,
                            short qualityOffset,
                            short dataLength,
                            short descriptionLength,
                            boolean replaceWildcards,
-                           byte phredQualityOffset) {
+                           byte phredQualityOffset,
+                           BufferPool.Buffer pooledBuffer) {
         this.id = id;
         this.buffer = buffer;
         this.descriptionFrom = descriptionFrom;
@@ -55,9 +66,12 @@ public final class SingleReadLazy implements SingleRead {
         this.descriptionLength = descriptionLength;
         this.replaceWildcards = replaceWildcards;
         this.phredQualityOffset = phredQualityOffset;
+        this.pooledBuffer = pooledBuffer;
+        if (pooledBuffer != null)
+            this.description = createDescription();
     }
 
-    private SingleReadLazy(long id, byte[] buffer, int descriptionFrom,
+    private SingleReadLazy(long id, ByteBuffer buffer, int descriptionFrom,
                            short sequenceOffset, short qualityOffset, short dataLength, short descriptionLength,
                            boolean replaceWildcards, byte phredQualityOffset, NSequenceWithQuality sequenceWithQuality,
                            String description) {
@@ -79,6 +93,9 @@ public final class SingleReadLazy implements SingleRead {
     }
 
     SingleReadLazy setReadId(long readId) {
+        if (pooledBuffer != null)
+            // Materializing this read to not share pooled buffer between two reads
+            materialize();
         return new SingleReadLazy(readId, buffer, descriptionFrom, sequenceOffset, qualityOffset,
                 dataLength, descriptionLength, replaceWildcards, phredQualityOffset, sequenceWithQuality, description);
     }
@@ -92,22 +109,64 @@ public final class SingleReadLazy implements SingleRead {
 
     @Override
     public NSequenceWithQuality getData() {
-        if (sequenceWithQuality == null)
-            sequenceWithQuality = createNSequenceWithQuality();
+        if (sequenceWithQuality == null) {
+            if (pooledBuffer == null)
+                sequenceWithQuality = createNSequenceWithQuality();
+            else
+                synchronized (this) {
+                    if (sequenceWithQuality == null) {
+                        sequenceWithQuality = createNSequenceWithQuality();
+                        release();
+                    }
+                }
+        }
         return sequenceWithQuality;
     }
 
+    /**
+     * Initializes all lazy fields. If the read was created from a pooled buffer, the buffer is released.
+     */
+    public void materialize() {
+        getData();
+        getDescription();
+    }
+
+    /**
+     * Releases pooled buffer this read was created from, without initialization of lazy fields. Any subsequent access
+     * to not yet initialized fields will fail. Use this method for reads that are discarded without processing.
+     */
+    public synchronized void release() {
+        if (pooledBuffer != null) {
+            pooledBuffer.release();
+            pooledBuffer = null;
+            buffer = null;
+        }
+    }
+
     private String createDescription() {
-        return new String(buffer, descriptionFrom, descriptionLength, Charset.defaultCharset());
+        if (buffer == null)
+            throw new IllegalStateException("Read is already released.");
+        return string(descriptionFrom, descriptionLength);
+    }
+
+    private String string(int from, int length) {
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + from, length, Charset.defaultCharset());
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = buffer.get(from + i);
+        return new String(bytes, Charset.defaultCharset());
     }
 
     private NSequenceWithQuality createNSequenceWithQuality() {
+        if (buffer == null)
+            throw new IllegalStateException("Read is already released.");
         try {
             return UnsafeFactory.fastqParse(buffer, descriptionFrom + sequenceOffset,
                     descriptionFrom + qualityOffset, dataLength, getQualityOffset(), id, replaceWildcards);
         } catch (Exception e) {
             throw new RuntimeException("Error while parsing read:\n" +
-                    new String(buffer, descriptionFrom - 1, qualityOffset + dataLength), e);
+                    string(descriptionFrom - 1, qualityOffset + dataLength), e);
         }
     }
 
@@ -142,12 +201,61 @@ public final class SingleReadLazy implements SingleRead {
                                         short dataLength,
                                         short descriptionLength,
                                         boolean replaceWildcards) {
+        return create(format, id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
+                descriptionLength, replaceWildcards, null);
+    }
+
+    /**
+     * @param pooledBuffer pooled buffer wrapping {@code buffer}, one reference to the pooled buffer is transferred
+     *                     to the created read, and will be released after the read is materialized or released
+     */
+    public static SingleReadLazy create(final QualityFormat format,
+                                        long id,
+                                        byte[] buffer,
+                                        int descriptionFrom,
+                                        short dataOffset,
+                                        short qualityOffset,
+                                        short dataLength,
+                                        short descriptionLength,
+                                        boolean replaceWildcards,
+                                        BufferPool.Buffer pooledBuffer) {
+        return create(format, id, ByteBuffer.wrap(buffer), descriptionFrom, dataOffset, qualityOffset, dataLength,
+                descriptionLength, replaceWildcards, pooledBuffer);
+    }
+
+    /**
+     * Creates read pointing to the (e.g. memory-mapped) byte buffer; buffer is accessed only with absolute get
+     * operations.
+     */
+    public static SingleReadLazy create(final QualityFormat format,
+                                        long id,
+                                        ByteBuffer buffer,
+                                        int descriptionFrom,
+                                        short dataOffset,
+                                        short qualityOffset,
+                                        short dataLength,
+                                        short descriptionLength,
+                                        boolean replaceWildcards) {
+        return create(format, id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
+                descriptionLength, replaceWildcards, null);
+    }
+
+    private static SingleReadLazy create(final QualityFormat format,
+                                         long id,
+                                         ByteBuffer buffer,
+                                         int descriptionFrom,
+                                         short dataOffset,
+                                         short qualityOffset,
+                                         short dataLength,
+                                         short descriptionLength,
+                                         boolean replaceWildcards,
+                                         BufferPool.Buffer pooledBuffer) {
         if (format == QualityFormat.Phred33)
             return new SingleReadLazy(id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
-                    descriptionLength, replaceWildcards, (byte) 33);
+                    descriptionLength, replaceWildcards, (byte) 33, pooledBuffer);
         else if (format == QualityFormat.Phred64)
             return new SingleReadLazy(id, buffer, descriptionFrom, dataOffset, qualityOffset, dataLength,
-                    descriptionLength, replaceWildcards, (byte) 64);
+                    descriptionLength, replaceWildcards, (byte) 64, pooledBuffer);
         throw new IllegalArgumentException("Unknown quality format.");
     }
 
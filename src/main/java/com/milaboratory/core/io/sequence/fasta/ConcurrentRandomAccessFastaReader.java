@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fasta;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static com.milaboratory.core.io.sequence.fasta.RandomAccessFastaIndex.*;
+
+/**
+ * Thread-safe variant of {@link RandomAccessFastaReader}.
+ *
+ * Sequences are read using positional {@link FileChannel#read(ByteBuffer, long)} into per-thread buffers, so
+ * concurrent requests (e.g. from {@link SequenceProvider}s used by several alignment threads) do not block each other.
+ * Letters are decoded in bulk using a lookup table built from the alphabet.
+ */
+public final class ConcurrentRandomAccessFastaReader<S extends Sequence<S>> implements AutoCloseable {
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+    /**
+     * Lookup table value for bytes to be skipped (line breaks and spaces)
+     */
+    static final byte SKIP = -2;
+    /**
+     * Lookup table value for bytes not corresponding to any letter
+     */
+    static final byte INVALID = -1;
+
+    private final FileChannel channel;
+    private final ThreadLocal<ByteBuffer> buffers;
+    final RandomAccessFastaIndex index;
+    final Alphabet<S> alphabet;
+    /**
+     * Symbol byte (unsigned) -> letter code, {@link #SKIP} or {@link #INVALID}
+     */
+    final byte[] decodingTable;
+
+    public ConcurrentRandomAccessFastaReader(String file, Alphabet<S> alphabet) {
+        this(Paths.get(file), alphabet);
+    }
+
+    public ConcurrentRandomAccessFastaReader(Path file, Alphabet<S> alphabet) {
+        this(file, index(file), alphabet);
+    }
+
+    public ConcurrentRandomAccessFastaReader(String file, Alphabet<S> alphabet, boolean saveIndexFile) {
+        this(Paths.get(file), alphabet, saveIndexFile);
+    }
+
+    public ConcurrentRandomAccessFastaReader(Path file, Alphabet<S> alphabet, boolean saveIndexFile) {
+        this(file, index(file, saveIndexFile), alphabet);
+    }
+
+    public ConcurrentRandomAccessFastaReader(Path file, RandomAccessFastaIndex index, Alphabet<S> alphabet) {
+        this(openChannel(file), index, alphabet, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel    file channel, will be closed together with this reader
+     * @param index      index of the file
+     * @param alphabet   alphabet
+     * @param bufferSize size of per-thread read buffers
+     */
+    public ConcurrentRandomAccessFastaReader(FileChannel channel, RandomAccessFastaIndex index, Alphabet<S> alphabet,
+                                             int bufferSize) {
+        this.channel = channel;
+        this.index = index;
+        this.alphabet = alphabet;
+        this.buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(bufferSize));
+        this.decodingTable = createDecodingTable(alphabet);
+    }
+
+    static byte[] createDecodingTable(Alphabet<?> alphabet) {
+        byte[] table = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            byte b = (byte) i;
+            if (b == '\n' || b == '\r' || Character.isSpaceChar(b))
+                table[i] = SKIP;
+            else
+                table[i] = alphabet.symbolToCode((char) b);
+        }
+        return table;
+    }
+
+    public Alphabet<S> getAlphabet() {
+        return alphabet;
+    }
+
+    public RandomAccessFastaIndex getIndex() {
+        return index;
+    }
+
+    public SequenceProvider<S> getSequenceProvider(int id) {
+        return getSequenceProvider(index.getRecordByIndex(id));
+    }
+
+    public SequenceProvider<S> getSequenceProvider(String id) {
+        return getSequenceProvider(index.getRecordByIdCheck(id));
+    }
+
+    public S getSequence(int id, Range range) {
+        return read(index.getRecordByIndex(id), range);
+    }
+
+    public S getSequence(String id, Range range) {
+        return read(index.getRecordByIdCheck(id), range);
+    }
+
+    private SequenceProvider<S> getSequenceProvider(final RandomAccessFastaIndex.IndexRecord record) {
+        return new SequenceProvider<S>() {
+            @Override
+            public void forceInitialize() {
+            }
+
+            @Override
+            public int size() {
+                return (int) record.getLength();
+            }
+
+            @Override
+            public S getRegion(Range range) {
+                return read(record, range);
+            }
+        };
+    }
+
+    private S read(RandomAccessFastaIndex.IndexRecord record, Range range) {
+        if (range.getUpper() > record.getLength())
+            throw new SequenceProviderIndexOutOfBoundsException(range.intersection(new Range(0, (int) record.getLength())));
+        try {
+            long qResult = record.queryPosition(range.getLower());
+            long position = extractFilePosition(qResult);
+            int toSkip = extractSkipLetters(qResult);
+            byte[] codes = new byte[range.length()];
+            int pointer = 0;
+
+            ByteBuffer buffer = buffers.get();
+            byte[] array = buffer.array();
+            byte code;
+            while (pointer < codes.length) {
+                // Reading chunk from file, position of the channel is not affected
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0)
+                    throw new EOFException("Unexpected end of FASTA file.");
+                position += read;
+
+                for (int i = 0; i < read && pointer < codes.length; i++) {
+                    code = decodingTable[array[i] & 0xFF];
+
+                    // Skipping delimiters
+                    if (code == SKIP)
+                        continue;
+
+                    // Processing letters
+                    if (toSkip > 0)
+                        --toSkip;
+                    else if (code == INVALID)
+                        throw new IllegalArgumentException("Unknown letter \'" + (char) array[i] + "\'");
+                    else
+                        codes[pointer++] = code;
+                }
+            }
+
+            S seq = alphabet.createBuilder().ensureCapacity(codes.length).append(codes).createAndDestroy();
+
+            // Returning result, invert if required
+            return seq.getRange(range.move(-range.getLower()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    private static FileChannel openChannel(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -20,10 +20,14 @@ import com.milaboratory.core.io.sequence.SingleRead;
 import com.milaboratory.core.io.sequence.SingleReadImpl;
 import com.milaboratory.core.io.sequence.SingleReadLazy;
 import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.util.BufferPool;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -51,6 +55,18 @@ public final class FastqRecordsReader implements AutoCloseable {
      * values.
      */
     final boolean replaceWildcards;
+    /**
+     * Background reader pre-filling pooled buffers, null if read-ahead is disabled
+     */
+    final ReadAhead readAhead;
+    /**
+     * Pooled buffer backing {@link #buffer} (if read-ahead is enabled)
+     */
+    BufferPool.Buffer currentPooledBuffer;
+    /**
+     * Position of the first byte of data in the buffer
+     */
+    int bufferStart;
 
     /**
      * See main constructor for parameters.
@@ -79,11 +95,43 @@ public final class FastqRecordsReader implements AutoCloseable {
      */
     private FastqRecordsReader(boolean lazyReads, InputDataWrapper inputStream, int bufferSize,
                                boolean replaceWildcards, boolean autoClose) {
+        this(lazyReads, inputStream, bufferSize, replaceWildcards, autoClose, null, 0);
+    }
+
+    /**
+     * Creates reader pre-filling buffers in a background thread.
+     *
+     * Buffers are taken from the pool and returned to it after all lazy reads created from them are materialized or
+     * released (see {@link SingleReadLazy#materialize()} and {@link SingleReadLazy#release()}). First quarter of each
+     * buffer is reserved for the tail of the previous buffer; longer records are assembled
+     * from several buffers into a separate array.
+     *
+     * @param lazyReads        use lazy implementation of reads (increases performance if reads processed in parallel)
+     * @param inputStream      input stream
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to
+     * @param autoClose        if {@literal true}, then this reader will be automatically closed after reading the last
+     *                         record
+     * @param pool             pool of buffers, buffer size of the pool is used as a buffer size of this reader
+     * @param readAheadBuffers number of buffers filled in advance
+     */
+    public FastqRecordsReader(boolean lazyReads, InputStream inputStream, boolean replaceWildcards,
+                              boolean autoClose, BufferPool pool, int readAheadBuffers) {
+        this(lazyReads, create(inputStream), pool.getBufferSize(), replaceWildcards, autoClose, pool, readAheadBuffers);
+    }
+
+    private FastqRecordsReader(boolean lazyReads, InputDataWrapper inputStream, int bufferSize,
+                               boolean replaceWildcards, boolean autoClose,
+                               BufferPool pool, int readAheadBuffers) {
         this.lazyReads = lazyReads;
         this.inputStream = inputStream;
         this.bufferSize = bufferSize;
         this.replaceWildcards = replaceWildcards;
         this.autoClose = autoClose;
+        if (readAheadBuffers > 0 && inputStream.isRandomAccess())
+            // buffer is reset on each seek (see resetBuffer()), so there is nothing to read in advance
+            throw new IllegalArgumentException("Read-ahead is not supported for random access input.");
+        this.readAhead = readAheadBuffers > 0 ? new ReadAhead(pool, readAheadBuffers) : null;
     }
 
     public SingleRead createRead(long id, QualityFormat format) {
@@ -96,7 +144,8 @@ public final class FastqRecordsReader implements AutoCloseable {
                     (short) (qualityBegin - descriptionBegin),
                     (short) (sequenceEnd - sequenceBegin),
                     (short) (sequenceBegin - descriptionBegin - 1),
-                    replaceWildcards);
+                    replaceWildcards,
+                    currentPooledBuffer == null ? null : currentPooledBuffer.retain());
         else
             return new SingleReadImpl(id,
                     UnsafeFactory.fastqParse(buffer, sequenceBegin, qualityBegin,
@@ -108,6 +157,10 @@ public final class FastqRecordsReader implements AutoCloseable {
     void fillBuffer(int size) throws IOException {
         if (closed.get())
             return;
+        if (readAhead != null) {
+            fillBufferFromReadAhead();
+            return;
+        }
         byte[] newBuffer;
         if (lazyReads)
             newBuffer = new byte[size];//if lazy reads, we shall not overwrite buffer content!
@@ -129,13 +182,66 @@ public final class FastqRecordsReader implements AutoCloseable {
             close();
     }
 
+    private void fillBufferFromReadAhead() throws IOException {
+        Chunk chunk = readAhead.take();
+        int tail = currentBufferSize - pointer;
+        readAhead.lastTail = tail;
+        if (chunk.buffer == null) { // end of stream was reached on previous chunk
+            if (tail == 0)
+                pointer = currentBufferSize = 0;
+            onEOF();
+            return;
+        }
+
+        BufferPool.Buffer nextPooled = chunk.buffer;
+        byte[] next = nextPooled.getData();
+        int start;
+        if (tail <= chunk.offset) {
+            // tail of the previous buffer (beginning of incomplete record) fits into reserved space
+            start = chunk.offset - tail;
+            if (tail != 0)
+                System.arraycopy(buffer, pointer, next, start, tail);
+        } else {
+            // merging into a new non-pooled array, used only for very long records
+            next = new byte[tail + chunk.length];
+            System.arraycopy(buffer, pointer, next, 0, tail);
+            System.arraycopy(chunk.buffer.getData(), chunk.offset, next, tail, chunk.length);
+            nextPooled.release();
+            nextPooled = null;
+            start = 0;
+        }
+
+        // Releasing reference of this reader, buffer will return to the pool
+        // after all lazy reads created from it are materialized
+        if (currentPooledBuffer != null)
+            currentPooledBuffer.release();
+        currentPooledBuffer = nextPooled;
+
+        buffer = next;
+        bufferStart = pointer = start;
+        currentBufferSize = start + tail + chunk.length;
+
+        if (chunk.length == 0 && tail == 0) {
+            pointer = currentBufferSize = 0;
+            onEOF();
+        }
+    }
+
+    private void onEOF() {
+        if (autoClose)
+            close();
+    }
+
     public boolean nextRecord(boolean refillBuffer) throws IOException {
         int pass = -1; //number of tries to fillBuffer
 
         while (true) {
             ++pass;
-            if (pass == 2)// tried to fill buffer 2 times
-                if (closed.get()) //no more data in file (close was invoked by fillBuffer)
+            if (pass >= 2 // tried to fill buffer 2 times
+                    // in read-ahead mode records longer than a single chunk are assembled from several chunks
+                    && (readAhead == null || readAhead.exhausted || closed.get()
+                    || readAhead.lastTail >= bufferSize))
+                if (closed.get() || (readAhead != null && readAhead.exhausted)) //no more data in file
                     throw new IllegalFileFormatException("Unexpected end of file.");
                 else //buffer is smaller than length of record (seq + qual + descript )!
                     throw new IllegalFileFormatException("Too small buffer.");
@@ -210,7 +316,8 @@ public final class FastqRecordsReader implements AutoCloseable {
             if (qualityEnd - qualityBegin != sequenceEnd - sequenceBegin)
                 throw new IllegalFileFormatException("Quality and sequence have different sizes.");
 
-            this.pointer = pointer + 1;
+            // last record of the file may be not terminated by the delimiter
+            this.pointer = Math.min(pointer + 1, currentBufferSize);
             return true;
         }
     }
@@ -223,6 +330,9 @@ public final class FastqRecordsReader implements AutoCloseable {
         if (!closed.compareAndSet(false, true))
             return;
 
+        if (readAhead != null)
+            readAhead.interrupt();
+
         //is synchronized with itself and _next calls,
         //so no synchronization on inner reader is needed
         try {
@@ -231,19 +341,168 @@ public final class FastqRecordsReader implements AutoCloseable {
             }
         } catch (IOException ex) {
             throw new RuntimeException(ex);
+        } finally {
+            if (readAhead != null) {
+                readAhead.releaseQueued();
+                releaseCurrentBuffer();
+            }
         }
     }
 
+    /**
+     * Returns pooled buffer held by this reader to the pool. Not yet parsed data (if any) is moved to a new array, as
+     * reader may be closed (e.g. automatically on end of stream) before the last records are parsed.
+     */
+    private void releaseCurrentBuffer() {
+        if (currentPooledBuffer == null)
+            return;
+        int tail = currentBufferSize - pointer;
+        byte[] rest = new byte[tail];
+        System.arraycopy(buffer, pointer, rest, 0, tail);
+        buffer = rest;
+        bufferStart = pointer = 0;
+        currentBufferSize = tail;
+        currentPooledBuffer.release();
+        currentPooledBuffer = null;
+    }
+
+    /**
+     * Drops buffered data, so the next record is read from the current position of the underlying random access
+     * file. Only random access input is supported (read-ahead is rejected for such input in the constructor).
+     */
     void resetBuffer() throws IOException {
+        if (!inputStream.isRandomAccess())
+            throw new IllegalStateException("Buffer reset is supported only for random access input.");
         pointer = currentBufferSize = 0;
         fillBuffer(bufferSize);
     }
 
+    private static final class Chunk {
+        /**
+         * Null if end of stream was already reached
+         */
+        final BufferPool.Buffer buffer;
+        /**
+         * Offset of data in the buffer
+         */
+        final int offset;
+        final int length;
+        final Throwable error;
+
+        Chunk(BufferPool.Buffer buffer, int offset, int length, Throwable error) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Fills pooled buffers in a background thread
+     */
+    private final class ReadAhead implements Runnable {
+        final BufferPool pool;
+        final BlockingQueue<Chunk> chunks;
+        final int offset;
+        final Thread thread;
+        /**
+         * Accessed only by consumer
+         */
+        boolean eof = false, exhausted = false;
+        /**
+         * Size of the incomplete record moved from the previous buffer on the last fill
+         */
+        int lastTail = 0;
+
+        ReadAhead(BufferPool pool, int readAheadBuffers) {
+            this.pool = pool;
+            this.chunks = new ArrayBlockingQueue<>(readAheadBuffers);
+            this.offset = pool.getBufferSize() / 4;
+            this.thread = new Thread(this, "FastqRecordsReader-read-ahead");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        public void run() {
+            BufferPool.Buffer buffer = null;
+            try {
+                while (!closed.get()) {
+                    buffer = pool.acquire();
+                    int length = buffer.getData().length - offset;
+                    int read = inputStream.readFully(buffer.getData(), offset, length);
+                    chunks.put(new Chunk(buffer, offset, read, null));
+                    buffer = null;
+                    if (read < length)
+                        return;
+                }
+            } catch (InterruptedException e) {
+                // closed
+            } catch (Throwable e) {
+                if (closed.get())
+                    return;
+                try {
+                    chunks.put(new Chunk(null, 0, 0, e));
+                } catch (InterruptedException ie) {
+                    // closed
+                }
+            } finally {
+                if (buffer != null)
+                    buffer.release();
+                // chunks put after the reader was closed are not taken by anyone
+                if (closed.get())
+                    releaseQueued();
+            }
+        }
+
+        Chunk take() throws IOException {
+            if (eof) {
+                exhausted = true;
+                return new Chunk(null, 0, 0, null);
+            }
+            Chunk chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (chunk.error != null) {
+                eof = true;
+                if (chunk.error instanceof IOException)
+                    throw (IOException) chunk.error;
+                throw new IOException(chunk.error);
+            }
+            if (chunk.length < chunk.buffer.getData().length - chunk.offset)
+                eof = true;
+            return chunk;
+        }
+
+        void interrupt() {
+            thread.interrupt();
+        }
+
+        /**
+         * Returns buffers of all chunks not taken by consumer to the pool. Safe to be called concurrently from the
+         * consumer and read-ahead threads.
+         */
+        void releaseQueued() {
+            Chunk chunk;
+            while ((chunk = chunks.poll()) != null)
+                if (chunk.buffer != null)
+                    chunk.buffer.release();
+        }
+    }
+
     private static abstract class InputDataWrapper {
         abstract int read(byte[] buffer, int off, int len) throws IOException;
 
         abstract void close() throws IOException;
 
+        boolean isRandomAccess() {
+            return false;
+        }
+
         int readFully(byte[] buffer, int off, int len) throws IOException {
             int total = 0;
             do {
@@ -285,6 +544,11 @@ public final class FastqRecordsReader implements AutoCloseable {
             public void close() throws IOException {
                 stream.close();
             }
+
+            @Override
+            boolean isRandomAccess() {
+                return true;
+            }
         };
     }
 
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.sequence.*;
+import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.util.CanReportProgress;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reader of uncompressed FASTQ files backed by memory-mapped file windows.
+ *
+ * File is mapped in large windows (sliding to the next window for files larger than the window size); lazy reads
+ * ({@link SingleReadLazy}) point directly into the mapped region, so records are never copied to intermediate
+ * buffers. Mapped windows are released by the garbage collector after all reads referencing them are collected.
+ */
+public final class MappedFastqReader implements SingleReader, CanReportProgress {
+    public static final int DEFAULT_WINDOW_SIZE = 1 << 30;
+    private static final byte DELIMITER = '\n';
+
+    final FileChannel channel;
+    final long size;
+    final int windowSize;
+    final QualityFormat format;
+    final boolean replaceWildcards, lazyReads;
+
+    // Current window
+    MappedByteBuffer window;
+    long windowPosition;
+    int pointer;
+    int descriptionBegin, sequenceBegin, sequenceEnd, qualityBegin;
+
+    long idCounter;
+    volatile boolean closed = false;
+
+    /**
+     * Creates reader of lazy reads, quality format is guessed automatically
+     *
+     * @param file uncompressed FASTQ file
+     */
+    public MappedFastqReader(File file) throws IOException {
+        this(file, false, true);
+    }
+
+    /**
+     * Creates reader, quality format is guessed automatically
+     *
+     * @param file             uncompressed FASTQ file
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to
+     *                         a minimum possible values
+     * @param lazyReads        if {@literal true}, reads will point directly into the mapped file region and parsed on
+     *                         demand
+     */
+    public MappedFastqReader(File file, boolean replaceWildcards, boolean lazyReads) throws IOException {
+        this(file, null, replaceWildcards, lazyReads, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file             uncompressed FASTQ file
+     * @param format           read quality encoding format, {@literal null} to guess format automatically
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to
+     *                         a minimum possible values
+     * @param lazyReads        if {@literal true}, reads will point directly into the mapped file region and parsed on
+     *                         demand
+     * @param windowSize       size of mapped window, must be larger than the longest record
+     */
+    public MappedFastqReader(File file, QualityFormat format, boolean replaceWildcards, boolean lazyReads,
+                             int windowSize) throws IOException {
+        if (windowSize <= 0)
+            throw new IllegalArgumentException("windowSize must be a positive integer");
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.replaceWildcards = replaceWildcards;
+        this.lazyReads = lazyReads;
+        map(0);
+        if (format == null)
+            format = guessFormat();
+        this.format = format;
+    }
+
+    private void map(long position) throws IOException {
+        windowPosition = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+        pointer = 0;
+    }
+
+    public QualityFormat getQualityFormat() {
+        return format;
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        if (closed)
+            return null;
+        try {
+            if (!nextRecord()) {
+                close();
+                return null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("While reading fastq record with id=" + idCounter +
+                    " (line number = " + (idCounter * 4) + ")", e);
+        }
+        return createRead(idCounter++);
+    }
+
+    private SingleRead createRead(long id) {
+        if (lazyReads)
+            return SingleReadLazy.create(format,
+                    id,
+                    window,
+                    descriptionBegin,
+                    (short) (sequenceBegin - descriptionBegin),
+                    (short) (qualityBegin - descriptionBegin),
+                    (short) (sequenceEnd - sequenceBegin),
+                    (short) (sequenceBegin - descriptionBegin - 1),
+                    replaceWildcards);
+        else {
+            byte[] description = new byte[sequenceBegin - descriptionBegin - 1];
+            for (int i = 0; i < description.length; i++)
+                description[i] = window.get(descriptionBegin + i);
+            return new SingleReadImpl(id,
+                    UnsafeFactory.fastqParse(window, sequenceBegin, qualityBegin,
+                            sequenceEnd - sequenceBegin, format.getOffset(), id, replaceWildcards),
+                    new String(description, Charset.defaultCharset()));
+        }
+    }
+
+    /**
+     * Finds next record, slides the window if required
+     */
+    boolean nextRecord() throws IOException {
+        while (true) {
+            int limit = window.limit();
+            if (pointer == limit && windowPosition + limit == size)
+                return false;
+            boolean eof = windowPosition + limit == size;
+            if (parseRecord(limit, eof))
+                return true;
+            if (eof)
+                throw new IllegalFileFormatException("Unexpected end of file.");
+            if (pointer == 0)
+                throw new IllegalFileFormatException("Too small window.");
+            map(windowPosition + pointer);
+        }
+    }
+
+    /**
+     * Parses record starting at current pointer
+     *
+     * @return false if record is not complete inside current window
+     */
+    private boolean parseRecord(int limit, boolean eof) {
+        int pointer = this.pointer;
+        if (pointer == limit)
+            return false;
+        if (window.get(pointer) != '@') // fastq specification
+            throw new IllegalFileFormatException("No '@' character found in the beginning of fastq description line.");
+
+        descriptionBegin = ++pointer;
+        if ((pointer = indexOfDelimiter(pointer, limit)) == -1)
+            return false;
+        sequenceBegin = ++pointer;
+        if ((pointer = indexOfDelimiter(pointer, limit)) == -1)
+            return false;
+        sequenceEnd = pointer++;
+        if (pointer == limit)
+            return false;
+        if (window.get(pointer) != '+') // fastq specification
+            throw new IllegalFileFormatException("No '+' character found in the beginning of the third line of the fastq record.");
+        if ((pointer = indexOfDelimiter(pointer, limit)) == -1)
+            return false;
+        qualityBegin = ++pointer;
+        int qualityEnd = indexOfDelimiter(pointer, limit);
+        if (qualityEnd == -1) {
+            if (!eof)
+                return false;
+            qualityEnd = limit;
+        }
+        if (qualityEnd - qualityBegin != sequenceEnd - sequenceBegin)
+            throw new IllegalFileFormatException("Quality and sequence have different sizes.");
+        this.pointer = Math.min(qualityEnd + 1, limit);
+        return true;
+    }
+
+    private int indexOfDelimiter(int from, int limit) {
+        for (int i = from; i < limit; ++i)
+            if (window.get(i) == DELIMITER)
+                return i;
+        return -1;
+    }
+
+    private QualityFormat guessFormat() throws IOException {
+        boolean signal33 = false, signal64 = false;
+        int k, chr;
+        int limit = (int) Math.min(window.limit(), SingleFastqReader.DEFAULT_BUFFER_SIZE);
+        while (parseRecord(limit, limit == size)) {
+            for (k = qualityBegin; k < qualityBegin + sequenceEnd - sequenceBegin; ++k) {
+                chr = (int) window.get(k);
+                signal33 |= (chr - 64) < QualityFormat.Phred64.getMinValue();
+                signal64 |= (chr - 33) > QualityFormat.Phred33.getMaxValue();
+            }
+        }
+        pointer = 0;
+        if (signal33 == signal64)
+            return SingleFastqReader.DEFAULT_QUALITY_FORMAT;
+        return signal33 ? QualityFormat.Phred33 : QualityFormat.Phred64;
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return idCounter;
+    }
+
+    @Override
+    public double getProgress() {
+        return size == 0 ? 1.0 : 1.0 * (windowPosition + pointer) / size;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            // mapped windows stay valid after the channel is closed
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by dbolotin on 23/06/14.
@@ -49,6 +50,36 @@ public final class PairedFastqReader extends PairedReader {
                 new SingleFastqReader(fileName2, replaceWildcards, lazyReads));
     }
 
+    /**
+     * Creates paired reader, for gzipped files decompression is performed in separate read-ahead threads (BGZF blocks
+     * are inflated concurrently)
+     *
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently for each of the files, 0
+     *                                 to decompress in the calling thread
+     */
+    public PairedFastqReader(File file1, File file2,
+                             boolean replaceWildcards, boolean lazyReads,
+                             int decompressionConcurrency) throws IOException {
+        this(new SingleFastqReader(file1, replaceWildcards, lazyReads, decompressionConcurrency),
+                new SingleFastqReader(file2, replaceWildcards, lazyReads, decompressionConcurrency));
+    }
+
+    /**
+     * Creates paired reader decoding each of the mate files in its own thread
+     *
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently for each of the files, 0
+     *                                 to decompress in the mate decoding thread
+     * @param bufferedChunks           maximal number of read chunks buffered for each of the mates, 0 to decode both
+     *                                 files in the calling thread
+     */
+    public PairedFastqReader(File file1, File file2,
+                             boolean replaceWildcards, boolean lazyReads,
+                             int decompressionConcurrency, int bufferedChunks) throws IOException {
+        this(new SingleFastqReader(file1, replaceWildcards, lazyReads, decompressionConcurrency),
+                new SingleFastqReader(file2, replaceWildcards, lazyReads, decompressionConcurrency),
+                bufferedChunks);
+    }
+
     public PairedFastqReader(File file1, File file2,
                              boolean replaceWildcards) throws IOException {
         this(new SingleFastqReader(file1, replaceWildcards, true),
@@ -99,6 +130,17 @@ public final class PairedFastqReader extends PairedReader {
                 new SingleFastqReader(stream2, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads));
     }
 
+    public PairedFastqReader(InputStream stream1, InputStream stream2,
+                             QualityFormat format, CompressionType ct,
+                             boolean guessQualityFormat, int bufferSize,
+                             boolean replaceWildcards, boolean lazyReads,
+                             ExecutorService decompressionExecutor, int decompressionConcurrency) throws IOException {
+        this(new SingleFastqReader(stream1, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads,
+                        decompressionExecutor, decompressionConcurrency),
+                new SingleFastqReader(stream2, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads,
+                        decompressionExecutor, decompressionConcurrency));
+    }
+
     public PairedFastqReader(InputStream stream1, InputStream stream2) throws IOException {
         super(new SingleFastqReader(stream1), new SingleFastqReader(stream2));
     }
@@ -114,4 +156,14 @@ public final class PairedFastqReader extends PairedReader {
     public PairedFastqReader(SingleFastqReader reader1, SingleFastqReader reader2) {
         super(reader1, reader2);
     }
+
+    /**
+     * Creates paired reader decoding each of the mates in its own thread
+     *
+     * @param bufferedChunks maximal number of read chunks buffered for each of the mates, 0 to decode both mates in the
+     *                       calling thread
+     */
+    public PairedFastqReader(SingleFastqReader reader1, SingleFastqReader reader2, int bufferedChunks) {
+        super(DEFAULT_CONCURRENT_CHUNK_SIZE, bufferedChunks, reader1, reader2);
+    }
 }
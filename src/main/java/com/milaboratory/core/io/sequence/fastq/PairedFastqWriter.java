@@ -22,6 +22,8 @@ import com.milaboratory.core.io.sequence.PairedSequenceWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
 
 public final class PairedFastqWriter implements PairedSequenceWriter {
     SingleFastqWriter[] writers;
@@ -39,6 +41,28 @@ public final class PairedFastqWriter implements PairedSequenceWriter {
                 new SingleFastqWriter(new FileOutputStream(file2), qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE));
     }
 
+    /**
+     * Creates writer, for gzipped files blocks are compressed concurrently in common fork-join pool (see {@link
+     * com.milaboratory.core.io.ParallelGZIPOutputStream})
+     *
+     * @param compressionConcurrency maximal number of gzip blocks compressed concurrently for each of the files, 0 to
+     *                               compress in the calling thread
+     */
+    public PairedFastqWriter(File file1, File file2, QualityFormat qualityFormat,
+                             int compressionConcurrency) throws IOException {
+        this(new SingleFastqWriter(file1, qualityFormat, compressionConcurrency),
+                new SingleFastqWriter(file2, qualityFormat, compressionConcurrency));
+    }
+
+    public PairedFastqWriter(OutputStream stream1, OutputStream stream2, QualityFormat qualityFormat,
+                             CompressionType ct, ExecutorService compressionExecutor,
+                             int compressionConcurrency) throws IOException {
+        this(new SingleFastqWriter(stream1, qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE,
+                        compressionExecutor, compressionConcurrency),
+                new SingleFastqWriter(stream2, qualityFormat, ct, SingleFastqWriter.DEFAULT_BUFFER_SIZE,
+                        compressionExecutor, compressionConcurrency));
+    }
+
     public PairedFastqWriter(SingleFastqWriter writer1, SingleFastqWriter writer2) {
         this.writers = new SingleFastqWriter[]{writer1, writer2};
     }
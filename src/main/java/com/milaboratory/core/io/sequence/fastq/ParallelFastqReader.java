@@ -0,0 +1,660 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadImpl;
+import com.milaboratory.core.io.sequence.SingleReadLazy;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.util.CanReportProgress;
+import com.milaboratory.util.CountingInputStream;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * FASTQ reader splitting input into large chunks that are parsed concurrently on worker threads.
+ *
+ * For uncompressed files, the file is split into fixed byte ranges read with positional reads; each worker
+ * resynchronizes to the first valid record boundary in its range and parses all records starting inside the range.
+ * For streams (including BGZF / gzip input, which is decompressed with {@link
+ * com.milaboratory.core.io.ParallelGZIPInputStream}), chunks are cut sequentially at the last complete record, and
+ * then parsed concurrently.
+ *
+ * Reads are returned in the original order, with sequential ids, exactly as they are returned by {@link
+ * SingleFastqReader}.
+ */
+public final class ParallelFastqReader implements SingleReader, CanReportProgress {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 21;
+    /**
+     * Initial number of bytes read after the end of the range to complete the last record of the range
+     */
+    static final int INITIAL_OVERLAP = 1 << 14;
+    static final int INCOMPLETE = -1, INVALID = -2;
+
+    final QualityFormat format;
+    final boolean replaceWildcards, lazyReads;
+    final ExecutorService executor;
+    final int concurrency;
+    final ChunkSource source;
+
+    /**
+     * Chunks being read, scanned and parsed
+     */
+    final ArrayDeque<CompletableFuture<Records>> chunks = new ArrayDeque<>();
+    /**
+     * Id of the first read in the next submitted chunk
+     */
+    CompletableFuture<Long> nextIdBase = CompletableFuture.completedFuture(0L);
+    boolean sourceDrained = false;
+    SingleRead[] current;
+    int currentPointer;
+    long idCounter = 0;
+    volatile boolean closed = false;
+
+    /**
+     * Creates reader with default settings (quality format is guessed, compression type is detected from file name,
+     * all available processors are used)
+     *
+     * @param file file with reads
+     */
+    public ParallelFastqReader(File file) throws IOException {
+        this(file, null, false, true, ForkJoinPool.commonPool(),
+                Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param file             file with reads, uncompressed files are split into byte ranges, compressed files are
+     *                         decompressed in a separate thread (or concurrently, for BGZF) and split into chunks
+     *                         sequentially
+     * @param format           read quality encoding format, {@literal null} to guess format from the first chunk
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to
+     *                         a minimum possible values
+     * @param lazyReads        specifies whether created reads should be lazy initialized
+     * @param executor         executor to read and parse chunks in
+     * @param concurrency      number of chunks processed simultaneously
+     * @param chunkSize        size of chunks in bytes
+     */
+    public ParallelFastqReader(File file, QualityFormat format,
+                               boolean replaceWildcards, boolean lazyReads,
+                               ExecutorService executor, int concurrency, int chunkSize) throws IOException {
+        this(createSource(file, executor, concurrency, chunkSize), format, replaceWildcards, lazyReads,
+                executor, concurrency);
+    }
+
+    /**
+     * @param stream           stream with reads
+     * @param format           read quality encoding format, {@literal null} to guess format from the first chunk
+     * @param ct               type of compression (NONE, GZIP, etc)
+     * @param replaceWildcards if {@literal true}, all wildcards (like N) will be converted to a random basic letters
+     *                         matching corresponding wildcards, and their corresponding quality scores will be set to
+     *                         a minimum possible values
+     * @param lazyReads        specifies whether created reads should be lazy initialized
+     * @param executor         executor to decompress and parse chunks in (stream is read in a dedicated thread)
+     * @param concurrency      number of chunks processed simultaneously
+     * @param chunkSize        size of chunks in bytes
+     */
+    public ParallelFastqReader(InputStream stream, QualityFormat format, CompressionType ct,
+                               boolean replaceWildcards, boolean lazyReads,
+                               ExecutorService executor, int concurrency, int chunkSize) throws IOException {
+        this(new StreamSource(stream, ct, executor, concurrency, chunkSize), format, replaceWildcards, lazyReads,
+                executor, concurrency);
+    }
+
+    private ParallelFastqReader(ChunkSource source, QualityFormat format,
+                                boolean replaceWildcards, boolean lazyReads,
+                                ExecutorService executor, int concurrency) {
+        if (concurrency <= 0)
+            throw new IllegalArgumentException("concurrency must be a positive integer");
+        this.source = source;
+        this.replaceWildcards = replaceWildcards;
+        this.lazyReads = lazyReads;
+        this.executor = executor;
+        this.concurrency = concurrency;
+
+        CompletableFuture<Records> first = null;
+        if (format == null) {
+            // Guessing format from the first chunk
+            first = source.next();
+            if (first == null) {
+                sourceDrained = true;
+                format = SingleFastqReader.DEFAULT_QUALITY_FORMAT;
+            } else
+                format = guessFormat(join(first));
+        }
+        this.format = format;
+        if (first != null)
+            submit(first);
+        while (chunks.size() < concurrency && !sourceDrained)
+            submitNext();
+    }
+
+    private static ChunkSource createSource(File file, ExecutorService executor,
+                                            int concurrency, int chunkSize) throws IOException {
+        CompressionType ct = CompressionType.detectCompressionType(file);
+        if (ct == CompressionType.None)
+            return new FileSource(file, executor, chunkSize);
+        else
+            return new StreamSource(new FileInputStream(file), ct, executor, concurrency, chunkSize);
+    }
+
+    public QualityFormat getQualityFormat() {
+        return format;
+    }
+
+    private void submitNext() {
+        CompletableFuture<Records> records = source.next();
+        if (records == null)
+            sourceDrained = true;
+        else
+            submit(records);
+    }
+
+    private void submit(CompletableFuture<Records> records) {
+        CompletableFuture<Long> base = nextIdBase;
+        nextIdBase = base.thenCombine(records, (b, r) -> b + r.count);
+        chunks.offer(records.thenCombineAsync(base, this::createReads, executor));
+    }
+
+    private Records createReads(Records records, long idBase) {
+        int[] layout = records.layout;
+        byte[] buffer = records.buffer;
+        SingleRead[] reads = new SingleRead[records.count];
+        for (int i = 0; i < records.count; i++) {
+            int descriptionBegin = layout[4 * i],
+                    sequenceBegin = layout[4 * i + 1],
+                    sequenceEnd = layout[4 * i + 2],
+                    qualityBegin = layout[4 * i + 3];
+            long id = idBase + i;
+            if (lazyReads)
+                reads[i] = SingleReadLazy.create(format,
+                        id,
+                        buffer,
+                        descriptionBegin,
+                        (short) (sequenceBegin - descriptionBegin),
+                        (short) (qualityBegin - descriptionBegin),
+                        (short) (sequenceEnd - sequenceBegin),
+                        (short) (sequenceBegin - descriptionBegin - 1),
+                        replaceWildcards);
+            else
+                reads[i] = new SingleReadImpl(id,
+                        UnsafeFactory.fastqParse(buffer, sequenceBegin, qualityBegin,
+                                sequenceEnd - sequenceBegin, format.getOffset(), id, replaceWildcards),
+                        new String(buffer, descriptionBegin, sequenceBegin - descriptionBegin - 1));
+        }
+        records.reads = reads;
+        return records;
+    }
+
+    @Override
+    public synchronized SingleRead take() {
+        while (current == null || currentPointer == current.length) {
+            if (closed)
+                return null;
+            CompletableFuture<Records> chunk = chunks.poll();
+            if (chunk == null) {
+                close();
+                return null;
+            }
+            if (!sourceDrained)
+                submitNext();
+            Records records = join(chunk);
+            if (records.last) {
+                sourceDrained = true;
+                for (CompletableFuture<Records> c : chunks)
+                    c.cancel(false);
+                chunks.clear();
+            }
+            current = records.reads;
+            currentPointer = 0;
+        }
+        ++idCounter;
+        return current[currentPointer++];
+    }
+
+    @Override
+    public synchronized long getNumberOfReads() {
+        return idCounter;
+    }
+
+    @Override
+    public double getProgress() {
+        return source.getProgress();
+    }
+
+    @Override
+    public boolean isFinished() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        synchronized (this) {
+            for (CompletableFuture<Records> c : chunks)
+                c.cancel(false);
+            chunks.clear();
+            current = null;
+        }
+        try {
+            source.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static QualityFormat guessFormat(Records records) {
+        boolean signal33 = false, signal64 = false;
+        int chr;
+        for (int i = 0; i < records.count; i++) {
+            int qualityBegin = records.layout[4 * i + 3],
+                    length = records.layout[4 * i + 2] - records.layout[4 * i + 1];
+            for (int k = qualityBegin; k < qualityBegin + length; ++k) {
+                chr = (int) records.buffer[k];
+                signal33 |= (chr - 64) < QualityFormat.Phred64.getMinValue();
+                signal64 |= (chr - 33) > QualityFormat.Phred33.getMaxValue();
+            }
+        }
+        if (signal33 == signal64)
+            return SingleFastqReader.DEFAULT_QUALITY_FORMAT;
+        return signal33 ? QualityFormat.Phred33 : QualityFormat.Phred64;
+    }
+
+    /**
+     * Scanned chunk
+     */
+    static final class Records {
+        final byte[] buffer;
+        /**
+         * Four positions (description begin, sequence begin, sequence end, quality begin) for each record
+         */
+        final int[] layout;
+        final int count;
+        /**
+         * True if this is the last chunk of input
+         */
+        final boolean last;
+        /**
+         * Set after parsing
+         */
+        SingleRead[] reads;
+
+        Records(byte[] buffer, int[] layout, int count, boolean last) {
+            this.buffer = buffer;
+            this.layout = layout;
+            this.count = count;
+            this.last = last;
+        }
+    }
+
+    /**
+     * Scans all records starting in [from, to) range.
+     *
+     * @param eof true if limit is the end of input data
+     * @return scanned records or null if the last record is not complete inside the buffer
+     */
+    static Records scan(byte[] buffer, int from, int to, int limit, boolean eof, boolean last) {
+        int[] layout = new int[64];
+        int count = 0, pointer = from;
+        while (pointer < to && pointer < limit) {
+            if (layout.length < 4 * (count + 1))
+                layout = Arrays.copyOf(layout, layout.length * 2);
+            pointer = parseRecord(buffer, pointer, limit, eof, layout, 4 * count, true);
+            if (pointer == INCOMPLETE)
+                return null;
+            ++count;
+        }
+        return new Records(buffer, layout, count, last);
+    }
+
+    /**
+     * Finds the first valid record start in [from, to) range, checking the record is complete and well-formed.
+     *
+     * @return position of the record, or INCOMPLETE if more data is required to make decision, or INVALID if no
+     * records start inside the range
+     */
+    static int resync(byte[] buffer, int from, int to, int limit, boolean eof) {
+        int[] tmp = new int[4];
+        for (int pointer = Math.max(from, 1); pointer < to && pointer < limit; ++pointer) {
+            if (buffer[pointer] != '@' || buffer[pointer - 1] != '\n')
+                continue;
+            int r = parseRecord(buffer, pointer, limit, eof, tmp, 0, false);
+            if (r == INCOMPLETE)
+                return INCOMPLETE;
+            if (r != INVALID)
+                return pointer;
+        }
+        return INVALID;
+    }
+
+    /**
+     * Parses single record.
+     *
+     * @param strict if true exception will be thrown for malformed records, otherwise INVALID will be returned
+     * @return position of the next record, or INCOMPLETE, or INVALID (only if strict == false)
+     */
+    static int parseRecord(byte[] buffer, int pointer, int limit, boolean eof,
+                           int[] layout, int layoutOffset, boolean strict) {
+        if (buffer[pointer] != '@') // fastq specification
+            return invalid(strict, "No '@' character found in the beginning of fastq description line.");
+        int descriptionBegin = pointer + 1;
+        int end = indexOfDelimiter(buffer, descriptionBegin, limit);
+        if (end == -1)
+            return incomplete(eof, strict);
+        int sequenceBegin = end + 1;
+        end = indexOfDelimiter(buffer, sequenceBegin, limit);
+        if (end == -1)
+            return incomplete(eof, strict);
+        int sequenceEnd = end;
+        if (end + 1 >= limit)
+            return incomplete(eof, strict);
+        if (buffer[end + 1] != '+') // fastq specification
+            return invalid(strict, "No '+' character found in the beginning of the third line of the fastq record.");
+        end = indexOfDelimiter(buffer, end + 1, limit);
+        if (end == -1)
+            return incomplete(eof, strict);
+        int qualityBegin = end + 1;
+        int qualityEnd = qualityBegin + sequenceEnd - sequenceBegin;
+        int next;
+        if (qualityEnd > limit || (qualityEnd == limit && !eof))
+            return incomplete(eof, strict);
+        else if (qualityEnd == limit)
+            next = limit;
+        else if (buffer[qualityEnd] != '\n')
+            return invalid(strict, "Quality and sequence have different sizes.");
+        else
+            next = qualityEnd + 1;
+        layout[layoutOffset] = descriptionBegin;
+        layout[layoutOffset + 1] = sequenceBegin;
+        layout[layoutOffset + 2] = sequenceEnd;
+        layout[layoutOffset + 3] = qualityBegin;
+        return next;
+    }
+
+    private static int incomplete(boolean eof, boolean strict) {
+        if (eof)
+            return invalid(strict, "Unexpected end of file.");
+        return INCOMPLETE;
+    }
+
+    private static int invalid(boolean strict, String message) {
+        if (strict)
+            throw new IllegalFileFormatException(message);
+        return INVALID;
+    }
+
+    private static int indexOfDelimiter(byte[] buffer, int from, int limit) {
+        for (int i = from; i < limit; ++i)
+            if (buffer[i] == '\n')
+                return i;
+        return -1;
+    }
+
+    private static abstract class ChunkSource implements Closeable {
+        /**
+         * Called sequentially, returns next chunk or null if there are no more chunks
+         */
+        abstract CompletableFuture<Records> next();
+
+        abstract double getProgress();
+    }
+
+    /**
+     * Uncompressed file split into fixed ranges, each range is read and scanned independently
+     */
+    private static final class FileSource extends ChunkSource {
+        final FileChannel channel;
+        final ExecutorService executor;
+        final int chunkSize;
+        final long size;
+        final long numberOfChunks;
+        volatile long nextChunk = 0;
+
+        FileSource(File file, ExecutorService executor, int chunkSize) throws IOException {
+            if (chunkSize <= 0)
+                throw new IllegalArgumentException("chunkSize must be a positive integer");
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.executor = executor;
+            this.chunkSize = chunkSize;
+            this.size = channel.size();
+            this.numberOfChunks = (size + chunkSize - 1) / chunkSize;
+        }
+
+        @Override
+        CompletableFuture<Records> next() {
+            if (nextChunk == numberOfChunks)
+                return null;
+            long index = nextChunk++;
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readRange(index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+
+        private Records readRange(long index) throws IOException {
+            long rangeFrom = index * chunkSize,
+                    rangeTo = Math.min(size, rangeFrom + chunkSize);
+            // one preceding byte is required to detect the beginning of the line
+            long readFrom = index == 0 ? 0 : rangeFrom - 1;
+            int overlap = Math.min(chunkSize, INITIAL_OVERLAP);
+            while (true) {
+                long readTo = Math.min(size, rangeTo + overlap);
+                boolean eof = readTo == size;
+                byte[] buffer = new byte[(int) (readTo - readFrom)];
+                readFully(buffer, readFrom);
+                int to = (int) (rangeTo - readFrom);
+                int start;
+                if (index == 0)
+                    start = 0;
+                else {
+                    start = resync(buffer, 1, to, buffer.length, eof);
+                    if (start == INVALID) // no records starting inside the range
+                        return new Records(buffer, new int[0], 0, rangeTo == size);
+                }
+                if (start != INCOMPLETE) {
+                    Records records = scan(buffer, start, to, buffer.length, eof, rangeTo == size);
+                    if (records != null)
+                        return records;
+                }
+                if (eof)
+                    throw new IllegalFileFormatException("Unexpected end of file.");
+                overlap *= 2;
+            }
+        }
+
+        private void readFully(byte[] buffer, long position) throws IOException {
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            while (bb.hasRemaining())
+                if (channel.read(bb, position + bb.position()) == -1)
+                    throw new EOFException();
+        }
+
+        @Override
+        double getProgress() {
+            return size == 0 ? 1.0 : Math.min(1.0, 1.0 * nextChunk * chunkSize / size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Stream is split into chunks sequentially (each chunk ends with a complete record), chunks are scanned
+     * concurrently. Stream is read in a dedicated thread: reading blocks until decompressed blocks are ready, and
+     * they are decompressed in the executor, so reading in the same executor may deadlock.
+     */
+    private static final class StreamSource extends ChunkSource {
+        final CountingInputStream countingInputStream;
+        final InputStream stream;
+        final ExecutorService executor;
+        final ExecutorService readThread;
+        final int chunkSize;
+        final long totalSize;
+        CompletableFuture<RawChunk> previous =
+                CompletableFuture.completedFuture(new RawChunk(new byte[0], 0, 0, false));
+
+        StreamSource(InputStream stream, CompressionType ct, ExecutorService executor,
+                     int concurrency, int chunkSize) throws IOException {
+            if (chunkSize <= 0)
+                throw new IllegalArgumentException("chunkSize must be a positive integer");
+            if (stream instanceof FileInputStream)
+                this.totalSize = ((FileInputStream) stream).getChannel().size();
+            else
+                this.totalSize = -1L;
+            this.countingInputStream = new CountingInputStream(stream);
+            this.stream = ct.createInputStream(countingInputStream, Math.max(chunkSize / 2, 2048),
+                    executor, concurrency);
+            this.executor = executor;
+            this.readThread = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ParallelFastqReader-read");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        CompletableFuture<Records> next() {
+            // Reading is performed sequentially, by chaining read operations
+            CompletableFuture<RawChunk> raw = previous.thenApplyAsync(p -> {
+                try {
+                    return readNext(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, readThread);
+            previous = raw;
+            return raw.thenApplyAsync(r -> scan(r.buffer, 0, r.cut, r.cut, r.last, r.last), executor);
+        }
+
+        private RawChunk readNext(RawChunk previous) throws IOException {
+            if (previous.last)
+                return new RawChunk(new byte[0], 0, 0, true);
+            int tailLength = previous.length - previous.cut;
+            byte[] buffer = new byte[Math.max(chunkSize, 2 * tailLength)];
+            System.arraycopy(previous.buffer, previous.cut, buffer, 0, tailLength);
+            int length = tailLength;
+            while (true) {
+                int read = readFully(buffer, length, buffer.length - length);
+                length += read;
+                if (length < buffer.length) // end of stream
+                    return new RawChunk(buffer, length, length, true);
+                int cut = findCut(buffer, length);
+                if (cut > 0)
+                    return new RawChunk(buffer, cut, length, false);
+                // record is larger than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        private int readFully(byte[] buffer, int off, int len) throws IOException {
+            int total = 0;
+            while (total < len) {
+                int read = stream.read(buffer, off + total, len - total);
+                if (read == -1)
+                    break;
+                total += read;
+            }
+            return total;
+        }
+
+        /**
+         * Returns start position of the last incomplete record in the buffer (buffer starts with a record)
+         */
+        static int findCut(byte[] buffer, int length) {
+            int[] tmp = new int[4];
+            int lookBack = INITIAL_OVERLAP;
+            while (true) {
+                int from = Math.max(0, length - lookBack);
+                int pointer = from == 0 ? 0 : resync(buffer, from, length, length, false);
+                if (pointer >= 0) {
+                    while (true) {
+                        if (pointer == length)
+                            return pointer;
+                        int next = parseRecord(buffer, pointer, length, false, tmp, 0, true);
+                        if (next == INCOMPLETE)
+                            return pointer;
+                        pointer = next;
+                    }
+                }
+                if (from == 0)
+                    return 0;
+                lookBack *= 2;
+            }
+        }
+
+        @Override
+        double getProgress() {
+            return totalSize == -1 ? Double.NaN : (1.0 * countingInputStream.getBytesRead() / totalSize);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                stream.close();
+            } finally {
+                readThread.shutdownNow();
+            }
+        }
+    }
+
+    private static final class RawChunk {
+        final byte[] buffer;
+        /**
+         * All records before this position are complete
+         */
+        final int cut;
+        final int length;
+        final boolean last;
+
+        RawChunk(byte[] buffer, int cut, int length, boolean last) {
+            this.buffer = buffer;
+            this.cut = cut;
+            this.length = length;
+            this.last = last;
+        }
+    }
+}
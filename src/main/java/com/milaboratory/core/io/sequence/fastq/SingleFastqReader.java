@@ -18,7 +18,9 @@ package com.milaboratory.core.io.sequence.fastq;
 import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
 import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadLazy;
 import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.BufferPool;
 import com.milaboratory.util.CanReportProgress;
 import com.milaboratory.util.CountingInputStream;
 
@@ -26,6 +28,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Dmitry Bolotin
@@ -127,6 +131,25 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
                 true, DEFAULT_BUFFER_SIZE, replaceWildcards, lazyReads);
     }
 
+    /**
+     * Creates a {@link SingleRead} stream from a FASTQ files with single-end read data, for gzipped files
+     * decompression is performed in a separate read-ahead thread (BGZF blocks are inflated concurrently)
+     *
+     * @param file                     file with reads
+     * @param replaceWildcards         if {@literal true}, all wildcards (like N) will be converted to a random basic
+     *                                 letters matching corresponding wildcards, and their corresponding quality scores
+     *                                 will be set to a minimum possible values
+     * @param lazyReads                allow lazy initialization of single reads
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently, 0 to decompress in the
+     *                                 calling thread
+     * @throws IOException in case there is problem with reading from files
+     */
+    public SingleFastqReader(File file, boolean replaceWildcards, boolean lazyReads,
+                             int decompressionConcurrency) throws IOException {
+        this(new FileInputStream(file), DEFAULT_QUALITY_FORMAT, CompressionType.detectCompressionType(file),
+                true, DEFAULT_BUFFER_SIZE, replaceWildcards, lazyReads, decompressionConcurrency);
+    }
+
     /**
      * Creates a {@link SingleRead} stream from a FASTQ files with single-end read data
      *
@@ -236,6 +259,89 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
     public SingleFastqReader(InputStream stream, QualityFormat format, CompressionType ct,
                              boolean guessQualityFormat, int bufferSize, boolean replaceWildcards,
                              boolean lazyReads) throws IOException {
+        this(stream, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads, null, 0);
+    }
+
+    /**
+     * Creates a {@link SingleFastqReader} stream from a FASTQ files with single-end read data, performing gzip
+     * decompression in a separate read-ahead thread (BGZF blocks are inflated concurrently in the common fork-join
+     * pool)
+     *
+     * @param stream                   stream with reads
+     * @param format                   read quality encoding format, if {@code guessQualityFormat} is true this value
+     *                                 is used as a default format
+     * @param ct                       type of compression (NONE, GZIP, etc)
+     * @param guessQualityFormat       if true reader will try to guess quality string format, if guess fails {@code
+     *                                 format} will be used as a default quality string format, if {@code
+     *                                 format==null} exception will be thrown
+     * @param bufferSize               size of buffer
+     * @param replaceWildcards         if {@literal true}, all wildcards (like N) will be converted to a random basic
+     *                                 letters matching corresponding wildcards, and their corresponding quality scores
+     *                                 will be set to a minimum possible values
+     * @param lazyReads                specifies whether created reads should be lazy initialized
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently, 0 to decompress in the
+     *                                 calling thread
+     */
+    public SingleFastqReader(InputStream stream, QualityFormat format, CompressionType ct,
+                             boolean guessQualityFormat, int bufferSize, boolean replaceWildcards,
+                             boolean lazyReads, int decompressionConcurrency) throws IOException {
+        this(stream, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads,
+                ForkJoinPool.commonPool(), decompressionConcurrency);
+    }
+
+    /**
+     * Creates a {@link SingleFastqReader} stream from a FASTQ files with single-end read data
+     *
+     * @param stream                   stream with reads
+     * @param format                   read quality encoding format, if {@code guessQualityFormat} is true this value
+     *                                 is used as a default format
+     * @param ct                       type of compression (NONE, GZIP, etc)
+     * @param guessQualityFormat       if true reader will try to guess quality string format, if guess fails {@code
+     *                                 format} will be used as a default quality string format, if {@code
+     *                                 format==null} exception will be thrown
+     * @param bufferSize               size of buffer
+     * @param replaceWildcards         if {@literal true}, all wildcards (like N) will be converted to a random basic
+     *                                 letters matching corresponding wildcards, and their corresponding quality scores
+     *                                 will be set to a minimum possible values
+     * @param lazyReads                specifies whether created reads should be lazy initialized
+     * @param decompressionExecutor    executor to inflate BGZF blocks in
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently, 0 to decompress in the
+     *                                 calling thread
+     */
+    public SingleFastqReader(InputStream stream, QualityFormat format, CompressionType ct,
+                             boolean guessQualityFormat, int bufferSize, boolean replaceWildcards,
+                             boolean lazyReads, ExecutorService decompressionExecutor,
+                             int decompressionConcurrency) throws IOException {
+        this(stream, format, ct, guessQualityFormat, bufferSize, replaceWildcards, lazyReads,
+                decompressionExecutor, decompressionConcurrency, 0);
+    }
+
+    /**
+     * Creates a {@link SingleFastqReader} stream from a FASTQ files with single-end read data
+     *
+     * @param stream                   stream with reads
+     * @param format                   read quality encoding format, if {@code guessQualityFormat} is true this value
+     *                                 is used as a default format
+     * @param ct                       type of compression (NONE, GZIP, etc)
+     * @param guessQualityFormat       if true reader will try to guess quality string format, if guess fails {@code
+     *                                 format} will be used as a default quality string format, if {@code
+     *                                 format==null} exception will be thrown
+     * @param bufferSize               size of buffer
+     * @param replaceWildcards         if {@literal true}, all wildcards (like N) will be converted to a random basic
+     *                                 letters matching corresponding wildcards, and their corresponding quality scores
+     *                                 will be set to a minimum possible values
+     * @param lazyReads                specifies whether created reads should be lazy initialized
+     * @param decompressionExecutor    executor to inflate BGZF blocks in
+     * @param decompressionConcurrency maximal number of gzip blocks decompressed concurrently, 0 to decompress in the
+     *                                 calling thread
+     * @param readAheadBuffers         number of buffers filled in advance by a background thread, 0 to read in the
+     *                                 calling thread; buffers are pooled and reused after all lazy reads created from
+     *                                 them are materialized (see {@link SingleReadLazy#materialize()})
+     */
+    public SingleFastqReader(InputStream stream, QualityFormat format, CompressionType ct,
+                             boolean guessQualityFormat, int bufferSize, boolean replaceWildcards,
+                             boolean lazyReads, ExecutorService decompressionExecutor,
+                             int decompressionConcurrency, int readAheadBuffers) throws IOException {
         //Check for null
         if (stream == null)
             throw new NullPointerException();
@@ -248,14 +354,18 @@ public final class SingleFastqReader implements SingleReader, CanReportProgress,
         countingInputStream = new CountingInputStream(stream);
         //Initialization
         //Wrapping stream if un-compression needed
-        stream = ct.createInputStream(countingInputStream, Math.max(bufferSize / 2, 2048));
-        this.recordsReader = new FastqRecordsReader(lazyReads, stream, bufferSize, replaceWildcards, true);
+        stream = ct.createInputStream(countingInputStream, Math.max(bufferSize / 2, 2048),
+                decompressionExecutor, decompressionConcurrency);
+        this.recordsReader = readAheadBuffers > 0
+                ? new FastqRecordsReader(lazyReads, stream, replaceWildcards, true,
+                new BufferPool(bufferSize, 2 * readAheadBuffers + 2), readAheadBuffers)
+                : new FastqRecordsReader(lazyReads, stream, bufferSize, replaceWildcards, true);
 
         //Guessing quality format
         if (guessQualityFormat) {
             recordsReader.fillBuffer(bufferSize);
             QualityFormat f = guessFormat(); //Buffer minus ~ one read.
-            this.recordsReader.pointer = 0;
+            this.recordsReader.pointer = this.recordsReader.bufferStart;
 
             if (f != null)
                 format = f;
@@ -16,6 +16,7 @@
 package com.milaboratory.core.io.sequence.fastq;
 
 import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.ParallelGZIPOutputStream;
 import com.milaboratory.core.io.sequence.SingleRead;
 import com.milaboratory.core.io.sequence.SingleSequenceWriter;
 import com.milaboratory.core.sequence.NucleotideAlphabet;
@@ -26,6 +27,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public final class SingleFastqWriter implements SingleSequenceWriter {
     public static final int DEFAULT_BUFFER_SIZE = 131072;
@@ -58,8 +61,35 @@ public final class SingleFastqWriter implements SingleSequenceWriter {
         this(outputStream, qualityFormat, ct, DEFAULT_BUFFER_SIZE);
     }
 
+    /**
+     * Creates writer, for gzipped files blocks are compressed concurrently in common fork-join pool (see {@link
+     * ParallelGZIPOutputStream})
+     *
+     * @param compressionConcurrency maximal number of gzip blocks compressed concurrently, 0 to compress in the calling
+     *                               thread
+     */
+    public SingleFastqWriter(File file, QualityFormat qualityFormat, int compressionConcurrency) throws IOException {
+        this(new FileOutputStream(file), qualityFormat, CompressionType.detectCompressionType(file), DEFAULT_BUFFER_SIZE,
+                ForkJoinPool.commonPool(), compressionConcurrency);
+    }
+
     public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize) throws IOException {
-        this.outputStream = ct.createOutputStream(outputStream, bufferSize / 2);
+        this(outputStream, qualityFormat, ct, bufferSize, null, 0);
+    }
+
+    /**
+     * @param outputStream           output stream
+     * @param qualityFormat          quality format
+     * @param ct                     type of compression (NONE, GZIP, etc)
+     * @param bufferSize             size of buffer
+     * @param compressionExecutor    executor to deflate gzip blocks in
+     * @param compressionConcurrency maximal number of gzip blocks compressed concurrently, 0 to compress in the calling
+     *                               thread
+     */
+    public SingleFastqWriter(OutputStream outputStream, QualityFormat qualityFormat, CompressionType ct, int bufferSize,
+                             ExecutorService compressionExecutor, int compressionConcurrency) throws IOException {
+        this.outputStream = ct.createOutputStream(outputStream, bufferSize / 2,
+                compressionExecutor, compressionConcurrency);
         this.qualityFormat = qualityFormat;
         this.buffer = new byte[bufferSize];
     }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import com.milaboratory.core.io.sequence.*;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.PrimitivIOStateBuilder;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.Serializer;
+
+/**
+ * Compact serializer of sequence reads used in packed reads container.
+ *
+ * Record layout: varLong id, byte number of reads, then for each read: varInt length, nucleotides packed four per
+ * byte (2 bits per basic nucleotide), varInt number of wildcards followed by (varInt position delta, byte code) pairs,
+ * raw (optionally binned) quality values and description.
+ */
+final class PackedReadSerializer implements Serializer<SequenceRead> {
+    /**
+     * Upper bounds of quality bins (inclusive) and values representing each bin (Illumina-like 8-level scheme)
+     */
+    private static final byte[] BIN_UPPER_BOUNDS = {1, 9, 19, 24, 29, 34, 39, Byte.MAX_VALUE};
+    private static final byte[] BIN_VALUES = {0, 6, 15, 22, 27, 33, 37, 40};
+    private static final byte[] QUALITY_BINS = new byte[Byte.MAX_VALUE + 1];
+
+    static {
+        for (int q = 0, bin = 0; q <= Byte.MAX_VALUE; q++) {
+            if (q > BIN_UPPER_BOUNDS[bin])
+                ++bin;
+            QUALITY_BINS[q] = BIN_VALUES[bin];
+        }
+    }
+
+    final boolean binQualities;
+
+    PackedReadSerializer(boolean binQualities) {
+        this.binQualities = binQualities;
+    }
+
+    @Override
+    public void write(PrimitivO output, SequenceRead object) {
+        output.writeVarLong(object.getId());
+        output.writeByte(object.numberOfReads());
+        for (int i = 0; i < object.numberOfReads(); i++) {
+            SingleRead read = object.getRead(i);
+            writeSequence(output, read.getData().getSequence());
+            writeQuality(output, read.getData().getQuality());
+            output.writeObject(read.getDescription());
+        }
+    }
+
+    private static void writeSequence(PrimitivO output, NucleotideSequence sequence) {
+        int length = sequence.size();
+        output.writeVarInt(length);
+
+        byte[] packed = new byte[(length + 3) >>> 2];
+        int wildcards = 0;
+        for (int i = 0; i < length; i++) {
+            byte code = sequence.codeAt(i);
+            if (code > 3)
+                ++wildcards;
+            else
+                packed[i >>> 2] |= code << ((i & 3) << 1);
+        }
+        output.write(packed);
+
+        output.writeVarInt(wildcards);
+        if (wildcards == 0)
+            return;
+        int previous = 0;
+        for (int i = 0; i < length; i++) {
+            byte code = sequence.codeAt(i);
+            if (code > 3) {
+                output.writeVarInt(i - previous);
+                output.writeByte(code);
+                previous = i;
+            }
+        }
+    }
+
+    private void writeQuality(PrimitivO output, SequenceQuality quality) {
+        byte[] data = quality.asArray();
+        if (binQualities)
+            for (int i = 0; i < data.length; i++)
+                data[i] = bin(data[i]);
+        output.write(data);
+    }
+
+    static byte bin(byte quality) {
+        return quality < 0 ? quality : QUALITY_BINS[quality];
+    }
+
+    @Override
+    public SequenceRead read(PrimitivI input) {
+        long id = input.readVarLong();
+        int readsCount = input.readByte();
+        SingleRead[] reads = new SingleRead[readsCount];
+        for (int i = 0; i < readsCount; i++) {
+            int length = input.readVarInt();
+
+            byte[] packed = new byte[(length + 3) >>> 2];
+            input.readFully(packed);
+            byte[] sequence = new byte[length];
+            for (int j = 0; j < length; j++)
+                sequence[j] = (byte) ((packed[j >>> 2] >>> ((j & 3) << 1)) & 3);
+
+            int wildcards = input.readVarInt();
+            for (int j = 0, position = 0; j < wildcards; j++) {
+                position += input.readVarInt();
+                sequence[position] = input.readByte();
+            }
+
+            byte[] quality = new byte[length];
+            input.readFully(quality);
+
+            NSequenceWithQuality data = UnsafeFactory.nSequenceWithQuality(sequence, quality);
+            reads[i] = new SingleReadImpl(id, data, input.readObject(String.class));
+        }
+        if (readsCount == 1)
+            return reads[0];
+        if (readsCount == 2)
+            return new PairedRead(reads);
+        return new MultiRead(reads);
+    }
+
+    @Override
+    public boolean isReference() {
+        return false;
+    }
+
+    @Override
+    public boolean handlesReference() {
+        return false;
+    }
+
+    /**
+     * Creates PrimitivIO state builder with this serializer registered for all sequence reads
+     */
+    static PrimitivIOStateBuilder stateBuilder(boolean binQualities) {
+        PrimitivIOStateBuilder builder = new PrimitivIOStateBuilder();
+        builder.registerCustomSerializer(SequenceRead.class, new PackedReadSerializer(binQualities));
+        return builder;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceReaderCloseable;
+import com.milaboratory.primitivio.PrimitivI;
+import com.milaboratory.primitivio.blocks.PrimitivIBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivIHybrid;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.util.LambdaSemaphore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reader of the packed reads container written by {@link PackedReadsWriter}. Blocks are decompressed and deserialized
+ * concurrently, reads are returned in the original order.
+ *
+ * Type parameter should match the type of reads stored in the file (e.g. {@link
+ * com.milaboratory.core.io.sequence.SingleRead} or {@link com.milaboratory.core.io.sequence.PairedRead}).
+ */
+public final class PackedReadsReader<R extends SequenceRead> implements SequenceReaderCloseable<R> {
+    static final String MAGIC = "MiPR0001";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    public static final int DEFAULT_READ_AHEAD_BLOCKS = 4;
+
+    final PrimitivIHybrid input;
+    final PrimitivIBlocks<SequenceRead>.Reader reader;
+    final boolean binnedQualities;
+    final AtomicLong readsCount = new AtomicLong();
+
+    public PackedReadsReader(File file) throws IOException {
+        this(file.toPath(), PrimitivIOBlocksUtil.defaultExecutorService(), PackedReadsWriter.DEFAULT_CONCURRENCY,
+                DEFAULT_READ_AHEAD_BLOCKS);
+    }
+
+    /**
+     * @param file            input file
+     * @param executor        executor to decompress and deserialize blocks in
+     * @param concurrency     maximal number of blocks being deserialized simultaneously
+     * @param readAheadBlocks number of blocks to read ahead
+     */
+    public PackedReadsReader(Path file, ExecutorService executor, int concurrency, int readAheadBlocks)
+            throws IOException {
+        this.input = new PrimitivIHybrid(executor, file,
+                PackedReadSerializer.stateBuilder(false).getIState(), new LambdaSemaphore(concurrency));
+        try (PrimitivI header = input.beginPrimitivI()) {
+            byte[] magic = new byte[MAGIC_BYTES.length];
+            header.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC_BYTES))
+                throw new IllegalFileFormatException("Not a packed reads file: " + file);
+            this.binnedQualities = header.readBoolean();
+        } catch (RuntimeException e) {
+            input.close();
+            throw e;
+        }
+        this.reader = input.beginPrimitivIBlocks(SequenceRead.class, readAheadBlocks);
+    }
+
+    /**
+     * Returns true if quality values in this file were reduced to 8 levels
+     */
+    public boolean isBinnedQualities() {
+        return binnedQualities;
+    }
+
+    @Override
+    public long getNumberOfReads() {
+        return readsCount.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public R take() {
+        R read = (R) reader.take();
+        if (read != null)
+            readsCount.incrementAndGet();
+        return read;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+            input.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import com.milaboratory.core.io.sequence.SequenceRead;
+import com.milaboratory.core.io.sequence.SequenceWriter;
+import com.milaboratory.primitivio.PrimitivO;
+import com.milaboratory.primitivio.blocks.PrimitivIOBlocksUtil;
+import com.milaboratory.primitivio.blocks.PrimitivOBlocks;
+import com.milaboratory.primitivio.blocks.PrimitivOHybrid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Writer of the packed reads container: binary format storing single, paired or multi reads with 2-bit packed
+ * nucleotides (wildcards are kept in a separate exception list), optionally binned qualities and descriptions.
+ *
+ * Reads are serialized and LZ4-compressed in blocks concurrently (see {@link PrimitivOBlocks}). Use {@link
+ * PackedReadsReader} to read the file.
+ */
+public final class PackedReadsWriter<R extends SequenceRead> implements SequenceWriter<R> {
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    final PrimitivOHybrid output;
+    final PrimitivOBlocks<SequenceRead>.Writer writer;
+
+    public PackedReadsWriter(File file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * @param file          output file
+     * @param binQualities  if true, quality values are reduced to 8 levels, this makes the file substantially smaller
+     *                      at the cost of losing exact quality values
+     */
+    public PackedReadsWriter(File file, boolean binQualities) throws IOException {
+        this(file.toPath(), PrimitivIOBlocksUtil.defaultExecutorService(), DEFAULT_CONCURRENCY, DEFAULT_BLOCK_SIZE,
+                binQualities);
+    }
+
+    /**
+     * @param file         output file
+     * @param executor     executor to serialize and compress blocks in
+     * @param concurrency  maximal number of blocks being serialized simultaneously
+     * @param blockSize    number of reads in a single block
+     * @param binQualities if true, quality values are reduced to 8 levels, this makes the file substantially smaller
+     *                     at the cost of losing exact quality values
+     */
+    public PackedReadsWriter(Path file, ExecutorService executor, int concurrency, int blockSize,
+                             boolean binQualities) throws IOException {
+        this.output = new PrimitivOHybrid(executor, file,
+                PackedReadSerializer.stateBuilder(binQualities).getOState());
+        try (PrimitivO header = output.beginPrimitivO()) {
+            header.write(PackedReadsReader.MAGIC_BYTES);
+            header.writeBoolean(binQualities);
+        }
+        this.writer = output.beginPrimitivOBlocks(concurrency, blockSize);
+    }
+
+    @Override
+    public void write(R read) {
+        writer.write(read);
+    }
+
+    /**
+     * Flushes buffered reads and waits for them to be written
+     */
+    @Override
+    public void flush() {
+        writer.flush();
+        writer.sync();
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+            output.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.fasta.RandomAccessFastaIndex;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.UnsafeFactory;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import com.milaboratory.primitivio.PrimitivI;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped packed nucleotide reference (".mifa" file), a binary replacement of FASTA files for fast random access
+ * to reference sequences.
+ *
+ * File layout: 8-byte magic; packed sequences, each one starts at a byte boundary and stores 4 nucleotides per byte
+ * (2 bits per nucleotide, lowest bits first, wildcards are stored as zeros); index with descriptions, lengths, data
+ * offsets and runs of wildcards (e.g. N-runs) of each record; 8-byte offset of the index.
+ *
+ * Position of any nucleotide is computed in O(1), so {@link SequenceProvider#getRegion(Range)} is a bulk copy and
+ * unpack of the corresponding bytes. All methods are thread-safe. Use {@link PackedReferenceWriter} to create files.
+ */
+public final class PackedReference implements AutoCloseable {
+    public static final String FILE_EXTENSION = ".mifa";
+    static final String MAGIC = "MiFA0001";
+    static final byte[] MAGIC_BYTES = MAGIC.getBytes(StandardCharsets.US_ASCII);
+    static final int DEFAULT_MAPPING_CHUNK = 1 << 30;
+    /**
+     * Packed byte -> four nucleotide codes
+     */
+    private static final byte[] UNPACK = new byte[256 * 4];
+
+    static {
+        for (int b = 0; b < 256; b++)
+            for (int i = 0; i < 4; i++)
+                UNPACK[b * 4 + i] = (byte) ((b >>> (i << 1)) & 3);
+    }
+
+    final FileChannel channel;
+    /**
+     * File mapped in chunks (single mapping can't exceed 2Gb)
+     */
+    final MappedByteBuffer[] chunks;
+    final int chunkSize;
+    final Record[] records;
+    final Map<String, Record> recordsById = new HashMap<>();
+
+    public PackedReference(Path file) throws IOException {
+        this(file, DEFAULT_MAPPING_CHUNK);
+    }
+
+    PackedReference(Path file, int chunkSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            this.chunkSize = chunkSize;
+            this.chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = (long) i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+
+            byte[] magic = new byte[MAGIC_BYTES.length];
+            if (size < MAGIC_BYTES.length + 8)
+                throw new IllegalFileFormatException("Not a packed reference file: " + file);
+            read(0, magic, 0, magic.length);
+            if (!Arrays.equals(magic, MAGIC_BYTES))
+                throw new IllegalFileFormatException("Not a packed reference file: " + file);
+
+            byte[] buffer = new byte[8];
+            read(size - 8, buffer, 0, 8);
+            long indexOffset = ByteBuffer.wrap(buffer).getLong();
+            buffer = new byte[(int) (size - 8 - indexOffset)];
+            read(indexOffset, buffer, 0, buffer.length);
+            this.records = readIndex(new PrimitivI(new ByteArrayInputStream(buffer)));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        for (Record record : records) {
+            recordsById.putIfAbsent(record.description, record);
+            String[] words = record.description.trim().split("\\s+", 2);
+            recordsById.putIfAbsent(words[0], record);
+        }
+    }
+
+    private static Record[] readIndex(PrimitivI input) {
+        Record[] records = new Record[input.readVarInt()];
+        for (int i = 0; i < records.length; i++) {
+            String description = input.readUTF();
+            long length = input.readVarLong();
+            long dataOffset = input.readVarLong();
+            int runs = input.readVarInt();
+            long[] runStarts = new long[runs];
+            int[] runLengths = new int[runs];
+            byte[] runCodes = new byte[runs];
+            long previous = 0;
+            for (int j = 0; j < runs; j++) {
+                runStarts[j] = previous += input.readVarLong();
+                runLengths[j] = input.readVarInt();
+                runCodes[j] = input.readByte();
+            }
+            records[i] = new Record(i, description, length, dataOffset, runStarts, runLengths, runCodes);
+        }
+        return records;
+    }
+
+    /**
+     * Copies bytes from the mapped file, thread-safe
+     */
+    private void read(long position, byte[] dst, int offset, int length) {
+        while (length > 0) {
+            int chunk = (int) (position / chunkSize);
+            int positionInChunk = (int) (position % chunkSize);
+            int n = Math.min(length, chunkSize - positionInChunk);
+            ByteBuffer buffer = chunks[chunk].duplicate();
+            buffer.position(positionInChunk);
+            buffer.get(dst, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Returns number of records
+     */
+    public int size() {
+        return records.length;
+    }
+
+    public String getDescription(int id) {
+        return records[id].description;
+    }
+
+    public long getLength(int id) {
+        return records[id].length;
+    }
+
+    public SequenceProvider<NucleotideSequence> getSequenceProvider(int id) {
+        return getSequenceProvider(records[id]);
+    }
+
+    /**
+     * Returns sequence provider for the record with specified description or first word of description
+     */
+    public SequenceProvider<NucleotideSequence> getSequenceProvider(String id) {
+        return getSequenceProvider(getRecord(id));
+    }
+
+    public NucleotideSequence getSequence(int id, Range range) {
+        return read(records[id], range);
+    }
+
+    public NucleotideSequence getSequence(String id, Range range) {
+        return read(getRecord(id), range);
+    }
+
+    private Record getRecord(String id) {
+        Record record = recordsById.get(id);
+        if (record == null)
+            throw new RandomAccessFastaIndex.NoSuchRecordException("No records with id: " + id);
+        return record;
+    }
+
+    private SequenceProvider<NucleotideSequence> getSequenceProvider(final Record record) {
+        return new SequenceProvider<NucleotideSequence>() {
+            @Override
+            public void forceInitialize() {
+            }
+
+            @Override
+            public int size() {
+                return (int) record.length;
+            }
+
+            @Override
+            public NucleotideSequence getRegion(Range range) {
+                return read(record, range);
+            }
+        };
+    }
+
+    private NucleotideSequence read(Record record, Range range) {
+        if (range.getUpper() > record.length)
+            throw new SequenceProviderIndexOutOfBoundsException(range.intersection(new Range(0, (int) record.length)));
+
+        int from = range.getLower(), to = range.getUpper();
+        byte[] codes = new byte[to - from];
+        if (codes.length > 0) {
+            // Bulk copy of packed data
+            int packedFrom = from >>> 2;
+            byte[] packed = new byte[((to + 3) >>> 2) - packedFrom];
+            read(record.dataOffset + packedFrom, packed, 0, packed.length);
+
+            // Unpacking
+            int i = 0, position = from;
+            for (; position < to && (position & 3) != 0; ++position)
+                codes[i++] = UNPACK[((packed[(position >>> 2) - packedFrom] & 0xFF) << 2) + (position & 3)];
+            for (; position + 4 <= to; position += 4, i += 4)
+                System.arraycopy(UNPACK, (packed[(position >>> 2) - packedFrom] & 0xFF) << 2, codes, i, 4);
+            for (; position < to; ++position)
+                codes[i++] = UNPACK[((packed[(position >>> 2) - packedFrom] & 0xFF) << 2) + (position & 3)];
+
+            // Restoring wildcards
+            int run = Arrays.binarySearch(record.runStarts, from);
+            if (run < 0)
+                run = Math.max(0, -run - 2);
+            for (; run < record.runStarts.length && record.runStarts[run] < to; ++run) {
+                long runFrom = Math.max(from, record.runStarts[run]),
+                        runTo = Math.min(to, record.runStarts[run] + record.runLengths[run]);
+                if (runFrom < runTo)
+                    Arrays.fill(codes, (int) (runFrom - from), (int) (runTo - from), record.runCodes[run]);
+            }
+        }
+
+        NucleotideSequence seq = UnsafeFactory.nucleotideSequence(codes);
+
+        // Returning result, invert if required
+        return seq.getRange(range.move(-range.getLower()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static final class Record {
+        final int id;
+        final String description;
+        final long length;
+        final long dataOffset;
+        final long[] runStarts;
+        final int[] runLengths;
+        final byte[] runCodes;
+
+        Record(int id, String description, long length, long dataOffset,
+               long[] runStarts, int[] runLengths, byte[] runCodes) {
+            this.id = id;
+            this.description = description;
+            this.length = length;
+            this.dataOffset = dataOffset;
+            this.runStarts = runStarts;
+            this.runLengths = runLengths;
+            this.runCodes = runCodes;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.fasta.FastaReader;
+import com.milaboratory.core.io.sequence.fasta.FastaRecord;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.primitivio.PrimitivO;
+import gnu.trove.list.array.TByteArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import org.apache.commons.io.output.CountingOutputStream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writer of packed nucleotide reference files (see {@link PackedReference} for the format description).
+ */
+public final class PackedReferenceWriter implements AutoCloseable {
+    /**
+     * Number of nucleotides packed at once
+     */
+    private static final int PACKING_CHUNK = 1 << 16;
+
+    final CountingOutputStream counter;
+    final PrimitivO output;
+    final List<Record> records = new ArrayList<>();
+    boolean closed = false;
+
+    public PackedReferenceWriter(Path file) throws IOException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile()),
+                1 << 20));
+        this.output = new PrimitivO((DataOutput) new DataOutputStream(counter));
+        output.write(PackedReference.MAGIC_BYTES);
+    }
+
+    public void write(FastaRecord<NucleotideSequence> record) {
+        write(record.getDescription(), record.getSequence());
+    }
+
+    /**
+     * Appends sequence to the reference file
+     *
+     * @param description record description
+     * @param sequence    sequence
+     */
+    public void write(String description, NucleotideSequence sequence) {
+        if (closed)
+            throw new IllegalStateException("Writer closed.");
+
+        Record record = new Record(description, sequence.size(), counter.getByteCount());
+        byte[] packed = new byte[PACKING_CHUNK >>> 2];
+        int runStart = -1;
+        byte runCode = 0;
+        for (int from = 0; from < sequence.size(); from += PACKING_CHUNK) {
+            int to = Math.min(sequence.size(), from + PACKING_CHUNK);
+            if (to - from < PACKING_CHUNK)
+                packed = new byte[(to - from + 3) >>> 2];
+            else
+                Arrays.fill(packed, (byte) 0);
+
+            for (int i = from; i < to; i++) {
+                byte code = sequence.codeAt(i);
+
+                // Tracking runs of wildcards
+                if (runStart != -1 && code != runCode) {
+                    record.addRun(runStart, i - runStart, runCode);
+                    runStart = -1;
+                }
+                if (code > 3) {
+                    if (runStart == -1) {
+                        runStart = i;
+                        runCode = code;
+                    }
+                } else
+                    packed[(i - from) >>> 2] |= code << (((i - from) & 3) << 1);
+            }
+            output.write(packed);
+        }
+        if (runStart != -1)
+            record.addRun(runStart, sequence.size() - runStart, runCode);
+        records.add(record);
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        long indexOffset = counter.getByteCount();
+        output.writeVarInt(records.size());
+        for (Record record : records) {
+            output.writeUTF(record.description);
+            output.writeVarLong(record.length);
+            output.writeVarLong(record.dataOffset);
+            output.writeVarInt(record.runStarts.size());
+            long previous = 0;
+            for (int i = 0; i < record.runStarts.size(); i++) {
+                output.writeVarLong(record.runStarts.get(i) - previous);
+                output.writeVarInt(record.runLengths.get(i));
+                output.writeByte(record.runCodes.get(i));
+                previous = record.runStarts.get(i);
+            }
+        }
+        output.writeLong(indexOffset);
+        output.close();
+    }
+
+    /**
+     * Converts FASTA file with nucleotide sequences to the packed reference file
+     *
+     * @param fasta  input FASTA file
+     * @param output output file
+     */
+    public static void convert(Path fasta, Path output) throws IOException {
+        try (FastaReader<NucleotideSequence> reader = new FastaReader<>(fasta.toFile(), NucleotideSequence.ALPHABET);
+             PackedReferenceWriter writer = new PackedReferenceWriter(output)) {
+            for (FastaRecord<NucleotideSequence> record : CUtils.it(reader))
+                writer.write(record);
+        }
+    }
+
+    static final class Record {
+        final String description;
+        final long length;
+        final long dataOffset;
+        final TLongArrayList runStarts = new TLongArrayList();
+        final TIntArrayList runLengths = new TIntArrayList();
+        final TByteArrayList runCodes = new TByteArrayList();
+
+        Record(String description, long length, long dataOffset) {
+            this.description = description;
+            this.length = length;
+            this.dataOffset = dataOffset;
+        }
+
+        void addRun(long start, int length, byte code) {
+            runStarts.add(start);
+            runLengths.add(length);
+            runCodes.add(code);
+        }
+    }
+}
@@ -105,6 +105,10 @@ public final class Motif<S extends Sequence<S>> implements java.io.Serializable
         return new BitapPattern(size, patternMask, reversePatternMask);
     }
 
+    public Alphabet<S> getAlphabet() {
+        return alphabet;
+    }
+
     public int size() {
         return size;
     }
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.motif;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.HirschbergAligner;
+import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
+import com.milaboratory.core.sequence.Alphabet;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+
+/**
+ * Bit-parallel computation of edit (Levenshtein) distance between a pattern and a sequence, using algorithm of Myers
+ * (1999) in the block-based formulation of Hyyrö (2003). Patterns of any length are supported, each column of the
+ * dynamic programming matrix is processed 64 rows at a time.
+ *
+ * Pattern is wildcard-aware: pattern position matches a letter of the sequence if the corresponding {@link Motif}
+ * allows it. Methods with {@code maxDistance} argument compute only the band of blocks that can contain values not
+ * exceeding {@code maxDistance} (Ukkonen's cut-off) and stop as soon as the result is known to exceed it.
+ *
+ * Patterns created from sequences ({@link #MyersPattern(Sequence)}) can also recover alignments; traceback is
+ * performed by {@link HirschbergAligner} in linear memory. Instances are immutable and thread-safe.
+ *
+ * @param <S> type of sequence
+ */
+public final class MyersPattern<S extends Sequence<S>> implements java.io.Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int WORD_SIZE = 64;
+
+    final Alphabet<S> alphabet;
+    final int size;
+    /**
+     * Number of 64-bit blocks
+     */
+    final int words;
+    /**
+     * peq[code * words + block] has i-th bit set if pattern position block * 64 + i matches the letter
+     */
+    final long[] peq;
+    /**
+     * Pattern sequence, null for patterns created from motifs
+     */
+    final S sequence;
+    /**
+     * Pattern of the reversed sequence, used to find beginnings of semi-global alignments
+     */
+    private transient volatile MyersPattern<S> reversed;
+
+    public MyersPattern(Motif<S> motif) {
+        this(motif, null);
+    }
+
+    public MyersPattern(S sequence) {
+        this(new Motif<>(sequence), sequence);
+    }
+
+    private MyersPattern(Motif<S> motif, S sequence) {
+        if (motif.size() == 0)
+            throw new IllegalArgumentException("Empty pattern.");
+        this.alphabet = motif.getAlphabet();
+        this.size = motif.size();
+        this.words = (size + WORD_SIZE - 1) / WORD_SIZE;
+        this.sequence = sequence;
+        this.peq = new long[alphabet.size() * words];
+        for (byte code = 0; code < alphabet.size(); ++code)
+            for (int i = 0; i < size; ++i)
+                if (motif.allows(code, i))
+                    peq[code * words + i / WORD_SIZE] |= 1L << (i % WORD_SIZE);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns edit distance between the pattern and the whole sequence
+     */
+    public int distance(S seq) {
+        return distance(seq, 0, seq.size());
+    }
+
+    /**
+     * Returns edit distance between the pattern and the region [from, to) of the sequence
+     */
+    public int distance(S seq, int from, int to) {
+        return run(seq, from, to, Integer.MAX_VALUE, true, false, null);
+    }
+
+    /**
+     * Returns edit distance between the pattern and the region [from, to) of the sequence, or -1 if it exceeds {@code
+     * maxDistance}
+     */
+    public int distance(S seq, int from, int to, int maxDistance) {
+        return run(seq, from, to, maxDistance, true, false, null);
+    }
+
+    /**
+     * Semi-global search: finds the best match of the whole pattern to a subsequence of the region [from, to) of the
+     * sequence
+     *
+     * @return best match (the leftmost one if there are several) or null if there are no matches with at most {@code
+     * maxDistance} edits
+     */
+    public Match findBest(S seq, int from, int to, int maxDistance) {
+        Match match = new Match();
+        if (run(seq, from, to, maxDistance, false, true, match) == -1)
+            return null;
+        return match;
+    }
+
+    /**
+     * Semi-global search in the whole sequence
+     */
+    public Match findBest(S seq) {
+        return findBest(seq, 0, seq.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns global alignment of the pattern (first sequence) and the region [from, to) of the sequence, with score
+     * equal to minus edit distance. Available only for patterns created from sequences.
+     */
+    public Alignment<S> alignGlobal(S seq, int from, int to) {
+        Alignment<S> alignment = HirschbergAligner.alignGlobalLinear(unitScoring(), getSequence(),
+                seq.getRange(from, to));
+        return new Alignment<>(sequence, alignment.getAbsoluteMutations(),
+                new Range(0, size), new Range(from, to), alignment.getScore());
+    }
+
+    /**
+     * Returns alignment of the whole pattern (first sequence) with the best matching subsequence of the region [from,
+     * to) of the sequence, or null if there are no matches with at most {@code maxDistance} edits. Available only for
+     * patterns created from sequences.
+     */
+    public Alignment<S> alignSemiGlobal(S seq, int from, int to, int maxDistance) {
+        getSequence();
+        Match match = findBest(seq, from, to, maxDistance);
+        if (match == null)
+            return null;
+        // Searching for the beginning of the match: alignment of reversed pattern with a prefix of reversed sequence
+        // that starts at the end of the match
+        Match begin = new Match();
+        getReversed().run(reverse(seq, from, match.end), 0, match.end - from, match.distance, true, true, begin);
+        assert begin.distance == match.distance;
+        return alignGlobal(seq, match.end - begin.end, match.end);
+    }
+
+    private S getSequence() {
+        if (sequence == null)
+            throw new IllegalStateException("Alignment is supported only for patterns created from sequences.");
+        return sequence;
+    }
+
+    private MyersPattern<S> getReversed() {
+        MyersPattern<S> r = reversed;
+        if (r == null)
+            reversed = r = new MyersPattern<>(reverse(sequence, 0, size));
+        return r;
+    }
+
+    private LinearGapAlignmentScoring<S> unitScoring() {
+        int alphabetSize = alphabet.size();
+        int[] matrix = new int[alphabetSize * alphabetSize];
+        for (byte c1 = 0; c1 < alphabetSize; ++c1)
+            for (byte c2 = 0; c2 < alphabetSize; ++c2)
+                matrix[c1 * alphabetSize + c2] = alphabet.codeToWildcard(c1).matches(c2) ? 0 : -1;
+        return new LinearGapAlignmentScoring<>(alphabet, matrix, -1);
+    }
+
+    private static <S extends Sequence<S>> S reverse(S seq, int from, int to) {
+        SequenceBuilder<S> builder = seq.getAlphabet().createBuilder().ensureCapacity(to - from);
+        for (int i = to - 1; i >= from; --i)
+            builder.append(seq.codeAt(i));
+        return builder.createAndDestroy();
+    }
+
+    /**
+     * Main procedure
+     *
+     * @param anchoredBegin if true alignment starts at the beginning of the region, otherwise at any position
+     * @param freeEnd       if true alignment ends at any position of the region (the best one is written to {@code
+     *                      match}), otherwise at the end of the region
+     * @return distance or -1 if distance exceeds {@code maxDistance}
+     */
+    private int run(S seq, int from, int to, int maxDistance, boolean anchoredBegin, boolean freeEnd, Match match) {
+        if (seq.getAlphabet() != alphabet)
+            throw new IllegalArgumentException("Different alphabets.");
+        if (maxDistance < 0)
+            return -1;
+
+        final int words = this.words, lastWord = words - 1;
+        final long lastBit = 1L << ((size - 1) % WORD_SIZE);
+        final long[] pv = new long[words], mv = new long[words];
+        // score[b] = value in the last row of block b, in the current column
+        final int[] score = new int[words];
+        for (int b = 0; b < words; ++b) {
+            pv[b] = ~0L;
+            score[b] = Math.min(size, (b + 1) * WORD_SIZE);
+        }
+
+        // Ukkonen's cut-off: blocks after lastActive contain only values greater than maxDistance
+        int lastActive = maxDistance == Integer.MAX_VALUE ? lastWord : Math.min(lastWord, maxDistance / WORD_SIZE);
+        int bestScore = lastActive == lastWord ? size : Integer.MAX_VALUE, bestEnd = from;
+        int topIn = anchoredBegin ? 1 : 0, hout, oldScore, b;
+        long eq, xv, xh, ph, mh, p, m, highBit;
+        for (int j = from; j < to; ++j) {
+            int offset = seq.codeAt(j) * words;
+            int hin = topIn;
+            oldScore = 0;
+            for (b = 0; b <= lastActive; ++b) {
+                oldScore = score[b];
+                // Computing single block (Hyyrö, 2003)
+                p = pv[b];
+                m = mv[b];
+                eq = peq[offset + b];
+                xv = eq | m;
+                if (hin < 0)
+                    eq |= 1L;
+                xh = (((eq & p) + p) ^ p) | eq;
+                ph = m | ~(xh | p);
+                mh = p & xh;
+                highBit = b == lastWord ? lastBit : Long.MIN_VALUE;
+                hout = (ph & highBit) != 0 ? 1 : (mh & highBit) != 0 ? -1 : 0;
+                ph <<= 1;
+                mh <<= 1;
+                if (hin < 0)
+                    mh |= 1L;
+                else if (hin > 0)
+                    ph |= 1L;
+                pv[b] = mh | ~(xv | ph);
+                mv[b] = ph & xv;
+                score[b] += hout;
+                hin = hout;
+            }
+
+            if (maxDistance != Integer.MAX_VALUE) {
+                // Adding blocks reachable from cells within the band; new blocks are initialized with vertical
+                // deltas of +1, i.e. with the upper bound of actual values in previous column
+                while (lastActive < lastWord && oldScore <= maxDistance) {
+                    b = ++lastActive;
+                    int rows = Math.min(WORD_SIZE, size - b * WORD_SIZE);
+                    oldScore = score[b - 1] - hin + rows;
+                    pv[b] = ~0L;
+                    mv[b] = 0L;
+                    p = ~0L;
+                    eq = peq[offset + b];
+                    xv = eq;
+                    if (hin < 0)
+                        eq |= 1L;
+                    xh = (((eq & p) + p) ^ p) | eq;
+                    ph = ~(xh | p);
+                    mh = p & xh;
+                    highBit = b == lastWord ? lastBit : Long.MIN_VALUE;
+                    hout = (ph & highBit) != 0 ? 1 : (mh & highBit) != 0 ? -1 : 0;
+                    ph <<= 1;
+                    mh <<= 1;
+                    if (hin < 0)
+                        mh |= 1L;
+                    else if (hin > 0)
+                        ph |= 1L;
+                    pv[b] = mh | ~(xv | ph);
+                    mv[b] = ph & xv;
+                    score[b] = oldScore + hout;
+                    hin = hout;
+                }
+
+                // Removing blocks with all values greater than maxDistance (value in the first row of the region
+                // is j - from + 1 for anchored beginning and 0 otherwise, so the first block is kept while it may
+                // be reached from the first row)
+                int minActive = anchoredBegin && j - from + 1 > maxDistance ? -1 : 0;
+                while (lastActive > minActive
+                        && score[lastActive] - Math.min(WORD_SIZE, size - lastActive * WORD_SIZE) >= maxDistance)
+                    --lastActive;
+                // nothing can be improved in the following columns
+                if (lastActive < 0)
+                    return freeEnd ? result(bestScore, bestEnd, maxDistance, match) : -1;
+            }
+
+            if (freeEnd && lastActive == lastWord && score[lastWord] < bestScore) {
+                bestScore = score[lastWord];
+                bestEnd = j + 1;
+            }
+        }
+
+        if (!freeEnd)
+            bestScore = lastActive == lastWord ? score[lastWord] : Integer.MAX_VALUE;
+
+        return result(bestScore, bestEnd, maxDistance, match);
+    }
+
+    private static int result(int bestScore, int bestEnd, int maxDistance, Match match) {
+        if (bestScore > maxDistance)
+            return -1;
+        if (match != null) {
+            match.distance = bestScore;
+            match.end = bestEnd;
+        }
+        return bestScore;
+    }
+
+    /**
+     * Result of semi-global search
+     */
+    public static final class Match {
+        int distance, end;
+
+        /**
+         * Edit distance between the pattern and matched subsequence
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * End position (exclusive) of the match in the sequence
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "Match{distance=" + distance + ", end=" + end + "}";
+        }
+    }
+}
@@ -105,6 +105,32 @@ public final class MutationsBuilder<S extends Sequence<S>> {
         mutations = null;
         size = -1;
 
+        return create(m);
+    }
+
+    /**
+     * Creates mutations from the content of this builder and clears the builder, so it can be reused keeping its
+     * internal buffer
+     */
+    public Mutations<S> createAndClear() {
+        if (size == -1)
+            throw new IllegalStateException("Destroyed.");
+        final int[] m = mutations == null ? new int[0] : Arrays.copyOf(mutations, size);
+        size = 0;
+        return create(m);
+    }
+
+    /**
+     * Removes all mutations from this builder, internal buffer is kept
+     */
+    public MutationsBuilder<S> clear() {
+        if (size == -1)
+            throw new IllegalStateException("Destroyed.");
+        size = 0;
+        return this;
+    }
+
+    private Mutations<S> create(int[] m) {
         if (reversed)
             ArraysUtils.reverse(m);
 
@@ -17,6 +17,8 @@ package com.milaboratory.core.sequence;
 
 import com.milaboratory.util.HashFunctions;
 
+import java.nio.ByteBuffer;
+
 /**
  * Don't use this class.
  *
@@ -74,4 +76,74 @@ public final class UnsafeFactory {
         return new NSequenceWithQuality(sequence.createAndDestroy(),
                 quality.createAndDestroy());
     }
+
+    /**
+     * Parses FASTQ record data directly from the (heap or memory-mapped) byte buffer using absolute positions, so
+     * buffer state is not changed.
+     */
+    public static NSequenceWithQuality fastqParse(
+            ByteBuffer buffer,
+            int fromSequence,
+            int fromQuality,
+            int length,
+            byte qualityValueOffset,
+            long id,
+            boolean replaceWildcards) {
+        // Seed for random generator of letters substituting wildcards
+        long seed = id;
+
+        // Creating builders for sequence and quality
+        SequenceBuilder<NucleotideSequence> sequence = NucleotideSequence.ALPHABET.createBuilder().ensureCapacity(length);
+        SequenceQualityBuilder quality = new SequenceQualityBuilder().ensureCapacity(length);
+
+        byte qual, code, symbol;
+        int pointerSeq = fromSequence, pointerQua = fromQuality;
+
+        // Parsing quality and sequence
+        for (int i = 0; i < length; ++i) {
+            qual = (byte) (buffer.get(pointerQua++) - qualityValueOffset);
+
+            symbol = buffer.get(pointerSeq++);
+            code = NucleotideAlphabet.byteSymbolToCode(symbol);
+
+            if (code == -1) {
+                if (symbol == '.')
+                    code = NucleotideAlphabet.N;
+                else
+                    throw new IllegalArgumentException("Unknown letter \"" + symbol + "\"" +
+                            (symbol == 13 ? ". FASTQ reader does not support Windows-style line breaks " +
+                                    "(CR+LF), please convert file to standard FASTQ (with Unix-like LF line breaks)." : ""));
+            }
+
+            if (replaceWildcards && NucleotideSequence.ALPHABET.isWildcard(code)) {
+                seed = HashFunctions.JenkinWang64shift(seed + i);
+                code = NucleotideSequence.ALPHABET.codeToWildcard(code).getUniformlyDistributedBasicCode(seed);
+                qual = 0;
+            }
+
+            sequence.append(code);
+            quality.append(qual);
+        }
+
+        // Returning result
+        return new NSequenceWithQuality(sequence.createAndDestroy(),
+                quality.createAndDestroy());
+    }
+
+    /**
+     * Creates nucleotide sequence directly from array of nucleotide codes without copying it, so array must not be
+     * modified afterwards.
+     */
+    public static NucleotideSequence nucleotideSequence(byte[] codes) {
+        return new NucleotideSequence(codes, true);
+    }
+
+    /**
+     * Creates sequence with quality directly from arrays of nucleotide codes and raw quality values without copying
+     * them, so arrays must not be modified afterwards.
+     */
+    public static NSequenceWithQuality nSequenceWithQuality(byte[] sequenceCodes, byte[] quality) {
+        return new NSequenceWithQuality(new NucleotideSequence(sequenceCodes, true),
+                new SequenceQuality(quality, true));
+    }
 }
@@ -45,7 +45,17 @@ public final class AtomicHistogram {
     }
 
     public void add(double value) {
-        total.incrementAndGet();
+        add(value, 1);
+    }
+
+    /**
+     * Adds value {@code count} times
+     */
+    public void add(double value, long count) {
+        if (count == 0)
+            return;
+
+        total.addAndGet(count);
 
         if (value < boundaries[0] || boundaries[boundaries.length - 1] < value)
             return;
@@ -56,7 +66,7 @@ public final class AtomicHistogram {
         if (i > 0)
             --i;
 
-        hist.incrementAndGet(i);
+        hist.addAndGet(i, count);
     }
 
     public double[] getBoundaries() {
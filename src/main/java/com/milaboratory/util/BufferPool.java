@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of equally sized reference-counted byte arrays.
+ *
+ * Buffer returns to the pool when its last reference is released. Buffers that are never released are simply garbage
+ * collected, so forgetting to release a buffer never leads to a memory leak, only to an additional allocation.
+ */
+public final class BufferPool {
+    final int bufferSize;
+    /**
+     * Maximal number of free buffers kept in the pool
+     */
+    final int capacity;
+    final ConcurrentLinkedQueue<Buffer> free = new ConcurrentLinkedQueue<>();
+    final AtomicInteger freeCount = new AtomicInteger();
+    final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * @param bufferSize size of buffers
+     * @param capacity   maximal number of free buffers kept in the pool
+     */
+    public BufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("bufferSize must be a positive integer");
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns total number of buffers allocated by this pool
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * Returns number of buffers currently kept in the pool
+     */
+    public int getFreeCount() {
+        return freeCount.get();
+    }
+
+    /**
+     * Returns free buffer from the pool or allocates a new one. Returned buffer has one reference.
+     */
+    public Buffer acquire() {
+        Buffer buffer = free.poll();
+        if (buffer == null) {
+            allocated.incrementAndGet();
+            buffer = new Buffer(this, new byte[bufferSize]);
+        } else
+            freeCount.decrementAndGet();
+        buffer.refCount.set(1);
+        return buffer;
+    }
+
+    void offer(Buffer buffer) {
+        if (freeCount.incrementAndGet() <= capacity)
+            free.offer(buffer);
+        else
+            freeCount.decrementAndGet();
+    }
+
+    public static final class Buffer {
+        final BufferPool pool;
+        final byte[] data;
+        final AtomicInteger refCount = new AtomicInteger();
+
+        Buffer(BufferPool pool, byte[] data) {
+            this.pool = pool;
+            this.data = data;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Adds one reference to this buffer
+         */
+        public Buffer retain() {
+            if (refCount.getAndIncrement() <= 0)
+                throw new IllegalStateException("Buffer is already released.");
+            return this;
+        }
+
+        /**
+         * Releases one reference, buffer returns to the pool after the last reference is released
+         */
+        public void release() {
+            int count = refCount.decrementAndGet();
+            if (count == 0)
+                pool.offer(this);
+            else if (count < 0)
+                throw new IllegalStateException("Buffer is already released.");
+        }
+    }
+}
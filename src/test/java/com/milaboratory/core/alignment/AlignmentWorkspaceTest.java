@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.MutationsBuilder;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class AlignmentWorkspaceTest {
+    @Test
+    public void testReuse() {
+        Well19937c random = new Well19937c(51);
+        AffineGapAlignmentScoring<NucleotideSequence> affine = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        LinearGapAlignmentScoring<NucleotideSequence> linear = LinearGapAlignmentScoring.getNucleotideBLASTScoring();
+        AlignmentWorkspace workspace = new AlignmentWorkspace();
+        for (int i = its(300, 3000); i > 0; --i) {
+            // sizes vary, so buffers are reused both for larger and smaller matrices
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 0, 200),
+                    seq2 = StripedAlignerTest.mutate(random, seq1);
+            int width = random.nextInt(20);
+
+            MutationsBuilder<NucleotideSequence> expected = new MutationsBuilder<>(NucleotideSequence.ALPHABET),
+                    actual = workspace.getMutationsBuilder(NucleotideSequence.ALPHABET);
+            BandedSemiLocalResult expectedResult = BandedAffineAligner.semiLocalRight0(affine, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, expected, new BandedAffineAligner.MatrixCache());
+            BandedSemiLocalResult actualResult = BandedAffineAligner.semiLocalRight0(affine, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, actual, workspace);
+            Assert.assertEquals(expectedResult.score, actualResult.score);
+            Assert.assertEquals(expected.createAndDestroy(), actual.createAndClear());
+
+            expected = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            actual = workspace.getMutationsBuilder(NucleotideSequence.ALPHABET);
+            Assert.assertEquals(
+                    BandedLinearAligner.align0(linear, seq1, seq2, 0, seq1.size(), 0, seq2.size(),
+                            width, expected, new CachedIntArray()),
+                    BandedLinearAligner.align0(linear, seq1, seq2, 0, seq1.size(), 0, seq2.size(),
+                            width, actual, workspace), 0.1);
+            Assert.assertEquals(expected.createAndDestroy(), actual.createAndClear());
+        }
+    }
+
+    @Test
+    public void testAminoAcidMutationsBuilder() {
+        Well19937c random = new Well19937c(52);
+        LinearGapAlignmentScoring<AminoAcidSequence> scoring =
+                LinearGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62);
+        AlignmentWorkspace workspace = new AlignmentWorkspace();
+        for (int i = its(100, 1000); i > 0; --i) {
+            AminoAcidSequence seq1 = randomSequence(AminoAcidSequence.ALPHABET, random, 1, 100),
+                    seq2 = randomSequence(AminoAcidSequence.ALPHABET, random, 1, 100);
+            int width = random.nextInt(20);
+            MutationsBuilder<AminoAcidSequence> expected = new MutationsBuilder<>(AminoAcidSequence.ALPHABET),
+                    actual = workspace.getMutationsBuilder(AminoAcidSequence.ALPHABET);
+            // builders of different alphabets are independent
+            workspace.getMutationsBuilder(NucleotideSequence.ALPHABET).appendDeletion(0, 1);
+            Assert.assertEquals(
+                    BandedLinearAligner.align0(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(),
+                            width, expected, new CachedIntArray()),
+                    BandedLinearAligner.align0(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(),
+                            width, actual, workspace), 0.1);
+            Assert.assertEquals(expected.createAndDestroy(), actual.createAndClear());
+        }
+    }
+
+    @Test
+    public void testMutationsBuilderClear() {
+        MutationsBuilder<NucleotideSequence> builder = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+        builder.appendDeletion(1, 2);
+        Mutations<NucleotideSequence> first = builder.createAndClear();
+        builder.appendSubstitution(3, 0, 1);
+        Assert.assertEquals(1, first.size());
+        Assert.assertEquals(Mutations.decodeNuc("DC1"), first);
+        Assert.assertEquals(Mutations.decodeNuc("SA3G"), builder.createAndClear());
+        Assert.assertEquals(0, builder.createAndClear().size());
+    }
+}
@@ -6,6 +6,7 @@ import com.milaboratory.core.mutations.MutationsBuilder;
 import com.milaboratory.core.mutations.generator.MutationModels;
 import com.milaboratory.core.mutations.generator.MutationsGenerator;
 import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.AminoAcidSequence;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.test.TestUtil;
 import org.apache.commons.math3.random.RandomDataGenerator;
@@ -396,4 +397,103 @@ public class BandedAffineAlignerTest {
             }
         }
     }
+
+    @Test
+    public void testRandomAminoAcid() {
+        AffineGapAlignmentScoring<AminoAcidSequence> scoring =
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62);
+        Well19937c random = new Well19937c(102);
+        BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        for (int it = TestUtil.its(300, 3000); it > 0; --it) {
+            AminoAcidSequence seq1 = randomSequence(AminoAcidSequence.ALPHABET, random, 1, 60),
+                    seq2 = StripedAlignerTest.mutate(random, seq1);
+
+            MutationsBuilder<AminoAcidSequence> mutations = new MutationsBuilder<>(AminoAcidSequence.ALPHABET);
+            int score = BandedAffineAligner.align0(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(),
+                    Math.max(seq1.size(), seq2.size()), mutations, cache);
+            assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore(), score, 0.1);
+            assertEquals(seq2, mutations.createAndDestroy().mutate(seq1));
+
+            int width = random.nextInt(10);
+            for (Alignment<AminoAcidSequence> r : Arrays.asList(
+                    BandedAffineAligner.semiLocalLeft(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width),
+                    BandedAffineAligner.semiLocalRight(scoring, seq1, seq2, 0, seq1.size(), 0, seq2.size(), width),
+                    BandedAffineAligner.semiGlobalLeft(scoring, seq1, seq2, 0, seq1.size(), 0, 0, seq2.size(), 0, width),
+                    BandedAffineAligner.semiGlobalRight(scoring, seq1, seq2, 0, seq1.size(), 0, 0, seq2.size(), 0, width)))
+                assertAlignment(r, seq2);
+        }
+    }
+
+    @Test
+    public void testXDropRandom() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        Well19937c random = new Well19937c(71);
+        // shared cache contains values from previous alignments, so pruned cells must not be read
+        BandedAffineAligner.MatrixCache cache = new BandedAffineAligner.MatrixCache();
+        for (int it = TestUtil.its(1000, 5000); it > 0; --it) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 1, 200);
+            NucleotideSequence core = StripedAlignerTest.mutate(random, seq1.getRange(0, random.nextInt(seq1.size() + 1)));
+            NucleotideSequence tail = randomSequence(NucleotideSequence.ALPHABET, random, 0, 100);
+            int width = random.nextInt(30), xDrop = random.nextInt(60);
+
+            NucleotideSequence seq2 = core.concatenate(tail);
+            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            BandedSemiLocalResult full = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, mutations, cache);
+            mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            BandedSemiLocalResult pruned = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), width, xDrop, mutations, cache);
+            assertTrue(pruned.score <= full.score);
+            assertAlignment(new Alignment<>(seq1, mutations.createAndDestroy(),
+                    new Range(0, pruned.sequence1Stop + 1), new Range(0, pruned.sequence2Stop + 1), pruned.score), seq2);
+
+            seq2 = tail.concatenate(core);
+            NucleotideSequence seq1Left = randomSequence(NucleotideSequence.ALPHABET, random, 0, 100).concatenate(seq1);
+            mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            full = BandedAffineAligner.semiLocalLeft0(scoring, seq1Left, seq2,
+                    0, seq1Left.size(), 0, seq2.size(), width, mutations, cache);
+            mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            pruned = BandedAffineAligner.semiLocalLeft0(scoring, seq1Left, seq2,
+                    0, seq1Left.size(), 0, seq2.size(), width, xDrop, mutations, cache);
+            assertTrue(pruned.score <= full.score);
+            assertAlignment(new Alignment<>(seq1Left, mutations.createAndDestroy(),
+                    new Range(pruned.sequence1Stop, seq1Left.size()), new Range(pruned.sequence2Stop, seq2.size()),
+                    pruned.score), seq2);
+        }
+    }
+
+    @Test
+    public void testXDropStopsOnNoisyTail() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        Well19937c random = new Well19937c(72);
+        for (int it = 0; it < 100; ++it) {
+            NucleotideSequence core = randomSequence(NucleotideSequence.ALPHABET, random, 50, 50),
+                    seq1 = core.concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 1000, 1000)),
+                    seq2 = core.concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 1000, 1000));
+
+            MutationsBuilder<NucleotideSequence> mutations = new MutationsBuilder<>(NucleotideSequence.ALPHABET);
+            BandedSemiLocalResult full = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), 20, mutations, new BandedAffineAligner.MatrixCache());
+            BandedSemiLocalResult pruned = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), 20, 1000, mutations.clear(), new BandedAffineAligner.MatrixCache());
+            // large X-drop does not affect the result
+            assertEquals(full.score, pruned.score);
+            assertEquals(full.sequence1Stop, pruned.sequence1Stop);
+            assertEquals(full.sequence2Stop, pruned.sequence2Stop);
+
+            pruned = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), 20, 20, mutations.clear(), new BandedAffineAligner.MatrixCache());
+            assertTrue(pruned.score >= 5 * core.size());
+            assertTrue(pruned.score <= full.score);
+
+            // nothing to align after the core
+            seq1 = core.concatenate(new NucleotideSequence(new String(new char[1000]).replace('\0', 'a')));
+            seq2 = core.concatenate(new NucleotideSequence(new String(new char[1000]).replace('\0', 'c')));
+            pruned = BandedAffineAligner.semiLocalRight0(scoring, seq1, seq2,
+                    0, seq1.size(), 0, seq2.size(), 20, 20, mutations.clear(), new BandedAffineAligner.MatrixCache());
+            assertEquals(5 * core.size(), pruned.score);
+            assertEquals(core.size() - 1, pruned.sequence1Stop);
+            assertEquals(core.size() - 1, pruned.sequence2Stop);
+        }
+    }
 }
@@ -16,6 +16,7 @@
 package com.milaboratory.core.alignment;
 
 import com.milaboratory.core.Range;
+import com.milaboratory.core.sequence.AminoAcidSequence;
 import com.milaboratory.core.sequence.NucleotideSequence;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well19937c;
@@ -76,6 +77,28 @@ public class BandedLinearAlignerTest {
         }
     }
 
+    @Test
+    public void testRandomAminoAcid() throws Exception {
+        LinearGapAlignmentScoring<AminoAcidSequence> scoring =
+                LinearGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62);
+        RandomDataGenerator random = new RandomDataGenerator(new Well19937c(101));
+        for (int i = its(100, 10000); i > 0; --i) {
+            AminoAcidSequence seq1 = randomSequence(AminoAcidSequence.ALPHABET, random, 10, 60),
+                    seq2 = StripedAlignerTest.mutate(random.getRandomGenerator(), seq1);
+            if (seq2.size() == 0)
+                continue;
+            Alignment<AminoAcidSequence> alignment = BandedLinearAligner.align(scoring, seq1, seq2,
+                    Math.max(seq1.size(), seq2.size()));
+            AlignmantTestUtils.assertAlignment(alignment, seq2);
+            assertEquals(Aligner.alignGlobalLinear(scoring, seq1, seq2).getScore(), alignment.getScore(), 0.1);
+
+            AlignmantTestUtils.assertAlignment(BandedLinearAligner.alignSemiLocalLeft(scoring, seq1, seq2,
+                    random.nextInt(0, Math.min(seq1.size(), seq2.size()) - 1), -10), seq2);
+            AlignmantTestUtils.assertAlignment(BandedLinearAligner.alignSemiLocalRight(scoring, seq1, seq2,
+                    random.nextInt(0, Math.min(seq1.size(), seq2.size()) - 1), -10), seq2);
+        }
+    }
+
     @Test
     public void test5() {
         NucleotideSequence seq1 = new NucleotideSequence("A"), seq2 = new NucleotideSequence("ATTA");
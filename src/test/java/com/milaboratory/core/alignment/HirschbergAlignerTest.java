@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class HirschbergAlignerTest {
+    @Test
+    public void testAffine() {
+        Well19937c random = new Well19937c(41);
+        assertRandom(random, AffineGapAlignmentScoring.getNucleotideBLASTScoring(),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+        assertRandom(random, new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 5, -4, -10, -1),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+        assertRandom(random, AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62),
+                AminoAcidSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+        // gap open penalty is smaller than gap extension penalty
+        assertRandom(random, new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 5, -4, -2, -7),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+    }
+
+    @Test
+    public void testLinear() {
+        Well19937c random = new Well19937c(42);
+        assertRandom(random, LinearGapAlignmentScoring.getNucleotideBLASTScoring(),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+        assertRandom(random, new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -1, -1),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+    }
+
+    @Test
+    public void testEmpty() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence seq = new NucleotideSequence("ACGTACGTTTGCAAAT");
+        assertAlignment(scoring, NucleotideSequence.EMPTY, seq);
+        assertAlignment(scoring, seq, NucleotideSequence.EMPTY);
+        assertAlignment(scoring, NucleotideSequence.EMPTY, NucleotideSequence.EMPTY);
+        assertAlignment(scoring, new NucleotideSequence("A"), seq);
+    }
+
+    @Test
+    public void testThreshold() {
+        Well19937c random = new Well19937c(43);
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 1000, 1000),
+                seq2 = StripedAlignerTest.mutate(random, seq1);
+        // off by default
+        Assert.assertEquals(Long.MAX_VALUE, Aligner.getLinearMemoryThreshold());
+        Alignment<NucleotideSequence> expected = Aligner.alignGlobalAffine(scoring, seq1, seq2);
+        long threshold = Aligner.getLinearMemoryThreshold();
+        try {
+            Aligner.setLinearMemoryThreshold(1000);
+            Alignment<NucleotideSequence> actual = Aligner.alignGlobalAffine(scoring, seq1, seq2);
+            Assert.assertEquals(expected.getScore(), actual.getScore(), 0.1);
+            Assert.assertEquals(seq2, actual.getAbsoluteMutations().mutate(seq1));
+        } finally {
+            Aligner.setLinearMemoryThreshold(threshold);
+        }
+    }
+
+    private static <S extends Sequence<S>> void assertRandom(RandomGenerator random, AlignmentScoring<S> scoring,
+                                                             S empty, int iterations) {
+        for (int it = 0; it < iterations; it++) {
+            S seq1 = randomSequence(empty.getAlphabet(), random, 0, 150);
+            S seq2 = random.nextInt(4) == 0
+                    ? randomSequence(empty.getAlphabet(), random, 0, 150)
+                    : StripedAlignerTest.mutate(random, seq1);
+            assertAlignment(scoring, seq1, seq2);
+        }
+    }
+
+    private static <S extends Sequence<S>> void assertAlignment(AlignmentScoring<S> scoring, S seq1, S seq2) {
+        Alignment<S> expected = Aligner.alignGlobal(scoring, seq1, seq2);
+        Alignment<S> actual = HirschbergAligner.alignGlobal(scoring, seq1, seq2);
+        Assert.assertEquals(expected.getScore(), actual.getScore(), 0.1);
+        Assert.assertEquals(seq2, actual.getAbsoluteMutations().mutate(seq1));
+        Assert.assertEquals(expected.getSequence1Range(), actual.getSequence1Range());
+        Assert.assertEquals(expected.getSequence2Range(), actual.getSequence2Range());
+    }
+}
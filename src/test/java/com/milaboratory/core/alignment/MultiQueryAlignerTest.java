@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class MultiQueryAlignerTest {
+    @Test
+    public void testRandom() {
+        Well19937c random = new Well19937c(81);
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        for (int it = its(30, 300); it > 0; --it) {
+            List<NucleotideSequence> references = new ArrayList<>();
+            for (int i = random.nextInt(5); i >= 0; --i)
+                references.add(randomSequence(NucleotideSequence.ALPHABET, random, 0, 150));
+            List<NucleotideSequence> queries = new ArrayList<>();
+            for (int i = random.nextInt(3 * MultiQueryAligner.LANES); i >= 0; --i)
+                queries.add(random.nextBoolean()
+                        ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 150)
+                        : StripedAlignerTest.mutate(random, references.get(random.nextInt(references.size()))));
+
+            MultiQueryAligner.Scores<NucleotideSequence> global =
+                    MultiQueryAligner.scoreGlobalAffine(scoring, queries, references);
+            MultiQueryAligner.Scores<NucleotideSequence> local =
+                    MultiQueryAligner.scoreLocalAffine(scoring, queries, references);
+            for (int q = 0; q < queries.size(); ++q) {
+                for (int r = 0; r < references.size(); ++r) {
+                    Alignment<NucleotideSequence> expected = Aligner.alignGlobalAffine(scoring,
+                            references.get(r), queries.get(q));
+                    Assert.assertEquals((int) expected.getScore(), global.getScore(q, r));
+
+                    expected = Aligner.alignLocalAffine(scoring, references.get(r), queries.get(q));
+                    Assert.assertEquals(expected == null ? 0 : (int) expected.getScore(), local.getScore(q, r));
+                }
+
+                int best = global.getBestReference(q);
+                Alignment<NucleotideSequence> alignment = global.align(q, best);
+                Assert.assertEquals(global.getScore(q, best), alignment.getScore(), 0.1);
+                Assert.assertEquals(queries.get(q), alignment.getAbsoluteMutations().mutate(references.get(best)));
+                for (int r = 0; r < references.size(); ++r)
+                    Assert.assertTrue(global.getScore(q, r) <= global.getScore(q, best));
+            }
+        }
+    }
+
+    @Test
+    public void testAminoAcid() {
+        Well19937c random = new Well19937c(82);
+        AffineGapAlignmentScoring<AminoAcidSequence> scoring = AffineGapAlignmentScoring.getAminoAcidBLASTScoring(
+                BLASTMatrix.BLOSUM62);
+        List<AminoAcidSequence> references = new ArrayList<>(), queries = new ArrayList<>();
+        for (int i = 0; i < 3; ++i)
+            references.add(randomSequence(AminoAcidSequence.ALPHABET, random, 10, 50));
+        for (int i = 0; i < 20; ++i)
+            queries.add(StripedAlignerTest.mutate(random, references.get(i % references.size())));
+
+        MultiQueryAligner.Scores<AminoAcidSequence> local =
+                MultiQueryAligner.scoreLocalAffine(scoring, queries, references);
+        for (int q = 0; q < queries.size(); ++q)
+            for (int r = 0; r < references.size(); ++r) {
+                Alignment<AminoAcidSequence> expected = Aligner.alignLocalAffine(scoring,
+                        references.get(r), queries.get(q));
+                Assert.assertEquals(expected == null ? 0 : (int) expected.getScore(), local.getScore(q, r));
+            }
+    }
+
+    @Test
+    public void testEmpty() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        MultiQueryAligner.Scores<NucleotideSequence> scores = MultiQueryAligner.scoreGlobalAffine(scoring,
+                Collections.singletonList(new NucleotideSequence("ATTA")), Collections.<NucleotideSequence>emptyList());
+        Assert.assertEquals(-1, scores.getBestReference(0));
+        scores = MultiQueryAligner.scoreGlobalAffine(scoring,
+                Collections.singletonList(NucleotideSequence.EMPTY), Collections.singletonList(new NucleotideSequence("ATTA")));
+        Assert.assertEquals(-13, scores.getScore(0, 0));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.Sequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class StripedAlignerTest {
+    @Test
+    public void testNucleotides() {
+        Well19937c random = new Well19937c(31);
+        assertRandom(random, AffineGapAlignmentScoring.getNucleotideBLASTScoring(), NucleotideSequence.ALPHABET
+                .getEmptySequence(), its(300, 3000));
+        // gap open penalty is smaller than extension penalty, scalar implementation
+        assertRandom(random, new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 5, -4, -1, -6),
+                NucleotideSequence.ALPHABET.getEmptySequence(), its(100, 1000));
+    }
+
+    @Test
+    public void testAminoAcids() {
+        Well19937c random = new Well19937c(32);
+        assertRandom(random, AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62),
+                AminoAcidSequence.ALPHABET.getEmptySequence(), its(300, 3000));
+    }
+
+    @Test
+    public void testEmpty() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence empty = NucleotideSequence.EMPTY, seq = new NucleotideSequence("ACGTACGTTTGCAAAT");
+        Assert.assertEquals(Aligner.alignGlobalAffine(scoring, empty, seq).getScore(),
+                StripedAligner.scoreGlobalAffine(scoring, empty, seq), 0.1);
+        Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq, empty).getScore(),
+                StripedAligner.scoreGlobalAffine(scoring, seq, empty), 0.1);
+        Assert.assertEquals(0, StripedAligner.scoreLocalAffine(scoring, seq, empty));
+        Assert.assertNull(StripedAligner.alignLocalAffine(scoring, new NucleotideSequence("ACATTACA"),
+                new NucleotideSequence("GGGG")));
+    }
+
+    @Test
+    public void testProfileReuse() {
+        Well19937c random = new Well19937c(33);
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence query = randomSequence(NucleotideSequence.ALPHABET, random, 200, 200);
+        StripedAligner.Profile<NucleotideSequence> profile = StripedAligner.createProfile(scoring, query);
+        for (int i = 0; i < 100; i++) {
+            NucleotideSequence subject = mutate(random, query.getRange(random.nextInt(50), 150 + random.nextInt(50)));
+            Assert.assertEquals(Aligner.alignLocalAffine(scoring, query, subject).getScore(),
+                    profile.scoreLocal(subject), 0.1);
+            Assert.assertEquals(Aligner.alignGlobalAffine(scoring, query, subject).getScore(),
+                    profile.scoreGlobal(subject), 0.1);
+        }
+    }
+
+    private static <S extends Sequence<S>> void assertRandom(RandomGenerator random,
+                                                             AffineGapAlignmentScoring<S> scoring,
+                                                             S empty, int iterations) {
+        for (int it = 0; it < iterations; it++) {
+            S seq1 = randomSequence(empty.getAlphabet(), random, 1, 150);
+            S seq2 = random.nextInt(4) == 0
+                    ? randomSequence(empty.getAlphabet(), random, 1, 150)
+                    : mutate(random, seq1);
+
+            Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore(),
+                    StripedAligner.scoreGlobalAffine(scoring, seq1, seq2), 0.1);
+
+            Alignment<S> expected = Aligner.alignLocalAffine(scoring, seq1, seq2);
+            Alignment<S> actual = StripedAligner.alignLocalAffine(scoring, seq1, seq2);
+            if (expected == null) {
+                Assert.assertNull(actual);
+                Assert.assertEquals(0, StripedAligner.scoreLocalAffine(scoring, seq1, seq2));
+                continue;
+            }
+            Assert.assertEquals(expected.getScore(), StripedAligner.scoreLocalAffine(scoring, seq1, seq2), 0.1);
+            Assert.assertEquals(expected.getScore(), actual.getScore(), 0.1);
+            Assert.assertEquals(seq2.getRange(actual.getSequence2Range()), actual.getRelativeMutations()
+                    .mutate(seq1.getRange(actual.getSequence1Range())));
+        }
+    }
+
+    static <S extends Sequence<S>> S mutate(RandomGenerator random, S seq) {
+        SequenceBuilder<S> builder = seq.getAlphabet().createBuilder();
+        int basicSize = seq.getAlphabet().basicSize();
+        for (int i = 0; i < seq.size(); i++) {
+            int r = random.nextInt(30);
+            if (r == 0)
+                continue; // deletion
+            if (r == 1)
+                for (int k = random.nextInt(5); k >= 0; --k)
+                    builder.append((byte) random.nextInt(basicSize)); // insertion
+            builder.append(r == 2 ? (byte) random.nextInt(basicSize) : seq.codeAt(i));
+        }
+        return builder.createAndDestroy();
+    }
+}
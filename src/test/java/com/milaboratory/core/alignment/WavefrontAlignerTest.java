@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment;
+
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.core.alignment.AlignmantTestUtils.assertAlignment;
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class WavefrontAlignerTest {
+    @Test
+    public void testSimple() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence seq1 = new NucleotideSequence("ATTAGACAGACAGTTTACGACAGTG"),
+                seq2 = new NucleotideSequence("ATTAGACAGCAGTTTACCGACAGTG");
+        Alignment<NucleotideSequence> alignment = WavefrontAligner.alignGlobal(scoring, seq1, seq2);
+        assertAlignment(alignment, seq2, scoring);
+        Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore(), alignment.getScore(), 0.1);
+
+        alignment = WavefrontAligner.alignGlobal(scoring, seq1, seq1);
+        Assert.assertTrue(alignment.getAbsoluteMutations().isEmpty());
+        Assert.assertEquals(5 * seq1.size(), alignment.getScore(), 0.1);
+
+        alignment = WavefrontAligner.alignGlobal(scoring, NucleotideSequence.EMPTY, seq2);
+        assertAlignment(alignment, seq2, scoring);
+        Assert.assertEquals(scoring.getAffineGapPenalty(seq2.size()), alignment.getScore(), 0.1);
+    }
+
+    @Test
+    public void testRandom() {
+        Well19937c random = new Well19937c(57);
+        AffineGapAlignmentScoring<NucleotideSequence>[] scorings = new AffineGapAlignmentScoring[]{
+                AffineGapAlignmentScoring.getNucleotideBLASTScoring(),
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -3, -4, -4),
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 2, -3, -7, -2)
+        };
+        for (int it = its(300, 3000); it > 0; --it) {
+            AffineGapAlignmentScoring<NucleotideSequence> scoring = scorings[random.nextInt(scorings.length)];
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 0, 300);
+            NucleotideSequence seq2 = random.nextInt(10) == 0
+                    ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 100)
+                    : StripedAlignerTest.mutate(random, seq1);
+            Alignment<NucleotideSequence> alignment = WavefrontAligner.alignGlobal(scoring, seq1, seq2);
+            assertAlignment(alignment, seq2, scoring);
+            Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore(), alignment.getScore(), 0.1);
+        }
+    }
+
+    @Test
+    public void testAdaptivePruning() {
+        Well19937c random = new Well19937c(58);
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        int optimal = 0;
+        int total = its(100, 1000);
+        for (int it = total; it > 0; --it) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 500, 2000);
+            NucleotideSequence seq2 = StripedAlignerTest.mutate(random, seq1);
+            Alignment<NucleotideSequence> alignment = WavefrontAligner.alignGlobal(scoring, seq1, seq2, 10, 50);
+            assertAlignment(alignment, seq2, scoring);
+            float expected = WavefrontAligner.alignGlobal(scoring, seq1, seq2).getScore();
+            Assert.assertTrue(alignment.getScore() <= expected);
+            if (alignment.getScore() == expected)
+                ++optimal;
+        }
+        Assert.assertTrue(optimal > total * 9 / 10);
+    }
+
+    @Test
+    public void testWildcards() {
+        AffineGapAlignmentScoring<NucleotideSequence> scoring = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        NucleotideSequence seq1 = new NucleotideSequence("ATTAGACAGNCAGTTTACGACAGTG"),
+                seq2 = new NucleotideSequence("ATTAGACAGCAGTTTACCGACAGTG");
+        Alignment<NucleotideSequence> alignment = WavefrontAligner.alignGlobal(scoring, seq1, seq2);
+        assertAlignment(alignment, seq2, scoring);
+        Assert.assertEquals(Aligner.alignGlobalAffine(scoring, seq1, seq2).getScore(), alignment.getScore(), 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonUniformScoring() {
+        WavefrontAligner.alignGlobal(AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62),
+                new AminoAcidSequence("CASSLAPGATNEKLFF"), new AminoAcidSequence("CASSLAGATNEKLFF"));
+    }
+}
@@ -16,10 +16,25 @@
 package com.milaboratory.core.alignment.batch;
 
 import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.Aligner;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentScoring;
+import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.MutationsGenerator;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
 import com.milaboratory.core.sequence.NucleotideSequence;
+import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
 public class SimpleBatchAlignerTest {
     @Test
     public void test1() {
@@ -49,4 +64,64 @@ public class SimpleBatchAlignerTest {
         Assert.assertEquals((Integer) 0, result.getHits().get(0).getRecordPayload());
         Assert.assertEquals(4, result.getHits().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testParallel() {
+        Well19937c random = new Well19937c(91);
+        NucleotideMutationModel model = MutationModels.getEmpiricalNucleotideMutationModel()
+                .multiplyProbabilities(10);
+        model.reseed(92);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int it = its(10, 50); it > 0; --it) {
+            NucleotideSequence query = randomSequence(NucleotideSequence.ALPHABET, random, 20, 80);
+            boolean global = random.nextBoolean();
+            AlignmentScoring<NucleotideSequence> scoring = random.nextBoolean()
+                    ? AffineGapAlignmentScoring.getNucleotideBLASTScoring()
+                    : LinearGapAlignmentScoring.getNucleotideBLASTScoring();
+            SimpleBatchAlignerParameters<NucleotideSequence> parameters = new SimpleBatchAlignerParameters<>(
+                    1 + random.nextInt(10), random.nextFloat(), global ? -1000f : 10f, global, scoring);
+
+            SimpleBatchAligner<NucleotideSequence, Integer> sequential = new SimpleBatchAligner<>(parameters),
+                    parallel = new SimpleBatchAligner<>(parameters, pool);
+            for (int i = 0; i < 300; ++i) {
+                NucleotideSequence reference;
+                if (random.nextInt(10) == 0) {
+                    Mutations<NucleotideSequence> mutations = MutationsGenerator.generateMutations(query, model);
+                    reference = mutations.mutate(query);
+                } else
+                    reference = randomSequence(NucleotideSequence.ALPHABET, random, 5, 150);
+                sequential.addReference(reference, i);
+                parallel.addReference(reference, i);
+            }
+
+            List<AlignmentHit<NucleotideSequence, Integer>> expected = sequential.align(query).getHits(),
+                    actual = parallel.align(query).getHits();
+            Assert.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i) {
+                Assert.assertEquals(expected.get(i).getAlignment().getScore(),
+                        actual.get(i).getAlignment().getScore(), 0.1);
+                Assert.assertEquals(expected.get(i).getRecordPayload(), actual.get(i).getRecordPayload());
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testScoreUpperBound() {
+        Well19937c random = new Well19937c(93);
+        AffineGapAlignmentScoring<NucleotideSequence> affine = AffineGapAlignmentScoring.getNucleotideBLASTScoring();
+        LinearGapAlignmentScoring<NucleotideSequence> linear = LinearGapAlignmentScoring.getNucleotideBLASTScoring();
+        for (int it = its(300, 3000); it > 0; --it) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 1, 100),
+                    seq2 = randomSequence(NucleotideSequence.ALPHABET, random, 1, 100);
+            Assert.assertTrue(Aligner.alignGlobal(affine, seq1, seq2).getScore()
+                    <= SimpleBatchAligner.scoreUpperBound(affine, seq1.size(), seq2.size(), true));
+            Assert.assertTrue(Aligner.alignGlobal(linear, seq1, seq2).getScore()
+                    <= SimpleBatchAligner.scoreUpperBound(linear, seq1.size(), seq2.size(), true));
+            Alignment<NucleotideSequence> local = Aligner.alignLocal(affine, seq1, seq2);
+            if (local != null)
+                Assert.assertTrue(local.getScore()
+                        <= SimpleBatchAligner.scoreUpperBound(affine, seq1.size(), seq2.size(), false));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import cc.redberry.pipe.OutputPort;
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.alignment.AlignmentUtils;
+import com.milaboratory.core.alignment.batch.AlignmentResult;
+import com.milaboratory.core.alignment.batch.PipedAlignmentResult;
+import com.milaboratory.core.mutations.Mutations;
+import com.milaboratory.core.mutations.generator.MutationModels;
+import com.milaboratory.core.mutations.generator.MutationsGenerator;
+import com.milaboratory.core.mutations.generator.NucleotideMutationModel;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import org.apache.commons.math3.random.RandomDataGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static cc.redberry.pipe.CUtils.asOutputPort;
+import static cc.redberry.pipe.CUtils.it;
+import static com.milaboratory.core.alignment.AlignmantTestUtils.assertAlignment;
+
+public class InProcessBlastAlignerTest {
+    @Test
+    public void test1() throws Exception {
+        InProcessBlastAligner<NucleotideSequence, Integer> ba = new InProcessBlastAligner<>(NucleotideSequence.ALPHABET);
+        NucleotideSequence ns1 = new NucleotideSequence("ATTAGACGAATCCGATGCTGACTGCGCGATGATGCTAGTCGTGCTAGTACTAGCTGGCGCGGATTC");
+        NucleotideSequence ns2 = new NucleotideSequence("TATTACCTGCTGCGCGCGCTAGATCGGTACTACGTTGCTAGCTAGCTTCGTATACGTCGTGCTAGTATCGATCGCTAG");
+
+        ba.addReference(ns1, 1);
+        ba.addReference(ns2, 2);
+
+        NucleotideSequence nsq = new NucleotideSequence("TAGACGAATCCGATGCTGACTGCGCGATGAACCTAGTCGTGCTAGTACTA");
+
+        PipedAlignmentResult<BlastHit<NucleotideSequence, Integer>, NucleotideSequence> result =
+                ba.align(asOutputPort(nsq)).take();
+        BlastHit<NucleotideSequence, Integer> hit = result.getHits().get(0);
+        Assert.assertEquals((Integer) 1, hit.getRecordPayload());
+        Assert.assertEquals(BlastDBBuilder.getIdKey(0), hit.getSubjectId());
+        Assert.assertEquals(nsq, AlignmentUtils.getAlignedSequence2Part(hit.getAlignment()));
+        Assert.assertEquals(hit.getAlignment().getSequence1Range(), hit.getSubjectRange());
+        Assert.assertTrue(hit.getEValue() < 1e-10);
+        assertAlignment(hit.getAlignment(), nsq, ba.getScoring());
+    }
+
+    @Test
+    public void testNucleotideEValue() throws Exception {
+        InProcessBlastAligner<NucleotideSequence, Integer> ba = new InProcessBlastAligner<>(NucleotideSequence.ALPHABET);
+        NucleotideSequence ref = new NucleotideSequence("ATTAGACGAATCCGATGCTGACTGCGCGATGATGCTAGTCGTGCTAGTACTAGCTGGCGCGGATTC");
+        ba.addReference(ref, 0);
+        NucleotideSequence query = ref.getRange(5, 55);
+        BlastHit<NucleotideSequence, Integer> hit = ba.align(query).getBestHit();
+        // 50 nt exact match with blastn defaults (2/-3, gaps 5/2): raw score 100, gapped lambda = 0.625, K = 0.41
+        Assert.assertEquals(100, hit.getScore(), 0.0);
+        Assert.assertEquals(0.41 * query.size() * ref.size() * Math.exp(-0.625 * 100), hit.getEValue(),
+                1e-6 * hit.getEValue());
+        Assert.assertEquals((0.625 * 100 - Math.log(0.41)) / Math.log(2), hit.getBitScore(), 1e-9);
+    }
+
+    @Test
+    public void testNoHits() throws Exception {
+        InProcessBlastAligner<NucleotideSequence, Integer> ba = new InProcessBlastAligner<>(NucleotideSequence.ALPHABET);
+        Assert.assertFalse(ba.align(new NucleotideSequence("ATTAGACGAATCCGATGCTGACTGC")).hasHits());
+        ba = new InProcessBlastAligner<>(NucleotideSequence.ALPHABET);
+        ba.addReference(new NucleotideSequence("GGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGGG"), 0);
+        Assert.assertFalse(ba.align(new NucleotideSequence("ATTAGACGAATCCGATGCTGACTGC")).hasHits());
+    }
+
+    @Test
+    public void testAminoAcid() throws Exception {
+        Well19937c random = new Well19937c(123);
+        InProcessBlastAligner<AminoAcidSequence, Integer> ba = new InProcessBlastAligner<>(AminoAcidSequence.ALPHABET);
+        List<AminoAcidSequence> base = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            AminoAcidSequence seq = TestUtil.randomSequence(AminoAcidSequence.ALPHABET, random, 100, 300, true);
+            base.add(seq);
+            ba.addReference(seq, i);
+        }
+
+        int noHit = 0;
+        for (int i = 0; i < 200; ++i) {
+            int expected = random.nextInt(base.size());
+            AminoAcidSequence reference = base.get(expected);
+            int from = random.nextInt(reference.size() - 60);
+            AminoAcidSequence query = mutateAminoAcids(random, reference.getRange(from, from + 60));
+            AlignmentResult<BlastHit<AminoAcidSequence, Integer>> result = ba.align(query);
+            if (!result.hasHits()) {
+                ++noHit;
+                continue;
+            }
+            BlastHit<AminoAcidSequence, Integer> hit = result.getBestHit();
+            Assert.assertEquals((Integer) expected, hit.getRecordPayload());
+            assertAlignment(hit.getAlignment(), query, ba.getScoring());
+            Assert.assertTrue(hit.getEValue() <= InProcessBlastAligner.DEFAULT_E_VALUE);
+        }
+        Assert.assertTrue(noHit < 5);
+
+        // random queries are not expected to produce significant hits
+        int falseHits = 0;
+        for (int i = 0; i < 100; ++i)
+            if (ba.align(TestUtil.randomSequence(AminoAcidSequence.ALPHABET, random, 60, 60, true)).hasHits())
+                ++falseHits;
+        Assert.assertTrue(falseHits < 20);
+    }
+
+    /**
+     * Substitutes ~15% of letters and introduces a single gap
+     */
+    private static AminoAcidSequence mutateAminoAcids(Well19937c random, AminoAcidSequence seq) {
+        StringBuilder sb = new StringBuilder(seq.toString());
+        for (int i = 0; i < sb.length(); ++i)
+            if (random.nextDouble() < 0.15)
+                sb.setCharAt(i, AminoAcidSequence.ALPHABET.codeToSymbol((byte) (1 + random.nextInt(20))));
+        int gap = 20 + random.nextInt(20);
+        if (random.nextBoolean())
+            sb.delete(gap, gap + 2);
+        else
+            sb.insert(gap, "GW");
+        return new AminoAcidSequence(sb.toString());
+    }
+
+    @Test
+    public void simpleRandomTestT1() throws Exception {
+        simpleRandomTest(1);
+    }
+
+    @Test
+    public void simpleRandomTestT3() throws Exception {
+        simpleRandomTest(3);
+    }
+
+    public void simpleRandomTest(int threads) {
+        int recordsInBase = 1000;
+
+        int baseLengtFrom = 100;
+        int baseLengtTo = 200;
+
+        int queryLengthFrom = 90;
+        int queryLengthTo = 150;
+
+        int trys = TestUtil.its(300, 1000);
+
+        Well19937c rg = new Well19937c(1234);
+        RandomDataGenerator rdg = new RandomDataGenerator(rg);
+
+        List<NucleotideSequence> base = new ArrayList<>();
+
+        BlastAlignerParameters parameters = new BlastAlignerParameters();
+        parameters.setNumThreads(threads);
+        InProcessBlastAligner<NucleotideSequence, Integer> ba =
+                new InProcessBlastAligner<>(NucleotideSequence.ALPHABET, parameters);
+
+        for (int i = 0; i < recordsInBase; i++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, rg, baseLengtFrom, baseLengtTo);
+            base.add(seq);
+            ba.addReference(seq, i);
+        }
+
+        List<BlastAlignerTest.QueryObject<NucleotideSequence>> queries = new ArrayList<>();
+
+        NucleotideMutationModel mutationModel = MutationModels.getEmpiricalNucleotideMutationModel().multiplyProbabilities(2.0);
+        mutationModel.reseed(12343L);
+
+        for (int i = 0; i < trys; i++) {
+            int hit = rg.nextInt(base.size());
+            NucleotideSequence sFromBase = base.get(hit);
+            int qLength = rdg.nextInt(queryLengthFrom, Math.min(queryLengthTo, sFromBase.size() - 1));
+            int qFrom = rg.nextInt(sFromBase.size() - qLength);
+            NucleotideSequence query = sFromBase.getRange(qFrom, qFrom + qLength);
+            Mutations<NucleotideSequence> muts = MutationsGenerator.generateMutations(query, mutationModel);
+            query = muts.mutate(query);
+            queries.add(new BlastAlignerTest.QueryObject<>(query, hit, muts.move(qFrom)));
+        }
+
+        OutputPort<PipedAlignmentResult<BlastHit<NucleotideSequence, Integer>, BlastAlignerTest.QueryObject<NucleotideSequence>>> results =
+                ba.align(asOutputPort(queries));
+
+        int noHit = 0;
+        int wrongHit = 0;
+        for (PipedAlignmentResult<BlastHit<NucleotideSequence, Integer>, BlastAlignerTest.QueryObject<NucleotideSequence>> result : it(results)) {
+            if (!result.hasHits()) {
+                ++noHit;
+                continue;
+            }
+            Alignment<NucleotideSequence> alignment = result.getHits().get(0).getAlignment();
+            if (result.getQuery().expectedHit != result.getHits().get(0).getRecordPayload())
+                wrongHit++;
+            else
+                assertAlignment(alignment, result.getQuery().getSequence(), ba.getScoring());
+        }
+        Assert.assertTrue(noHit < trys * 3 / 100);
+        Assert.assertTrue(wrongHit < 5);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.blast;
+
+import com.milaboratory.core.alignment.AffineGapAlignmentScoring;
+import com.milaboratory.core.alignment.BLASTMatrix;
+import com.milaboratory.core.alignment.LinearGapAlignmentScoring;
+import com.milaboratory.core.sequence.AminoAcidSequence;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KarlinAltschulStatisticsTest {
+    @Test
+    public void testBlosum62Ungapped() {
+        // Published values for BLOSUM62 with Robinson & Robinson frequencies
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.ungapped(
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62));
+        Assert.assertEquals(0.3176, statistics.getLambda(), 0.001);
+        Assert.assertEquals(0.134, statistics.getK(), 0.005);
+        Assert.assertEquals(0.40, statistics.getH(), 0.01);
+    }
+
+    @Test
+    public void testNucleotideUngapped() {
+        // +1/-3, uniform frequencies: lambda = 1.374, K = 0.711
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.ungapped(
+                new LinearGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -3, -5));
+        Assert.assertEquals(1.374, statistics.getLambda(), 0.001);
+        Assert.assertEquals(0.711, statistics.getK(), 0.005);
+    }
+
+    @Test
+    public void testEValue() {
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.forScoring(
+                AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62, -12, -1));
+        Assert.assertEquals(0.267, statistics.getLambda(), 0.0);
+        Assert.assertEquals((0.267 * 100 - Math.log(0.041)) / Math.log(2), statistics.bitScore(100), 1e-9);
+        Assert.assertEquals(0.041 * 300 * 1e6 * Math.exp(-26.7), statistics.eValue(100, 300, 1e6), 1e-12);
+        Assert.assertTrue(statistics.eValue(50, 300, 1e6) > statistics.eValue(100, 300, 1e6));
+    }
+
+    @Test
+    public void testBlastnDefaults() {
+        // blastn: reward 2, penalty -3, gap existence 5, gap extension 2
+        // reported as "Gapped Lambda K H 0.625 0.410 0.780"
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.forScoring(
+                InProcessBlastAligner.createScoring(NucleotideSequence.ALPHABET, null));
+        Assert.assertEquals(0.625, statistics.getLambda(), 0.0);
+        Assert.assertEquals(0.41, statistics.getK(), 0.0);
+        Assert.assertEquals(0.78, statistics.getH(), 0.0);
+        // E-value of 50 nt exact match (raw score 100) in 1 Mb database for 100 nt query
+        Assert.assertEquals(0.41 * 100 * 1e6 * Math.exp(-62.5), statistics.eValue(100, 100, 1e6), 1e-30);
+    }
+
+    @Test
+    public void testNucleotideGapped() {
+        // megablast scores with blastn gap costs: large gap costs give ungapped values (lambda = 1.33, K = 0.621)
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.forScoring(
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -2, -7, -2));
+        Assert.assertEquals(1.33, statistics.getLambda(), 0.005);
+        Assert.assertEquals(0.621, statistics.getK(), 0.005);
+
+        // blastn-short: reward 1, penalty -3, gap existence 5, gap extension 2
+        statistics = KarlinAltschulStatistics.forScoring(
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -3, -7, -2));
+        Assert.assertEquals(1.374, statistics.getLambda(), 0.001);
+        Assert.assertEquals(0.711, statistics.getK(), 0.005);
+
+        // tabulated gap costs
+        statistics = KarlinAltschulStatistics.forScoring(
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 1, -3, -2, -1));
+        Assert.assertEquals(1.21, statistics.getLambda(), 0.0);
+        Assert.assertEquals(0.34, statistics.getK(), 0.0);
+
+        // multiple of 2/-3 with 5/2
+        statistics = KarlinAltschulStatistics.forScoring(
+                new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 4, -6, -14, -4));
+        Assert.assertEquals(0.625 / 2, statistics.getLambda(), 1e-12);
+        Assert.assertEquals(0.41, statistics.getK(), 0.0);
+    }
+
+    @Test
+    public void testAminoAcidDefaults() {
+        for (BLASTMatrix matrix : BLASTMatrix.values()) {
+            BlastAlignerParameters parameters = new BlastAlignerParameters();
+            parameters.setMatrix(matrix.name());
+            KarlinAltschulStatistics gapped = KarlinAltschulStatistics.forScoring(
+                    InProcessBlastAligner.createScoring(AminoAcidSequence.ALPHABET, parameters));
+            KarlinAltschulStatistics ungapped = KarlinAltschulStatistics.ungapped(
+                    AffineGapAlignmentScoring.getAminoAcidBLASTScoring(matrix));
+            Assert.assertTrue(gapped.getLambda() < ungapped.getLambda());
+            Assert.assertTrue(gapped.getK() < ungapped.getK());
+        }
+
+        // blastp -matrix BLOSUM45: gap existence 15, gap extension 2
+        BlastAlignerParameters parameters = new BlastAlignerParameters();
+        parameters.setMatrix("BLOSUM45");
+        KarlinAltschulStatistics statistics = KarlinAltschulStatistics.forScoring(
+                InProcessBlastAligner.createScoring(AminoAcidSequence.ALPHABET, parameters));
+        Assert.assertEquals(0.203, statistics.getLambda(), 0.0);
+        Assert.assertEquals(0.041, statistics.getK(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedGapCosts() {
+        KarlinAltschulStatistics.forScoring(AffineGapAlignmentScoring.getAminoAcidBLASTScoring(BLASTMatrix.BLOSUM62,
+                -20, -5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedNucleotideScores() {
+        KarlinAltschulStatistics.forScoring(new AffineGapAlignmentScoring<>(NucleotideSequence.ALPHABET, 3, -2, -7, -2));
+    }
+}
@@ -12,11 +12,14 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.test.TestUtil;
 import com.milaboratory.util.GlobalObjectMappers;
 import com.milaboratory.util.RandomUtil;
+import com.milaboratory.util.TempFileManager;
 import org.apache.commons.math3.random.Well19937c;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.File;
+
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING;
 import static com.milaboratory.core.alignment.AffineGapAlignmentScoring.IGBLAST_NUCLEOTIDE_SCORING_THRESHOLD;
 import static com.milaboratory.core.alignment.benchmark.ChallengeProvider.getParamsOneCluster;
@@ -64,6 +67,37 @@ public class KAligner2Test {
         //System.out.println(val);
     }
 
+    @Test
+    public void testSaveLoad() throws Exception {
+        KAligner2<String> aligner = new KAligner2<>(gParams);
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgatcgatcgactgactagcataggatgtagagctagctagctac"), "a");
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgatcgatcgactgactagcatcagcatcaggatgtagagctagctagctac"), "b");
+        aligner.addReference(new NucleotideSequence("atgcgtcgatcgtagctagctgtagtagatgatgatagtagatagtagtagtgatgacgatcgactgaatgtagagctagctagctac"), "c");
+
+        File file = TempFileManager.getTempFile();
+        aligner.save(file, String.class);
+        KAligner2<String> loaded = KAligner2.load(file, String.class);
+        Assert.assertEquals(gParams, loaded.parameters);
+
+        NucleotideSequence query = new NucleotideSequence("atgcgtcgatcgtagctagctgtcgatcgactgaatgtagagctagctagctac");
+        // Seed positions are random, same seed gives the same seeds for both aligners
+        for (long seed = 0; seed < 10; ++seed) {
+            RandomUtil.reseedThreadLocal(seed);
+            KAlignmentResult2<String> expected = aligner.align(query);
+            RandomUtil.reseedThreadLocal(seed);
+            KAlignmentResult2<String> actual = loaded.align(query);
+            Assert.assertEquals(expected.getHits().size(), actual.getHits().size());
+            for (int i = 0; i < expected.getHits().size(); ++i) {
+                Assert.assertEquals(expected.getHits().get(i).getTargetId(), actual.getHits().get(i).getTargetId());
+                Assert.assertEquals(expected.getHits().get(i).getAlignment().getScore(),
+                        actual.getHits().get(i).getAlignment().getScore(), 0.1);
+                Assert.assertEquals(expected.getHits().get(i).getRecordPayload(),
+                        actual.getHits().get(i).getRecordPayload());
+            }
+        }
+        Assert.assertEquals(aligner.getReference(2), loaded.getReference(2));
+    }
+
     @Test
     public void testSimpleRandomTest() throws Exception {
         RandomUtil.reseedThreadLocal(12342345L);
@@ -37,4 +37,24 @@ public class KAlignerParameters2Test {
     public void test1() throws Exception {
         TestUtil.assertJson(gParams, BatchAlignerWithBaseParameters.class);
     }
+
+    @Test
+    public void testXDrop() throws Exception {
+        TestUtil.assertJson(gParams.clone().setAlignmentXDrop(40), BatchAlignerWithBaseParameters.class);
+    }
+
+    @Test
+    public void testMinimizerWindow() throws Exception {
+        TestUtil.assertJson(gParams.clone().setMapperMinimizerWindow(5), BatchAlignerWithBaseParameters.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMinimizerWindow() throws Exception {
+        gParams.clone().setMapperMinimizerWindow(-1);
+    }
+
+    @Test
+    public void testBuildParallelism() throws Exception {
+        TestUtil.assertJson(gParams.clone().setMapperBuildParallelism(4), BatchAlignerWithBaseParameters.class);
+    }
 }
\ No newline at end of file
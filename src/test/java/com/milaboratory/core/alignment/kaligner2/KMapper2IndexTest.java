@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligner2;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.IntCombinations;
+import com.milaboratory.util.TempFileManager;
+import gnu.trove.list.array.TLongArrayList;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class KMapper2IndexTest {
+    @Test
+    public void test32() throws Exception {
+        assertIndex(100, false, false);
+    }
+
+    @Test
+    public void test64() throws Exception {
+        // Large declared reference length forces 64-bit postings
+        assertIndex(1 << 30, true, false);
+    }
+
+    @Test
+    public void testMapped32() throws Exception {
+        assertIndex(100, false, true);
+    }
+
+    @Test
+    public void testMapped64() throws Exception {
+        assertIndex(1 << 30, true, true);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        Well1024a random = new Well1024a(53);
+        List<NucleotideSequence> sequences = new ArrayList<>();
+        for (int i = 0; i < 200; ++i)
+            sequences.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 0, 300));
+
+        KMapper2Index sequential = KMapper2Index.build(9, 2, sequences, 300),
+                parallel = KMapper2Index.build(9, 2, sequences, 300, 0, new ForkJoinPool(4));
+        for (int holesMask = 0; holesMask < sequential.masks(); ++holesMask) {
+            Assert.assertEquals(sequential.offsets(holesMask), parallel.offsets(holesMask));
+            if (sequential.kmers(holesMask) >= 0)
+                Assert.assertEquals(sequential.postings32(holesMask), parallel.postings32(holesMask));
+        }
+    }
+
+    @Test
+    public void testSpacedSeed() throws Exception {
+        Well1024a random = new Well1024a(54);
+        for (int nValue : new int[]{5, 9, 16}) {
+            NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 100, 100);
+            for (int kValue = 0; kValue <= 3; ++kValue)
+                for (int[] combination : CUtils.it(new IntCombinations(nValue, kValue))) {
+                    int holesMask = KMapper2.getCombinationMask(combination);
+                    KMapper2Index.SpacedSeed seed = new KMapper2Index.SpacedSeed(nValue, holesMask);
+                    long window = 0;
+                    for (int i = 0; i < sequence.size(); ++i) {
+                        window = seed.roll(window, sequence.codeAt(i));
+                        if (i >= nValue - 1)
+                            Assert.assertEquals(kmer(sequence, i - nValue + 1, nValue, holesMask), seed.kmer(window));
+                    }
+                }
+        }
+    }
+
+    private static int kmer(NucleotideSequence sequence, int position, int nValue, int holesMask) {
+        int kmer = 0;
+        for (int j = 0; j < nValue; ++j)
+            if (((holesMask >> j) & 1) == 0)
+                kmer = kmer << 2 | sequence.codeAt(position + j);
+        return kmer;
+    }
+
+    private static void assertIndex(int maxReferenceLength, boolean expect64, boolean mapped) throws Exception {
+        Well1024a random = new Well1024a(52);
+        int nValue = 7, kValue = 1;
+        List<NucleotideSequence> sequences = new ArrayList<>();
+        for (int i = 0; i < 50; ++i)
+            sequences.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 0, 100));
+
+        KMapper2Index index = KMapper2Index.build(nValue, kValue, sequences, maxReferenceLength);
+        Assert.assertTrue(index instanceof KMapper2Index.ArrayIndex);
+        if (mapped) {
+            File file = TempFileManager.getTempFile();
+            byte[] metadata = {1, 2, 3};
+            KMapper2Index.save(file, metadata, index);
+            KMapper2Index.MappedIndex mappedIndex = KMapper2Index.map(file);
+            Assert.assertArrayEquals(metadata, mappedIndex.metadata);
+            index = mappedIndex.index;
+            Assert.assertTrue(index instanceof KMapper2Index.BufferIndex);
+        }
+        Assert.assertEquals(expect64, index.is64());
+
+        TLongArrayList records = new TLongArrayList();
+        for (int[] combination : CUtils.it(new IntCombinations(nValue, kValue))) {
+            int holesMask = KMapper2.getCombinationMask(combination);
+            for (int id = 0; id < sequences.size(); ++id) {
+                NucleotideSequence sequence = sequences.get(id);
+                for (int position = 0; position <= sequence.size() - nValue; ++position) {
+                    int kmer = kmer(sequence, position, nValue, holesMask);
+
+                    records.resetQuick();
+                    index.collect(holesMask, kmer, records);
+                    Assert.assertEquals(index.count(holesMask, kmer), records.size());
+                    Assert.assertTrue(records.contains(((long) id << 32) | position));
+                    for (int i = 1; i < records.size(); ++i)
+                        Assert.assertTrue(records.get(i - 1) < records.get(i));
+                }
+            }
+        }
+    }
+}
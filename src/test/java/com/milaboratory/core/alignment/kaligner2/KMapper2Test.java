@@ -9,12 +9,15 @@ import com.milaboratory.core.sequence.NucleotideSequence;
 import com.milaboratory.core.sequence.SequenceBuilder;
 import com.milaboratory.test.TestUtil;
 import com.milaboratory.util.RandomUtil;
+import com.milaboratory.util.TempFileManager;
 import org.apache.commons.math3.random.RandomDataGenerator;
 import org.apache.commons.math3.random.Well1024a;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -491,4 +494,148 @@ public class KMapper2Test {
         mask >>= i;
         return kMer;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testManyReferences() throws Exception {
+        Well1024a random = new Well1024a(123);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams);
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            NucleotideSequence reference = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 70, 90);
+            references.add(reference);
+            Assert.assertEquals(i, mapper.addReference(reference));
+        }
+
+        for (int id : new int[]{0, 8191, 8192, 9999}) {
+            NucleotideSequence reference = references.get(id);
+            KMappingResult2 result = mapper.align(reference.getRange(5, reference.size() - 5));
+            Assert.assertFalse(result.hits.isEmpty());
+            Assert.assertEquals(id, result.hits.get(0).id);
+        }
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        Well1024a random = new Well1024a(321);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams);
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            NucleotideSequence reference = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 70, 90);
+            references.add(reference);
+            mapper.addReference(reference);
+        }
+
+        File file = TempFileManager.getTempFile();
+        mapper.save(file);
+        KMapper2 loaded = KMapper2.load(file);
+        Assert.assertEquals(mapper.toString(), loaded.toString());
+
+        for (int id = 0; id < references.size(); id += 7) {
+            NucleotideSequence query = references.get(id).getRange(5, references.get(id).size() - 5);
+            // Seed positions are random, same seed gives the same seeds for both mappers
+            RandomUtil.reseedThreadLocal(id);
+            KMappingResult2 expected = mapper.align(query);
+            RandomUtil.reseedThreadLocal(id);
+            KMappingResult2 actual = loaded.align(query);
+            Assert.assertEquals(expected.hits.size(), actual.hits.size());
+            for (int i = 0; i < expected.hits.size(); ++i) {
+                Assert.assertEquals(expected.hits.get(i).id, actual.hits.get(i).id);
+                Assert.assertEquals(expected.hits.get(i).score, actual.hits.get(i).score);
+            }
+        }
+    }
+
+    @Test
+    public void testAddReferences() throws Exception {
+        Well1024a random = new Well1024a(322);
+        KMapper2 single = KMapper2.createFromParameters(gParams), bulk = KMapper2.createFromParameters(gParams);
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 300; ++i) {
+            NucleotideSequence reference = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 70, 200);
+            references.add(reference);
+            single.addReference(reference);
+        }
+        Assert.assertEquals(0, bulk.addReferences(references.subList(0, 100)));
+        Assert.assertEquals(100, bulk.addReferences(references.subList(100, 300)));
+        Assert.assertEquals(single.toString(), bulk.toString());
+
+        for (int id = 0; id < references.size(); id += 11) {
+            NucleotideSequence query = references.get(id).getRange(5, references.get(id).size() - 5);
+            KMappingResult2 result = bulk.align(query);
+            Assert.assertFalse(result.hits.isEmpty());
+            Assert.assertEquals(id, result.hits.get(0).id);
+        }
+    }
+
+    @Test
+    public void testParallelBuild() throws Exception {
+        Well1024a random = new Well1024a(324);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams),
+                parallel = KMapper2.createFromParameters(gParams.clone().setMapperBuildParallelism(4));
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 70, 90));
+        mapper.addReferences(references);
+        parallel.addReferences(references);
+        Assert.assertEquals(mapper.toString(), parallel.toString());
+
+        for (int id = 0; id < references.size(); id += 7) {
+            NucleotideSequence query = references.get(id).getRange(5, references.get(id).size() - 5);
+            RandomUtil.reseedThreadLocal(id);
+            KMappingResult2 expected = mapper.align(query);
+            RandomUtil.reseedThreadLocal(id);
+            KMappingResult2 actual = parallel.align(query);
+            Assert.assertEquals(expected.hits.size(), actual.hits.size());
+            for (int i = 0; i < expected.hits.size(); ++i) {
+                Assert.assertEquals(expected.hits.get(i).id, actual.hits.get(i).id);
+                Assert.assertEquals(expected.hits.get(i).score, actual.hits.get(i).score);
+            }
+        }
+    }
+
+    @Test
+    public void testMinimizers() throws Exception {
+        Well1024a random = new Well1024a(323);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams),
+                minimizerMapper = KMapper2.createFromParameters(gParams.clone().setMapperMinimizerWindow(5));
+        List<NucleotideSequence> references = new ArrayList<>();
+        for (int i = 0; i < 300; ++i)
+            references.add(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 70, 200));
+        mapper.addReferences(references);
+        minimizerMapper.addReferences(references);
+
+        // Only minimizers are indexed
+        SummaryStatistics all = mapper.getRecordSizeSummaryStatistics(),
+                minimizers = minimizerMapper.getRecordSizeSummaryStatistics();
+        Assert.assertEquals(all.getN(), minimizers.getN());
+        Assert.assertTrue(minimizers.getSum() < all.getSum() / 2);
+
+        for (int id = 0; id < references.size(); id += 7) {
+            NucleotideSequence query = references.get(id).getRange(5, references.get(id).size() - 5);
+            KMappingResult2 result = minimizerMapper.align(query);
+            Assert.assertFalse(result.hits.isEmpty());
+            Assert.assertEquals(id, result.hits.get(0).id);
+            Assert.assertTrue(result.getSeedsCount() < query.size() / 2);
+        }
+    }
+
+    @Test
+    public void testSeedsCountLimit() throws Exception {
+        // With w = 1 every k-mer is a seed, so number of seeds exceeds capacity of seed index in the record
+        Well1024a random = new Well1024a(325);
+        KMapper2 mapper = KMapper2.createFromParameters(gParams.clone().setMapperMinimizerWindow(1));
+        NucleotideSequence reference = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 30000, 30000);
+        mapper.addReference(reference);
+        NucleotideSequence query = reference.getRange(1000, 21000);
+
+        KMappingResult2 result = mapper.align(query);
+        Assert.assertTrue(result.getSeedsCount() <= 1 << 13);
+        Assert.assertFalse(result.hits.isEmpty());
+        KMappingHit2 hit = result.hits.get(0);
+        Assert.assertEquals(0, hit.id);
+        for (int i = 0; i < hit.seedRecords.length; ++i) {
+            Assert.assertEquals(1000, hit.offsetById(i));
+            Assert.assertTrue(hit.indexById(i) < result.getSeedsCount());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.alignment.kaligner2;
+
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.IntArrayList;
+import org.apache.commons.math3.random.Well1024a;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MinimizersTest {
+    @Test
+    public void testWindowGuarantee() {
+        Well1024a random = new Well1024a(55);
+        int nValue = 10, window = 7;
+        for (int t = 0; t < 100; ++t) {
+            NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 10, 300);
+            IntArrayList positions = new IntArrayList();
+            Minimizers.select(sequence, 0, sequence.size(), nValue, window, positions);
+
+            Assert.assertFalse(positions.isEmpty());
+            for (int i = 1; i < positions.size(); ++i) {
+                Assert.assertTrue(positions.get(i - 1) < positions.get(i));
+                // Each window of w kMers contains a minimizer
+                Assert.assertTrue(positions.get(i) - positions.get(i - 1) <= window);
+            }
+            Assert.assertTrue(positions.get(0) < window);
+            Assert.assertTrue(positions.last() > sequence.size() - nValue - window);
+        }
+    }
+
+    @Test
+    public void testSubsequence() {
+        Well1024a random = new Well1024a(56);
+        int nValue = 10, window = 5;
+        for (int t = 0; t < 100; ++t) {
+            NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 100, 300);
+            IntArrayList all = new IntArrayList();
+            Minimizers.select(sequence, 0, sequence.size(), nValue, window, all);
+
+            int from = random.nextInt(30), to = sequence.size() - random.nextInt(30);
+            IntArrayList part = new IntArrayList();
+            Minimizers.select(sequence, from, to, nValue, window, part);
+
+            // Minimizers of windows lying inside the range are minimizers of the whole sequence
+            for (int i = 0; i < part.size(); ++i) {
+                int position = part.get(i);
+                if (position >= from + window - 1 && position + nValue + window - 1 <= to)
+                    Assert.assertTrue(all.contains(position));
+            }
+        }
+    }
+
+    @Test
+    public void testReusedBuffer() {
+        Well1024a random = new Well1024a(57);
+        int nValue = 10, window = 5;
+        Minimizers.Buffer buffer = new Minimizers.Buffer();
+        for (int t = 0; t < 100; ++t) {
+            NucleotideSequence sequence = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 0, 300);
+            IntArrayList expected = new IntArrayList(), actual = new IntArrayList();
+            Minimizers.select(sequence, 0, sequence.size(), nValue, window, expected);
+            Minimizers.select(sequence, 0, sequence.size(), nValue, window, actual, buffer);
+            Assert.assertEquals(expected, actual);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.milaboratory.core.io.ParallelGZIPInputStreamTest.randomData;
+
+public class ParallelFrameStreamsTest {
+    static final CompressionType[] TYPES = {CompressionType.ZSTD, CompressionType.LZ4};
+
+    @Test
+    public void testDetection() {
+        Assert.assertEquals(CompressionType.ZSTD, CompressionType.detectCompressionType("reads.fastq.zst"));
+        Assert.assertEquals(CompressionType.ZSTD, CompressionType.detectCompressionType("reads.fastq.ZSTD"));
+        Assert.assertEquals(CompressionType.LZ4, CompressionType.detectCompressionType("reads.fastq.lz4"));
+        Assert.assertEquals(CompressionType.None, CompressionType.detectCompressionType("reads.fastq"));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = randomData(3_000_000, 1);
+        for (CompressionType type : TYPES)
+            for (int length : new int[]{0, 1, 100_000, 3_000_000})
+                for (int writeConcurrency : new int[]{0, 3})
+                    for (int readConcurrency : new int[]{0, 3}) {
+                        byte[] compressed = compress(type, data, length, writeConcurrency, 100_000);
+                        Assert.assertArrayEquals(Arrays.copyOf(data, length),
+                                IOUtils.toByteArray(type.createInputStream(new ByteArrayInputStream(compressed),
+                                        2048, ForkJoinPool.commonPool(), readConcurrency)));
+                    }
+    }
+
+    @Test
+    public void testSplitFrames() throws Exception {
+        byte[] data = randomData(1_000_000, 2);
+        for (CompressionType type : TYPES) {
+            byte[] compressed = compress(type, data, data.length, 2, 30_000);
+            FrameCodec codec = FrameCodec.forType(type);
+            ByteArrayInputStream is = new ByteArrayInputStream(compressed);
+            int frames = 0, size = 0;
+            long contentSize;
+            while ((contentSize = codec.peekContentSize(is)) != FrameCodec.END_OF_STREAM) {
+                Assert.assertEquals(Math.min(30_000, data.length - size), contentSize);
+                byte[] frame = codec.readFrame(is);
+                Assert.assertEquals(contentSize, codec.decompress(frame, (int) contentSize).length);
+                size += 30_000;
+                ++frames;
+            }
+            Assert.assertNull(codec.readFrame(is));
+            Assert.assertEquals((data.length + 29_999) / 30_000, frames);
+        }
+    }
+
+    @Test
+    public void testStreamingFallback() throws Exception {
+        byte[] data = randomData(3_000_000, 4);
+        for (CompressionType type : TYPES) {
+            FrameCodec codec = FrameCodec.forType(type);
+            // frames written by a streaming encoder, content size is unknown or exceeds the limit
+            byte[] single = compress(type, data, data.length, 0, 0);
+            long contentSize = codec.peekContentSize(new ByteArrayInputStream(single));
+            Assert.assertTrue(contentSize == FrameCodec.UNKNOWN_CONTENT_SIZE || contentSize > 100_000);
+            Assert.assertArrayEquals(data, decompress(type, single, 100_000));
+
+            // frames of known size above the limit
+            byte[] parallel = compress(type, data, data.length, 3, 200_000);
+            Assert.assertArrayEquals(data, decompress(type, parallel, 100_000));
+
+            // switching to streaming decoder in the middle of the stream
+            ByteArrayOutputStream mixed = new ByteArrayOutputStream();
+            mixed.write(compress(type, data, 1_000_000, 3, 50_000));
+            mixed.write(single);
+            byte[] expected = new byte[1_000_000 + data.length];
+            System.arraycopy(data, 0, expected, 0, 1_000_000);
+            System.arraycopy(data, 0, expected, 1_000_000, data.length);
+            Assert.assertArrayEquals(expected, decompress(type, mixed.toByteArray(), 100_000));
+        }
+    }
+
+    static byte[] decompress(CompressionType type, byte[] compressed, int maxFrameSize) throws IOException {
+        try (ParallelFrameInputStream is = new ParallelFrameInputStream(new ByteArrayInputStream(compressed), type,
+                ForkJoinPool.commonPool(), 2, maxFrameSize)) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        byte[] compressed = compress(CompressionType.ZSTD, randomData(100_000, 3), 100_000, 2, 10_000);
+        IOUtils.toByteArray(new ParallelFrameInputStream(
+                new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length - 10)), CompressionType.ZSTD, 2));
+    }
+
+    static byte[] compress(CompressionType type, byte[] data, int length, int concurrency, int blockSize)
+            throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = concurrency == 0
+                ? type.createOutputStream(bos)
+                : new ParallelFrameOutputStream(bos, type, ForkJoinPool.commonPool(), concurrency, blockSize)) {
+            os.write(data, 0, length);
+        }
+        return bos.toByteArray();
+    }
+}
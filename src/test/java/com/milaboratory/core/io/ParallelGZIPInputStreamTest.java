@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.fastq.QualityFormat;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+
+public class ParallelGZIPInputStreamTest {
+    @Test
+    public void testBGZF() throws Exception {
+        byte[] data = randomData(1_000_000, 1);
+        for (int blockSize : new int[]{1, 100, 10_000, 65_000}) {
+            try (ParallelGZIPInputStream is = new ParallelGZIPInputStream(
+                    new ByteArrayInputStream(bgzf(data, blockSize)), 4)) {
+                Assert.assertTrue(is.isBGZF());
+                Assert.assertArrayEquals(data, IOUtils.toByteArray(is));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiMemberGZIP() throws Exception {
+        byte[] data = randomData(300_000, 2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int i = 0; i < 3; i++)
+            try (GZIPOutputStream gz = new GZIPOutputStream(new CloseShieldOutputStream(bos))) {
+                gz.write(data, i * 100_000, 100_000);
+            }
+        for (int chunkSize : new int[]{17, 1000, 1 << 16}) {
+            ParallelGZIPInputStream is = new ParallelGZIPInputStream(
+                    new ByteArrayInputStream(bos.toByteArray()), ForkJoinPool.commonPool(), 2, chunkSize);
+            Assert.assertFalse(is.isBGZF());
+            Assert.assertArrayEquals(data, IOUtils.toByteArray(is));
+            is.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorrupted() throws Exception {
+        byte[] bgzf = bgzf(randomData(100_000, 3), 10_000);
+        bgzf[bgzf.length / 2] ^= 0x55;
+        try (ParallelGZIPInputStream is = new ParallelGZIPInputStream(new ByteArrayInputStream(bgzf), 4)) {
+            IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test
+    public void testFastq() throws Exception {
+        File sample = getTestFile("sequences/sample_r1.fastq");
+        byte[] data = IOUtils.toByteArray(new FileInputStream(sample));
+        List<SingleRead> expected = readAll(new SingleFastqReader(new FileInputStream(sample),
+                QualityFormat.Phred33, CompressionType.None, false, 1000, false, true));
+        for (int concurrency = 1; concurrency < 5; concurrency++) {
+            assertSameReads(expected, new SingleFastqReader(new ByteArrayInputStream(bgzf(data, 1024)),
+                    QualityFormat.Phred33, CompressionType.GZIP, false, 1000, false, true, concurrency));
+            assertSameReads(expected, new SingleFastqReader(getTestFile("sequences/sample_r1.fastq.gz"),
+                    false, false, concurrency));
+        }
+    }
+
+    private static List<SingleRead> readAll(SingleFastqReader reader) {
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleFastqReader r = reader) {
+            for (SingleRead read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+
+    private static void assertSameReads(List<SingleRead> expected, SingleFastqReader reader) {
+        List<SingleRead> actual = readAll(reader);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            Assert.assertEquals(expected.get(i).getData(), actual.get(i).getData());
+            Assert.assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+        }
+    }
+
+    static byte[] randomData(int size, long seed) {
+        Well19937c random = new Well19937c(seed);
+        byte[] data = new byte[size];
+        // compressible data
+        for (int i = 0; i < size; i++)
+            data[i] = (byte) ("ACGT".charAt(random.nextInt(4)));
+        return data;
+    }
+
+    /**
+     * Creates BGZF stream (with the EOF marker block)
+     */
+    public static byte[] bgzf(byte[] data, int blockSize) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        for (int offset = 0; offset <= data.length; offset += blockSize)
+            bgzfBlock(bos, data, offset, Math.min(blockSize, data.length - offset));
+        return bos.toByteArray();
+    }
+
+    private static void bgzfBlock(ByteArrayOutputStream bos, byte[] data, int offset, int length) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] buffer = new byte[length + 1024];
+        int compressedLength = deflater.deflate(buffer);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        int bSize = 12 + 6 + compressedLength + 8 - 1;
+        bos.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeShort(bos, bSize);
+        bos.write(buffer, 0, compressedLength);
+        writeShort(bos, (int) crc.getValue());
+        writeShort(bos, (int) (crc.getValue() >>> 16));
+        writeShort(bos, length);
+        writeShort(bos, length >>> 16);
+    }
+
+    private static void writeShort(ByteArrayOutputStream bos, int value) {
+        bos.write(value & 0xFF);
+        bos.write((value >>> 8) & 0xFF);
+    }
+}
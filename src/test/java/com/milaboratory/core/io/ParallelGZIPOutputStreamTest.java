@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static com.milaboratory.core.io.ParallelGZIPInputStreamTest.randomData;
+
+public class ParallelGZIPOutputStreamTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] data = randomData(1_000_000, 1);
+        for (int blockSize : new int[]{1000, 65_000, ParallelGZIPOutputStream.MAX_BLOCK_SIZE})
+            for (int length : new int[]{0, 1, blockSize, blockSize + 1, 1_000_000})
+                assertRoundTrip(data, length, blockSize);
+    }
+
+    @Test
+    public void testIncompressible() throws Exception {
+        Well19937c random = new Well19937c(2);
+        byte[] data = new byte[300_000];
+        random.nextBytes(data);
+        assertRoundTrip(data, data.length, ParallelGZIPOutputStream.MAX_BLOCK_SIZE);
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        byte[] data = randomData(10_000, 3);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGZIPOutputStream os = new ParallelGZIPOutputStream(bos, 2)) {
+            os.write(data, 0, 5000);
+            os.flush();
+            // all data written before flush is readable
+            Assert.assertArrayEquals(
+                    Arrays.copyOf(data, 5000),
+                    IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+            os.write(data, 5000, 5000);
+        }
+        Assert.assertArrayEquals(data,
+                IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+    }
+
+    private static void assertRoundTrip(byte[] data, int length, int blockSize) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGZIPOutputStream os = new ParallelGZIPOutputStream(bos, ForkJoinPool.commonPool(), 3,
+                Deflater.DEFAULT_COMPRESSION, blockSize)) {
+            // mixing single byte and bulk writes
+            if (length > 0)
+                os.write(data[0]);
+            if (length > 1)
+                os.write(data, 1, length - 1);
+        }
+        byte[] expected = Arrays.copyOf(data, length);
+        byte[] compressed = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        try (ParallelGZIPInputStream is = new ParallelGZIPInputStream(new ByteArrayInputStream(compressed), 4)) {
+            Assert.assertTrue(is.isBGZF());
+            Assert.assertArrayEquals(expected, IOUtils.toByteArray(is));
+        }
+    }
+}
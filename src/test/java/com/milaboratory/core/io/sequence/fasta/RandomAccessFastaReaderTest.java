@@ -37,7 +37,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.*;
 
 import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
 
@@ -87,6 +87,48 @@ public class RandomAccessFastaReaderTest {
         }
 
         assertRA(seqs, tempFile.toPath(), NucleotideSequence.ALPHABET, true);
+        assertConcurrentRA(seqs, tempFile.toPath(), NucleotideSequence.ALPHABET, true);
+    }
+
+    @Test
+    public void testConcurrent1() throws Exception {
+        Path path = getTestFile("sequences/some_fasta.fasta").toPath();
+        List<FastaRecord<AminoAcidSequence>> seqs = new ArrayList<>();
+
+        try (FastaReader<AminoAcidSequence> r = new FastaReader<>(path.toFile(), AminoAcidSequence.ALPHABET)) {
+            for (FastaRecord<AminoAcidSequence> rec : CUtils.it(r))
+                seqs.add(rec);
+        }
+
+        assertConcurrentRA(seqs, path, AminoAcidSequence.ALPHABET, false);
+    }
+
+    public static <S extends Sequence<S>> void assertConcurrentRA(List<FastaRecord<S>> seqs, Path path,
+                                                                  Alphabet<S> alphabet, boolean allowReverse)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ConcurrentRandomAccessFastaReader<S> raReader = new ConcurrentRandomAccessFastaReader<>(path,
+                RandomAccessFastaIndex.index(path), alphabet)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    for (int i = 0; i < 1000; i++) {
+                        FastaRecord<S> rec = seqs.get(r.nextInt(seqs.size()));
+                        int from = r.nextInt(rec.getSequence().size() - 1);
+                        int to = allowReverse ? r.nextInt(rec.getSequence().size() - 1) : r.nextInt(from, rec.getSequence().size());
+                        Range range = new Range(from, to);
+                        Assert.assertEquals(rec.getSequence().getRange(range),
+                                raReader.getSequenceProvider((int) rec.getId()).getRegion(range));
+                        Assert.assertEquals(rec.getSequence().getRange(range),
+                                raReader.getSequence(rec.getDescription(), range));
+                    }
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
     }
 
     public static <S extends Sequence<S>> void assertRA(List<FastaRecord<S>> seqs, Path path, Alphabet<S> alphabet, boolean allowReverse) throws Exception {
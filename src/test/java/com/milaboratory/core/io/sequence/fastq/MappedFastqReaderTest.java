@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.sequence.IllegalFileFormatException;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadLazy;
+import com.milaboratory.core.io.sequence.SingleReader;
+import com.milaboratory.util.TempFileManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+
+public class MappedFastqReaderTest {
+    @Test
+    public void testSampleFiles() throws Exception {
+        for (String name : new String[]{"sample_r1.fastq", "sample_r2.fastq"}) {
+            File file = getTestFile("sequences/" + name);
+            for (boolean lazy : new boolean[]{false, true})
+                assertSameReads(readAll(new SingleFastqReader(file, false, false)),
+                        new MappedFastqReader(file, false, lazy));
+        }
+    }
+
+    @Test
+    public void testSlidingWindow() throws Exception {
+        File file = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            os.write(ParallelFastqReaderTest.randomFastq(2000, 3));
+        }
+        for (boolean replaceWildcards : new boolean[]{false, true}) {
+            List<SingleRead> expected = readAll(new SingleFastqReader(new FileInputStream(file),
+                    QualityFormat.Phred33, CompressionType.None, false,
+                    SingleFastqReader.DEFAULT_BUFFER_SIZE, replaceWildcards, false));
+            for (int windowSize : new int[]{1000, 4096, 100_000, MappedFastqReader.DEFAULT_WINDOW_SIZE})
+                for (boolean lazy : new boolean[]{false, true}) {
+                    MappedFastqReader reader = new MappedFastqReader(file, QualityFormat.Phred33,
+                            replaceWildcards, lazy, windowSize);
+                    List<SingleRead> actual = assertSameReads(expected, reader);
+                    if (lazy)
+                        Assert.assertTrue(actual.get(0) instanceof SingleReadLazy);
+                }
+        }
+    }
+
+    @Test(expected = IllegalFileFormatException.class)
+    public void testTooSmallWindow() throws Exception {
+        File file = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write("@r1\nACGTACGTAC\n+\nAAAAAAAAAA\n@r2\nACGTACGTAC\n+\nAAAAAAAAAA\n".getBytes());
+        }
+        readAll(new MappedFastqReader(file, QualityFormat.Phred33, false, true, 16));
+    }
+
+    private static List<SingleRead> readAll(SingleReader reader) {
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleReader r = reader) {
+            for (SingleRead read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+
+    private static List<SingleRead> assertSameReads(List<SingleRead> expected, MappedFastqReader reader) {
+        List<SingleRead> actual = readAll(reader);
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            Assert.assertEquals(expected.get(i), actual.get(i));
+        return actual;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.sequence.PairedRead;
+import com.milaboratory.core.io.sequence.PairedReader;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+
+public class PairedFastqReaderTest {
+    @Test
+    public void testConcurrentMates() throws Exception {
+        File r1 = getTestFile("sequences/sample_r1.fastq");
+        File r2 = getTestFile("sequences/sample_r2.fastq");
+        List<PairedRead> expected = readAll(new PairedFastqReader(r1, r2));
+        Assert.assertFalse(expected.isEmpty());
+        for (int bufferedChunks : new int[]{1, 4})
+            assertSameReads(expected, new PairedFastqReader(r1, r2, false, true, 0, bufferedChunks));
+
+        byte[] data1 = ParallelFastqReaderTest.randomFastq(3000, 1),
+                data2 = ParallelFastqReaderTest.randomFastq(3000, 2);
+        expected = readAll(new PairedFastqReader(stream(data1), stream(data2)));
+        for (int chunkSize : new int[]{1, 7, 1000})
+            for (int bufferedChunks : new int[]{1, 3})
+                assertSameReads(expected, new PairedReader(chunkSize, bufferedChunks,
+                        new SingleFastqReader(stream(data1)), new SingleFastqReader(stream(data2))));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testDifferentNumberOfReads() throws Exception {
+        readAll(new PairedFastqReader(
+                new SingleFastqReader(stream(ParallelFastqReaderTest.randomFastq(1000, 1))),
+                new SingleFastqReader(stream(ParallelFastqReaderTest.randomFastq(999, 2))), 2));
+    }
+
+    @Test
+    public void testEarlyClose() throws Exception {
+        // decoding threads blocked on full buffers must be released on close
+        try (PairedReader reader = new PairedReader(1, 1,
+                new SingleFastqReader(stream(ParallelFastqReaderTest.randomFastq(1000, 1))),
+                new SingleFastqReader(stream(ParallelFastqReaderTest.randomFastq(1000, 2))))) {
+            Assert.assertNotNull(reader.take());
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForDecodingThreads() throws Exception {
+        final AtomicInteger inTake = new AtomicInteger();
+        final AtomicBoolean closedWhileDecoding = new AtomicBoolean();
+        SingleReader[] readers = new SingleReader[2];
+        for (int i = 0; i < 2; i++) {
+            final SingleFastqReader inner = new SingleFastqReader(stream(ParallelFastqReaderTest.randomFastq(1000, i)));
+            readers[i] = new SingleReader() {
+                @Override
+                public SingleRead take() {
+                    inTake.incrementAndGet();
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    try {
+                        return inner.take();
+                    } finally {
+                        inTake.decrementAndGet();
+                    }
+                }
+
+                @Override
+                public long getNumberOfReads() {
+                    return inner.getNumberOfReads();
+                }
+
+                @Override
+                public void close() {
+                    if (inTake.get() != 0)
+                        closedWhileDecoding.set(true);
+                    inner.close();
+                }
+            };
+        }
+        try (PairedReader reader = new PairedReader(1, 1, readers)) {
+            Assert.assertNotNull(reader.take());
+        }
+        Assert.assertFalse(closedWhileDecoding.get());
+        Assert.assertEquals(0, inTake.get());
+    }
+
+    private static ByteArrayInputStream stream(byte[] data) {
+        return new ByteArrayInputStream(data);
+    }
+
+    private static List<PairedRead> readAll(PairedReader reader) {
+        List<PairedRead> reads = new ArrayList<>();
+        try (PairedReader r = reader) {
+            for (PairedRead read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+
+    private static void assertSameReads(List<PairedRead> expected, PairedReader reader) {
+        List<PairedRead> actual = readAll(reader);
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.size(), reader.getNumberOfReads());
+        for (int i = 0; i < expected.size(); i++)
+            for (int j = 0; j < 2; j++) {
+                Assert.assertEquals(expected.get(i).getRead(j).getId(), actual.get(i).getRead(j).getId());
+                Assert.assertEquals(expected.get(i).getRead(j).getData(), actual.get(i).getRead(j).getData());
+                Assert.assertEquals(expected.get(i).getRead(j).getDescription(),
+                        actual.get(i).getRead(j).getDescription());
+            }
+    }
+}
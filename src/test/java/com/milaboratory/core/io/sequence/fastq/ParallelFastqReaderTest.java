@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.fastq;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.CompressionType;
+import com.milaboratory.core.io.ParallelGZIPInputStreamTest;
+import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+
+public class ParallelFastqReaderTest {
+    @Test
+    public void testSampleFiles() throws Exception {
+        for (String name : new String[]{"sample_r1.fastq", "sample_r2.fastq", "sample_r1.fastq.gz", "solexa1.fastq.gz"}) {
+            File file = getTestFile("sequences/" + name);
+            List<SingleRead> expected = readAll(new SingleFastqReader(file, false, false));
+            ParallelFastqReader reader = new ParallelFastqReader(file);
+            Assert.assertEquals(new SingleFastqReader(file).getQualityFormat(), reader.getQualityFormat());
+            assertSameReads(expected, reader);
+        }
+    }
+
+    @Test
+    public void testRandomFile() throws Exception {
+        File file = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file))) {
+            os.write(randomFastq(2000, 1));
+        }
+        for (boolean replaceWildcards : new boolean[]{false, true}) {
+            List<SingleRead> expected = readAll(new SingleFastqReader(new FileInputStream(file),
+                    QualityFormat.Phred33, CompressionType.None, false,
+                    SingleFastqReader.DEFAULT_BUFFER_SIZE, replaceWildcards, false));
+            for (int chunkSize : new int[]{97, 4096, 100_000, ParallelFastqReader.DEFAULT_CHUNK_SIZE})
+                for (boolean lazy : new boolean[]{false, true}) {
+                    assertSameReads(expected, new ParallelFastqReader(file, QualityFormat.Phred33,
+                            replaceWildcards, lazy, ForkJoinPool.commonPool(), 4, chunkSize));
+                    assertSameReads(expected, new ParallelFastqReader(new FileInputStream(file),
+                            QualityFormat.Phred33, CompressionType.None,
+                            replaceWildcards, lazy, ForkJoinPool.commonPool(), 4, chunkSize));
+                }
+        }
+    }
+
+    @Test
+    public void testGZIPStream() throws Exception {
+        byte[] fastq = randomFastq(3000, 2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(fastq);
+        }
+        List<SingleRead> expected = readAll(new SingleFastqReader(new ByteArrayInputStream(fastq),
+                QualityFormat.Phred33, CompressionType.None));
+        for (int chunkSize : new int[]{100, 10_000})
+            assertSameReads(expected, new ParallelFastqReader(new ByteArrayInputStream(bos.toByteArray()),
+                    null, CompressionType.GZIP, false, true, ForkJoinPool.commonPool(), 3, chunkSize));
+    }
+
+    @Test(timeout = 60_000)
+    public void testBGZFSingleThreadExecutor() throws Exception {
+        byte[] fastq = randomFastq(3000, 3);
+        byte[] bgzf = ParallelGZIPInputStreamTest.bgzf(fastq, 10_000);
+        List<SingleRead> expected = readAll(new SingleFastqReader(new ByteArrayInputStream(fastq),
+                QualityFormat.Phred33, CompressionType.None));
+        // the same executor decompresses blocks and parses chunks
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int chunkSize : new int[]{100, 10_000})
+                assertSameReads(expected, new ParallelFastqReader(new ByteArrayInputStream(bgzf),
+                        null, CompressionType.GZIP, false, true, executor, 3, chunkSize));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        File file = TempFileManager.getTempFile(".fastq");
+        new FileOutputStream(file).close();
+        try (ParallelFastqReader reader = new ParallelFastqReader(file)) {
+            Assert.assertNull(reader.take());
+        }
+    }
+
+    @Test
+    public void testResync() {
+        byte[] data = "@r1\nACGT\n+\n@@@@\n@r2\nAC\n+\n@A\n".getBytes();
+        // quality line starting with '@' must not be treated as a record start
+        Assert.assertEquals(16, ParallelFastqReader.resync(data, 10, data.length, data.length, true));
+        Assert.assertEquals(ParallelFastqReader.INCOMPLETE,
+                ParallelFastqReader.resync(data, 10, data.length, data.length - 3, false));
+    }
+
+    private static List<SingleRead> readAll(SingleFastqReader reader) {
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleFastqReader r = reader) {
+            for (SingleRead read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+
+    private static void assertSameReads(List<SingleRead> expected, ParallelFastqReader reader) {
+        List<SingleRead> actual = new ArrayList<>();
+        try (ParallelFastqReader r = reader) {
+            for (SingleRead read : CUtils.it(r))
+                actual.add(read);
+        }
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.size(), reader.getNumberOfReads());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(i, actual.get(i).getId());
+            Assert.assertEquals(expected.get(i).getData(), actual.get(i).getData());
+            Assert.assertEquals(expected.get(i).getDescription(), actual.get(i).getDescription());
+        }
+    }
+
+    static byte[] randomFastq(int count, long seed) {
+        Well19937c random = new Well19937c(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            int length = 1 + random.nextInt(random.nextBoolean() ? 10 : 300);
+            sb.append('@').append("read").append(i);
+            if (random.nextBoolean())
+                sb.append(" @").append(random.nextInt());
+            sb.append('\n');
+            for (int j = 0; j < length; j++)
+                sb.append("ACGTN".charAt(random.nextInt(5)));
+            sb.append("\n+");
+            if (random.nextBoolean())
+                sb.append("read").append(i);
+            sb.append('\n');
+            for (int j = 0; j < length; j++)
+                // quality lines frequently start with '@'
+                sb.append(j == 0 && random.nextBoolean() ? '@' : (char) ('!' + random.nextInt(41)));
+            if (i != count - 1 || random.nextBoolean())
+                sb.append('\n');
+        }
+        return sb.toString().getBytes();
+    }
+}
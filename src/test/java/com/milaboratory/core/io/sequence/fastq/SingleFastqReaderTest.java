@@ -18,16 +18,19 @@ package com.milaboratory.core.io.sequence.fastq;
 import cc.redberry.pipe.CUtils;
 import com.milaboratory.core.io.CompressionType;
 import com.milaboratory.core.io.sequence.SingleRead;
+import com.milaboratory.core.io.sequence.SingleReadLazy;
 import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.BufferPool;
 import com.milaboratory.util.HashFunctions;
+import com.milaboratory.util.TempFileManager;
 import org.junit.Assert;
 import org.junit.Test;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.*;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
 
 import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
@@ -112,6 +115,24 @@ public class SingleFastqReaderTest {
                         false,
                         bufferSize,
                         replaceWildcards, false));
+                for (int readAhead = 1; readAhead < 3; readAhead++) {
+                    assertSameReadContent(set, new SingleFastqReader(
+                            new FileInputStream(sample),
+                            QualityFormat.Phred33,
+                            CompressionType.None,
+                            false,
+                            bufferSize,
+                            replaceWildcards, readAhead == 1,
+                            null, 0, readAhead));
+                    assertSameReadContent(set, new SingleFastqReader(
+                            new FileInputStream(sampleGZIP),
+                            QualityFormat.Phred33,
+                            CompressionType.GZIP,
+                            true,
+                            bufferSize,
+                            replaceWildcards, readAhead == 2,
+                            null, 0, readAhead));
+                }
 
                 bufferSize += (HashFunctions.JenkinWang32shift(bufferSize) & 15) + 1;
             }
@@ -163,6 +184,113 @@ public class SingleFastqReaderTest {
         }
     }
 
+    @Test
+    public void testReadAheadBufferReuse() throws IOException {
+        File sample = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(sample))) {
+            os.write(ParallelFastqReaderTest.randomFastq(2000, 4));
+        }
+        BufferPool pool = new BufferPool(1024, 8);
+        int count = 0;
+        try (SingleFastqReader reader = new SingleFastqReader(new FileInputStream(sample),
+                QualityFormat.Phred33, CompressionType.None, false, 1024, false, true, null, 0, 2)) {
+            for (SingleRead read : CUtils.it(reader)) {
+                Assert.assertTrue(read instanceof SingleReadLazy);
+                ((SingleReadLazy) read).materialize();
+                ++count;
+            }
+        }
+        Assert.assertTrue(count > 0);
+
+        // pooled buffers are reused after reads are materialized
+        FastqRecordsReader recordsReader = new FastqRecordsReader(true, new FileInputStream(sample),
+                false, true, pool, 2);
+        while (recordsReader.nextRecord(true)) {
+            SingleRead read = recordsReader.createRead(0, QualityFormat.Phred33);
+            if (read.getId() % 2 == 0)
+                ((SingleReadLazy) read).materialize();
+            else
+                ((SingleReadLazy) read).release();
+        }
+        Assert.assertTrue(pool.getAllocatedCount() < 8 + 4);
+        Assert.assertTrue(sample.length() / 1024 > 8 + 4);
+    }
+
+    @Test
+    public void testReadAheadReleaseOnData() throws IOException {
+        File sample = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(sample))) {
+            os.write(ParallelFastqReaderTest.randomFastq(2000, 4));
+        }
+        BufferPool pool = new BufferPool(1024, 8);
+        FastqRecordsReader recordsReader = new FastqRecordsReader(true, new FileInputStream(sample),
+                false, true, pool, 2);
+        // description is copied eagerly, so parsing of sequence releases the buffer
+        while (recordsReader.nextRecord(true))
+            recordsReader.createRead(0, QualityFormat.Phred33).getData();
+        Assert.assertTrue(pool.getAllocatedCount() < 8 + 4);
+    }
+
+    @Test
+    public void testReadAheadReleaseOnClose() throws Exception {
+        File sample = TempFileManager.getTempFile(".fastq");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(sample))) {
+            os.write(ParallelFastqReaderTest.randomFastq(2000, 4));
+        }
+        BufferPool pool = new BufferPool(1024, 16);
+        FastqRecordsReader recordsReader = new FastqRecordsReader(true, new FileInputStream(sample),
+                false, true, pool, 4);
+        SingleRead first = null;
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(recordsReader.nextRecord(true));
+            SingleRead read = recordsReader.createRead(i, QualityFormat.Phred33);
+            if (first == null)
+                first = read;
+            else
+                ((SingleReadLazy) read).materialize();
+        }
+        recordsReader.close();
+        ((SingleReadLazy) first).materialize();
+
+        // read-ahead thread releases the buffer it holds on exit
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getFreeCount() != pool.getAllocatedCount() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        Assert.assertEquals(pool.getAllocatedCount(), pool.getFreeCount());
+    }
+
+    @Test
+    public void testReadAheadLastRecordAfterAutoClose() throws IOException {
+        byte[] fastq = ParallelFastqReaderTest.randomFastq(50, 4);
+        BufferPool pool = new BufferPool(fastq.length + 16, 4);
+        FastqRecordsReader recordsReader = new FastqRecordsReader(true, new ByteArrayInputStream(fastq),
+                false, true, pool, 1);
+        List<SingleRead> reads = new ArrayList<>();
+        while (recordsReader.nextRecord(true))
+            reads.add(recordsReader.createRead(reads.size(), QualityFormat.Phred33));
+        Assert.assertTrue(recordsReader.closed.get());
+
+        TreeSet<SingleRead> actual = new TreeSet<>(SINGLE_READ_COMPARATOR);
+        actual.addAll(reads);
+        assertSameReadContent(actual, new SingleFastqReader(new ByteArrayInputStream(fastq),
+                QualityFormat.Phred33, CompressionType.None));
+    }
+
+    @Test
+    public void testLastRecordWithoutLineBreak() throws IOException {
+        String fastq = "@r1\nACGT\n+\nIIII\n@r2\nGGTCA\n+\nIIIII";
+        for (boolean lazy : new boolean[]{true, false})
+            try (SingleFastqReader reader = new SingleFastqReader(
+                    new ByteArrayInputStream(fastq.getBytes()), QualityFormat.Phred33, CompressionType.None,
+                    false, SingleFastqReader.DEFAULT_BUFFER_SIZE, false, lazy)) {
+                SingleRead r1 = reader.take(), r2 = reader.take();
+                Assert.assertEquals("ACGT", r1.getData().getSequence().toString());
+                Assert.assertEquals("r2", r2.getDescription());
+                Assert.assertEquals("GGTCA", r2.getData().getSequence().toString());
+                Assert.assertNull(reader.take());
+            }
+    }
+
     private static void assertSameReadContent(TreeSet<SingleRead> expected, SingleFastqReader reader) {
         try (SingleFastqReader r = reader) {
             TreeSet<SingleRead> set = new TreeSet<>(SINGLE_READ_COMPARATOR);
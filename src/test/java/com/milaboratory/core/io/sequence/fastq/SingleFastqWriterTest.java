@@ -26,6 +26,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
 import static org.junit.Assert.*;
@@ -84,6 +85,64 @@ public class SingleFastqWriterTest {
         }
     }
 
+    @Test
+    public void testParallelGZIP() throws Exception {
+        byte[] data = ParallelFastqReaderTest.randomFastq(5000, 1);
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(data),
+                QualityFormat.Phred33, CompressionType.None)) {
+            for (SingleRead read : CUtils.it(reader))
+                reads.add(read);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (SingleFastqWriter writer = new SingleFastqWriter(bos, QualityFormat.Phred33, CompressionType.GZIP,
+                SingleFastqWriter.DEFAULT_BUFFER_SIZE, ForkJoinPool.commonPool(), 4)) {
+            for (SingleRead read : reads)
+                writer.write(read);
+        }
+
+        // output is readable both sequentially and with parallel BGZF decompression
+        for (int decompressionConcurrency : new int[]{0, 4})
+            try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(bos.toByteArray()),
+                    QualityFormat.Phred33, CompressionType.GZIP, false, SingleFastqReader.DEFAULT_BUFFER_SIZE,
+                    false, false, ForkJoinPool.commonPool(), decompressionConcurrency)) {
+                for (SingleRead read : reads)
+                    assertReadsEquals(read, reader.take());
+                assertNull(reader.take());
+            }
+    }
+
+    @Test
+    public void testZstdAndLZ4() throws Exception {
+        byte[] data = ParallelFastqReaderTest.randomFastq(5000, 2);
+        List<SingleRead> reads = new ArrayList<>();
+        try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(data),
+                QualityFormat.Phred33, CompressionType.None)) {
+            for (SingleRead read : CUtils.it(reader))
+                reads.add(read);
+        }
+
+        for (CompressionType ct : new CompressionType[]{CompressionType.ZSTD, CompressionType.LZ4})
+            for (int compressionConcurrency : new int[]{0, 3}) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (SingleFastqWriter writer = new SingleFastqWriter(bos, QualityFormat.Phred33, ct,
+                        SingleFastqWriter.DEFAULT_BUFFER_SIZE, ForkJoinPool.commonPool(), compressionConcurrency)) {
+                    for (SingleRead read : reads)
+                        writer.write(read);
+                }
+
+                for (int decompressionConcurrency : new int[]{0, 3})
+                    try (SingleFastqReader reader = new SingleFastqReader(new ByteArrayInputStream(bos.toByteArray()),
+                            QualityFormat.Phred33, ct, false, SingleFastqReader.DEFAULT_BUFFER_SIZE,
+                            false, false, ForkJoinPool.commonPool(), decompressionConcurrency)) {
+                        for (SingleRead read : reads)
+                            assertReadsEquals(read, reader.take());
+                        assertNull(reader.take());
+                    }
+            }
+    }
+
     public static void assertReadsEquals(SingleRead r1, SingleRead r2) {
         assertEquals(r1.getId(), r2.getId());
         assertEquals(r1.getData(), r2.getData());
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import cc.redberry.pipe.CUtils;
+import com.milaboratory.core.io.sequence.*;
+import com.milaboratory.core.io.sequence.fastq.PairedFastqReader;
+import com.milaboratory.core.io.sequence.fastq.SingleFastqReader;
+import com.milaboratory.core.sequence.NSequenceWithQuality;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceQuality;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.milaboratory.core.io.util.IOTestUtil.getTestFile;
+
+public class PackedReadsWriterTest {
+    @Test
+    public void testSampleFiles() throws Exception {
+        File r1 = getTestFile("sequences/sample_r1.fastq"), r2 = getTestFile("sequences/sample_r2.fastq");
+
+        List<SingleRead> single = readAll(new SingleFastqReader(r1, false, false));
+        File file = TempFileManager.getTempFile(".mipr");
+        try (PackedReadsWriter<SingleRead> writer = new PackedReadsWriter<>(file)) {
+            for (SingleRead read : single)
+                writer.write(read);
+        }
+        Assert.assertEquals(single, readAll(new PackedReadsReader<SingleRead>(file)));
+
+        List<PairedRead> paired = readAll(new PairedFastqReader(r1, r2, false, false));
+        try (PackedReadsWriter<PairedRead> writer = new PackedReadsWriter<>(file)) {
+            for (PairedRead read : paired)
+                writer.write(read);
+        }
+        Assert.assertEquals(paired, readAll(new PackedReadsReader<PairedRead>(file)));
+    }
+
+    @Test
+    public void testRandomReads() throws Exception {
+        Well19937c random = new Well19937c(12);
+        List<SequenceRead> reads = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            SingleRead[] r = new SingleRead[1 + random.nextInt(3)];
+            for (int j = 0; j < r.length; j++)
+                r[j] = new SingleReadImpl(i, randomSequence(random), "R" + i + "_" + j);
+            reads.add(SequenceReadUtil.construct(r));
+        }
+
+        for (int blockSize : new int[]{1, 100, 4096}) {
+            File file = TempFileManager.getTempFile(".mipr");
+            try (PackedReadsWriter<SequenceRead> writer = new PackedReadsWriter<>(file.toPath(),
+                    ForkJoinPool.commonPool(), 3, blockSize, false)) {
+                for (SequenceRead read : reads)
+                    writer.write(read);
+            }
+            try (PackedReadsReader<SequenceRead> reader = new PackedReadsReader<>(file.toPath(),
+                    ForkJoinPool.commonPool(), 3, 2)) {
+                Assert.assertFalse(reader.isBinnedQualities());
+                Assert.assertEquals(reads, readAll(reader));
+                Assert.assertEquals(reads.size(), reader.getNumberOfReads());
+            }
+        }
+    }
+
+    @Test
+    public void testBinnedQualities() throws Exception {
+        Well19937c random = new Well19937c(13);
+        List<SingleRead> reads = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            reads.add(new SingleReadImpl(i, randomSequence(random), "R" + i));
+
+        File plain = TempFileManager.getTempFile(".mipr"), binned = TempFileManager.getTempFile(".mipr");
+        try (PackedReadsWriter<SingleRead> pw = new PackedReadsWriter<>(plain, false);
+             PackedReadsWriter<SingleRead> bw = new PackedReadsWriter<>(binned, true)) {
+            for (SingleRead read : reads) {
+                pw.write(read);
+                bw.write(read);
+            }
+        }
+        Assert.assertTrue(binned.length() < plain.length());
+
+        List<SingleRead> actual;
+        try (PackedReadsReader<SingleRead> reader = new PackedReadsReader<>(binned)) {
+            Assert.assertTrue(reader.isBinnedQualities());
+            actual = readAll(reader);
+        }
+        Assert.assertEquals(reads.size(), actual.size());
+        for (int i = 0; i < reads.size(); i++) {
+            NSequenceWithQuality expected = reads.get(i).getData(), read = actual.get(i).getData();
+            Assert.assertEquals(expected.getSequence(), read.getSequence());
+            for (int j = 0; j < expected.size(); j++) {
+                byte q = expected.getQuality().value(j), bq = read.getQuality().value(j);
+                Assert.assertEquals(PackedReadSerializer.bin(q), bq);
+                Assert.assertTrue(Math.abs(q - bq) <= 9);
+            }
+        }
+    }
+
+    @Test
+    public void testSizeComparedToFastq() throws Exception {
+        Well19937c random = new Well19937c(14);
+        List<SingleRead> reads = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 150, 150, true);
+            reads.add(new SingleReadImpl(i, new NSequenceWithQuality(seq,
+                    SequenceQuality.getUniformQuality((byte) 35, seq.size())), "R" + i));
+        }
+        File fastq = TempFileManager.getTempFile(".fastq"), packed = TempFileManager.getTempFile(".mipr");
+        try (FileOutputStream os = new FileOutputStream(fastq)) {
+            for (SingleRead read : reads)
+                os.write(("@" + read.getDescription() + "\n" + read.getData().getSequence() + "\n+\n"
+                        + read.getData().getQuality().encodeToString(33) + "\n").getBytes());
+        }
+        try (PackedReadsWriter<SingleRead> writer = new PackedReadsWriter<>(packed)) {
+            for (SingleRead read : reads)
+                writer.write(read);
+        }
+        Assert.assertTrue(packed.length() * 4 < fastq.length());
+    }
+
+    @Test(expected = IllegalFileFormatException.class)
+    public void testWrongFile() throws Exception {
+        new PackedReadsReader<SingleRead>(getTestFile("sequences/sample_r1.fastq"));
+    }
+
+    private static NSequenceWithQuality randomSequence(Well19937c random) {
+        NucleotideSequence seq = TestUtil.randomSequence(NucleotideSequence.ALPHABET, random, 0, 300,
+                random.nextInt(4) != 0);
+        byte[] quality = new byte[seq.size()];
+        for (int i = 0; i < quality.length; i++)
+            quality[i] = (byte) random.nextInt(42);
+        return new NSequenceWithQuality(seq, new SequenceQuality(quality));
+    }
+
+    private static <R extends SequenceRead> List<R> readAll(SequenceReaderCloseable<R> reader) {
+        List<R> reads = new ArrayList<>();
+        try (SequenceReaderCloseable<R> r = reader) {
+            for (R read : CUtils.it(r))
+                reads.add(read);
+        }
+        return reads;
+    }
+}
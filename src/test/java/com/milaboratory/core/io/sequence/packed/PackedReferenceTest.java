@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.io.sequence.packed;
+
+import com.milaboratory.core.Range;
+import com.milaboratory.core.io.sequence.fasta.FastaRecord;
+import com.milaboratory.core.io.sequence.fasta.FastaWriter;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import com.milaboratory.core.sequence.provider.SequenceProvider;
+import com.milaboratory.core.sequence.provider.SequenceProviderIndexOutOfBoundsException;
+import com.milaboratory.test.TestUtil;
+import com.milaboratory.util.TempFileManager;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PackedReferenceTest {
+    @Test
+    public void testRandomRegions() throws Exception {
+        Well19937c random = new Well19937c(21);
+        List<FastaRecord<NucleotideSequence>> records = new ArrayList<>();
+        File fasta = TempFileManager.getTempFile(".fasta");
+        try (FastaWriter<NucleotideSequence> writer = new FastaWriter<>(fasta)) {
+            for (int i = 0; i < 30; i++) {
+                FastaRecord<NucleotideSequence> record = new FastaRecord<>(i, "seq" + i + " some description",
+                        randomSequenceWithWildcards(random, i == 0 ? 1 : 1 + random.nextInt(20000)));
+                records.add(record);
+                writer.write(record);
+            }
+        }
+
+        File packed = TempFileManager.getTempFile(PackedReference.FILE_EXTENSION);
+        PackedReferenceWriter.convert(fasta.toPath(), packed.toPath());
+        Assert.assertTrue(packed.length() * 3 < fasta.length());
+
+        for (int chunkSize : new int[]{1001, PackedReference.DEFAULT_MAPPING_CHUNK})
+            try (PackedReference reference = new PackedReference(packed.toPath(), chunkSize)) {
+                Assert.assertEquals(records.size(), reference.size());
+                for (FastaRecord<NucleotideSequence> record : records) {
+                    int id = (int) record.getId();
+                    NucleotideSequence seq = record.getSequence();
+                    Assert.assertEquals(record.getDescription(), reference.getDescription(id));
+                    Assert.assertEquals(seq.size(), reference.getLength(id));
+                    Assert.assertEquals(seq, reference.getSequence(id, new Range(0, seq.size())));
+
+                    SequenceProvider<NucleotideSequence> provider = reference.getSequenceProvider("seq" + id);
+                    Assert.assertEquals(seq.size(), provider.size());
+                    for (int i = 0; i < 100; i++) {
+                        int from = random.nextInt(seq.size() + 1), to = random.nextInt(seq.size() + 1);
+                        Range range = new Range(from, to);
+                        Assert.assertEquals(seq.getRange(range), provider.getRegion(range));
+                    }
+                }
+            }
+    }
+
+    @Test(expected = SequenceProviderIndexOutOfBoundsException.class)
+    public void testOutOfBounds() throws Exception {
+        File packed = TempFileManager.getTempFile(PackedReference.FILE_EXTENSION);
+        try (PackedReferenceWriter writer = new PackedReferenceWriter(packed.toPath())) {
+            writer.write("a", new NucleotideSequence("ACGTNNNACGT"));
+        }
+        try (PackedReference reference = new PackedReference(packed.toPath())) {
+            Assert.assertEquals(new NucleotideSequence("TNNNA"), reference.getSequence("a", new Range(3, 8)));
+            reference.getSequence(0, new Range(5, 12));
+        }
+    }
+
+    private static NucleotideSequence randomSequenceWithWildcards(Well19937c random, int length) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder();
+        while (builder.size() < length) {
+            int remaining = length - builder.size();
+            if (random.nextInt(10) == 0) {
+                // run of a single wildcard or single random wildcard
+                byte code = random.nextBoolean() ? NucleotideSequence.ALPHABET.symbolToCode('N')
+                        : (byte) (4 + random.nextInt(NucleotideSequence.ALPHABET.size() - 4));
+                for (int i = Math.min(remaining, 1 + random.nextInt(50)); i > 0; --i)
+                    builder.append(code);
+            } else
+                builder.append(TestUtil.randomSequence(NucleotideSequence.ALPHABET, random,
+                        1, Math.min(remaining, 500)));
+        }
+        return builder.createAndDestroy();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 MiLaboratory, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.milaboratory.core.motif;
+
+import com.milaboratory.core.alignment.Alignment;
+import com.milaboratory.core.sequence.NucleotideSequence;
+import com.milaboratory.core.sequence.SequenceBuilder;
+import org.apache.commons.math3.random.RandomGenerator;
+import org.apache.commons.math3.random.Well19937c;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.milaboratory.test.TestUtil.its;
+import static com.milaboratory.test.TestUtil.randomSequence;
+
+public class MyersPatternTest {
+    @Test
+    public void testSimple() {
+        MyersPattern<NucleotideSequence> pattern = new MyersPattern<>(new NucleotideSequence("ATTAGACA"));
+        Assert.assertEquals(0, pattern.distance(new NucleotideSequence("ATTAGACA")));
+        Assert.assertEquals(1, pattern.distance(new NucleotideSequence("ATTAGCA")));
+        Assert.assertEquals(2, pattern.distance(new NucleotideSequence("TATTAGACAT")));
+        Assert.assertEquals(-1, pattern.distance(new NucleotideSequence("TATTAGACAT"), 0, 10, 1));
+
+        MyersPattern.Match match = pattern.findBest(new NucleotideSequence("ACTGCGATAAATTAGCCAGTACGTA"));
+        Assert.assertEquals(1, match.getDistance());
+        Assert.assertEquals(18, match.getEnd());
+
+        // wildcards in pattern
+        pattern = new MyersPattern<>(new NucleotideSequence("ATTRGACA").toMotif());
+        Assert.assertEquals(0, pattern.distance(new NucleotideSequence("ATTGGACA")));
+        Assert.assertEquals(1, pattern.distance(new NucleotideSequence("ATTCGACA")));
+    }
+
+    @Test
+    public void testRandom() {
+        Well19937c random = new Well19937c(61);
+        for (int it = its(1000, 10000); it > 0; --it) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 1, 300),
+                    seq2 = random.nextInt(5) == 0
+                            ? randomSequence(NucleotideSequence.ALPHABET, random, 0, 300)
+                            : mutate(random, seq1);
+            if (random.nextInt(3) == 0)
+                seq2 = concatenate(randomSequence(NucleotideSequence.ALPHABET, random, 0, 50), seq2,
+                        randomSequence(NucleotideSequence.ALPHABET, random, 0, 50));
+            MyersPattern<NucleotideSequence> pattern = new MyersPattern<>(seq1);
+            Motif<NucleotideSequence> motif = seq1.toMotif();
+
+            int expected = distance(motif, seq2, true);
+            Assert.assertEquals(expected, pattern.distance(seq2));
+            int maxDistance = random.nextInt(Math.max(1, 2 * expected));
+            Assert.assertEquals(expected <= maxDistance ? expected : -1,
+                    pattern.distance(seq2, 0, seq2.size(), maxDistance));
+
+            int expectedSemiGlobal = distance(motif, seq2, false);
+            MyersPattern.Match match = pattern.findBest(seq2);
+            Assert.assertEquals(expectedSemiGlobal, match.getDistance());
+            match = pattern.findBest(seq2, 0, seq2.size(), maxDistance);
+            if (expectedSemiGlobal > maxDistance)
+                Assert.assertNull(match);
+            else
+                Assert.assertEquals(expectedSemiGlobal, match.getDistance());
+
+            Alignment<NucleotideSequence> alignment = pattern.alignGlobal(seq2, 0, seq2.size());
+            Assert.assertEquals(-expected, alignment.getScore(), 0.1);
+            Assert.assertEquals(seq2, alignment.getAbsoluteMutations().mutate(seq1));
+
+            alignment = pattern.alignSemiGlobal(seq2, 0, seq2.size(), Integer.MAX_VALUE);
+            Assert.assertEquals(-expectedSemiGlobal, alignment.getScore(), 0.1);
+            Assert.assertEquals(seq2.getRange(alignment.getSequence2Range()),
+                    alignment.getAbsoluteMutations().mutate(seq1));
+        }
+    }
+
+    @Test
+    public void testWildcards() {
+        Well19937c random = new Well19937c(62);
+        for (int it = its(300, 3000); it > 0; --it) {
+            NucleotideSequence seq1 = randomSequence(NucleotideSequence.ALPHABET, random, 1, 200),
+                    seq2 = mutate(random, seq1);
+            Motif<NucleotideSequence> motif = seq1.toMotif()
+                    .or(randomSequence(NucleotideSequence.ALPHABET, random, seq1.size(), seq1.size()).toMotif());
+            MyersPattern<NucleotideSequence> pattern = new MyersPattern<>(motif);
+            Assert.assertEquals(distance(motif, seq2, true), pattern.distance(seq2));
+            Assert.assertEquals(distance(motif, seq2, false), pattern.findBest(seq2).getDistance());
+        }
+    }
+
+    /**
+     * Straightforward dynamic programming
+     */
+    private static int distance(Motif<NucleotideSequence> motif, NucleotideSequence seq, boolean global) {
+        int m = motif.size(), n = seq.size();
+        int[] previous = new int[n + 1], current = new int[n + 1];
+        for (int j = 0; j <= n; ++j)
+            previous[j] = global ? j : 0;
+        for (int i = 1; i <= m; ++i) {
+            current[0] = i;
+            for (int j = 1; j <= n; ++j)
+                current[j] = Math.min(previous[j - 1] + (motif.allows(seq.codeAt(j - 1), i - 1) ? 0 : 1),
+                        Math.min(previous[j], current[j - 1]) + 1);
+            int[] t = previous;
+            previous = current;
+            current = t;
+        }
+        if (global)
+            return previous[n];
+        int min = Integer.MAX_VALUE;
+        for (int j = 0; j <= n; ++j)
+            min = Math.min(min, previous[j]);
+        return min;
+    }
+
+    private static NucleotideSequence mutate(RandomGenerator random, NucleotideSequence seq) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder();
+        int rate = 3 + random.nextInt(30);
+        for (int i = 0; i < seq.size(); i++) {
+            int r = random.nextInt(rate);
+            if (r == 0)
+                continue;
+            if (r == 1)
+                builder.append((byte) random.nextInt(4));
+            builder.append(r == 2 ? (byte) random.nextInt(4) : seq.codeAt(i));
+        }
+        return builder.createAndDestroy();
+    }
+
+    private static NucleotideSequence concatenate(NucleotideSequence... seqs) {
+        SequenceBuilder<NucleotideSequence> builder = NucleotideSequence.ALPHABET.createBuilder();
+        for (NucleotideSequence seq : seqs)
+            builder.append(seq);
+        return builder.createAndDestroy();
+    }
+}
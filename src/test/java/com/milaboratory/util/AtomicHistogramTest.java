@@ -57,4 +57,17 @@ public class AtomicHistogramTest {
         Assert.assertArrayEquals(new double[]{-0.5, 0.5, 1.5}, hist.getBoundaries(), 0.0001);
         Assert.assertArrayEquals(new long[]{1, 3}, hist.getHist());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test4() throws Exception {
+        AtomicHistogram hist = new AtomicHistogram(0, 1);
+
+        hist.add(0, 10);
+        hist.add(1, 0);
+        hist.add(1, 2);
+        hist.add(5, 3);
+
+        Assert.assertEquals(15, hist.getTotalProcessed());
+        Assert.assertArrayEquals(new long[]{10, 2}, hist.getHist());
+    }
+}